@@ -31,6 +31,7 @@ import htsjdk.tribble.index.interval.IntervalTreeIndex;
 import htsjdk.tribble.index.linear.LinearIndex;
 import org.apache.log4j.Logger;
 import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
 import htsjdk.tribble.index.interval.IntervalIndexCreator;
 import htsjdk.tribble.index.linear.LinearIndexCreator;
 import htsjdk.tribble.index.tabix.TabixFormat;
@@ -160,6 +161,25 @@ public class GATKVCFUtils {
         return data;
     }
 
+    /**
+     * Restricts the genotypes decoded from the given VCF rods to the given samples.  Records read from these
+     * rods after this call only carry genotypes for the selected samples; the rod headers are left untouched.
+     *
+     * @param toolkit    GATK engine
+     * @param rodBindings the VCF rods to restrict
+     * @param samples    the samples whose genotypes are needed, or an empty collection if no genotypes are needed
+     */
+    public static <T extends Feature> void selectGenotypeSamplesFromRods(GenomeAnalysisEngine toolkit, List<RodBinding<T>> rodBindings, Collection<String> samples) {
+        final Set<String> names = new TreeSet<String>();
+        for ( final RodBinding<T> rod : rodBindings )
+            names.add(rod.getName());
+
+        for ( final ReferenceOrderedDataSource source : toolkit.getRodDataSources() ) {
+            if ( names.contains(source.getName()) && source.getHeader() instanceof VCFHeader )
+                source.selectGenotypeSamples(samples);
+        }
+    }
+
     public static Map<String,VCFHeader> getVCFHeadersFromRodPrefix(GenomeAnalysisEngine toolkit,String prefix) {
         Map<String, VCFHeader> data = new HashMap<String, VCFHeader>();
 
@@ -379,23 +399,54 @@ public class GATKVCFUtils {
      * @return IndexCreator
      */
     public static IndexCreator makeIndexCreator(final GATKVCFIndexType variantIndexType, final int variantIndexParameter, final File outputFile, final SAMSequenceDictionary sequenceDictionary) {
-        /*
-        * If using the index arguments, log a warning.
-        * If the genotype file has the GCVF extension (.g.vcf), use the default GCVF indexing.
-        * Otherwise, use the default index type and parameter.
-        */
-        GATKVCFIndexType indexType = DEFAULT_INDEX_TYPE;
-        int indexParameter = DEFAULT_INDEX_PARAMETER;
+        final Pair<GATKVCFIndexType, Integer> indexArguments = getIndexArguments(variantIndexType, variantIndexParameter, outputFile);
+        return getIndexCreator(indexArguments.getFirst(), indexArguments.getSecond(), outputFile, sequenceDictionary);
+    }
+
+    /**
+     * Index an existing variant file, choosing the kind of index the same way as makeIndexCreator
+     *
+     * @param variantIndexType variant indexing strategy
+     * @param variantIndexParameter variant indexing parameter
+     * @param variantFile the variant file to index
+     * @param codec codec decoding the locations of the records in variantFile
+     * @param sequenceDictionary collection of SAM sequence records
+     * @return the index, to be written with writeBasedOnFeatureFile(variantFile)
+     */
+    public static Index makeIndex(final GATKVCFIndexType variantIndexType, final int variantIndexParameter, final File variantFile, final FeatureCodec<VariantContext, ?> codec, final SAMSequenceDictionary sequenceDictionary) {
+        final Pair<GATKVCFIndexType, Integer> indexArguments = getIndexArguments(variantIndexType, variantIndexParameter, variantFile);
+        final GATKVCFIndexType type = indexArguments.getFirst();
+        final int parameter = indexArguments.getSecond();
+
+        if (ArgumentTypeDescriptor.isCompressed(variantFile.toString())) {
+            if (type != GATKVCFUtils.DEFAULT_INDEX_TYPE || parameter != GATKVCFUtils.DEFAULT_INDEX_PARAMETER)
+                logger.warn("Creating Tabix index for " + variantFile + ", ignoring user-specified index type and parameter");
+            return IndexFactory.createTabixIndex(variantFile, codec, TabixFormat.VCF, sequenceDictionary);
+        }
+
+        switch (type) {
+            case DYNAMIC_SEEK: return IndexFactory.createDynamicIndex(variantFile, codec, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+            case DYNAMIC_SIZE: return IndexFactory.createDynamicIndex(variantFile, codec, IndexFactory.IndexBalanceApproach.FOR_SIZE);
+            case LINEAR: return IndexFactory.createLinearIndex(variantFile, codec, parameter);
+            case INTERVAL: return IndexFactory.createIntervalIndex(variantFile, codec, parameter);
+            default: throw new IllegalArgumentException("Unknown index type: " + type);
+        }
+    }
+
+    /**
+     * Choose the index type and parameter for a variant file.
+     * If using the index arguments, log a warning.
+     * If the genotype file has the GCVF extension (.g.vcf), use the default GCVF indexing.
+     * Otherwise, use the default index type and parameter.
+     */
+    private static Pair<GATKVCFIndexType, Integer> getIndexArguments(final GATKVCFIndexType variantIndexType, final int variantIndexParameter, final File outputFile) {
         if (usingNonDefaultIndexingArguments(variantIndexType, variantIndexParameter)) {
-            indexType = variantIndexType;
-            indexParameter = variantIndexParameter;
             logger.warn(DEPRECATED_INDEX_ARGS_MSG);
+            return new Pair<>(variantIndexType, variantIndexParameter);
         } else if (outputFile.getName().endsWith("."  + GVCF_EXT) || outputFile.getName().endsWith("."  + GVCF_GZ_EXT)) {
-            indexType = DEFAULT_GVCF_INDEX_TYPE;
-            indexParameter = DEFAULT_GVCF_INDEX_PARAMETER;
+            return new Pair<>(DEFAULT_GVCF_INDEX_TYPE, DEFAULT_GVCF_INDEX_PARAMETER);
         }
-
-        return getIndexCreator(indexType, indexParameter, outputFile, sequenceDictionary);
+        return new Pair<>(DEFAULT_INDEX_TYPE, DEFAULT_INDEX_PARAMETER);
     }
 
     /**
@@ -39,6 +39,7 @@ import org.broadinstitute.gatk.utils.downsampling.DownsampleType;
 import org.broadinstitute.gatk.utils.ValidationExclusion;
 import org.broadinstitute.gatk.engine.datasources.reads.*;
 import org.broadinstitute.gatk.engine.datasources.reference.ReferenceDataSource;
+import org.broadinstitute.gatk.engine.datasources.rmd.RODFeatureCache;
 import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.gatk.utils.downsampling.DownsamplingMethod;
 import org.broadinstitute.gatk.engine.executive.MicroScheduler;
@@ -459,10 +460,30 @@ public class GenomeAnalysisEngine {
         if ( argCollection.numberOfCPUThreadsPerDataThread < 1 ) throw new UserException.BadArgumentValue("num_cpu_threads", "cannot be less than 1, but saw " + argCollection.numberOfCPUThreadsPerDataThread);
         if ( argCollection.numberOfIOThreads < 0 ) throw new UserException.BadArgumentValue("num_io_threads", "cannot be less than 0, but saw " + argCollection.numberOfIOThreads);
 
-        this.threadAllocation = new ThreadAllocation(argCollection.numberOfDataThreads,
-                argCollection.numberOfCPUThreadsPerDataThread,
-                argCollection.numberOfIOThreads,
-                argCollection.monitorThreadEfficiency);
+        if ( argCollection.totalNumberOfThreads != null ) {
+            if ( argCollection.totalNumberOfThreads < 1 ) throw new UserException.BadArgumentValue("total_threads", "cannot be less than 1, but saw " + argCollection.totalNumberOfThreads);
+            if ( argCollection.numberOfDataThreads > 1 || argCollection.numberOfCPUThreadsPerDataThread > 1 )
+                throw new UserException.BadArgumentValue("total_threads", "cannot be combined with -nt or -nct, the GATK chooses their values itself");
+
+            this.threadAllocation = ThreadAllocation.createAdaptive(argCollection.totalNumberOfThreads,
+                    walker instanceof TreeReducible && ! walker.isReduceByInterval(),
+                    walker instanceof NanoSchedulable,
+                    argCollection.numberOfIOThreads,
+                    argCollection.useMemoryMappedBAMIO,
+                    argCollection.monitorThreadEfficiency,
+                    argCollection.useWorkStealingNanoScheduler);
+            logger.info(String.format("Splitting %d threads into %d data thread(s) with %d CPU thread(s) each",
+                    argCollection.totalNumberOfThreads,
+                    threadAllocation.getNumDataThreads(),
+                    threadAllocation.getNumCPUThreadsPerDataThread()));
+        } else {
+            this.threadAllocation = new ThreadAllocation(argCollection.numberOfDataThreads,
+                    argCollection.numberOfCPUThreadsPerDataThread,
+                    argCollection.numberOfIOThreads,
+                    argCollection.useMemoryMappedBAMIO,
+                    argCollection.monitorThreadEfficiency,
+                    argCollection.useWorkStealingNanoScheduler);
+        }
     }
 
     public int getTotalNumberOfThreads() {
@@ -627,6 +648,14 @@ public class GenomeAnalysisEngine {
         // TODO: add a check for ActiveRegion walkers to prevent users from passing an entire contig/chromosome
     }
 
+    /**
+     * How large should the reads of each shard be in memory?
+     * @return the target shard size in bytes, or 0 if shards aren't sized by memory
+     */
+    private long getTargetShardBytes() {
+        return argCollection.shardSizeMegabytes != null ? argCollection.shardSizeMegabytes * 1024L * 1024L : 0;
+    }
+
     /**
      * Get the sharding strategy given a driving data source.
      *
@@ -651,9 +680,9 @@ public class GenomeAnalysisEngine {
                 if (readsDataSource.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
                     throw new UserException.MissortedBAM(SAMFileHeader.SortOrder.coordinate, "Locus walkers can only traverse coordinate-sorted data.  Please resort your input BAM file(s) or set the Sort Order tag in the header appropriately.");
                 if(intervals == null)
-                    return readsDataSource.createShardIteratorOverMappedReads(new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverMappedReads(new LocusShardBalancer(getTargetShardBytes()));
                 else
-                    return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer(getTargetShardBytes()));
             } 
             else if(walker instanceof ActiveRegionWalker) {
                 if (readsDataSource.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
@@ -673,9 +702,9 @@ public class GenomeAnalysisEngine {
                 }
 
                 if(intervals == null)
-                    return readsDataSource.createShardIteratorOverAllReads(new ReadShardBalancer());
+                    return readsDataSource.createShardIteratorOverAllReads(new ReadShardBalancer(getTargetShardBytes()));
                 else
-                    return readsDataSource.createShardIteratorOverIntervals(intervals, new ReadShardBalancer());
+                    return readsDataSource.createShardIteratorOverIntervals(intervals, new ReadShardBalancer(getTargetShardBytes()));
             }
             else
                 throw new ReviewedGATKException("Unable to determine walker type for walker " + walker.getClass().getName());
@@ -821,6 +850,8 @@ public class GenomeAnalysisEngine {
                                                     null;
 
         readsDataSource = createReadsDataSource(argCollection,genomeLocParser,referenceDataSource.getReference(), sampleRenameMap);
+        if (argCollection.bamPrefetchMegabytes != null)
+            readsDataSource.enableBlockPrefetching(argCollection.bamPrefetchMegabytes * 1024L * 1024L);
 
         for (ReadFilter filter : filters)
             filter.initialize(this);
@@ -929,6 +960,9 @@ public class GenomeAnalysisEngine {
 
         final boolean keepReadsInLIBS = walker instanceof ActiveRegionWalker;
 
+        if (argCollection.bamIndexCacheDirectory != null && !argCollection.bamIndexCacheDirectory.isDirectory())
+            throw new UserException.BadArgumentValue("bam_index_cache_dir", "BAM index cache directory " + argCollection.bamIndexCacheDirectory + " does not exist");
+
         return new SAMDataSource(
                 argCollection.referenceFile,
                 samReaderIDs,
@@ -947,7 +981,8 @@ public class GenomeAnalysisEngine {
                 removeProgramRecords,
                 keepReadsInLIBS,
                 sampleRenameMap,
-                argCollection.intervalArguments.intervalMerging);
+                argCollection.intervalArguments.intervalMerging,
+                argCollection.bamIndexCacheDirectory);
     }
 
     /**
@@ -1019,7 +1054,7 @@ public class GenomeAnalysisEngine {
      * @param refFile Handle to a reference sequence file.  Non-null.
      */
     public void setReferenceDataSource(File refFile) {
-        this.referenceDataSource = new ReferenceDataSource(refFile);
+        this.referenceDataSource = new ReferenceDataSource(refFile, argCollection == null ? 0 : argCollection.sharedReferenceStoreSize);
         genomeLocParser = new GenomeLocParser(referenceDataSource.getReference());
     }
 
@@ -1041,7 +1076,12 @@ public class GenomeAnalysisEngine {
                                                                             final Map<String, String> sampleRenameMap) {
         final RMDTrackBuilder builder = new RMDTrackBuilder(sequenceDictionary,genomeLocParser, validationExclusionType,
                                                             getArguments().disableAutoIndexCreationAndLockingWhenReadingRods,
-                                                            sampleRenameMap);
+                                                            sampleRenameMap,
+                                                            getArguments().useRODSidecars);
+
+        // a single cache of decoded features is shared by all of the data sources
+        final RODFeatureCache featureCache = getArguments().rodFeatureCacheMegabytes != null ?
+                new RODFeatureCache(getArguments().rodFeatureCacheMegabytes * 1024L * 1024L) : null;
 
         final List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
         for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
@@ -1049,7 +1089,8 @@ public class GenomeAnalysisEngine {
                                                            builder,
                                                            sequenceDictionary,
                                                            genomeLocParser,
-                                                           flashbackData()));
+                                                           flashbackData(),
+                                                           featureCache));
 
         return dataSources;
     }
@@ -80,6 +80,16 @@ public class GATKArgumentCollection {
     @Argument(fullName = "read_buffer_size", shortName = "rbs", doc="Number of reads per SAM file to buffer in memory", required = false, minValue = 0)
     public Integer readBufferSize = null;
 
+    /**
+     * Size shards by the memory taken up by their reads rather than by a fixed number of reads or by BAM index
+     * bins.  Read shards hold as many reads as fit in this budget, based on the size of the reads seen so far,
+     * and never more than --read_buffer_size.  Locus shards combine neighboring regions until their estimated
+     * size, taken from the BAM index, reaches this budget.  Evens out the work per shard when running with -nt.
+     */
+    @Advanced
+    @Argument(fullName = "shard_size_mb", shortName = "shardmb", doc="Target size of each shard's reads in memory, in megabytes", required = false, minValue = 1)
+    public Integer shardSizeMegabytes = null;
+
     // --------------------------------------------------------------------------------------------------------------
     //
     // General features
@@ -113,6 +123,16 @@ public class GATKArgumentCollection {
      */
     @Input(fullName = "reference_sequence", shortName = "R", doc = "Reference sequence file", required = false)
     public File referenceFile = null;
+    /**
+     * By default every thread keeps its own cache of about 1 Mb of the reference, so threads and shards jumping around
+     * the genome keep going back to the FASTA.  With this option the reference is instead read one whole contig at a
+     * time into memory shared by all threads, keeping up to this many bases (about one byte each).  Contigs are never
+     * dropped from the store: once it is full, contigs that don't fit in the remaining space go through the per-thread
+     * caches as usual, so set this to the size of the contigs you traverse.  0, the default, disables the shared store.
+     */
+    @Argument(fullName = "shared_reference_store_size", shortName = "sharedRefSize", doc = "Number of reference bases to keep in memory shared by all threads (0 to disable)", required = false, minValue = 0)
+    @Advanced
+    public long sharedReferenceStoreSize = 0;
     /**
      * If this flag is enabled, the random numbers generated will be different in every run, causing GATK to behave non-deterministically.
      */
@@ -217,6 +237,13 @@ public class GATKArgumentCollection {
     @Advanced
     @Argument(fullName = "baqGapOpenPenalty", shortName="baqGOP", doc="BAQ gap open penalty", required = false, minValue = 0)
     public double BAQGOP = BAQ.DEFAULT_GOP;
+    /**
+     *  Number of BAQ results to keep for reads that are BAQ'd more than once in the same traversal, for example with
+     *  -baq RECALCULATE or when the BAQ'd qualities are not written back into the reads. 0 disables the cache.
+     */
+    @Advanced
+    @Argument(fullName = "baqCacheSize", shortName="baqCacheSize", doc="Number of BAQ results to cache for reads BAQ'd more than once", required = false, minValue = 0)
+    public int BAQCacheSize = 0;
 
     // --------------------------------------------------------------------------------------------------------------
     //
@@ -357,6 +384,15 @@ public class GATKArgumentCollection {
     @Argument(fullName = "globalQScorePrior", shortName = "globalQScorePrior", doc = "Global Qscore Bayesian prior to use for BQSR", required = false)
     public double globalQScorePrior = -1.0;
 
+    /**
+     * Computes the recalibrated quality of every combination of covariates present in the recalibration report up
+     * front, so that recalibrating a base is a single table lookup.  If the precomputed qualities would need more
+     * memory than this many megabytes, qualities are computed base by base as usual.  0 disables precomputation.
+     */
+    @Advanced
+    @Argument(fullName = "bqsr_lookup_mb", shortName = "bqsrLookupMB", doc = "Precompute recalibrated qualities in at most this many megabytes of memory (with -BQSR)", required = false, minValue = 0)
+    public int bqsrLookupMegabytes = 0;
+
     @Advanced
     @Argument(fullName="secondsBetweenProgressUpdates", shortName = "secondsBetweenProgressUpdates", doc = "Time interval for process meter information output (in seconds)", required=false)
     public long secondsBetweenProgressUpdates = DEFAULT_SECONDS_BETWEEN_PROGRESS_UPDATES;
@@ -415,6 +451,28 @@ public class GATKArgumentCollection {
               required = false)
     public boolean disableAutoIndexCreationAndLockingWhenReadingRods = false;
 
+    /**
+     * Read uncompressed VCF files through compact binary (BCF2) copies of them, which are written next to each VCF,
+     * as input.vcf.gatk.bcf, the first time it's used.  Later runs skip parsing the text and decode the genotypes of
+     * records lazily.  A sidecar is rebuilt whenever the checksum of its VCF changes, and creating one uses the same
+     * file locking as index auto-creation.  VCFs that can't be represented in BCF2 (e.g. using fields missing from
+     * their header) are still read as text.  Values decoded from BCF2 are typed, so tools copying INFO fields
+     * from these files may format them differently.
+     */
+    @Advanced
+    @Argument(fullName = "use_rod_sidecars", shortName = "rodSidecar", doc = "Read uncompressed VCFs from binary sidecar files, creating them as needed", required = false)
+    public boolean useRODSidecars = false;
+
+    /**
+     * Keep features decoded from indexed reference-ordered data (e.g. a dbSNP VCF) in memory, holding up to roughly
+     * this many megabytes of them, so that shards and data threads querying the same part of the genome share
+     * them instead of each decoding the records again.  Intended for large site-level resources; caching files
+     * with many samples requires decoding all of their genotypes.
+     */
+    @Advanced
+    @Argument(fullName = "rod_feature_cache_mb", shortName = "rodCacheMB", doc = "Megabytes of decoded reference-ordered data features to share between shards and threads", required = false, minValue = 1)
+    public Integer rodFeatureCacheMegabytes = null;
+
     /**
      * This option is intended to be used FOR DEBUGGING PURPOSES ONLY. Note to developers: it is required in order to pass integration tests.
      */
@@ -493,6 +551,34 @@ public class GATKArgumentCollection {
     @Argument(fullName="num_cpu_threads_per_data_thread", shortName = "nct", doc="Number of CPU threads to allocate per data thread", required = false, minValue = 1)
     public int numberOfCPUThreadsPerDataThread = 1;
 
+    /**
+     * Instead of choosing -nt and -nct yourself, give the GATK a total number of threads and let it decide how
+     * to split them between data threads and CPU threads, based on the kinds of parallelism the tool supports.
+     * Cannot be combined with -nt or -nct.
+     */
+    @Argument(fullName="total_threads", shortName = "ntt", doc="Total number of threads to split between data and CPU threads", required = false, minValue = 1)
+    public Integer totalNumberOfThreads = null;
+
+    /**
+     * By default the CPU threads of each data thread share a single input producer and reduce their map results
+     * one at a time, in order.  With this option the CPU threads instead take chunks of input from a fork/join
+     * pool that lets idle threads steal work from busy ones, which scales better with many CPU threads.
+     */
+    @Argument(fullName="nct_work_stealing", shortName = "nctws", doc="Use the work-stealing scheduler for the CPU threads of each data thread", required = false)
+    @Advanced
+    public boolean useWorkStealingNanoScheduler = false;
+
+    /**
+     * By default, active region walkers process all of the active regions of an interval before moving on to the
+     * next one, so with -nct the CPU threads sit idle at the end of every interval and shard.  With this option each
+     * active region is handed to the CPU threads as soon as it is finalized, and keeps being processed while the
+     * GATK discovers the active regions of the following intervals.  Results are still reduced in order.  Has no
+     * effect without -nct, or for walkers that reduce by interval.
+     */
+    @Argument(fullName="pipeline_active_regions", shortName = "pipelineAR", doc="Process active regions of successive intervals concurrently with -nct", required = false)
+    @Advanced
+    public boolean pipelineActiveRegions = false;
+
     @Argument(fullName="num_io_threads", shortName = "nit", doc="Number of given threads to allocate to BAM IO", required = false, minValue = 0)
     @Hidden
     public int numberOfIOThreads = 0;
@@ -505,6 +591,32 @@ public class GATKArgumentCollection {
     @Argument(fullName = "monitorThreadEfficiency", shortName = "mte", doc = "Enable threading efficiency monitoring", required = false)
     public Boolean monitorThreadEfficiency = false;
 
+    /**
+     * When using IO threads, load BAM blocks out of memory mapped files instead of reading them through a
+     * cache of open file handles.  Works best with BAMs on local disks.
+     */
+    @Argument(fullName = "memory_mapped_bam_io", shortName = "mmio", doc="When using IO threads, load BAM blocks out of memory mapped files", required=false)
+    @Hidden
+    public boolean useMemoryMappedBAMIO = false;
+
+    /**
+     * When using IO threads, read the BAM blocks needed by upcoming shards ahead of time, holding up to
+     * this many megabytes of compressed data in memory.  Helps most with BAMs on high latency storage.
+     */
+    @Argument(fullName = "bam_prefetch_mb", shortName = "bpmb", doc="When using IO threads, megabytes of BAM data to read ahead of the traversal", required=false, minValue = 1)
+    @Hidden
+    public Integer bamPrefetchMegabytes = null;
+
+    /**
+     * Keep compact copies of the BAM indices in this directory.  The first run over a BAM parses its index once
+     * and writes the copy; later runs memory map the copy rather than parsing the index again.  Copies are
+     * rebuilt automatically when a BAM is re-indexed.  Most useful for jobs over many BAMs, where index loading
+     * can dominate startup time and memory.
+     */
+    @Argument(fullName = "bam_index_cache_dir", shortName = "baicache", doc="Directory in which to keep compact copies of BAM indices between runs", required=false)
+    @Advanced
+    public File bamIndexCacheDirectory = null;
+
     @Argument(fullName = "num_bam_file_handles", shortName = "bfh", doc="When using IO threads, total number of BAM file handles to keep open simultaneously", required=false, minValue = 1)
     @Hidden
     public Integer numberOfBAMFileHandles = null;
@@ -25,7 +25,6 @@
 
 package org.broadinstitute.gatk.engine.datasources.providers;
 
-import htsjdk.samtools.reference.ReferenceSequence;
 import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.engine.walkers.Reference;
@@ -33,6 +32,9 @@ import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.engine.walkers.Window;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.fasta.SharedIndexedFastaSequenceFile;
+
+import java.nio.ByteBuffer;
 /*
  * Copyright (c) 2009 The Broad Institute
  *
@@ -81,10 +83,16 @@ public class LocusReferenceView extends ReferenceView {
     private final int windowStop;
 
     /**
-     * Track the reference sequence and the last point accessed.  Used to
-     * track state when traversing over the reference.
+     * Track the reference bases and the last point accessed.  Used to
+     * track state when traversing over the reference.  When the reference
+     * is a SharedIndexedFastaSequenceFile these are a view of its bases.
+     */
+    private ByteBuffer referenceBases;
+
+    /**
+     * The contig of referenceBases, when not bounded by the shard.
      */
-    private ReferenceSequence referenceSequence;
+    private int referenceContigIndex = -1;
 
     /**
      * Create a LocusReferenceView given no other contextual information about
@@ -160,7 +168,10 @@ public class LocusReferenceView extends ReferenceView {
      * @param locus
      */
     private void initializeReferenceSequence( GenomeLoc locus ) {
-        this.referenceSequence = reference.getSubsequenceAt( locus.getContig(), locus.getStart(), locus.getStop() );
+        if ( reference instanceof SharedIndexedFastaSequenceFile )
+            this.referenceBases = ((SharedIndexedFastaSequenceFile)reference).getSubsequenceSlice( locus.getContig(), locus.getStart(), locus.getStop() );
+        else
+            this.referenceBases = ByteBuffer.wrap( reference.getSubsequenceAt( locus.getContig(), locus.getStart(), locus.getStop() ).getBases() );
     }
 
     protected GenomeLoc trimToBounds(GenomeLoc l) {
@@ -182,7 +193,9 @@ public class LocusReferenceView extends ReferenceView {
         public byte[] getBases() {
             //System.out.printf("Getting bases for location%n");
             byte[] bases = new byte[len];
-            System.arraycopy(referenceSequence.getBases(), refStart, bases, 0, len);
+            final ByteBuffer source = referenceBases.duplicate();
+            source.position(refStart);
+            source.get(bases);
             return bases;
         }
     }
@@ -204,8 +217,14 @@ public class LocusReferenceView extends ReferenceView {
             refStart = (int)(window.getStart() - getWindowStart(bounds));
         }
         else {
-            if(referenceSequence == null || referenceSequence.getContigIndex() != genomeLoc.getContigIndex())
-                referenceSequence = reference.getSequence(genomeLoc.getContig());
+            if(referenceBases == null || referenceContigIndex != genomeLoc.getContigIndex()) {
+                if ( reference instanceof SharedIndexedFastaSequenceFile )
+                    referenceBases = ((SharedIndexedFastaSequenceFile)reference).getSubsequenceSlice(genomeLoc.getContig(), 1,
+                            reference.getSequenceDictionary().getSequence(genomeLoc.getContig()).getSequenceLength());
+                else
+                    referenceBases = ByteBuffer.wrap(reference.getSequence(genomeLoc.getContig()).getBases());
+                referenceContigIndex = genomeLoc.getContigIndex();
+            }
             refStart = (int)window.getStart()-1;
         }
 
@@ -0,0 +1,99 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.GATKBAMFileSpan;
+import htsjdk.samtools.GATKChunk;
+import htsjdk.samtools.SAMFileSpan;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Passes FilePointers through unchanged, while asking the dispatcher to prefetch the file spans of
+ * the next few FilePointers in the schedule.
+ *
+ * The amount of data actually read ahead is bounded by the byte budget of the dispatcher's
+ * BlockPrefetchCache, shared by all readers; the lookahead just limits how far down the
+ * schedule the prefetcher is allowed to go.
+ */
+public class BAMPrefetcher implements Iterator<FilePointer> {
+    /**
+     * How many FilePointers to queue for prefetching beyond the one currently being processed.
+     */
+    public static final int DEFAULT_LOOKAHEAD = 4;
+
+    private final Iterator<FilePointer> wrappedIterator;
+    private final BGZFBlockLoadingDispatcher dispatcher;
+    private final int lookahead;
+
+    /**
+     * FilePointers already queued for prefetching, but not yet returned by next().
+     */
+    private final LinkedList<FilePointer> readAhead = new LinkedList<FilePointer>();
+
+    public BAMPrefetcher(final Iterator<FilePointer> wrappedIterator, final BGZFBlockLoadingDispatcher dispatcher, final int lookahead) {
+        if(lookahead < 0) throw new IllegalArgumentException("lookahead must be >= 0, got " + lookahead);
+        this.wrappedIterator = wrappedIterator;
+        this.dispatcher = dispatcher;
+        this.lookahead = lookahead;
+    }
+
+    public boolean hasNext() {
+        fillReadAhead();
+        return !readAhead.isEmpty();
+    }
+
+    public FilePointer next() {
+        fillReadAhead();
+        final FilePointer next = readAhead.removeFirst();
+        fillReadAhead();
+        return next;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Unable to remove from a BAM prefetcher");
+    }
+
+    private void fillReadAhead() {
+        while(readAhead.size() <= lookahead && wrappedIterator.hasNext()) {
+            final FilePointer filePointer = wrappedIterator.next();
+            readAhead.add(filePointer);
+            queuePrefetch(filePointer);
+        }
+    }
+
+    private void queuePrefetch(final FilePointer filePointer) {
+        for(final Map.Entry<SAMReaderID,SAMFileSpan> fileSpan: filePointer.getFileSpans().entrySet()) {
+            if(!(fileSpan.getValue() instanceof GATKBAMFileSpan))
+                continue;
+            for(final GATKChunk chunk: ((GATKBAMFileSpan)fileSpan.getValue()).getGATKChunks())
+                dispatcher.queuePrefetch(fileSpan.getKey(),chunk);
+        }
+    }
+}
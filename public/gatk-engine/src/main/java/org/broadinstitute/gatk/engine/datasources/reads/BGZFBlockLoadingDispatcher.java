@@ -25,7 +25,10 @@
 
 package org.broadinstitute.gatk.engine.datasources.reads;
 
+import htsjdk.samtools.GATKChunk;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -39,7 +42,7 @@ import java.util.concurrent.Executors;
  */
 public class BGZFBlockLoadingDispatcher {
     /**
-     * The file handle cache, used when allocating blocks from the dispatcher.
+     * The file handle cache, used when allocating blocks from the dispatcher.  Null when memory mapping.
      */
     private final FileHandleCache fileHandleCache;
 
@@ -47,12 +50,78 @@ public class BGZFBlockLoadingDispatcher {
 
     private final Queue<BAMAccessPlan> inputQueue;
 
+    /**
+     * Compressed data read ahead of the block loaders.  Null unless prefetching is enabled.
+     */
+    private BlockPrefetchCache prefetchCache = null;
+
+    /**
+     * Runs the BlockPrefetchLoaders, in the order in which the schedule will need their data.
+     */
+    private ExecutorService prefetchThread = null;
+
     public BGZFBlockLoadingDispatcher(final int numThreads, final int numFileHandles) {
+        this(numThreads, numFileHandles, false);
+    }
+
+    /**
+     * Create a new dispatcher, loading blocks either through file handles or out of memory mapped files.
+     * Memory mapped loaders don't compete for file handles, so one loader is started per thread.
+     * @param numThreads Number of threads to devote to loading blocks.
+     * @param numFileHandles Number of file handles to keep open when not memory mapping.
+     * @param memoryMapped If true, load blocks with MappedBlockLoaders rather than a BlockLoader.
+     */
+    public BGZFBlockLoadingDispatcher(final int numThreads, final int numFileHandles, final boolean memoryMapped) {
         threadPool = Executors.newFixedThreadPool(numThreads);
-        fileHandleCache = new FileHandleCache(numFileHandles);
         inputQueue = new LinkedList<BAMAccessPlan>();
 
-        threadPool.execute(new BlockLoader(this,fileHandleCache,true));
+        if(memoryMapped) {
+            fileHandleCache = null;
+            final MappedFileCache mappedFileCache = new MappedFileCache();
+            for(int i = 0; i < numThreads; i++)
+                threadPool.execute(new MappedBlockLoader(this,mappedFileCache,true));
+        }
+        else {
+            fileHandleCache = new FileHandleCache(numFileHandles);
+            threadPool.execute(new BlockLoader(this,fileHandleCache,true));
+        }
+    }
+
+    /**
+     * Start prefetching the file spans queued through queuePrefetch, holding at most byteBudget bytes of
+     * prefetched data across all readers.
+     * @param byteBudget Maximum number of bytes of prefetched data to keep in memory.
+     */
+    public synchronized void enablePrefetching(final long byteBudget) {
+        if(prefetchCache != null)
+            throw new ReviewedGATKException("Prefetching is already enabled");
+        prefetchCache = new BlockPrefetchCache(byteBudget);
+        prefetchThread = Executors.newSingleThreadExecutor(new NamedThreadFactory("BAM-prefetch-thread-%d"));
+    }
+
+    /**
+     * @return true if queuePrefetch requests are honored.
+     */
+    public synchronized boolean isPrefetching() {
+        return prefetchCache != null;
+    }
+
+    /**
+     * @return the cache of prefetched data, or null if prefetching isn't enabled.
+     */
+    synchronized BlockPrefetchCache getPrefetchCache() {
+        return prefetchCache;
+    }
+
+    /**
+     * Requests that the blocks of the given chunk be read ahead of time.
+     * @param reader The file containing the chunk.
+     * @param chunk The chunk to read.
+     */
+    synchronized void queuePrefetch(final SAMReaderID reader, final GATKChunk chunk) {
+        if(prefetchCache == null)
+            throw new ReviewedGATKException("Prefetching is not enabled");
+        prefetchThread.execute(new BlockPrefetchLoader(prefetchCache,reader,chunk));
     }
 
     /**
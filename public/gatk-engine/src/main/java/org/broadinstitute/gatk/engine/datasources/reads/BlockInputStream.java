@@ -410,6 +410,10 @@ public class BlockInputStream extends InputStream {
     }
 
     public void close() {
+        final BlockPrefetchCache prefetchCache = dispatcher.getPrefetchCache();
+        if(prefetchCache != null)
+            prefetchCache.releaseStream(reader,this);
+
         if(validatingInputStream != null) {
             try {
                 validatingInputStream.close();
@@ -74,14 +74,25 @@ class BlockLoader implements Runnable {
             BAMAccessPlan accessPlan = null;
             try {
                 accessPlan = dispatcher.claimNextWorkRequest();
-                FileInputStream inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
 
-                //long blockAddress = readerPosition.getBlockAddress();
-                //System.out.printf("Thread %s: BlockLoader: copying bytes from %s at position %d into %s%n",Thread.currentThread().getId(),inputStream,blockAddress,readerPosition.getInputStream());
+                // Use the prefetched copy of the block if there is one.
+                final BlockPrefetchCache prefetchCache = dispatcher.getPrefetchCache();
+                ByteBuffer compressedBlock = prefetchCache != null ? prefetchCache.getBlock(accessPlan.getReader(),accessPlan.getInputStream(),accessPlan.getBlockAddress()) : null;
+                long nextBlockAddress;
 
-                ByteBuffer compressedBlock = readBGZFBlock(inputStream,accessPlan.getBlockAddress());
-                long nextBlockAddress = position(inputStream);
-                fileHandleCache.releaseFileInputStream(accessPlan.getReader(),inputStream);
+                if(compressedBlock != null) {
+                    nextBlockAddress = accessPlan.getBlockAddress() + compressedBlock.remaining();
+                }
+                else {
+                    FileInputStream inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
+
+                    //long blockAddress = readerPosition.getBlockAddress();
+                    //System.out.printf("Thread %s: BlockLoader: copying bytes from %s at position %d into %s%n",Thread.currentThread().getId(),inputStream,blockAddress,readerPosition.getInputStream());
+
+                    compressedBlock = readBGZFBlock(inputStream,accessPlan.getBlockAddress());
+                    nextBlockAddress = position(inputStream);
+                    fileHandleCache.releaseFileInputStream(accessPlan.getReader(),inputStream);
+                }
 
                 ByteBuffer block = decompress ? decompressBGZFBlock(compressedBlock) : compressedBlock;
                 int bytesCopied = block.remaining();
@@ -89,6 +100,10 @@ class BlockLoader implements Runnable {
                 BlockInputStream bamInputStream = accessPlan.getInputStream();
                 bamInputStream.copyIntoBuffer(block,accessPlan,nextBlockAddress);
 
+                // The stream has read all of its shard; don't let its position hold prefetched regions.
+                if(prefetchCache != null && bamInputStream.eof())
+                    prefetchCache.releaseStream(accessPlan.getReader(),bamInputStream);
+
                 //System.out.printf("Thread %s: BlockLoader: copied %d bytes from %s at position %d into %s%n",Thread.currentThread().getId(),bytesCopied,inputStream,blockAddress,readerPosition.getInputStream());
             }
             catch(Throwable error) {
@@ -0,0 +1,213 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds compressed regions of BAM files read ahead of time by the BlockPrefetchLoader, until the
+ * BlockLoader picks blocks out of them.
+ *
+ * Regions of all readers share a single byte budget.  The position of each stream reading a file is tracked
+ * separately, and a region is released once every stream that has read from that file has asked for a block
+ * past it.  Streams that are done reading, at the end of their shard or when closed, must call releaseStream()
+ * so that they no longer hold back the release of regions.  When adding a region would exceed the budget, the prefetcher waits for regions to be released.
+ * If none are released within MAX_WAIT_MILLIS, the region is not prefetched, rather than evicting regions
+ * that a slower stream has yet to read; the BlockLoader then reads those blocks from disk.
+ */
+class BlockPrefetchCache {
+    /**
+     * How long the prefetcher waits for a region to be released before giving up on a new region.
+     */
+    private static final long MAX_WAIT_MILLIS = 1000;
+
+    /**
+     * Maximum number of bytes held by all regions.
+     */
+    private final long byteBudget;
+
+    /**
+     * Number of bytes currently held.
+     */
+    private long bytesCached = 0;
+
+    /**
+     * Regions in each file, by starting address.
+     */
+    private final Map<SAMReaderID,TreeMap<Long,byte[]>> regionsByReader = new HashMap<SAMReaderID,TreeMap<Long,byte[]>>();
+
+    /**
+     * Address of the block most recently requested by each stream reading each file.
+     */
+    private final Map<SAMReaderID,Map<Object,Long>> streamPositionsByReader = new HashMap<SAMReaderID,Map<Object,Long>>();
+
+    public BlockPrefetchCache(final long byteBudget) {
+        if(byteBudget < 1) throw new IllegalArgumentException("byteBudget must be >= 1, got " + byteBudget);
+        this.byteBudget = byteBudget;
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Is a region starting at the given address already cached?
+     * @param reader The file.
+     * @param regionStart Address of the first byte of the region.
+     * @return True if a region starting here is present.
+     */
+    public synchronized boolean containsRegion(final SAMReaderID reader, final long regionStart) {
+        return regionsByReader.containsKey(reader) && regionsByReader.get(reader).containsKey(regionStart);
+    }
+
+    /**
+     * Wait until the budget has room for a region of the given size.  Cached regions are never evicted to
+     * make room, as they haven't been read yet.
+     * @param size Size of the region in bytes.
+     * @return True if there is room for the region, false if no room was freed within MAX_WAIT_MILLIS.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    public synchronized boolean reserve(final int size) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        while(bytesCached + size > byteBudget && bytesCached > 0) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a region of the file starting at the given address.
+     * @param reader The file.
+     * @param regionStart Address of the first byte of the region.
+     * @param contents Contents of the file starting at regionStart.
+     */
+    public synchronized void addRegion(final SAMReaderID reader, final long regionStart, final byte[] contents) {
+        TreeMap<Long,byte[]> regions = regionsByReader.get(reader);
+        if(regions == null) {
+            regions = new TreeMap<Long,byte[]>();
+            regionsByReader.put(reader,regions);
+        }
+        if(regions.containsKey(regionStart))
+            return;
+
+        regions.put(regionStart,contents);
+        bytesCached += contents.length;
+    }
+
+    /**
+     * Gets the BGZF block at the given address, if it lies entirely within a cached region.  Regions of this
+     * file that every stream reading it has moved past are released.
+     * @param reader The file.
+     * @param stream The stream on whose behalf the block is read, e.g. its BlockInputStream.
+     * @param blockAddress Address of the first byte of the block.
+     * @return A little-endian buffer holding exactly the compressed block, or null if the block isn't cached.
+     *         Empty blocks are never returned, so that the caller can handle them against the file.
+     */
+    public synchronized ByteBuffer getBlock(final SAMReaderID reader, final Object stream, final long blockAddress) {
+        Map<Object,Long> streamPositions = streamPositionsByReader.get(reader);
+        if(streamPositions == null) {
+            streamPositions = new HashMap<Object,Long>();
+            streamPositionsByReader.put(reader,streamPositions);
+        }
+        streamPositions.put(stream,blockAddress);
+
+        final TreeMap<Long,byte[]> regions = regionsByReader.get(reader);
+        if(regions == null)
+            return null;
+
+        // Everything before the region holding the earliest position of any stream has been read past.
+        final Long earliestRegion = regions.floorKey(Collections.min(streamPositions.values()));
+        if(earliestRegion != null)
+            releaseRegionsBefore(regions,earliestRegion);
+
+        final Map.Entry<Long,byte[]> region = regions.floorEntry(blockAddress);
+        if(region == null)
+            return null;
+
+        final byte[] contents = region.getValue();
+        final int offset = (int)(blockAddress - region.getKey());
+        if((long)offset + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH > contents.length)
+            return null;
+
+        final ByteBuffer view = ByteBuffer.wrap(contents);
+        view.order(ByteOrder.LITTLE_ENDIAN);
+        final int blockSize = (view.getShort(offset+BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) & 0xFFFF)+1;
+        if(offset + blockSize > contents.length || view.getInt(offset+blockSize-4) == 0)
+            return null;
+
+        view.position(offset);
+        view.limit(offset+blockSize);
+        final ByteBuffer block = view.slice();
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        return block;
+    }
+
+    /**
+     * Stops tracking the position of a stream that is done reading, so that regions it hasn't reached can be
+     * released once the remaining streams move past them.  The stream is tracked again if it asks for more blocks.
+     * @param reader The file.
+     * @param stream The stream, as passed to getBlock().
+     */
+    public synchronized void releaseStream(final SAMReaderID reader, final Object stream) {
+        final Map<Object,Long> streamPositions = streamPositionsByReader.get(reader);
+        if(streamPositions == null || streamPositions.remove(stream) == null)
+            return;
+        if(streamPositions.isEmpty()) {
+            streamPositionsByReader.remove(reader);
+            return;
+        }
+
+        final TreeMap<Long,byte[]> regions = regionsByReader.get(reader);
+        if(regions == null)
+            return;
+        final Long earliestRegion = regions.floorKey(Collections.min(streamPositions.values()));
+        if(earliestRegion != null)
+            releaseRegionsBefore(regions,earliestRegion);
+    }
+
+    private void releaseRegionsBefore(final TreeMap<Long,byte[]> regions, final long regionStart) {
+        final Iterator<Map.Entry<Long,byte[]>> it = regions.headMap(regionStart).entrySet().iterator();
+        if(!it.hasNext())
+            return;
+        while(it.hasNext()) {
+            bytesCached -= it.next().getValue().length;
+            it.remove();
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.GATKChunk;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the compressed blocks of a chunk of a BAM file into the BlockPrefetchCache.
+ *
+ * The chunk is read in regions of REGION_SIZE bytes.  Each region also includes the first
+ * MAX_BLOCK_SIZE bytes of the next region, so that every block starting in a region is entirely
+ * contained in that region.  Failures are not fatal: anything not prefetched is simply read from
+ * disk by the BlockLoader when needed.
+ */
+class BlockPrefetchLoader implements Runnable {
+    private static final Logger logger = Logger.getLogger(BlockPrefetchLoader.class);
+
+    /**
+     * Number of block addresses covered by each prefetched region.
+     */
+    static final int REGION_SIZE = 1024*1024;
+
+    /**
+     * The maximum size of a single compressed BGZF block.
+     */
+    private static final int MAX_BLOCK_SIZE = 64*1024;
+
+    private final BlockPrefetchCache cache;
+    private final SAMReaderID reader;
+    private final GATKChunk chunk;
+
+    public BlockPrefetchLoader(final BlockPrefetchCache cache, final SAMReaderID reader, final GATKChunk chunk) {
+        this.cache = cache;
+        this.reader = reader;
+        this.chunk = chunk;
+    }
+
+    public void run() {
+        try {
+            final RandomAccessFile file = new RandomAccessFile(reader.getSamFilePath(),"r");
+            try {
+                final long fileSize = file.length();
+                // Regions are aligned to REGION_SIZE, so that overlapping chunks share regions.
+                final long firstRegion = chunk.getBlockStart() / REGION_SIZE * REGION_SIZE;
+                final long lastBlock = Math.min(chunk.getBlockEnd(),fileSize);
+
+                for(long regionStart = firstRegion; regionStart <= lastBlock && regionStart < fileSize; regionStart += REGION_SIZE) {
+                    if(cache.containsRegion(reader,regionStart))
+                        continue;
+
+                    final int regionLength = (int)Math.min(REGION_SIZE + MAX_BLOCK_SIZE,fileSize - regionStart);
+                    // The budget is held by regions that haven't been read yet; leave the rest of the chunk to the BlockLoader.
+                    if(!cache.reserve(regionLength))
+                        break;
+
+                    final byte[] contents = new byte[regionLength];
+                    file.seek(regionStart);
+                    file.readFully(contents);
+                    cache.addRegion(reader,regionStart,contents);
+                }
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException ex) {
+            logger.debug("Unable to prefetch " + chunk + " from " + reader.getSamFilePath(),ex);
+        }
+    }
+}
@@ -26,31 +26,119 @@
 package org.broadinstitute.gatk.engine.datasources.reads;
 
 import htsjdk.samtools.*;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Stores and processes a single reference worth of GATK data.
+ *
+ * Bins and chunks are kept in flat primitive arrays rather than as GATKBin / GATKChunk objects:
+ * binNumbers holds the bins present in the index in ascending order, the chunks of the bin at
+ * position i are the (start,end) pairs binChunkStarts[i] through binChunkStarts[i+1]-1 of chunkOffsets.
  */
 public class GATKBAMIndexData {
     private final GATKBAMIndex index;
     private final int referenceSequence;
-    private final List<GATKBin> bins;
+    private final int[] binNumbers;
+    private final int[] binChunkStarts;
+    private final long[] chunkOffsets;
+    private final long[] linearIndexEntries;
     private final LinearIndex linearIndex;
 
-    public GATKBAMIndexData(final GATKBAMIndex index, final int referenceSequence, final List<GATKBin> bins, final LinearIndex linearIndex) {
+    /**
+     * Create the index data from a list of bins, indexed by bin number.
+     * @param index The index from which this data was read.
+     * @param referenceSequence The contig described by this data.
+     * @param bins Bins indexed by bin number.  Missing bins are null.
+     * @param linearIndexEntries Entries of the linear index, starting with the first 16kb window.
+     */
+    public GATKBAMIndexData(final GATKBAMIndex index, final int referenceSequence, final List<GATKBin> bins, final long[] linearIndexEntries) {
+        this.index = index;
+        this.referenceSequence = referenceSequence;
+
+        int binCount = 0, chunkCount = 0;
+        for(final GATKBin bin: bins) {
+            if(bin != null) {
+                binCount++;
+                chunkCount += bin.getChunkList().length;
+            }
+        }
+
+        binNumbers = new int[binCount];
+        binChunkStarts = new int[binCount+1];
+        chunkOffsets = new long[chunkCount*2];
+
+        int binIndex = 0, chunkIndex = 0;
+        for(final GATKBin bin: bins) {
+            if(bin == null)
+                continue;
+            binNumbers[binIndex] = bin.getBinNumber();
+            binChunkStarts[binIndex] = chunkIndex;
+            for(final GATKChunk chunk: bin.getChunkList()) {
+                chunkOffsets[chunkIndex*2] = chunk.getChunkStart();
+                chunkOffsets[chunkIndex*2+1] = chunk.getChunkEnd();
+                chunkIndex++;
+            }
+            binIndex++;
+        }
+        binChunkStarts[binCount] = chunkIndex;
+
+        this.linearIndexEntries = linearIndexEntries;
+        this.linearIndex = new LinearIndex(referenceSequence,0,linearIndexEntries);
+    }
+
+    /**
+     * Create the index data directly from its flat representation.
+     * @param index The index from which this data was read.
+     * @param referenceSequence The contig described by this data.
+     * @param binNumbers Numbers of the bins present in the index, in ascending order.
+     * @param binChunkStarts For each bin, the index of its first chunk; one extra trailing entry holds the total number of chunks.
+     * @param chunkOffsets Start and end virtual file offsets of each chunk, interleaved.
+     * @param linearIndexEntries Entries of the linear index, starting with the first 16kb window.
+     */
+    public GATKBAMIndexData(final GATKBAMIndex index,
+                            final int referenceSequence,
+                            final int[] binNumbers,
+                            final int[] binChunkStarts,
+                            final long[] chunkOffsets,
+                            final long[] linearIndexEntries) {
+        if(binChunkStarts.length != binNumbers.length+1)
+            throw new ReviewedGATKException("Bin chunk starts must have exactly one more entry than the bin numbers");
+        if(chunkOffsets.length != binChunkStarts[binNumbers.length]*2)
+            throw new ReviewedGATKException("Number of chunk offsets doesn't match the bin chunk starts");
         this.index = index;
         this.referenceSequence = referenceSequence;
-        this.bins = bins;
-        this.linearIndex = linearIndex;
+        this.binNumbers = binNumbers;
+        this.binChunkStarts = binChunkStarts;
+        this.chunkOffsets = chunkOffsets;
+        this.linearIndexEntries = linearIndexEntries;
+        this.linearIndex = new LinearIndex(referenceSequence,0,linearIndexEntries);
     }
 
     public int getReferenceSequence() {
         return referenceSequence;
     }
 
+    int[] getBinNumbers() {
+        return binNumbers;
+    }
+
+    int[] getBinChunkStarts() {
+        return binChunkStarts;
+    }
+
+    long[] getChunkOffsets() {
+        return chunkOffsets;
+    }
+
+    long[] getLinearIndexEntries() {
+        return linearIndexEntries;
+    }
+
     /**
      * Perform an overlapping query of all bins bounding the given location.
      * @param bin The bin over which to perform an overlapping query.
@@ -60,29 +148,19 @@ public class GATKBAMIndexData {
         if(bin == null)
             return null;
 
-        GATKBin gatkBin = new GATKBin(bin);
-
         final int binLevel = index.getLevelForBin(bin);
         final int firstLocusInBin = index.getFirstLocusInBin(bin);
 
-        // Add the specified bin to the tree if it exists.
-        List<GATKBin> binTree = new ArrayList<GATKBin>();
-        if(gatkBin.getBinNumber() < bins.size() && bins.get(gatkBin.getBinNumber()) != null)
-            binTree.add(bins.get(gatkBin.getBinNumber()));
+        // Add the chunks of the specified bin, and of every bin containing it, if they exist.
+        List<GATKChunk> chunkList = new ArrayList<GATKChunk>();
+        addChunks(new GATKBin(bin).getBinNumber(),chunkList);
 
         int currentBinLevel = binLevel;
         while(--currentBinLevel >= 0) {
             final int binStart = index.getFirstBinInLevel(currentBinLevel);
             final int binWidth = index.getMaxAddressibleGenomicLocation()/index.getLevelSize(currentBinLevel);
             final int binNumber = firstLocusInBin/binWidth + binStart;
-            if(binNumber < bins.size() && bins.get(binNumber) != null)
-                binTree.add(bins.get(binNumber));
-        }
-
-        List<GATKChunk> chunkList = new ArrayList<GATKChunk>();
-        for(GATKBin coveringBin: binTree) {
-            for(GATKChunk chunk: coveringBin.getChunkList())
-                chunkList.add(chunk.clone());
+            addChunks(binNumber,chunkList);
         }
 
         final int start = index.getFirstLocusInBin(bin);
@@ -90,6 +168,14 @@ public class GATKBAMIndexData {
         return new GATKBAMFileSpan(chunkList.toArray(new GATKChunk[chunkList.size()]));
     }
 
+    private void addChunks(final int binNumber, final List<GATKChunk> chunkList) {
+        final int binIndex = Arrays.binarySearch(binNumbers,binNumber);
+        if(binIndex < 0)
+            return;
+        for(int chunkIndex = binChunkStarts[binIndex]; chunkIndex < binChunkStarts[binIndex+1]; chunkIndex++)
+            chunkList.add(new GATKChunk(chunkOffsets[chunkIndex*2],chunkOffsets[chunkIndex*2+1]));
+    }
+
     private List<GATKChunk> optimizeChunkList(final List<GATKChunk> chunks, final long minimumOffset) {
         GATKChunk lastChunk = null;
         Collections.sort(chunks);
@@ -77,9 +77,7 @@ public class GATKBAMIndexFromDataSource extends GATKBAMIndex {
         }
 
         // there is no interface to get linear index from HTSJDK
-        final LinearIndex linearIndex = new LinearIndex(referenceSequence, 0, new long[]{});
-
-        return new GATKBAMIndexData(this,referenceSequence,bins,linearIndex);
+        return new GATKBAMIndexData(this,referenceSequence,bins,new long[]{});
     }
 
     @Override
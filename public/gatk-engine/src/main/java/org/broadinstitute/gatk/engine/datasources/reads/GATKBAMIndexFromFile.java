@@ -36,9 +36,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * This class implements BAM index querying API
@@ -106,6 +104,13 @@ public class GATKBAMIndexFromFile extends GATKBAMIndex {
         closeIndexFile();
     }
 
+    /**
+     * @return the number of sequences stored in this index.
+     */
+    protected int getSequenceCount() {
+        return sequenceCount;
+    }
+
     public GATKBAMIndexData readReferenceSequence(final int referenceSequence) {
         openIndexFile();
 
@@ -115,33 +120,41 @@ public class GATKBAMIndexFromFile extends GATKBAMIndex {
         skipToSequence(referenceSequence);
 
         final int binCount = readInteger();
-        List<GATKBin> bins = new ArrayList<>();
-        for (int binNumber = 0; binNumber < binCount; binNumber++) {
-            final int indexBin = readInteger();
+        final int[] binNumbers = new int[binCount];
+        final long[][] rawChunkData = new long[binCount][];
+        // Bins can appear in any order in the file; sort them by bin number, remembering where each came from.
+        final long[] binOrder = new long[binCount];
+        for (int binIndex = 0; binIndex < binCount; binIndex++) {
+            binNumbers[binIndex] = readInteger();
             final int nChunks = readInteger();
+            rawChunkData[binIndex] = readLongs(nChunks*2);
+            binOrder[binIndex] = ((long)binNumbers[binIndex] << 32) | binIndex;
+        }
+        Arrays.sort(binOrder);
+
+        final int[] sortedBinNumbers = new int[binCount];
+        final int[] binChunkStarts = new int[binCount+1];
+        int chunkCount = 0;
+        for (int binIndex = 0; binIndex < binCount; binIndex++) {
+            final int originalIndex = (int)binOrder[binIndex];
+            sortedBinNumbers[binIndex] = binNumbers[originalIndex];
+            binChunkStarts[binIndex] = chunkCount;
+            chunkCount += rawChunkData[originalIndex].length/2;
+        }
+        binChunkStarts[binCount] = chunkCount;
 
-            final List<GATKChunk> chunks = new ArrayList<>(nChunks);
-            final long[] rawChunkData = readLongs(nChunks*2);
-            for (int ci = 0; ci < nChunks; ci++) {
-                final long chunkBegin = rawChunkData[ci*2];
-                final long chunkEnd = rawChunkData[ci*2+1];
-                chunks.add(new GATKChunk(chunkBegin, chunkEnd));
-            }
-            final GATKBin bin = new GATKBin(referenceSequence, indexBin);
-            bin.setChunkList(chunks.toArray(new GATKChunk[chunks.size()]));
-            while(indexBin >= bins.size())
-                bins.add(null);
-            bins.set(indexBin,bin);
+        final long[] chunkOffsets = new long[chunkCount*2];
+        for (int binIndex = 0; binIndex < binCount; binIndex++) {
+            final long[] chunks = rawChunkData[(int)binOrder[binIndex]];
+            System.arraycopy(chunks,0,chunkOffsets,binChunkStarts[binIndex]*2,chunks.length);
         }
 
         final int nLinearBins = readInteger();
-        long[] linearIndexEntries = readLongs(nLinearBins);
-
-        final LinearIndex linearIndex = new LinearIndex(referenceSequence,0,linearIndexEntries);
+        final long[] linearIndexEntries = readLongs(nLinearBins);
 
         closeIndexFile();
 
-        return new GATKBAMIndexData(this,referenceSequence,bins,linearIndex);
+        return new GATKBAMIndexData(this,referenceSequence,sortedBinNumbers,binChunkStarts,chunkOffsets,linearIndexEntries);
     }
 
     /**
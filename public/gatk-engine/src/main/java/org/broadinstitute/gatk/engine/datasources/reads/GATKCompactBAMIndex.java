@@ -0,0 +1,292 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A BAM index that keeps the contents of the .bai off the Java heap, in a compact binary cache.
+ *
+ * The first time a given .bai is seen, it is parsed once from start to finish and its contents are
+ * written to a cache file in the cache directory.  Subsequent runs over the same index just memory map
+ * the cache file, skipping the parse entirely.  The cache is keyed on the path, length and modification
+ * time of the .bai, so re-indexing a BAM invalidates its cache entry.  If the cache can't be written, the
+ * compact contents are kept in a direct buffer for the rest of this run.
+ *
+ * The bins and chunks of a contig are decoded into a GATKBAMIndexData the first time that contig is
+ * queried, and only the most recently used contig is kept decoded.
+ *
+ * Cache file layout, little endian:
+ *   magic "GBC\1", .bai length (long), .bai modification time (long), number of contigs (int),
+ *   start of last linear bin (long), offset of each contig's section plus one past the end (long[n+1]),
+ *   then for each contig: number of bins (int), bin numbers (int[bins]), bin chunk starts (int[bins+1]),
+ *   chunk offsets (long[2*chunks]), number of linear index entries (int), linear index entries (long[entries]).
+ *
+ * Very much not thread-safe.
+ */
+public class GATKCompactBAMIndex extends GATKBAMIndexFromFile {
+    private static final Logger logger = Logger.getLogger(GATKCompactBAMIndex.class);
+
+    /**
+     * Cache file magic number.
+     */
+    private static final byte[] CACHE_MAGIC = "GBC\1".getBytes();
+
+    /**
+     * Extension given to all cache files.
+     */
+    public static final String CACHE_FILE_EXTENSION = ".gatkbai";
+
+    private static final int INT_SIZE_IN_BYTES = Integer.SIZE / 8;
+    private static final int LONG_SIZE_IN_BYTES = Long.SIZE / 8;
+
+    /**
+     * Size of the cache file header, excluding the table of contig offsets.
+     */
+    private static final int HEADER_SIZE = CACHE_MAGIC.length + 2*LONG_SIZE_IN_BYTES + INT_SIZE_IN_BYTES + LONG_SIZE_IN_BYTES;
+
+    private final File indexFile;
+
+    /**
+     * The compact contents of the index, either mapped from the cache file or held in a direct buffer.
+     */
+    private final ByteBuffer contents;
+
+    private final long startOfLastLinearBin;
+
+    /**
+     * The most recently decoded contig, or null if none has been decoded yet.
+     */
+    private GATKBAMIndexData lastIndexData = null;
+
+    /**
+     * Load the given index from its cache in the given directory, creating the cache if necessary.
+     * @param file The .bai file.
+     * @param sequenceDictionary Sequence dictionary of the BAM.
+     * @param cacheDirectory Directory in which cached indices are kept.
+     */
+    public GATKCompactBAMIndex(final File file, final SAMSequenceDictionary sequenceDictionary, final File cacheDirectory) {
+        super(file, sequenceDictionary);
+        this.indexFile = file;
+
+        final File cacheFile = getCacheFile(file, cacheDirectory);
+        ByteBuffer cachedContents = readCacheFile(cacheFile);
+        if(cachedContents == null) {
+            cachedContents = createCacheContents();
+            writeCacheFile(cacheFile, cachedContents);
+        }
+
+        contents = cachedContents;
+        startOfLastLinearBin = contents.getLong(CACHE_MAGIC.length + 2*LONG_SIZE_IN_BYTES + INT_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Gets the cache file that holds the given index.
+     * @param file The .bai file.
+     * @param cacheDirectory Directory in which cached indices are kept.
+     * @return The location of the cache file for this index, whether or not it exists.
+     */
+    public static File getCacheFile(final File file, final File cacheDirectory) {
+        final String path = file.getAbsolutePath();
+        return new File(cacheDirectory, String.format("%s.%08x%s", file.getName(), path.hashCode(), CACHE_FILE_EXTENSION));
+    }
+
+    @Override
+    public GATKBAMIndexData readReferenceSequence(final int referenceSequence) {
+        if (referenceSequence >= getSequenceCount())
+            throw new ReviewedGATKException("Invalid sequence number " + referenceSequence + " in index file " + indexFile);
+
+        if(lastIndexData == null || lastIndexData.getReferenceSequence() != referenceSequence) {
+            final ByteBuffer section = contents.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            section.position((int)contents.getLong(HEADER_SIZE + referenceSequence*LONG_SIZE_IN_BYTES));
+
+            final int binCount = section.getInt();
+            final int[] binNumbers = getInts(section, binCount);
+            final int[] binChunkStarts = getInts(section, binCount+1);
+            final long[] chunkOffsets = getLongs(section, binChunkStarts[binCount]*2);
+            final long[] linearIndexEntries = getLongs(section, section.getInt());
+
+            lastIndexData = new GATKBAMIndexData(this,referenceSequence,binNumbers,binChunkStarts,chunkOffsets,linearIndexEntries);
+        }
+        return lastIndexData;
+    }
+
+    @Override
+    public long getStartOfLastLinearBin() {
+        return startOfLastLinearBin;
+    }
+
+    /**
+     * Maps the cache file, if it exists and is up to date with the index.
+     * @param cacheFile The cache file.
+     * @return The contents of the cache, or null if the cache is missing or stale.
+     */
+    private ByteBuffer readCacheFile(final File cacheFile) {
+        if(!cacheFile.exists())
+            return null;
+        try {
+            final RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+            try {
+                if(file.length() < HEADER_SIZE)
+                    return null;
+                final ByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                final byte[] magic = new byte[CACHE_MAGIC.length];
+                mapped.get(magic);
+                if(!Arrays.equals(magic, CACHE_MAGIC) || mapped.getLong() != indexFile.length() || mapped.getLong() != indexFile.lastModified() || mapped.getInt() != getSequenceCount()) {
+                    logger.debug("Ignoring stale BAM index cache " + cacheFile);
+                    return null;
+                }
+                // A cache truncated by a failed write won't end where its table of contents says it does.
+                final long tableEnd = HEADER_SIZE + (getSequenceCount()+1L)*LONG_SIZE_IN_BYTES;
+                if(file.length() < tableEnd || mapped.getLong((int)tableEnd - LONG_SIZE_IN_BYTES) != file.length()) {
+                    logger.debug("Ignoring truncated BAM index cache " + cacheFile);
+                    return null;
+                }
+                mapped.rewind();
+                return mapped;
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch(IOException ex) {
+            logger.debug("Unable to read BAM index cache " + cacheFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache file, via a temporary file so that concurrent runs never see a partial cache.
+     * Failure to write the cache is not an error; the next run will just try again.
+     * @param cacheFile The cache file.
+     * @param cacheContents The contents to write.
+     */
+    private void writeCacheFile(final File cacheFile, final ByteBuffer cacheContents) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+            final RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+            try {
+                final ByteBuffer toWrite = cacheContents.duplicate();
+                toWrite.rewind();
+                while(toWrite.hasRemaining())
+                    file.getChannel().write(toWrite);
+            }
+            finally {
+                file.close();
+            }
+            if(!tempFile.renameTo(cacheFile))
+                throw new IOException("Unable to rename " + tempFile + " to " + cacheFile);
+            tempFile = null;
+        }
+        catch(IOException ex) {
+            logger.warn("Unable to write BAM index cache " + cacheFile + "; index will be reparsed next time: " + ex.getMessage());
+        }
+        finally {
+            if(tempFile != null)
+                tempFile.delete();
+        }
+    }
+
+    /**
+     * Parses the whole index, packing its contents into a direct buffer in the cache file layout.
+     * @return The contents of the cache.
+     */
+    private ByteBuffer createCacheContents() {
+        final GATKBAMIndexData[] indexData = new GATKBAMIndexData[getSequenceCount()];
+
+        long size = HEADER_SIZE + (indexData.length+1)*LONG_SIZE_IN_BYTES;
+        for(int i = 0; i < indexData.length; i++) {
+            indexData[i] = super.readReferenceSequence(i);
+            size += getSectionSize(indexData[i]);
+        }
+        if(size > Integer.MAX_VALUE)
+            throw new ReviewedGATKException("BAM index " + indexFile + " is too large to cache");
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int)size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(CACHE_MAGIC);
+        buffer.putLong(indexFile.length());
+        buffer.putLong(indexFile.lastModified());
+        buffer.putInt(indexData.length);
+        buffer.putLong(super.getStartOfLastLinearBin());
+
+        long sectionStart = HEADER_SIZE + (indexData.length+1)*LONG_SIZE_IN_BYTES;
+        for(final GATKBAMIndexData data: indexData) {
+            buffer.putLong(sectionStart);
+            sectionStart += getSectionSize(data);
+        }
+        buffer.putLong(sectionStart);
+
+        for(final GATKBAMIndexData data: indexData) {
+            buffer.putInt(data.getBinNumbers().length);
+            for(final int binNumber: data.getBinNumbers())
+                buffer.putInt(binNumber);
+            for(final int binChunkStart: data.getBinChunkStarts())
+                buffer.putInt(binChunkStart);
+            for(final long chunkOffset: data.getChunkOffsets())
+                buffer.putLong(chunkOffset);
+            buffer.putInt(data.getLinearIndexEntries().length);
+            for(final long linearIndexEntry: data.getLinearIndexEntries())
+                buffer.putLong(linearIndexEntry);
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static long getSectionSize(final GATKBAMIndexData data) {
+        return INT_SIZE_IN_BYTES + data.getBinNumbers().length*INT_SIZE_IN_BYTES +
+                data.getBinChunkStarts().length*INT_SIZE_IN_BYTES +
+                (long)data.getChunkOffsets().length*LONG_SIZE_IN_BYTES +
+                INT_SIZE_IN_BYTES + (long)data.getLinearIndexEntries().length*LONG_SIZE_IN_BYTES;
+    }
+
+    private static int[] getInts(final ByteBuffer buffer, final int count) {
+        final int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count*INT_SIZE_IN_BYTES);
+        return values;
+    }
+
+    private static long[] getLongs(final ByteBuffer buffer, final int count) {
+        final long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + count*LONG_SIZE_IN_BYTES);
+        return values;
+    }
+}
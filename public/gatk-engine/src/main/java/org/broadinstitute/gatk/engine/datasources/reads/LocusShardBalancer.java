@@ -25,12 +25,40 @@
 
 package org.broadinstitute.gatk.engine.datasources.reads;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Batch granular file pointers into potentially larger shards.
+ *
+ * When given a target shard size, consecutive file pointers on the same contig are combined until their
+ * estimated size, computed from the sizes of their BAM index chunks, reaches the target.  This keeps sparsely
+ * covered regions from turning into a flood of tiny shards.  File pointers are never split, so a single
+ * file pointer larger than the target still becomes a shard of its own.
  */
 public class LocusShardBalancer extends ShardBalancer {
+    /**
+     * Target estimated size of the reads in each shard, in bytes, or 0 to keep file pointers as they are.
+     */
+    private final long targetShardBytes;
+
+    /**
+     * Create a balancer producing one shard per file pointer.
+     */
+    public LocusShardBalancer() {
+        this(0);
+    }
+
+    /**
+     * Create a balancer combining file pointers into shards of roughly the given size.
+     * @param targetShardBytes target estimated size of the reads in each shard, in bytes, or 0 to keep file pointers as they are.
+     */
+    public LocusShardBalancer(final long targetShardBytes) {
+        if ( targetShardBytes < 0 ) throw new IllegalArgumentException("targetShardBytes must be >= 0, got " + targetShardBytes);
+        this.targetShardBytes = targetShardBytes;
+    }
+
     /**
      * Convert iterators of file pointers into balanced iterators of shards.
      * @return An iterator over balanced shards.
@@ -44,8 +72,25 @@ public class LocusShardBalancer extends ShardBalancer {
             public Shard next() {
                 FilePointer current = filePointers.next();
 
-                // FilePointers have already been combined as necessary at the IntervalSharder level. No
-                // need to do so again here.
+                // FilePointers have already been combined as necessary at the IntervalSharder level. Only
+                // combine them further when they're smaller than the target shard size.
+                if ( targetShardBytes > 0 ) {
+                    final List<FilePointer> toCombine = new ArrayList<FilePointer>();
+                    toCombine.add(current);
+                    long combinedSize = current.size();
+
+                    while ( filePointers.hasNext() &&
+                            ! current.isRegionUnmapped && ! filePointers.peek().isRegionUnmapped &&
+                            current.getContigIndex() == filePointers.peek().getContigIndex() &&
+                            combinedSize + filePointers.peek().size() <= targetShardBytes ) {
+                        final FilePointer next = filePointers.next();
+                        combinedSize += next.size();
+                        toCombine.add(next);
+                    }
+
+                    if ( toCombine.size() > 1 )
+                        current = FilePointer.union(toCombine, parser);
+                }
 
                 return new LocusShard(parser,readsDataSource,current.getLocations(),current.fileSpans);
             }
@@ -0,0 +1,157 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An engine for loading blocks out of memory mapped BAM files.
+ *
+ * Unlike the BlockLoader, which reads every block through a FileInputStream into a staging buffer,
+ * this loader slices compressed blocks straight out of the mapped file.  Each loader owns a single
+ * Inflater and a pair of block-sized buffers that it reuses for every block, so loading a block
+ * allocates nothing.  The decompressed block is copied into the BlockInputStream before the next block
+ * is loaded, which is what makes reusing the buffers safe.
+ */
+class MappedBlockLoader implements Runnable {
+    /**
+     * Coordinates the input queue.
+     */
+    private final BGZFBlockLoadingDispatcher dispatcher;
+
+    /**
+     * Source of the memory mapped files.
+     */
+    private final MappedFileCache mappedFileCache;
+
+    /**
+     * Whether asynchronous decompression should happen.
+     */
+    private final boolean decompress;
+
+    /**
+     * Reused for every block decompressed by this loader.
+     */
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * Staging area for the compressed data; the Inflater can only read from arrays.
+     */
+    private final byte[] compressedContent = new byte[MappedFileCache.MAX_BLOCK_SIZE];
+
+    /**
+     * Holds the most recently decompressed block.
+     */
+    private final ByteBuffer uncompressedBlock = ByteBuffer.wrap(new byte[MappedFileCache.MAX_BLOCK_SIZE]);
+
+    public MappedBlockLoader(final BGZFBlockLoadingDispatcher dispatcher, final MappedFileCache mappedFileCache, final boolean decompress) {
+        this.dispatcher = dispatcher;
+        this.mappedFileCache = mappedFileCache;
+        this.decompress = decompress;
+    }
+
+    public void run() {
+        for(;;) {
+            BAMAccessPlan accessPlan = null;
+            try {
+                accessPlan = dispatcher.claimNextWorkRequest();
+                final MappedFileCache.MappedFile mappedFile = mappedFileCache.getMappedFile(accessPlan.getReader());
+
+                long blockAddress = accessPlan.getBlockAddress();
+                ByteBuffer compressedBlock;
+                int uncompressedDataSize;
+
+                // Skip over any 0-byte blocks that aren't at the end of the file.
+                do {
+                    compressedBlock = mappedFile.slice(blockAddress,MappedFileCache.MAX_BLOCK_SIZE);
+                    validateBlockHeader(compressedBlock);
+
+                    final int blockSize = unpackUInt16(compressedBlock,BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET)+1;
+                    if(compressedBlock.limit() < blockSize)
+                        throw new ReviewedGATKException("BUG: block extends past the end of the file");
+                    compressedBlock.limit(blockSize);
+
+                    uncompressedDataSize = compressedBlock.getInt(blockSize-4);
+                    blockAddress += blockSize;
+                }
+                while(uncompressedDataSize == 0 && blockAddress < mappedFile.size());
+
+                final ByteBuffer block = decompress ? decompressBGZFBlock(compressedBlock,uncompressedDataSize) : compressedBlock;
+                accessPlan.getInputStream().copyIntoBuffer(block,accessPlan,blockAddress);
+            }
+            catch(Throwable error) {
+                if(accessPlan != null && accessPlan.getInputStream() != null)
+                    accessPlan.getInputStream().reportException(error);
+            }
+        }
+    }
+
+    private void validateBlockHeader(final ByteBuffer block) {
+        if(block.remaining() < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH)
+            throw new ReviewedGATKException("BUG: unable to read a the complete block header.");
+
+        // Verify that the file was read at a valid point.
+        if(unpackUByte8(block,0) != BlockCompressedStreamConstants.GZIP_ID1 ||
+                unpackUByte8(block,1) != BlockCompressedStreamConstants.GZIP_ID2 ||
+                unpackUByte8(block,3) != BlockCompressedStreamConstants.GZIP_FLG ||
+                unpackUInt16(block,10) != BlockCompressedStreamConstants.GZIP_XLEN ||
+                unpackUByte8(block,12) != BlockCompressedStreamConstants.BGZF_ID1 ||
+                unpackUByte8(block,13) != BlockCompressedStreamConstants.BGZF_ID2) {
+            throw new ReviewedGATKException("BUG: Started reading compressed block at incorrect position");
+        }
+    }
+
+    private ByteBuffer decompressBGZFBlock(final ByteBuffer bgzfBlock, final int uncompressedBufferSize) throws DataFormatException {
+        // Bound the CDATA section of the buffer and stage it for the inflater.
+        final int compressedDataSize = bgzfBlock.limit()-BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH-BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+        bgzfBlock.position(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+        bgzfBlock.get(compressedContent,0,compressedDataSize);
+
+        // Decompress the buffer.
+        inflater.reset();
+        inflater.setInput(compressedContent,0,compressedDataSize);
+        final int bytesUncompressed = inflater.inflate(uncompressedBlock.array(),0,uncompressedBufferSize);
+        if(bytesUncompressed != uncompressedBufferSize)
+            throw new ReviewedGATKException("Error decompressing block");
+
+        uncompressedBlock.clear();
+        uncompressedBlock.limit(uncompressedBufferSize);
+        return uncompressedBlock;
+    }
+
+    private int unpackUByte8(final ByteBuffer buffer,final int position) {
+        return buffer.get(position) & 0xFF;
+    }
+
+    private int unpackUInt16(final ByteBuffer buffer,final int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+}
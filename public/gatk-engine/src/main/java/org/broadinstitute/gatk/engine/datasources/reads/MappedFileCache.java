@@ -0,0 +1,155 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import org.broadinstitute.gatk.utils.exceptions.GATKException;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps BAM files memory mapped for use by the MappedBlockLoader.
+ *
+ * Files are mapped read-only in segments of SEGMENT_SIZE bytes, as a single MappedByteBuffer cannot
+ * address more than 2GB.  Consecutive segments overlap by MAX_BLOCK_SIZE bytes, so that every BGZF block
+ * lies entirely within the segment containing its first byte and can be sliced out without copying.
+ * Segments are mapped on first use and shared by all block loaders.
+ */
+class MappedFileCache {
+    /**
+     * The maximum size of a single BGZF block, compressed or uncompressed.
+     */
+    static final int MAX_BLOCK_SIZE = 64*1024;
+
+    /**
+     * The number of bytes addressed by each mapped segment, excluding the overlap with the next segment.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * All files mapped so far, by reader.
+     */
+    private final Map<SAMReaderID,MappedFile> mappedFiles = new HashMap<SAMReaderID,MappedFile>();
+
+    /**
+     * Retrieves the mapped file for the given reader, creating it if necessary.
+     * @param key The reader.
+     * @return The mapped file for this reader.
+     */
+    public synchronized MappedFile getMappedFile(final SAMReaderID key) {
+        MappedFile mappedFile = mappedFiles.get(key);
+        if(mappedFile == null) {
+            mappedFile = new MappedFile(key);
+            mappedFiles.put(key,mappedFile);
+        }
+        return mappedFile;
+    }
+
+    /**
+     * A single BAM file, mapped into memory one segment at a time.
+     */
+    static class MappedFile {
+        private final SAMReaderID reader;
+        private final long size;
+        private final MappedByteBuffer[] segments;
+
+        private MappedFile(final SAMReaderID reader) {
+            this.reader = reader;
+            try {
+                final RandomAccessFile file = new RandomAccessFile(reader.getSamFilePath(),"r");
+                try {
+                    this.size = file.length();
+                }
+                finally {
+                    file.close();
+                }
+            }
+            catch(IOException ex) {
+                throw new GATKException("Unable to open input file " + reader.getSamFilePath(),ex);
+            }
+            this.segments = new MappedByteBuffer[(int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        }
+
+        /**
+         * @return the size of the file in bytes.
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Gets a little-endian view of up to maxLength bytes of the file starting at the given address.
+         * The view shares its contents with the mapped file; no data is copied.
+         * @param address Position in the file of the first byte in the view.
+         * @param maxLength Maximum number of bytes in the view, at most MAX_BLOCK_SIZE.
+         * @return A view positioned at 0, with a limit of maxLength or the number of bytes left in the file.
+         */
+        public ByteBuffer slice(final long address, final int maxLength) {
+            if(address < 0 || address >= size)
+                throw new GATKException(String.format("Position %d is outside of file %s of size %d",address,reader.getSamFilePath(),size));
+            if(maxLength > MAX_BLOCK_SIZE)
+                throw new IllegalArgumentException("Slices cannot be larger than the maximum block size, but saw " + maxLength);
+
+            final int segmentIndex = (int)(address / SEGMENT_SIZE);
+            final ByteBuffer segment = getSegment(segmentIndex).duplicate();
+            final int offset = (int)(address - segmentIndex * SEGMENT_SIZE);
+            segment.limit(Math.min(offset + maxLength,segment.capacity()));
+            segment.position(offset);
+
+            final ByteBuffer slice = segment.slice();
+            slice.order(ByteOrder.LITTLE_ENDIAN);
+            return slice;
+        }
+
+        private synchronized MappedByteBuffer getSegment(final int segmentIndex) {
+            if(segments[segmentIndex] == null) {
+                final long start = segmentIndex * SEGMENT_SIZE;
+                final long length = Math.min(SEGMENT_SIZE + MAX_BLOCK_SIZE,size - start);
+                try {
+                    final RandomAccessFile file = new RandomAccessFile(reader.getSamFilePath(),"r");
+                    try {
+                        // The mapping remains valid after the channel is closed.
+                        segments[segmentIndex] = file.getChannel().map(FileChannel.MapMode.READ_ONLY,start,length);
+                    }
+                    finally {
+                        file.close();
+                    }
+                }
+                catch(IOException ex) {
+                    throw new GATKException("Unable to memory map input file " + reader.getSamFilePath(),ex);
+                }
+            }
+            return segments[segmentIndex];
+        }
+    }
+}
@@ -66,43 +66,73 @@ public class ReadShard extends Shard {
     public static final int DEFAULT_MAX_READS = 10000;
 
     /**
-     * What is the maximum number of reads per BAM file which should go into a read shard.
-     *
-     * TODO: this non-final static variable should either be made final or turned into an
-     * TODO: instance variable somewhere -- as both static and mutable it wreaks havoc
-     * TODO: with tests that use multiple instances of SAMDataSource (since SAMDataSource
-     * TODO: changes this value)
+     * Rough number of bytes taken up in memory by a read, in addition to its bases and qualities.
+     */
+    public static final int READ_OVERHEAD_BYTES = 300;
+
+    /**
+     * What is the maximum number of reads which should go into this shard?
      */
-    public static int MAX_READS = DEFAULT_MAX_READS;
+    private final int maxReads;
 
     /**
      * The reads making up this shard.
      */
-    private final Collection<SAMRecord> reads = new ArrayList<SAMRecord>(MAX_READS);
+    private final Collection<SAMRecord> reads;
+
+    /**
+     * Estimated number of bytes of memory taken up by the reads in this shard.
+     */
+    private long bufferedBytes = 0;
 
     public ReadShard(GenomeLocParser parser, SAMDataSource readsDataSource, Map<SAMReaderID,SAMFileSpan> fileSpans, List<GenomeLoc> loci, boolean isUnmapped) {
-        super(parser, ShardType.READ, loci, readsDataSource, fileSpans, isUnmapped);
+        this(parser, readsDataSource, fileSpans, loci, isUnmapped, readsDataSource != null ? readsDataSource.getReadBufferSize() : DEFAULT_MAX_READS);
     }
 
     /**
-     * Sets the maximum number of reads buffered in a read shard.  Implemented as a weirdly static interface
-     * until we know what effect tuning this parameter has.
-     *
-     * TODO: this mutable static interface is awful and breaks tests -- need to refactor
-     *
-     * @param bufferSize New maximum number
+     * Create a read shard buffering at most the given number of reads.
+     * @param maxReads Maximum number of reads to buffer.  Reads sharing an alignment start or read name with
+     *                 the last read are still added past this limit.
      */
-    static void setReadBufferSize(final int bufferSize) {
-        MAX_READS = bufferSize;
+    public ReadShard(GenomeLocParser parser, SAMDataSource readsDataSource, Map<SAMReaderID,SAMFileSpan> fileSpans, List<GenomeLoc> loci, boolean isUnmapped, final int maxReads) {
+        super(parser, ShardType.READ, loci, readsDataSource, fileSpans, isUnmapped);
+        if ( maxReads < 1 ) throw new IllegalArgumentException("maxReads must be >= 1, got " + maxReads);
+        this.maxReads = maxReads;
+        this.reads = new ArrayList<SAMRecord>(Math.min(maxReads, DEFAULT_MAX_READS));
     }
 
     /**
      * What read buffer size are we using?
      *
-     * @return
+     * @return the maximum number of reads buffered by this shard
+     */
+    public int getReadBufferSize() {
+        return maxReads;
+    }
+
+    /**
+     * How many reads are currently buffered in this shard?
+     * @return the number of buffered reads
+     */
+    public int numberOfReadsBuffered() {
+        return reads.size();
+    }
+
+    /**
+     * Roughly how much memory do the reads in this shard take up?
+     * @return estimated size of the buffered reads, in bytes
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * Roughly how much memory does the given read take up?
+     * @param read The read.
+     * @return estimated size of the read, in bytes
      */
-    public static int getReadBufferSize() {
-        return MAX_READS;
+    public static long estimateReadSize(final SAMRecord read) {
+        return READ_OVERHEAD_BYTES + 2L * read.getReadLength();
     }
 
     /**
@@ -127,7 +157,7 @@ public class ReadShard extends Shard {
      * @return True if this shard's buffer is full (and the shard can buffer reads).
      */
     public boolean isBufferFull() {
-        return reads.size() > ReadShard.MAX_READS;
+        return reads.size() > maxReads;
     }
 
     /**
@@ -138,6 +168,7 @@ public class ReadShard extends Shard {
         // DO NOT validate that the buffer is full.  Paired read sharding will occasionally have to stuff another
         // read or two into the buffer.
         reads.add(read);
+        bufferedBytes += estimateReadSize(read);
     }
 
     /**
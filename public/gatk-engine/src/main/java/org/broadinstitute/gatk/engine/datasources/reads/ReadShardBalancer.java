@@ -68,6 +68,34 @@ public class ReadShardBalancer extends ShardBalancer {
 
     private static Logger logger = Logger.getLogger(ReadShardBalancer.class);
 
+    /**
+     * Assumed size of a read in memory, until the first shard has been filled.
+     */
+    private static final long INITIAL_BYTES_PER_READ = ReadShard.READ_OVERHEAD_BYTES + 2 * 100;
+
+    /**
+     * Target estimated size in memory of the reads in each shard, or 0 to size shards by read count alone.
+     */
+    private final long targetShardBytes;
+
+    /**
+     * Create a balancer filling each shard with the read buffer size of the data source.
+     */
+    public ReadShardBalancer() {
+        this(0);
+    }
+
+    /**
+     * Create a balancer sizing each shard so that its reads take up roughly the given amount of memory.
+     * The number of reads per shard is derived from the average size of the reads seen in previous shards,
+     * and never exceeds the read buffer size of the data source.
+     * @param targetShardBytes target estimated size in memory of the reads in each shard, or 0 to size shards by read count alone.
+     */
+    public ReadShardBalancer(final long targetShardBytes) {
+        if ( targetShardBytes < 0 ) throw new IllegalArgumentException("targetShardBytes must be >= 0, got " + targetShardBytes);
+        this.targetShardBytes = targetShardBytes;
+    }
+
     /**
      * Convert iterators of file pointers into balanced iterators of shards.
      * @return An iterator over balanced shards.
@@ -100,6 +128,12 @@ public class ReadShardBalancer extends ShardBalancer {
              */
             private boolean encounteredMonolithicFilePointer = false;
 
+            /**
+             * Number of reads, and their estimated size in bytes, put into shards so far.  Used to size the next shard.
+             */
+            private long totalReadsBuffered = 0;
+            private long totalBytesBuffered = 0;
+
 
             {
                 createNextContigFilePointer();
@@ -141,7 +175,7 @@ public class ReadShardBalancer extends ShardBalancer {
                     // At this point our currentContigReadsIterator may be null or non-null depending on whether or not
                     // this is our first shard for this file pointer.
                     if ( currentContigFilePointer != null ) {
-                        Shard shard = new ReadShard(parser,readsDataSource, currentContigFilePointer.fileSpans, currentContigFilePointer.locations, currentContigFilePointer.isRegionUnmapped);
+                        ReadShard shard = new ReadShard(parser,readsDataSource, currentContigFilePointer.fileSpans, currentContigFilePointer.locations, currentContigFilePointer.isRegionUnmapped, getNextShardMaxReads());
 
                         // Create a new reads iterator only when we've just advanced to the file pointer for the next
                         // contig. It's essential that the iterators persist across all shards that share the same contig
@@ -152,12 +186,28 @@ public class ReadShardBalancer extends ShardBalancer {
 
                         if ( currentContigReadsIterator.hasNext() ) {
                             shard.fill(currentContigReadsIterator);
+                            totalReadsBuffered += shard.numberOfReadsBuffered();
+                            totalBytesBuffered += shard.getBufferedBytes();
                             nextShard = shard;
                         }
                     }
                 }
             }
 
+            /**
+             * How many reads should the next shard hold?  When sizing shards by memory, this is the number of reads of
+             * the average size seen so far that fit in the target shard size.
+             * @return the maximum number of reads to put in the next shard
+             */
+            private int getNextShardMaxReads() {
+                final int readBufferSize = readsDataSource.getReadBufferSize();
+                if ( targetShardBytes == 0 )
+                    return readBufferSize;
+
+                final long bytesPerRead = totalReadsBuffered > 0 ? Math.max(1, totalBytesBuffered / totalReadsBuffered) : INITIAL_BYTES_PER_READ;
+                return (int)Math.max(1, Math.min(readBufferSize, targetShardBytes / bytesPerRead));
+            }
+
             /**
              * Aggregate all FilePointers for the next contig together into one monolithic FilePointer
              * to avoid boundary issues with visiting the same file regions more than once (since more
@@ -167,6 +167,11 @@ public class SAMDataSource {
      */
     private final IntervalMergingRule intervalMergingRule;
 
+    /**
+     * Maximum number of reads per BAM file to buffer in a read shard.
+     */
+    private final int readBufferSize;
+
     /**
      * Static set of unsupported programs that create bam files.
      * The key is the PG record ID and the value is the name of the tool that created it
@@ -277,6 +282,55 @@ public class SAMDataSource {
             final boolean keepReadsInLIBS,
             final Map<String, String> sampleRenameMap,
             final IntervalMergingRule intervalMergingRule) {
+        this(   referenceFile,
+                samFiles,
+                threadAllocation,
+                numFileHandles,
+                genomeLocParser,
+                useOriginalBaseQualities,
+                strictness,
+                readBufferSize,
+                downsamplingMethod,
+                exclusionList,
+                supplementalFilters,
+                readTransformers,
+                includeReadsWithDeletionAtLoci,
+                defaultBaseQualities,
+                removeProgramRecords,
+                keepReadsInLIBS,
+                sampleRenameMap,
+                intervalMergingRule,
+                null);
+    }
+
+    /**
+     * Create a new SAM data source given the supplied read metadata, keeping compact copies of the BAM
+     * indices in the given cache directory.
+     *
+     * See the constructor above for the description of all other parameters.
+     * @param bamIndexCacheDirectory directory holding compact, memory mappable copies of the BAM indices,
+     *                               or null to read the BAM indices directly.
+     */
+    public SAMDataSource(
+            final File referenceFile,
+            Collection<SAMReaderID> samFiles,
+            ThreadAllocation threadAllocation,
+            Integer numFileHandles,
+            GenomeLocParser genomeLocParser,
+            boolean useOriginalBaseQualities,
+            ValidationStringency strictness,
+            Integer readBufferSize,
+            DownsamplingMethod downsamplingMethod,
+            ValidationExclusion exclusionList,
+            Collection<ReadFilter> supplementalFilters,
+            List<ReadTransformer> readTransformers,
+            boolean includeReadsWithDeletionAtLoci,
+            byte defaultBaseQualities,
+            boolean removeProgramRecords,
+            final boolean keepReadsInLIBS,
+            final Map<String, String> sampleRenameMap,
+            final IntervalMergingRule intervalMergingRule,
+            final File bamIndexCacheDirectory) {
 
         this.referenceFile = referenceFile;
         this.readMetrics = new ReadMetrics();
@@ -289,7 +343,9 @@ public class SAMDataSource {
         // TODO: Consider a borrowed-thread dispatcher implementation.
         if(this.threadAllocation.getNumIOThreads() > 0) {
             logger.info("Running in asynchronous I/O mode; number of threads = " + this.threadAllocation.getNumIOThreads());
-            dispatcher = new BGZFBlockLoadingDispatcher(this.threadAllocation.getNumIOThreads(), numFileHandles != null ? numFileHandles : 1);
+            dispatcher = new BGZFBlockLoadingDispatcher(this.threadAllocation.getNumIOThreads(),
+                    numFileHandles != null ? numFileHandles : 1,
+                    this.threadAllocation.useMemoryMappedIO());
         }
         else
             dispatcher = null;
@@ -297,12 +353,12 @@ public class SAMDataSource {
         validationStringency = strictness;
         this.removeProgramRecords = removeProgramRecords;
         if(readBufferSize != null)
-            ReadShard.setReadBufferSize(readBufferSize);   // TODO: use of non-final static variable here is just awful, especially for parallel tests
+            this.readBufferSize = readBufferSize;
         else {
             // Choose a sensible default for the read buffer size.
             // Previously we we're picked 100000 reads per BAM per shard with a max cap of 250K reads in memory at once.
             // Now we are simply setting it to 100K reads
-            ReadShard.setReadBufferSize(100000);
+            this.readBufferSize = 100000;
         }
 
         this.sampleRenameMap = sampleRenameMap;
@@ -392,7 +448,9 @@ public class SAMDataSource {
         for(SAMReaderID id: readerIDs) {
             File indexFile = findIndexFile(id.getSamFile());
             if(indexFile != null) {
-                bamIndices.put(id, new GATKBAMIndexFromFile(indexFile, samSequenceDictionary));
+                bamIndices.put(id, bamIndexCacheDirectory != null ?
+                        new GATKCompactBAMIndex(indexFile, samSequenceDictionary, bamIndexCacheDirectory) :
+                        new GATKBAMIndexFromFile(indexFile, samSequenceDictionary));
                 continue;
             }
 
@@ -433,6 +491,14 @@ public class SAMDataSource {
      */
     public ReadProperties getReadsInfo() { return readProperties; }
 
+    /**
+     * What is the maximum number of reads per BAM file that should go into a read shard?
+     * @return the read buffer size of this data source
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
     /**
      * Checks to see whether any reads files are supplying data.
      * @return True if no reads files are supplying data to the traversal; false otherwise.
@@ -1216,13 +1282,38 @@ public class SAMDataSource {
         return SamFiles.findIndex(bamFile);
     }
 
+    /**
+     * Read BAM blocks ahead of the schedule, holding up to byteBudget bytes of compressed data in memory.
+     * Requires asynchronous I/O threads, since prefetched blocks are consumed by the I/O threads.
+     * @param byteBudget Maximum number of bytes of prefetched data.
+     */
+    public void enableBlockPrefetching(final long byteBudget) {
+        if(dispatcher == null)
+            throw new UserException.BadArgumentValue("bam_prefetch_mb","BAM prefetching requires asynchronous I/O threads (-nit)");
+        if(threadAllocation.useMemoryMappedIO())
+            throw new UserException.BadArgumentValue("bam_prefetch_mb","BAM prefetching cannot be combined with memory mapped BAM I/O");
+        logger.info(String.format("Prefetching BAM blocks; prefetch buffer size = %d bytes",byteBudget));
+        dispatcher.enablePrefetching(byteBudget);
+    }
+
+    /**
+     * Wraps the given schedule in a prefetcher if prefetching is enabled.
+     * @param filePointers The schedule.
+     * @return The schedule, reading ahead if so configured.
+     */
+    private Iterator<FilePointer> prefetch(final Iterator<FilePointer> filePointers) {
+        if(dispatcher == null || !dispatcher.isPrefetching())
+            return filePointers;
+        return new BAMPrefetcher(filePointers,dispatcher,BAMPrefetcher.DEFAULT_LOOKAHEAD);
+    }
+
     /**
      * Creates a BAM schedule over all reads in the BAM file, both mapped and unmapped.  The outgoing stream
      * will be as granular as possible given our current knowledge of the best ways to split up BAM files.
      * @return An iterator that spans all reads in all BAM files.
      */
     public Iterable<Shard> createShardIteratorOverAllReads(final ShardBalancer shardBalancer) {
-        shardBalancer.initialize(this,IntervalSharder.shardOverAllReads(this,genomeLocParser),genomeLocParser);
+        shardBalancer.initialize(this,prefetch(IntervalSharder.shardOverAllReads(this,genomeLocParser)),genomeLocParser);
         return shardBalancer;
     }
 
@@ -1234,7 +1325,7 @@ public class SAMDataSource {
      * @return non-null initialized version of the shard balancer
      */
     public Iterable<Shard> createShardIteratorOverMappedReads(final ShardBalancer shardBalancer) {
-        shardBalancer.initialize(this,IntervalSharder.shardOverMappedReads(this,genomeLocParser),genomeLocParser);
+        shardBalancer.initialize(this,prefetch(IntervalSharder.shardOverMappedReads(this,genomeLocParser)),genomeLocParser);
         return shardBalancer;
     }
 
@@ -1247,7 +1338,7 @@ public class SAMDataSource {
     public Iterable<Shard> createShardIteratorOverIntervals(final GenomeLocSortedSet intervals,final ShardBalancer shardBalancer) {
         if(intervals == null)
             throw new ReviewedGATKException("Unable to create schedule from intervals; no intervals were provided.");
-        shardBalancer.initialize(this,IntervalSharder.shardOverIntervals(SAMDataSource.this,intervals,intervalMergingRule),genomeLocParser);
+        shardBalancer.initialize(this,prefetch(IntervalSharder.shardOverIntervals(SAMDataSource.this,intervals,intervalMergingRule)),genomeLocParser);
         return shardBalancer;
     }
 }
@@ -56,7 +56,16 @@ public class ReferenceDataSource {
      * @param fastaFile Fasta file to be used as reference
      */
     public ReferenceDataSource(final File fastaFile) {
-        reference = CachingIndexedFastaSequenceFile.checkAndCreate(fastaFile);
+        this(fastaFile, 0);
+    }
+
+    /**
+     * Create reference data source from fasta file
+     * @param fastaFile Fasta file to be used as reference
+     * @param sharedStoreSize if > 0, keep up to this many bases of the reference in memory shared by all threads
+     */
+    public ReferenceDataSource(final File fastaFile, final long sharedStoreSize) {
+        reference = CachingIndexedFastaSequenceFile.checkAndCreate(fastaFile, sharedStoreSize);
     }
 
     /**
@@ -0,0 +1,310 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.rmd;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.refdata.tracks.RMDTrack;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds decoded features of indexed reference-ordered data, so that queries from different shards and data
+ * threads over the same part of the genome don't each decode the same records again.
+ *
+ * Features are cached in blocks of BLOCK_SIZE bp of each contig, each holding every feature of a track
+ * overlapping the block, in file order.  All tracks share a single byte budget, based on a rough estimate of
+ * the in-memory size of each feature; when it's exceeded, the least recently used blocks are evicted.
+ *
+ * Cached features are shared between threads, so they must not be modified.  The lazily decoded parts of
+ * VariantContexts are decoded before a block is cached, which makes caching tracks with many samples costly;
+ * the cache is intended for site-level resources like dbSNP.
+ */
+public class RODFeatureCache {
+    /**
+     * Size in bp of the blocks in which features are cached.
+     */
+    protected static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Rough estimates of the memory used by a feature, and by each of the genotypes and attributes of a VariantContext.
+     */
+    private static final long ESTIMATED_BYTES_PER_FEATURE = 512;
+    private static final long ESTIMATED_BYTES_PER_GENOTYPE = 128;
+    private static final long ESTIMATED_BYTES_PER_ATTRIBUTE = 64;
+
+    /**
+     * Maximum number of bytes held by all blocks.
+     */
+    private final long byteBudget;
+
+    /**
+     * Number of bytes currently held.
+     */
+    private long bytesCached = 0;
+
+    private long nHits = 0;
+    private long nMisses = 0;
+
+    /**
+     * All blocks, from the least to the most recently used.
+     */
+    private final LinkedHashMap<BlockKey,Block> blocks = new LinkedHashMap<BlockKey,Block>(16, 0.75f, true);
+
+    public RODFeatureCache(final long byteBudget) {
+        if(byteBudget < 1) throw new IllegalArgumentException("byteBudget must be >= 1, got " + byteBudget);
+        this.byteBudget = byteBudget;
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * @return the number of blocks found in the cache so far
+     */
+    public synchronized long getNumHits() {
+        return nHits;
+    }
+
+    /**
+     * @return the number of blocks that had to be decoded from the track so far
+     */
+    public synchronized long getNumMisses() {
+        return nMisses;
+    }
+
+    /**
+     * Gets the features of the track overlapping interval, decoding the blocks that aren't cached yet with track.
+     *
+     * @param trackKey identifies the track uniquely among all tracks using this cache, including the name given to its features.
+     * @param track the track, used only by the calling thread while the returned iterator is in use.
+     * @param interval the interval to query.
+     * @param genomeLocParser the parser to use when creating the intervals of blocks.
+     * @return an iterator over the features overlapping interval, sorted as the track would return them.
+     */
+    public CloseableIterator<GATKFeature> query(final String trackKey, final RMDTrack track, final GenomeLoc interval, final GenomeLocParser genomeLocParser) {
+        return new BlockIterator(trackKey, track, interval, genomeLocParser);
+    }
+
+    /**
+     * Gets the features of the track overlapping a block, from the cache if possible
+     */
+    private List<GATKFeature> getBlock(final String trackKey, final RMDTrack track, final GenomeLoc blockLoc, final int blockIndex) {
+        final BlockKey key = new BlockKey(trackKey, blockLoc.getContigIndex(), blockIndex);
+        synchronized (this) {
+            final Block block = blocks.get(key);
+            if(block != null) {
+                nHits++;
+                return block.features;
+            }
+            nMisses++;
+        }
+
+        // Decode outside of the lock, so that other threads can keep using the cache.  If another thread decodes
+        // the same block concurrently, the first one to finish wins.
+        final Block block = decodeBlock(track, blockLoc);
+        synchronized (this) {
+            final Block existing = blocks.get(key);
+            if(existing != null)
+                return existing.features;
+            if(block.size <= byteBudget) {
+                blocks.put(key, block);
+                bytesCached += block.size;
+                evictLeastRecentlyUsedBlocks();
+            }
+        }
+        return block.features;
+    }
+
+    private Block decodeBlock(final RMDTrack track, final GenomeLoc blockLoc) {
+        final List<GATKFeature> features = new ArrayList<GATKFeature>();
+        long size = 0;
+        try {
+            final CloseableIterator<GATKFeature> iterator = track.query(blockLoc);
+            try {
+                while(iterator.hasNext()) {
+                    final GATKFeature feature = iterator.next();
+                    size += prepareForSharing(feature);
+                    features.add(feature);
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (IOException e) {
+            throw new ReviewedGATKException("Unable to query rod named " + track.getName() + " at " + blockLoc, e);
+        }
+        return new Block(Collections.unmodifiableList(features), size);
+    }
+
+    /**
+     * Decodes the lazily decoded parts of a feature, so that it can safely be read by several threads
+     * @return an estimate of the memory used by the feature, in bytes
+     */
+    private long prepareForSharing(final GATKFeature feature) {
+        feature.getLocation();
+        long size = ESTIMATED_BYTES_PER_FEATURE;
+        if(feature.getUnderlyingObject() instanceof VariantContext) {
+            final VariantContext vc = (VariantContext)feature.getUnderlyingObject();
+            final GenotypesContext genotypes = vc.getGenotypes();
+            genotypes.getSampleNames();
+            genotypes.getSampleNamesOrderedByName();
+            size += genotypes.size() * ESTIMATED_BYTES_PER_GENOTYPE + vc.getAttributes().size() * ESTIMATED_BYTES_PER_ATTRIBUTE;
+        }
+        return size;
+    }
+
+    private void evictLeastRecentlyUsedBlocks() {
+        final Iterator<Block> it = blocks.values().iterator();
+        while(bytesCached > byteBudget && it.hasNext()) {
+            bytesCached -= it.next().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Iterates over the features overlapping an interval, one block at a time.  Every block holds all the features
+     * overlapping it, so features starting before a block are only taken from the first block of the interval.
+     */
+    private class BlockIterator implements CloseableIterator<GATKFeature> {
+        private final String trackKey;
+        private final RMDTrack track;
+        private final GenomeLoc interval;
+        private final GenomeLocParser genomeLocParser;
+        private final int firstBlockIndex;
+        private final int lastBlockIndex;
+
+        private int blockIndex;
+        private List<GATKFeature> blockFeatures = Collections.emptyList();
+        private int offsetInBlock = 0;
+        private GATKFeature nextFeature;
+
+        private BlockIterator(final String trackKey, final RMDTrack track, final GenomeLoc interval, final GenomeLocParser genomeLocParser) {
+            this.trackKey = trackKey;
+            this.track = track;
+            this.interval = interval;
+            this.genomeLocParser = genomeLocParser;
+            this.firstBlockIndex = (interval.getStart() - 1) / BLOCK_SIZE;
+            this.lastBlockIndex = (interval.getStop() - 1) / BLOCK_SIZE;
+            this.blockIndex = firstBlockIndex - 1;
+            advance();
+        }
+
+        private void advance() {
+            nextFeature = null;
+            while(nextFeature == null) {
+                if(offsetInBlock == blockFeatures.size()) {
+                    if(blockIndex == lastBlockIndex)
+                        return;
+                    blockIndex++;
+                    final GenomeLoc blockLoc = genomeLocParser.createGenomeLoc(interval.getContig(), interval.getContigIndex(),
+                            blockIndex * BLOCK_SIZE + 1, (blockIndex + 1) * BLOCK_SIZE);
+                    blockFeatures = getBlock(trackKey, track, blockLoc, blockIndex);
+                    offsetInBlock = 0;
+                    continue;
+                }
+
+                // features starting before this block were already returned from an earlier block of the interval
+                final GATKFeature feature = blockFeatures.get(offsetInBlock++);
+                final GenomeLoc loc = feature.getLocation();
+                final boolean startsInBlock = loc.getStart() > blockIndex * BLOCK_SIZE;
+                if(loc.overlapsP(interval) && (startsInBlock || blockIndex == firstBlockIndex))
+                    nextFeature = feature;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextFeature != null;
+        }
+
+        @Override
+        public GATKFeature next() {
+            if(nextFeature == null)
+                throw new NoSuchElementException("No more features overlapping " + interval);
+            final GATKFeature feature = nextFeature;
+            advance();
+            return feature;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove features from the cache");
+        }
+
+        @Override
+        public void close() {
+            // Blocks are read completely when loaded, so there's nothing left open.
+        }
+    }
+
+    private static class Block {
+        private final List<GATKFeature> features;
+        private final long size;
+
+        private Block(final List<GATKFeature> features, final long size) {
+            this.features = features;
+            this.size = size;
+        }
+    }
+
+    private static class BlockKey {
+        private final String trackKey;
+        private final int contigIndex;
+        private final int blockIndex;
+
+        private BlockKey(final String trackKey, final int contigIndex, final int blockIndex) {
+            this.trackKey = trackKey;
+            this.contigIndex = contigIndex;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if(!(other instanceof BlockKey))
+                return false;
+            final BlockKey otherKey = (BlockKey)other;
+            return trackKey.equals(otherKey.trackKey) && contigIndex == otherKey.contigIndex && blockIndex == otherKey.blockIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * trackKey.hashCode() + contigIndex) + blockIndex;
+        }
+    }
+}
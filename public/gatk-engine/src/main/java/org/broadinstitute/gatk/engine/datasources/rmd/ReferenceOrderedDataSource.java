@@ -41,6 +41,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -80,6 +81,19 @@ public class ReferenceOrderedDataSource {
                                       SAMSequenceDictionary referenceSequenceDictionary,
                                       GenomeLocParser genomeLocParser,
                                       boolean flashbackData ) {
+        this(fileDescriptor, builder, referenceSequenceDictionary, genomeLocParser, flashbackData, null);
+    }
+
+    /**
+     * Create a new reference-ordered data source, keeping the features decoded from indexed data in featureCache.
+     * @param featureCache cache of decoded features shared with other data sources, or null to decode features for every query.
+     */
+    public ReferenceOrderedDataSource(RMDTriplet fileDescriptor,
+                                      RMDTrackBuilder builder,
+                                      SAMSequenceDictionary referenceSequenceDictionary,
+                                      GenomeLocParser genomeLocParser,
+                                      boolean flashbackData,
+                                      RODFeatureCache featureCache ) {
         this.fileDescriptor = fileDescriptor;
         this.builder = builder;
 
@@ -88,7 +102,8 @@ public class ReferenceOrderedDataSource {
             iteratorPool = new ReferenceOrderedQueryDataPool(fileDescriptor,
                                                              builder,
                                                              referenceSequenceDictionary,
-                                                             genomeLocParser);
+                                                             genomeLocParser,
+                                                             featureCache);
             this.header = ((ReferenceOrderedQueryDataPool)iteratorPool).getHeader();
             this.sequenceDictionary = ((ReferenceOrderedQueryDataPool)iteratorPool).getSequenceDictionary();
         }
@@ -136,6 +151,15 @@ public class ReferenceOrderedDataSource {
     }
 
 
+    /**
+     * Decode genotypes for only the given samples from now on, if this ROD is a VCF text file.  Records
+     * will carry just the selected genotypes, while getHeader() still describes every sample in the file.
+     * @param samples Samples whose genotypes should be decoded.  Empty to decode sites only.
+     */
+    public void selectGenotypeSamples(final Collection<String> samples) {
+        builder.getSampleSelection(getName()).selectSamples(samples);
+    }
+
     /**
      * Retrieves the sequence dictionary created by this ROD.
      * @return
@@ -199,10 +223,20 @@ class ReferenceOrderedQueryDataPool extends ResourcePool<RMDTrack,LocationAwareS
      */
     private final SAMSequenceDictionary sequenceDictionary;
 
+    /**
+     * Decoded features shared with the pools of other data sources, or null if features are decoded for every query.
+     */
+    private final RODFeatureCache featureCache;
+
     public ReferenceOrderedQueryDataPool(RMDTriplet fileDescriptor, RMDTrackBuilder builder, SAMSequenceDictionary referenceSequenceDictionary, GenomeLocParser genomeLocParser) {
+        this(fileDescriptor, builder, referenceSequenceDictionary, genomeLocParser, null);
+    }
+
+    public ReferenceOrderedQueryDataPool(RMDTriplet fileDescriptor, RMDTrackBuilder builder, SAMSequenceDictionary referenceSequenceDictionary, GenomeLocParser genomeLocParser, RODFeatureCache featureCache) {
         super(referenceSequenceDictionary,genomeLocParser);
         this.fileDescriptor = fileDescriptor;
         this.builder = builder;
+        this.featureCache = featureCache;
 
         // prepopulate one RMDTrack
         RMDTrack track = builder.createInstanceOfTrack(fileDescriptor);
@@ -238,6 +272,9 @@ class ReferenceOrderedQueryDataPool extends ResourcePool<RMDTrack,LocationAwareS
         try {
             if (position instanceof MappedStreamSegment) {
                 GenomeLoc pos = ((MappedStreamSegment) position).locus;
+                if (featureCache != null)
+                    return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,
+                            featureCache.query(fileDescriptor.getName() + "\t" + fileDescriptor.getFile(),track,pos,genomeLocParser));
                 return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,track.query(pos));
             } else {
                 return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,track.getIterator());
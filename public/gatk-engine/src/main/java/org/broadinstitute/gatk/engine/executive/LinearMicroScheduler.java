@@ -112,6 +112,10 @@ public class LinearMicroScheduler extends MicroScheduler {
             done = walker.isDone();
         }
 
+        // the traversal may still be working on the last shards
+        if ( traversalEngine.hasPendingWork() )
+            accumulator.accumulate(null, traversalEngine.finishPendingWork(walker, accumulator.getReduceInit()));
+
         Object result = accumulator.finishTraversal();
 
         outputTracker.close();
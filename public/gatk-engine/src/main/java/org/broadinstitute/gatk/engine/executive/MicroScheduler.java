@@ -43,6 +43,7 @@ import org.broadinstitute.gatk.utils.AutoFormattingTime;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.fasta.SharedIndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
@@ -207,6 +208,9 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
                 availableTraversalEngines.peek().getTraversalUnits(),
                 engine.getRegionsOfGenomeBeingProcessed(),
                 engine.getArguments().secondsBetweenProgressUpdates));
+        // only the shared store's statistics are worth reporting, the thread-local caches are always busy
+        if ( reference instanceof SharedIndexedFastaSequenceFile )
+            engine.getProgressMeter().setReference((SharedIndexedFastaSequenceFile)reference);
 
         // Now that we have a progress meter, go through and initialize the traversal engines
         for ( final TraversalEngine traversalEngine : allCreatedTraversalEngines )
@@ -234,15 +238,16 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
     @Ensures("result != null")
     private TraversalEngine createTraversalEngine(final Walker walker, final ThreadAllocation threadAllocation) {
         if (walker instanceof ReadWalker) {
-            return new TraverseReadsNano(threadAllocation.getNumCPUThreadsPerDataThread());
+            return new TraverseReadsNano(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.useWorkStealingNanoScheduler());
         } else if (walker instanceof LocusWalker) {
-            return new TraverseLociNano(threadAllocation.getNumCPUThreadsPerDataThread());
+            return new TraverseLociNano(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.useWorkStealingNanoScheduler());
         } else if (walker instanceof DuplicateWalker) {
             return new TraverseDuplicates();
         } else if (walker instanceof ReadPairWalker) {
             return new TraverseReadPairs();
         } else if (walker instanceof ActiveRegionWalker) {
-            return new TraverseActiveRegions(threadAllocation.getNumCPUThreadsPerDataThread());
+            final boolean pipelineRegions = engine.getArguments() != null && engine.getArguments().pipelineActiveRegions;
+            return new TraverseActiveRegions(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.useWorkStealingNanoScheduler(), pipelineRegions);
         } else {
             throw new UnsupportedOperationException("Unable to determine traversal type, the walker is an unknown type.");
         }
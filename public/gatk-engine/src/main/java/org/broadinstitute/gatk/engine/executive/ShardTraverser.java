@@ -98,6 +98,8 @@ public class ShardTraverser implements Callable {
                 accumulator = traversalEngine.traverse(walker, dataProvider, accumulator);
                 dataProvider.close();
             }
+            if ( traversalEngine.hasPendingWork() )
+                accumulator = traversalEngine.finishPendingWork(walker, accumulator);
 
             windowMaker.close();
             outputMergeTask = outputTracker.closeStorage();
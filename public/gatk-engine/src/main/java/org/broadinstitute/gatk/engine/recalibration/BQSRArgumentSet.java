@@ -40,6 +40,7 @@ public class BQSRArgumentSet {
     private boolean emitOriginalQuals;
     private int PRESERVE_QSCORES_LESS_THAN;
     private double globalQScorePrior;
+    private int lookupMegabytes;
 
     public BQSRArgumentSet(final GATKArgumentCollection args) {
         this.BQSR_RECAL_FILE = args.BQSR_RECAL_FILE;
@@ -50,6 +51,7 @@ public class BQSRArgumentSet {
         this.emitOriginalQuals = args.emitOriginalQuals;
         this.PRESERVE_QSCORES_LESS_THAN = args.PRESERVE_QSCORES_LESS_THAN;
         this.globalQScorePrior = args.globalQScorePrior;
+        this.lookupMegabytes = args.bqsrLookupMegabytes;
     }
 
     public File getRecalFile() { return BQSR_RECAL_FILE; }
@@ -68,6 +70,8 @@ public class BQSRArgumentSet {
 
     public double getGlobalQScorePrior() { return globalQScorePrior; }
 
+    public int getLookupMegabytes() { return lookupMegabytes; }
+
     public void setRecalFile(final File BQSR_RECAL_FILE) {
         this.BQSR_RECAL_FILE = BQSR_RECAL_FILE;
     }
@@ -97,4 +101,8 @@ public class BQSRArgumentSet {
     public void setGlobalQScorePrior(final double globalQScorePrior) {
         this.globalQScorePrior = globalQScorePrior;
     }
+
+    public void setLookupMegabytes(final int lookupMegabytes) {
+        this.lookupMegabytes = lookupMegabytes;
+    }
 }
@@ -56,7 +56,7 @@ public class BQSRReadTransformer extends ReadTransformer {
             // Although we could add this check to the apply() method below, it's kind of ugly and inefficient.
             // The call here would be: RecalUtils.checkForInvalidRecalBams(engine.getSAMFileHeaders(), engine.getArguments().ALLOW_BQSR_ON_REDUCED_BAMS);
             final BQSRArgumentSet args = engine.getBQSRArgumentSet();
-            this.bqsr = new BaseRecalibration(args.getRecalFile(), args.getQuantizationLevels(), args.shouldDisableIndelQuals(), args.getPreserveQscoresLessThan(), args.shouldEmitOriginalQuals(), args.getGlobalQScorePrior(), args.getStaticQuantizedQuals(), args.getRoundDown());
+            this.bqsr = new BaseRecalibration(args.getRecalFile(), args.getQuantizationLevels(), args.shouldDisableIndelQuals(), args.getPreserveQscoresLessThan(), args.shouldEmitOriginalQuals(), args.getGlobalQScorePrior(), args.getStaticQuantizedQuals(), args.getRoundDown(), args.getLookupMegabytes() * 1024L * 1024L);
         }
         final BQSRMode mode = WalkerManager.getWalkerAnnotation(walker, BQSRMode.class);
         return mode.ApplicationTime();
@@ -39,7 +39,6 @@ import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import java.util.Collections;
 import java.util.Iterator;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -64,6 +63,11 @@ public class BaseRecalibration {
 
     private byte[] staticQuantizedMapping = null;
 
+    /**
+     * Precomputed recalibrated qualities, or null to compute them base by base
+     */
+    private final RecalibratedQualityLookup qualityLookup;
+
     /**
      * Constructor using a GATK Report file
      *
@@ -74,6 +78,22 @@ public class BaseRecalibration {
      * @param staticQuantizedQuals static quantized bins for quality scores
      */
     public BaseRecalibration(final File RECAL_FILE, final int quantizationLevels, final boolean disableIndelQuals, final int preserveQLessThan, final boolean emitOriginalQuals, final double globalQScorePrior, final List<Integer> staticQuantizedQuals, final boolean roundDown) {
+        this(RECAL_FILE, quantizationLevels, disableIndelQuals, preserveQLessThan, emitOriginalQuals, globalQScorePrior, staticQuantizedQuals, roundDown, 0);
+    }
+
+    /**
+     * Constructor using a GATK Report file, optionally precomputing the recalibrated quality of every combination
+     * of covariates present in the report
+     *
+     * @param RECAL_FILE         a GATK Report file containing the recalibration information
+     * @param quantizationLevels number of bins to quantize the quality scores
+     * @param disableIndelQuals  if true, do not emit base indel qualities
+     * @param preserveQLessThan  preserve quality scores less than this value
+     * @param staticQuantizedQuals static quantized bins for quality scores
+     * @param maxLookupBytes     maximum size of the precomputed qualities.  If 0, or if the qualities need more memory
+     *                           than that, qualities are computed base by base.
+     */
+    public BaseRecalibration(final File RECAL_FILE, final int quantizationLevels, final boolean disableIndelQuals, final int preserveQLessThan, final boolean emitOriginalQuals, final double globalQScorePrior, final List<Integer> staticQuantizedQuals, final boolean roundDown, final long maxLookupBytes) {
         RecalibrationReport recalibrationReport = new RecalibrationReport(RECAL_FILE);
 
         recalibrationTables = recalibrationReport.getRecalibrationTables();
@@ -97,6 +117,18 @@ public class BaseRecalibration {
             }
             staticQuantizedMapping = constructStaticQuantizedMapping(staticQuantizedQuals, roundDown);
         }
+
+        qualityLookup = maxLookupBytes > 0 ? createQualityLookup(maxLookupBytes) : null;
+    }
+
+    private RecalibratedQualityLookup createQualityLookup(final long maxLookupBytes) {
+        final EventType[] events = disableIndelQuals ? new EventType[]{EventType.BASE_SUBSTITUTION} : EventType.values();
+        final RecalibratedQualityLookup lookup = RecalibratedQualityLookup.create(this, recalibrationTables, requestedCovariates.length, events, maxLookupBytes);
+        if ( lookup == null )
+            logger.info(String.format("Precomputed recalibrated qualities would need more than %d bytes, computing them base by base instead", maxLookupBytes));
+        else
+            logger.info(String.format("Precomputed recalibrated qualities in %d bytes", lookup.getSizeInBytes()));
+        return lookup;
     }
 
     /**
@@ -143,41 +175,30 @@ public class BaseRecalibration {
 
             // the rg key is constant over the whole read, the global deltaQ is too
             final int rgKey = fullReadKeySet[0][0];
-            final RecalDatum empiricalQualRG = recalibrationTables.getReadGroupTable().get(rgKey, errorModel.ordinal());
-
-            if( empiricalQualRG != null ) {
-                final double epsilon = ( globalQScorePrior > 0.0 && errorModel.equals(EventType.BASE_SUBSTITUTION) ? globalQScorePrior : empiricalQualRG.getEstimatedQReported() );
-
-                for (int offset = 0; offset < readLength; offset++) { // recalibrate all bases in the read
-                    final byte origQual = quals[offset];
-
-                    // only recalibrate usable qualities (the original quality will come from the instrument -- reported quality)
-                    if ( origQual >= preserveQLessThan ) {
-                        // get the keyset for this base using the error model
-                        final int[] keySet = fullReadKeySet[offset];
-                        final RecalDatum empiricalQualQS = recalibrationTables.getQualityScoreTable().get(keySet[0], keySet[1], errorModel.ordinal());
-                        final List<RecalDatum> empiricalQualCovs = new ArrayList<RecalDatum>();
-                        for (int i = 2; i < requestedCovariates.length; i++) {
-                            if (keySet[i] < 0) {
-                                continue;
-                            }
-                            empiricalQualCovs.add(recalibrationTables.getTable(i).get(keySet[0], keySet[1], keySet[i], errorModel.ordinal()));
-                        }
-
-                        double recalibratedQualDouble = hierarchicalBayesianQualityEstimate( epsilon, empiricalQualRG, empiricalQualQS, empiricalQualCovs );
 
-                        // recalibrated quality is bound between 1 and MAX_QUAL
-                        final byte recalibratedQual = QualityUtils.boundQual(MathUtils.fastRound(recalibratedQualDouble), RecalDatum.MAX_RECALIBRATED_Q_SCORE);
-
-                        // return the quantized version of the recalibrated quality
-                        final byte recalibratedQualityScore = quantizationInfo.getQuantizedQuals().get(recalibratedQual);
-
-                        // Bin to static quals
-                        if(staticQuantizedMapping != null) {
-                            quals[offset] = staticQuantizedMapping[recalibratedQualityScore];
-                        }
-                        else {
-                            quals[offset] = recalibratedQualityScore;
+            if ( qualityLookup != null ) {
+                if ( qualityLookup.hasData(rgKey, errorModel.ordinal()) ) {
+                    for (int offset = 0; offset < readLength; offset++) { // recalibrate all bases in the read
+                        // only recalibrate usable qualities (the original quality will come from the instrument -- reported quality)
+                        if ( quals[offset] >= preserveQLessThan )
+                            quals[offset] = qualityLookup.recalibratedQual(errorModel.ordinal(), fullReadKeySet[offset]);
+                    }
+                }
+            }
+            else {
+                final RecalDatumTable rgTable = recalibrationTables.getReadGroupTable();
+                final long rgCell = rgTable.getCell(rgKey, errorModel.ordinal());
+
+                if( rgCell >= 0 ) {
+                    final double epsilon = ( globalQScorePrior > 0.0 && errorModel.equals(EventType.BASE_SUBSTITUTION) ? globalQScorePrior : rgTable.getEstimatedQReported(rgCell) );
+                    final double globalDeltaQ = rgTable.getEmpiricalQuality(rgCell, epsilon) - epsilon;
+
+                    for (int offset = 0; offset < readLength; offset++) { // recalibrate all bases in the read
+                        // only recalibrate usable qualities (the original quality will come from the instrument -- reported quality)
+                        if ( quals[offset] >= preserveQLessThan ) {
+                            // get the keyset for this base using the error model
+                            final int[] keySet = fullReadKeySet[offset];
+                            quals[offset] = computeRecalibratedQual(epsilon, globalDeltaQ, keySet, errorModel.ordinal());
                         }
                     }
                 }
@@ -249,6 +270,62 @@ public class BaseRecalibration {
         return mapping;
     }
 
+    /**
+     * Compute the final recalibrated quality of a base of a read group with data for the given event type
+     *
+     * @param keySet the covariate keys of the base
+     * @param errorModel the event type
+     * @return the recalibrated, quantized quality of the base
+     */
+    byte computeRecalibratedQual(final int[] keySet, final EventType errorModel) {
+        final RecalDatumTable rgTable = recalibrationTables.getReadGroupTable();
+        final long rgCell = rgTable.getCell(keySet[0], errorModel.ordinal());
+        final double epsilon = ( globalQScorePrior > 0.0 && errorModel.equals(EventType.BASE_SUBSTITUTION) ? globalQScorePrior : rgTable.getEstimatedQReported(rgCell) );
+        final double globalDeltaQ = rgTable.getEmpiricalQuality(rgCell, epsilon) - epsilon;
+        return computeRecalibratedQual(epsilon, globalDeltaQ, keySet, errorModel.ordinal());
+    }
+
+    private byte computeRecalibratedQual(final double epsilon, final double globalDeltaQ, final int[] keySet, final int eventIndex) {
+        final double recalibratedQualDouble = hierarchicalBayesianQualityEstimate( epsilon, globalDeltaQ, keySet, eventIndex );
+
+        // recalibrated quality is bound between 1 and MAX_QUAL
+        final byte recalibratedQual = QualityUtils.boundQual(MathUtils.fastRound(recalibratedQualDouble), RecalDatum.MAX_RECALIBRATED_Q_SCORE);
+
+        // return the quantized version of the recalibrated quality
+        final byte recalibratedQualityScore = quantizationInfo.getQuantizedQuals().get(recalibratedQual);
+
+        // Bin to static quals
+        return staticQuantizedMapping != null ? staticQuantizedMapping[recalibratedQualityScore] : recalibratedQualityScore;
+    }
+
+    /**
+     * Same as hierarchicalBayesianQualityEstimate() on the datums of the recalibration tables for one base, reading
+     * the tables through their primitive accessors instead of creating RecalDatum objects
+     *
+     * @param epsilon the prior for the read group
+     * @param globalDeltaQ the read group shift, ie. the empirical quality of the read group datum minus epsilon
+     * @param keySet the covariate keys of the base
+     * @param eventIndex the ordinal of the event type
+     * @return the recalibrated quality of the base
+     */
+    @Ensures("result > 0.0")
+    private double hierarchicalBayesianQualityEstimate( final double epsilon, final double globalDeltaQ, final int[] keySet, final int eventIndex ) {
+        final RecalDatumTable qualTable = recalibrationTables.getQualityScoreTable();
+        final long qualCell = qualTable.getCell(keySet[0], keySet[1], eventIndex);
+        final double deltaQReported = ( qualCell < 0 ? 0.0 : qualTable.getEmpiricalQuality(qualCell, globalDeltaQ + epsilon) - (globalDeltaQ + epsilon) );
+        double deltaQCovariates = 0.0;
+        for (int i = 2; i < requestedCovariates.length; i++) {
+            if (keySet[i] < 0) {
+                continue;
+            }
+            final RecalDatumTable covTable = recalibrationTables.getTable(i);
+            final long covCell = covTable.getCell(keySet[0], keySet[1], keySet[i], eventIndex);
+            deltaQCovariates += ( covCell < 0 ? 0.0 : covTable.getEmpiricalQuality(covCell, deltaQReported + globalDeltaQ + epsilon) - (deltaQReported + globalDeltaQ + epsilon) );
+        }
+
+        return epsilon + globalDeltaQ + deltaQReported + deltaQCovariates;
+    }
+
     @Ensures("result > 0.0")
     protected static double hierarchicalBayesianQualityEstimate( final double epsilon, final RecalDatum empiricalQualRG, final RecalDatum empiricalQualQS, final List<RecalDatum> empiricalQualCovs ) {
         final double globalDeltaQ = ( empiricalQualRG == null ? 0.0 : empiricalQualRG.getEmpiricalQuality(epsilon) - epsilon );
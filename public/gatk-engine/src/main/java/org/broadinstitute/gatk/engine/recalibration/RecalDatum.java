@@ -80,7 +80,7 @@ import org.broadinstitute.gatk.utils.QualityUtils;
 })
 public class RecalDatum {
     public final static byte MAX_RECALIBRATED_Q_SCORE = SAMUtils.MAX_PHRED_SCORE;
-    private static final double UNINITIALIZED = -1.0;
+    static final double UNINITIALIZED = -1.0;
 
     /**
      * estimated reported quality score based on combined data's individual q-reporteds and number of observations
@@ -138,8 +138,15 @@ public class RecalDatum {
     public RecalDatum(final RecalDatum copy) {
         this.numObservations = copy.getNumObservations();
         this.numMismatches = copy.getNumMismatches();
-        this.estimatedQReported = copy.estimatedQReported;
-        this.empiricalQuality = copy.empiricalQuality;
+        this.estimatedQReported = copy.getEstimatedQReported();
+        this.empiricalQuality = copy.getCachedEmpiricalQuality();
+    }
+
+    /**
+     * For subclasses that keep their data elsewhere (see RecalDatumTable), and override all accessors
+     */
+    protected RecalDatum() {
+        this(0L, 0.0, (byte)0);
     }
 
     /**
@@ -164,7 +171,7 @@ public class RecalDatum {
         empiricalQuality = UNINITIALIZED;
     }
 
-    public final double getEstimatedQReported() {
+    public double getEstimatedQReported() {
         return estimatedQReported;
     }
     public final byte getEstimatedQReportedAsByte() {
@@ -183,13 +190,13 @@ public class RecalDatum {
      */
     @Ensures({"result >= 0.0"})
     public double getEmpiricalErrorRate() {
-        if ( numObservations == 0 )
+        if ( getNumObservations() == 0 )
             return 0.0;
         else {
             // cache the value so we don't call log over and over again
-            final double doubleMismatches = numMismatches + SMOOTHING_CONSTANT;
+            final double doubleMismatches = getNumMismatches() + SMOOTHING_CONSTANT;
             // smoothing is one error and one non-error observation, for example
-            final double doubleObservations = numObservations + SMOOTHING_CONSTANT + SMOOTHING_CONSTANT;
+            final double doubleObservations = getNumObservations() + SMOOTHING_CONSTANT + SMOOTHING_CONSTANT;
             return doubleMismatches / doubleObservations;
         }
     }
@@ -206,7 +213,7 @@ public class RecalDatum {
         return getEmpiricalQuality(getEstimatedQReported());
     }
 
-    public synchronized final double getEmpiricalQuality(final double conditionalPrior) {
+    public synchronized double getEmpiricalQuality(final double conditionalPrior) {
         if (empiricalQuality == UNINITIALIZED) {
             calcEmpiricalQuality(conditionalPrior);
         }
@@ -238,42 +245,42 @@ public class RecalDatum {
     //
     //---------------------------------------------------------------------------------------------------------------
 
-    public final long getNumObservations() {
+    public long getNumObservations() {
         return numObservations;
     }
 
-    public final synchronized void setNumObservations(final long numObservations) {
+    public synchronized void setNumObservations(final long numObservations) {
         if ( numObservations < 0 ) throw new IllegalArgumentException("numObservations < 0");
         this.numObservations = numObservations;
         empiricalQuality = UNINITIALIZED;
     }
 
-    public final double getNumMismatches() {
+    public double getNumMismatches() {
         return numMismatches;
     }
 
     @Requires({"numMismatches >= 0"})
-    public final synchronized void setNumMismatches(final double numMismatches) {
+    public synchronized void setNumMismatches(final double numMismatches) {
         if ( numMismatches < 0 ) throw new IllegalArgumentException("numMismatches < 0");
         this.numMismatches = numMismatches;
         empiricalQuality = UNINITIALIZED;
     }
 
     @Requires({"by >= 0"})
-    public final synchronized void incrementNumObservations(final long by) {
+    public synchronized void incrementNumObservations(final long by) {
         numObservations += by;
         empiricalQuality = UNINITIALIZED;
     }
 
     @Requires({"by >= 0"})
-    public final synchronized void incrementNumMismatches(final double by) {
+    public synchronized void incrementNumMismatches(final double by) {
         numMismatches += by;
         empiricalQuality = UNINITIALIZED;
     }
 
     @Requires({"incObservations >= 0", "incMismatches >= 0"})
     @Ensures({"numObservations == old(numObservations) + incObservations", "numMismatches == old(numMismatches) + incMismatches"})
-    public final synchronized void increment(final long incObservations, final double incMismatches) {
+    public synchronized void increment(final long incObservations, final double incMismatches) {
         numObservations += incObservations;
         numMismatches += incMismatches;
         empiricalQuality = UNINITIALIZED;
@@ -298,7 +305,19 @@ public class RecalDatum {
      */
     @Ensures("result >= 0.0")
     private double calcExpectedErrors() {
-        return getNumObservations() * QualityUtils.qualToErrorProb(estimatedQReported);
+        return calcExpectedErrors(getNumObservations(), getEstimatedQReported());
+    }
+
+    @Ensures("result >= 0.0")
+    static double calcExpectedErrors(final long numObservations, final double estimatedQReported) {
+        return numObservations * QualityUtils.qualToErrorProb(estimatedQReported);
+    }
+
+    /**
+     * @return the cached empirical quality, or UNINITIALIZED if it hasn't been computed yet
+     */
+    double getCachedEmpiricalQuality() {
+        return empiricalQuality;
     }
 
     /**
@@ -307,17 +326,24 @@ public class RecalDatum {
     @Requires("empiricalQuality == UNINITIALIZED")
     @Ensures("empiricalQuality != UNINITIALIZED")
     private synchronized void calcEmpiricalQuality(final double conditionalPrior) {
+        empiricalQuality = calcEmpiricalQuality(getNumObservations(), getNumMismatches(), conditionalPrior);
+    }
+
+    /**
+     * Calculate the empirical quality score from mismatches and observations (expensive operation)
+     */
+    static double calcEmpiricalQuality(final long numObservations, final double numMismatches, final double conditionalPrior) {
 
         // smoothing is one error and one non-error observation
-        final long mismatches = (long)(getNumMismatches() + 0.5) + SMOOTHING_CONSTANT;
-        final long observations = getNumObservations() + SMOOTHING_CONSTANT + SMOOTHING_CONSTANT;
+        final long mismatches = (long)(numMismatches + 0.5) + SMOOTHING_CONSTANT;
+        final long observations = numObservations + SMOOTHING_CONSTANT + SMOOTHING_CONSTANT;
 
         final double empiricalQual = RecalDatum.bayesianEstimateOfEmpiricalQuality(observations, mismatches, conditionalPrior);
 
         // This is the old and busted point estimate approach:
         //final double empiricalQual = -10 * Math.log10(getEmpiricalErrorRate());
 
-        empiricalQuality = Math.min(empiricalQual, (double) MAX_RECALIBRATED_Q_SCORE);
+        return Math.min(empiricalQual, (double) MAX_RECALIBRATED_Q_SCORE);
     }
 
     //static final boolean DEBUG = false;
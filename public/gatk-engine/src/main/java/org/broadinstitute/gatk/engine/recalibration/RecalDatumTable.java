@@ -0,0 +1,610 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.recalibration;
+
+import org.broadinstitute.gatk.utils.collections.LoggingNestedIntegerArray;
+import org.broadinstitute.gatk.utils.collections.NestedIntegerArray;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of RecalDatums stored as parallel primitive arrays rather than as a tree of objects.
+ *
+ * Each combination of keys is mapped to a cell, numbering the cells in row-major order of the keys.  The
+ * observations, mismatches, reported and empirical qualities of all cells are kept in parallel arrays, split
+ * into pages of PAGE_SIZE cells that are only allocated once a datum is put in one of their cells, since the
+ * covariate tables are far too large to allocate densely.
+ *
+ * The table keeps the NestedIntegerArray API: get() returns a RecalDatum that reads and writes through to the
+ * table, and put() copies the given datum into the table.  Code on hot paths should rather find the cell of a
+ * datum with getCell() and use the primitive accessors, which don't allocate anything.
+ *
+ * Updates are not synchronized: a table is filled by a single thread.  Threads counting observations concurrently
+ * each count into their own tables, handed out by ThreadLocalRecalibrationCounts, which are added together with
+ * addCounts() once counting is done.  Once filled, a table may be read by any number of threads: pages are
+ * published through an AtomicReferenceArray, and the empirical qualities cached by readers are kept in an
+ * AtomicLongArray, so that readers never see a partially constructed page or a torn quality.
+ */
+public final class RecalDatumTable extends NestedIntegerArray<RecalDatum> {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Pages of cells, allocated on demand.
+     */
+    private final AtomicReferenceArray<Page> pages;
+
+    /**
+     * Where to log get() and put() calls, in the format of LoggingNestedIntegerArray, or null for no logging.
+     */
+    private final PrintStream log;
+    private final String logEntryLabel;
+
+    /**
+     * Create an empty table
+     * @param dimensions the size of each dimension of the keys
+     */
+    public RecalDatumTable(final int... dimensions) {
+        this(null, null, dimensions);
+    }
+
+    /**
+     * Create an empty table that logs all calls to get() and put() like a LoggingNestedIntegerArray.
+     * @param log output stream to which to log operations, or null for no logging
+     * @param logEntryLabel String that should be prefixed to each log entry
+     * @param dimensions the size of each dimension of the keys
+     */
+    public RecalDatumTable(final PrintStream log, final String logEntryLabel, final int... dimensions) {
+        super(false, dimensions);
+
+        long numCells = 1;
+        for ( final int dimension : dimensions ) {
+            if ( dimension < 1 )
+                throw new ReviewedGATKException("RecalDatumTable dimensions must be positive, but saw " + Arrays.toString(dimensions));
+            numCells *= dimension;
+        }
+        final long numPages = (numCells + PAGE_SIZE - 1) >> PAGE_BITS;
+        if ( numPages > Integer.MAX_VALUE )
+            throw new ReviewedGATKException("RecalDatumTable with dimensions " + Arrays.toString(dimensions) + " is too large");
+        pages = new AtomicReferenceArray<Page>((int)numPages);
+
+        this.log = log;
+        this.logEntryLabel = logEntryLabel != null ? logEntryLabel : "";
+        if ( log != null ) {
+            final StringBuilder logHeaderLine = new StringBuilder(LoggingNestedIntegerArray.HEADER_LINE_PREFIX);
+            logHeaderLine.append(this.logEntryLabel);
+            for ( final int dimension : dimensions )
+                logHeaderLine.append("\t").append(dimension);
+            log.println(logHeaderLine.toString());
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // primitive accessors
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Find the cell holding the datum at the given keys
+     * @param keys the keys of the datum
+     * @return the cell of the datum, or -1 if there is no datum at these keys, or they are out of range
+     */
+    public long getCell(final int... keys) {
+        if ( keys.length != numDimensions )
+            return -1;
+
+        long cell = 0;
+        for ( int i = 0; i < numDimensions; i++ ) {
+            if ( keys[i] < 0 || keys[i] >= dimensions[i] )
+                return -1;
+            cell = cell * dimensions[i] + keys[i];
+        }
+
+        final Page page = pages.get((int)(cell >>> PAGE_BITS));
+        return page != null && page.present[(int)cell & PAGE_MASK] ? cell : -1;
+    }
+
+    /**
+     * @param cell the cell of a datum, as returned by getCell()
+     * @return the number of observations of the datum
+     */
+    public long getNumObservations(final long cell) {
+        return pages.get((int)(cell >>> PAGE_BITS)).numObservations[(int)cell & PAGE_MASK];
+    }
+
+    /**
+     * @param cell the cell of a datum, as returned by getCell()
+     * @return the number of mismatches of the datum
+     */
+    public double getNumMismatches(final long cell) {
+        return pages.get((int)(cell >>> PAGE_BITS)).numMismatches[(int)cell & PAGE_MASK];
+    }
+
+    /**
+     * @param cell the cell of a datum, as returned by getCell()
+     * @return the estimated reported quality of the datum
+     */
+    public double getEstimatedQReported(final long cell) {
+        return pages.get((int)(cell >>> PAGE_BITS)).estimatedQReported[(int)cell & PAGE_MASK];
+    }
+
+    /**
+     * Same as RecalDatum.getEmpiricalQuality(conditionalPrior) for the datum in the given cell
+     * @param cell the cell of a datum, as returned by getCell()
+     * @param conditionalPrior prior used to compute the empirical quality, if it isn't cached yet
+     * @return the empirical quality of the datum
+     */
+    public double getEmpiricalQuality(final long cell, final double conditionalPrior) {
+        return pages.get((int)(cell >>> PAGE_BITS)).getEmpiricalQuality((int)cell & PAGE_MASK, conditionalPrior);
+    }
+
+    /**
+     * Add observations to the datum at the given keys, creating it with the given reported quality if necessary.
+     * Equivalent to RecalUtils.incrementDatumOrPutIfNecessary(), without allocating any object.
+     *
+     * @param reportedQuality reported quality of the datum, if it has to be created
+     * @param incObservations number of observations to add
+     * @param incMismatches number of mismatches to add
+     * @param keys the keys of the datum
+     */
+    public void increment(final byte reportedQuality, final long incObservations, final double incMismatches, final int... keys) {
+        final long cell = getCellForUpdate(keys);
+        final Page page = getOrAllocatePage(cell);
+        final int offset = (int)cell & PAGE_MASK;
+
+        if ( ! page.present[offset] ) {
+            page.estimatedQReported[offset] = reportedQuality;
+            page.present[offset] = true;
+        }
+        page.increment(offset, incObservations, incMismatches);
+    }
+
+    /**
+     * Add the observations and mismatches of every datum of other to this table, creating datums missing here with
+     * the reported quality of other's.  Equivalent to calling increment() here for every observation counted in other.
+     * @param other a table with the same dimensions as this one
+     */
+    public void addCounts(final RecalDatumTable other) {
+        if ( ! Arrays.equals(dimensions, other.dimensions) )
+            throw new IllegalArgumentException("Table1 " + Arrays.toString(dimensions) + " not equal to " + Arrays.toString(other.dimensions));
+
+        for ( int pageIndex = 0; pageIndex < other.pages.length(); pageIndex++ ) {
+            final Page otherPage = other.pages.get(pageIndex);
+            if ( otherPage == null )
+                continue;
+
+            final Page page = getOrAllocatePage((long)pageIndex << PAGE_BITS);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) {
+                if ( ! otherPage.present[offset] )
+                    continue;
+                if ( ! page.present[offset] ) {
+                    page.estimatedQReported[offset] = otherPage.estimatedQReported[offset];
+                    page.present[offset] = true;
+                }
+                page.increment(offset, otherPage.numObservations[offset], otherPage.numMismatches[offset]);
+            }
+        }
+    }
+
+    /**
+     * @return a new, empty table with the same dimensions as this one, without logging
+     */
+    public RecalDatumTable makeEmptyCopy() {
+        return new RecalDatumTable(dimensions);
+    }
+
+    /**
+     * Remove all datums from this table
+     */
+    public void clear() {
+        for ( int pageIndex = 0; pageIndex < pages.length(); pageIndex++ )
+            pages.set(pageIndex, null);
+    }
+
+    /**
+     * Merge all of the datums of other into this table: datums missing here are copied, others are
+     * combined as by RecalDatum.combine().
+     * @param other a table with the same dimensions as this one
+     */
+    public void combine(final RecalDatumTable other) {
+        if ( ! Arrays.equals(dimensions, other.dimensions) )
+            throw new IllegalArgumentException("Table1 " + Arrays.toString(dimensions) + " not equal to " + Arrays.toString(other.dimensions));
+
+        for ( int pageIndex = 0; pageIndex < other.pages.length(); pageIndex++ ) {
+            final Page otherPage = other.pages.get(pageIndex);
+            if ( otherPage == null )
+                continue;
+
+            final Page page = getOrAllocatePage((long)pageIndex << PAGE_BITS);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) {
+                if ( ! otherPage.present[offset] )
+                    continue;
+
+                if ( ! page.present[offset] ) {
+                    page.copyFrom(offset, otherPage.numObservations[offset], otherPage.numMismatches[offset],
+                            otherPage.estimatedQReported[offset], otherPage.getCachedEmpiricalQuality(offset));
+                } else {
+                    page.combine(offset, otherPage.numObservations[offset], otherPage.numMismatches[offset], otherPage.estimatedQReported[offset]);
+                }
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // NestedIntegerArray API
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * @return a RecalDatum reading and writing through to this table, or null if there is no datum at these keys
+     */
+    @Override
+    public RecalDatum get(final int... keys) {
+        if ( log != null )
+            logOperation(LoggingNestedIntegerArray.NestedIntegerArrayOperation.GET, "", keys);
+
+        final long cell = getCell(keys);
+        return cell < 0 ? null : new TableDatum(cell);
+    }
+
+    /**
+     * Copies value into the table at the given keys, if there is no datum there yet.  Later changes to value
+     * are not reflected in the table: use get() to obtain a datum that writes through to the table.
+     */
+    @Override
+    public boolean put(final RecalDatum value, final int... keys) {
+        if ( log != null )
+            logOperation(LoggingNestedIntegerArray.NestedIntegerArrayOperation.PUT, value, keys);
+
+        final long cell = getCellForUpdate(keys);
+        final Page page = getOrAllocatePage(cell);
+        final int offset = (int)cell & PAGE_MASK;
+
+        if ( page.present[offset] )
+            return false;
+        page.copyFrom(offset, value.getNumObservations(), value.getNumMismatches(), value.getEstimatedQReported(), value.getCachedEmpiricalQuality());
+        return true;
+    }
+
+    @Override
+    public List<RecalDatum> getAllValues() {
+        final List<RecalDatum> result = new ArrayList<RecalDatum>();
+        for ( int pageIndex = 0; pageIndex < pages.length(); pageIndex++ ) {
+            final Page page = pages.get(pageIndex);
+            if ( page == null )
+                continue;
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) {
+                if ( page.present[offset] )
+                    result.add(new TableDatum(((long)pageIndex << PAGE_BITS) | offset));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the leaves of the table, in the same order as NestedIntegerArray
+     */
+    @Override
+    public List<Leaf<RecalDatum>> getAllLeaves() {
+        final List<Leaf<RecalDatum>> result = new ArrayList<Leaf<RecalDatum>>();
+        for ( int pageIndex = 0; pageIndex < pages.length(); pageIndex++ ) {
+            final Page page = pages.get(pageIndex);
+            if ( page == null )
+                continue;
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) {
+                if ( page.present[offset] ) {
+                    final long cell = ((long)pageIndex << PAGE_BITS) | offset;
+                    result.add(new Leaf<RecalDatum>(getKeys(cell), new TableDatum(cell)));
+                }
+            }
+        }
+        return result;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // bulk serialization
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Write the whole table to out.  Only allocated pages are written, each as a run of primitive arrays.
+     * The table must not be updated while it is being written.
+     * @param out where to write the table
+     * @throws IOException if out cannot be written to
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(numDimensions);
+        for ( final int dimension : dimensions )
+            out.writeInt(dimension);
+
+        int numAllocatedPages = 0;
+        for ( int pageIndex = 0; pageIndex < pages.length(); pageIndex++ )
+            if ( pages.get(pageIndex) != null ) numAllocatedPages++;
+        out.writeInt(numAllocatedPages);
+
+        for ( int pageIndex = 0; pageIndex < pages.length(); pageIndex++ ) {
+            final Page page = pages.get(pageIndex);
+            if ( page == null )
+                continue;
+            out.writeInt(pageIndex);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) out.writeBoolean(page.present[offset]);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) out.writeLong(page.numObservations[offset]);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) out.writeDouble(page.numMismatches[offset]);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) out.writeDouble(page.estimatedQReported[offset]);
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) out.writeDouble(page.getCachedEmpiricalQuality(offset));
+        }
+    }
+
+    /**
+     * Read a table written by write()
+     * @param in where to read the table from
+     * @return a new table, with the same dimensions and data as the table that was written
+     * @throws IOException if in cannot be read from
+     */
+    public static RecalDatumTable read(final DataInput in) throws IOException {
+        final int[] dimensions = new int[in.readInt()];
+        for ( int i = 0; i < dimensions.length; i++ )
+            dimensions[i] = in.readInt();
+
+        final RecalDatumTable table = new RecalDatumTable(dimensions);
+        final int numAllocatedPages = in.readInt();
+        for ( int i = 0; i < numAllocatedPages; i++ ) {
+            final int pageIndex = in.readInt();
+            if ( pageIndex < 0 || pageIndex >= table.pages.length() )
+                throw new IOException("Page " + pageIndex + " is out of range for a RecalDatumTable with dimensions " + Arrays.toString(dimensions));
+            final Page page = new Page();
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) page.present[offset] = in.readBoolean();
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) page.numObservations[offset] = in.readLong();
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) page.numMismatches[offset] = in.readDouble();
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) page.estimatedQReported[offset] = in.readDouble();
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ ) page.setEmpiricalQuality(offset, in.readDouble());
+            table.pages.set(pageIndex, page);
+        }
+        return table;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // private implementation
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Like getCell(), but for a datum that may not exist yet, and failing on invalid keys like NestedIntegerArray.put()
+     */
+    private long getCellForUpdate(final int... keys) {
+        if ( keys.length != numDimensions )
+            throw new ReviewedGATKException("Exactly " + numDimensions + " keys should be passed to this RecalDatumTable but " + keys.length + " were provided");
+
+        long cell = 0;
+        for ( int i = 0; i < numDimensions; i++ ) {
+            if ( keys[i] < 0 || keys[i] >= dimensions[i] )
+                throw new ReviewedGATKException("Key " + keys[i] + " is out of range for dimension " + i + " (max is " + (dimensions[i]-1) + ")");
+            cell = cell * dimensions[i] + keys[i];
+        }
+        return cell;
+    }
+
+    private int[] getKeys(long cell) {
+        final int[] keys = new int[numDimensions];
+        for ( int i = numDimensions - 1; i >= 0; i-- ) {
+            keys[i] = (int)(cell % dimensions[i]);
+            cell /= dimensions[i];
+        }
+        return keys;
+    }
+
+    private Page getOrAllocatePage(final long cell) {
+        final int pageIndex = (int)(cell >>> PAGE_BITS);
+        Page page = pages.get(pageIndex);
+        if ( page == null ) {
+            page = new Page();
+            pages.set(pageIndex, page);
+        }
+        return page;
+    }
+
+    private void logOperation(final LoggingNestedIntegerArray.NestedIntegerArrayOperation operation, final Object value, final int... keys) {
+        final StringBuilder logEntry = new StringBuilder();
+        logEntry.append(logEntryLabel).append("\t").append(operation).append("\t").append(value);
+        for ( final int key : keys )
+            logEntry.append("\t").append(key);
+        log.println(logEntry.toString());
+    }
+
+    /**
+     * The data of PAGE_SIZE consecutive cells.  A cell holds a datum only if present is set.
+     */
+    private static final class Page {
+        private static final long UNINITIALIZED_BITS = Double.doubleToRawLongBits(RecalDatum.UNINITIALIZED);
+
+        private final boolean[] present = new boolean[PAGE_SIZE];
+        private final long[] numObservations = new long[PAGE_SIZE];
+        private final double[] numMismatches = new double[PAGE_SIZE];
+        private final double[] estimatedQReported = new double[PAGE_SIZE];
+
+        /**
+         * Raw bits of the cached empirical quality of each cell, which readers may compute concurrently
+         */
+        private final AtomicLongArray empiricalQuality = new AtomicLongArray(PAGE_SIZE);
+
+        private Page() {
+            for ( int offset = 0; offset < PAGE_SIZE; offset++ )
+                empiricalQuality.set(offset, UNINITIALIZED_BITS);
+        }
+
+        private double getCachedEmpiricalQuality(final int offset) {
+            return Double.longBitsToDouble(empiricalQuality.get(offset));
+        }
+
+        private void setEmpiricalQuality(final int offset, final double quality) {
+            empiricalQuality.set(offset, Double.doubleToRawLongBits(quality));
+        }
+
+        /**
+         * Same as RecalDatum.getEmpiricalQuality(conditionalPrior): the first quality computed for a cell is kept
+         */
+        private double getEmpiricalQuality(final int offset, final double conditionalPrior) {
+            final long cached = empiricalQuality.get(offset);
+            if ( cached != UNINITIALIZED_BITS )
+                return Double.longBitsToDouble(cached);
+
+            final double quality = RecalDatum.calcEmpiricalQuality(numObservations[offset], numMismatches[offset], conditionalPrior);
+            return empiricalQuality.compareAndSet(offset, UNINITIALIZED_BITS, Double.doubleToRawLongBits(quality)) ? quality : getCachedEmpiricalQuality(offset);
+        }
+
+        private void copyFrom(final int offset, final long numObservations, final double numMismatches,
+                              final double estimatedQReported, final double empiricalQuality) {
+            this.numObservations[offset] = numObservations;
+            this.numMismatches[offset] = numMismatches;
+            this.estimatedQReported[offset] = estimatedQReported;
+            setEmpiricalQuality(offset, empiricalQuality);
+            this.present[offset] = true;
+        }
+
+        private void increment(final int offset, final long incObservations, final double incMismatches) {
+            numObservations[offset] += incObservations;
+            numMismatches[offset] += incMismatches;
+            setEmpiricalQuality(offset, RecalDatum.UNINITIALIZED);
+        }
+
+        /**
+         * Same as RecalDatum.combine()
+         */
+        private void combine(final int offset, final long otherObservations, final double otherMismatches, final double otherEstimatedQReported) {
+            final double sumErrors = RecalDatum.calcExpectedErrors(numObservations[offset], estimatedQReported[offset])
+                    + RecalDatum.calcExpectedErrors(otherObservations, otherEstimatedQReported);
+            numObservations[offset] += otherObservations;
+            numMismatches[offset] += otherMismatches;
+            estimatedQReported[offset] = -10 * Math.log10(sumErrors / numObservations[offset]);
+            setEmpiricalQuality(offset, RecalDatum.UNINITIALIZED);
+        }
+    }
+
+    /**
+     * A RecalDatum view of one cell of the table.
+     */
+    private final class TableDatum extends RecalDatum {
+        private final Page page;
+        private final int offset;
+
+        private TableDatum(final long cell) {
+            this.page = pages.get((int)(cell >>> PAGE_BITS));
+            this.offset = (int)cell & PAGE_MASK;
+        }
+
+        @Override
+        public void combine(final RecalDatum other) {
+            page.combine(offset, other.getNumObservations(), other.getNumMismatches(), other.getEstimatedQReported());
+        }
+
+        @Override
+        public void setEstimatedQReported(final double estimatedQReported) {
+            if ( estimatedQReported < 0 ) throw new IllegalArgumentException("estimatedQReported < 0");
+            if ( Double.isInfinite(estimatedQReported) ) throw new IllegalArgumentException("estimatedQReported is infinite");
+            if ( Double.isNaN(estimatedQReported) ) throw new IllegalArgumentException("estimatedQReported is NaN");
+
+            page.estimatedQReported[offset] = estimatedQReported;
+            page.setEmpiricalQuality(offset, UNINITIALIZED);
+        }
+
+        @Override
+        public double getEstimatedQReported() {
+            return page.estimatedQReported[offset];
+        }
+
+        @Override
+        public void setEmpiricalQuality(final double empiricalQuality) {
+            if ( empiricalQuality < 0 ) throw new IllegalArgumentException("empiricalQuality < 0");
+            if ( Double.isInfinite(empiricalQuality) ) throw new IllegalArgumentException("empiricalQuality is infinite");
+            if ( Double.isNaN(empiricalQuality) ) throw new IllegalArgumentException("empiricalQuality is NaN");
+
+            page.setEmpiricalQuality(offset, empiricalQuality);
+        }
+
+        @Override
+        public double getEmpiricalQuality(final double conditionalPrior) {
+            return page.getEmpiricalQuality(offset, conditionalPrior);
+        }
+
+        @Override
+        double getCachedEmpiricalQuality() {
+            return page.getCachedEmpiricalQuality(offset);
+        }
+
+        @Override
+        public long getNumObservations() {
+            return page.numObservations[offset];
+        }
+
+        @Override
+        public void setNumObservations(final long numObservations) {
+            if ( numObservations < 0 ) throw new IllegalArgumentException("numObservations < 0");
+            page.numObservations[offset] = numObservations;
+            page.setEmpiricalQuality(offset, UNINITIALIZED);
+        }
+
+        @Override
+        public double getNumMismatches() {
+            return page.numMismatches[offset];
+        }
+
+        @Override
+        public void setNumMismatches(final double numMismatches) {
+            if ( numMismatches < 0 ) throw new IllegalArgumentException("numMismatches < 0");
+            page.numMismatches[offset] = numMismatches;
+            page.setEmpiricalQuality(offset, UNINITIALIZED);
+        }
+
+        @Override
+        public void incrementNumObservations(final long by) {
+            increment(by, 0.0);
+        }
+
+        @Override
+        public void incrementNumMismatches(final double by) {
+            increment(0L, by);
+        }
+
+        @Override
+        public void increment(final long incObservations, final double incMismatches) {
+            page.increment(offset, incObservations, incMismatches);
+        }
+    }
+}
@@ -1016,6 +1016,11 @@ public class RecalUtils {
         if ( ! Arrays.equals(table1.getDimensions(), table2.getDimensions()))
             throw new IllegalArgumentException("Table1 " + Utils.join(",", table1.getDimensions()) + " not equal to " + Utils.join(",", table2.getDimensions()));
 
+        if ( table1 instanceof RecalDatumTable && table2 instanceof RecalDatumTable ) {
+            ((RecalDatumTable)table1).combine((RecalDatumTable)table2);
+            return;
+        }
+
         for (final NestedIntegerArray.Leaf<RecalDatum> row : table2.getAllLeaves()) {
             final RecalDatum myDatum = table1.get(row.keys);
 
@@ -1030,8 +1035,10 @@ public class RecalUtils {
      * Increments the RecalDatum at the specified position in the specified table, or put a new item there
      * if there isn't already one.
      *
-     * Does this in a thread-safe way WITHOUT being synchronized: relies on the behavior of NestedIntegerArray.put()
-     * to return false if another thread inserts a new item at our position in the middle of our put operation.
+     * RecalDatumTables are incremented in place and must be filled by a single thread: threads counting
+     * concurrently should each count into their own tables from ThreadLocalRecalibrationCounts.  Other tables are
+     * updated WITHOUT being synchronized, relying on the behavior of NestedIntegerArray.put() to return false if
+     * another thread inserts a new item at our position in the middle of our put operation.
      *
      * @param table the table that holds/will hold our item
      * @param qual qual for this event
@@ -1042,6 +1049,12 @@ public class RecalUtils {
                                                           final byte qual,
                                                           final double isError,
                                                           final int... keys ) {
+        if ( table instanceof RecalDatumTable ) {
+            // no need to create a datum object, the table increments its primitive counts in place
+            ((RecalDatumTable)table).increment(qual, 1L, isError, keys);
+            return;
+        }
+
         final RecalDatum existingDatum = table.get(keys);
 
         if ( existingDatum == null ) {
@@ -0,0 +1,251 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.recalibration;
+
+import org.broadinstitute.gatk.utils.collections.NestedIntegerArray;
+import org.broadinstitute.gatk.utils.recalibration.EventType;
+
+/**
+ * The final recalibrated quality of every combination of covariate keys present in a set of RecalibrationTables,
+ * so that on-the-fly recalibration of a base is a single table lookup.
+ *
+ * There is one grid of qualities per read group and event type.  Its dimensions are the reported quality and each
+ * optional covariate, but only span the keys that actually appear in the tables for that read group and event:
+ * each dimension maps its keys to consecutive indices starting at 1, and index 0 stands for every key without data,
+ * which contributes nothing to the recalibrated quality.
+ */
+final class RecalibratedQualityLookup {
+    /**
+     * Grids by read group and event type.  A null grid means the read group has no data for this event.
+     */
+    private final Grid[][] grids;
+
+    /**
+     * Number of bytes used by all grids.
+     */
+    private final long sizeInBytes;
+
+    private RecalibratedQualityLookup(final Grid[][] grids, final long sizeInBytes) {
+        this.grids = grids;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * Precompute the recalibrated qualities of all the keys present in the tables used by bqsr.
+     *
+     * @param bqsr the recalibration whose qualities are precomputed
+     * @param tables the tables of bqsr
+     * @param numCovariates number of covariates, including the read group and reported quality
+     * @param events the event types for which to precompute qualities
+     * @param maxSizeInBytes maximum size of the lookup
+     * @return the lookup, or null if it would take more than maxSizeInBytes
+     */
+    static RecalibratedQualityLookup create(final BaseRecalibration bqsr, final RecalibrationTables tables, final int numCovariates,
+                                            final EventType[] events, final long maxSizeInBytes) {
+        final int numReadGroups = tables.getReadGroupTable().getDimensions()[0];
+        final int numEvents = EventType.values().length;
+
+        // which keys of each dimension are present for each read group and event?
+        final boolean[][][][] presentKeys = new boolean[numReadGroups][numEvents][numCovariates - 1][];
+        for ( int rg = 0; rg < numReadGroups; rg++ ) {
+            for ( int event = 0; event < numEvents; event++ ) {
+                presentKeys[rg][event][0] = new boolean[tables.getQualityScoreTable().getDimensions()[1]];
+                for ( int i = 2; i < numCovariates; i++ )
+                    presentKeys[rg][event][i - 1] = new boolean[tables.getTable(i).getDimensions()[2]];
+            }
+        }
+        for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : tables.getQualityScoreTable().getAllLeaves() )
+            presentKeys[leaf.keys[0]][leaf.keys[2]][0][leaf.keys[1]] = true;
+        for ( int i = 2; i < numCovariates; i++ ) {
+            for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : tables.getTable(i).getAllLeaves() ) {
+                presentKeys[leaf.keys[0]][leaf.keys[3]][0][leaf.keys[1]] = true;
+                presentKeys[leaf.keys[0]][leaf.keys[3]][i - 1][leaf.keys[2]] = true;
+            }
+        }
+
+        // give up before allocating anything if the grids don't fit
+        final RecalDatumTable rgTable = tables.getReadGroupTable();
+        long sizeInBytes = 0;
+        for ( int rg = 0; rg < numReadGroups; rg++ ) {
+            for ( final EventType event : events ) {
+                if ( rgTable.getCell(rg, event.ordinal()) < 0 )
+                    continue;
+                final long gridSizeInBytes = Grid.sizeInBytes(presentKeys[rg][event.ordinal()]);
+                if ( gridSizeInBytes > maxSizeInBytes - sizeInBytes )
+                    return null;
+                sizeInBytes += gridSizeInBytes;
+            }
+        }
+
+        // lay out the grids
+        final Grid[][] grids = new Grid[numReadGroups][numEvents];
+        for ( int rg = 0; rg < numReadGroups; rg++ ) {
+            for ( final EventType event : events ) {
+                if ( rgTable.getCell(rg, event.ordinal()) >= 0 )
+                    grids[rg][event.ordinal()] = new Grid(presentKeys[rg][event.ordinal()]);
+            }
+        }
+
+        // and fill them in
+        final int[] keySet = new int[numCovariates];
+        for ( int rg = 0; rg < numReadGroups; rg++ ) {
+            for ( final EventType event : events ) {
+                final Grid grid = grids[rg][event.ordinal()];
+                if ( grid == null )
+                    continue;
+                keySet[0] = rg;
+                for ( int index = 0; index < grid.qualities.length; index++ ) {
+                    grid.getKeys(index, keySet);
+                    grid.qualities[index] = bqsr.computeRecalibratedQual(keySet, event);
+                }
+            }
+        }
+
+        return new RecalibratedQualityLookup(grids, sizeInBytes);
+    }
+
+    /**
+     * @return the number of bytes used by this lookup
+     */
+    long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Does the read group have data for this event type?  If not, bases of this event type cannot be recalibrated.
+     *
+     * @param rgKey key of the read group
+     * @param eventIndex ordinal of the event type
+     * @return true if recalibratedQual() may be called for this read group and event type
+     */
+    boolean hasData(final int rgKey, final int eventIndex) {
+        return rgKey >= 0 && rgKey < grids.length && grids[rgKey][eventIndex] != null;
+    }
+
+    /**
+     * @param eventIndex ordinal of the event type
+     * @param keySet the covariate keys of a base of a read group for which hasData() is true
+     * @return the recalibrated quality of the base
+     */
+    byte recalibratedQual(final int eventIndex, final int[] keySet) {
+        return grids[keySet[0]][eventIndex].get(keySet);
+    }
+
+    private static final class Grid {
+        /**
+         * For the reported quality and each optional covariate, the index of each key, or 0 if it has no data.
+         */
+        private final int[][] keyIndices;
+
+        /**
+         * For each dimension, the key of each index.  Index 0 maps to -1, which isn't a valid key.
+         */
+        private final int[][] indexKeys;
+
+        private final int[] strides;
+
+        /**
+         * Recalibrated quality by index.
+         */
+        private final byte[] qualities;
+
+        /**
+         * Build a grid over presentKeys, which must not be larger than sizeInBytes(presentKeys) allows
+         */
+        private Grid(final boolean[][] presentKeys) {
+            final int numDimensions = presentKeys.length;
+            keyIndices = new int[numDimensions][];
+            indexKeys = new int[numDimensions][];
+            strides = new int[numDimensions];
+
+            int size = 1;
+            for ( int dim = numDimensions - 1; dim >= 0; dim-- ) {
+                final int numIndices = numIndices(presentKeys[dim]);
+
+                keyIndices[dim] = new int[presentKeys[dim].length];
+                indexKeys[dim] = new int[numIndices];
+                indexKeys[dim][0] = -1;
+                int index = 1;
+                for ( int key = 0; key < presentKeys[dim].length; key++ ) {
+                    if ( presentKeys[dim][key] ) {
+                        keyIndices[dim][key] = index;
+                        indexKeys[dim][index++] = key;
+                    }
+                }
+
+                strides[dim] = size;
+                size *= numIndices;
+            }
+
+            qualities = new byte[size];
+        }
+
+        /**
+         * @return the number of bytes a grid over presentKeys would use, or Long.MAX_VALUE if its qualities
+         *         wouldn't fit in an array
+         */
+        private static long sizeInBytes(final boolean[][] presentKeys) {
+            long numQualities = 1;
+            long keyBytes = 0;
+            for ( final boolean[] dimensionKeys : presentKeys ) {
+                final int numIndices = numIndices(dimensionKeys);
+                numQualities *= numIndices;
+                if ( numQualities > Integer.MAX_VALUE )
+                    return Long.MAX_VALUE;
+                keyBytes += 4L * (dimensionKeys.length + numIndices);
+            }
+            return numQualities + keyBytes;
+        }
+
+        /**
+         * @return the number of indices of a dimension: one per present key, plus index 0 for keys without data
+         */
+        private static int numIndices(final boolean[] presentKeys) {
+            int numIndices = 1;
+            for ( final boolean present : presentKeys )
+                if ( present ) numIndices++;
+            return numIndices;
+        }
+
+        /**
+         * Fill in keySet with the keys of the quality at index.  The read group key, in keySet[0], is left alone.
+         */
+        private void getKeys(final int index, final int[] keySet) {
+            for ( int dim = 0; dim < strides.length; dim++ )
+                keySet[dim + 1] = indexKeys[dim][(index / strides[dim]) % indexKeys[dim].length];
+        }
+
+        private byte get(final int[] keySet) {
+            int index = 0;
+            for ( int dim = 0; dim < strides.length; dim++ ) {
+                final int key = keySet[dim + 1];
+                if ( key >= 0 && key < keyIndices[dim].length )
+                    index += keyIndices[dim][key] * strides[dim];
+            }
+            return qualities[index];
+        }
+    }
+}
@@ -26,10 +26,8 @@
 package org.broadinstitute.gatk.engine.recalibration;
 
 import com.google.java.contract.Ensures;
-import org.broadinstitute.gatk.utils.collections.LoggingNestedIntegerArray;
 import org.broadinstitute.gatk.utils.recalibration.EventType;
 import org.broadinstitute.gatk.engine.recalibration.covariates.Covariate;
-import org.broadinstitute.gatk.utils.collections.NestedIntegerArray;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -48,7 +46,7 @@ public final class RecalibrationTables {
         OPTIONAL_COVARIATE_TABLES_START;
     }
 
-    private final ArrayList<NestedIntegerArray<RecalDatum>> tables;
+    private final ArrayList<RecalDatumTable> tables;
     private final int qualDimension;
     private final int eventDimension = EventType.values().length;
     private final int numReadGroups;
@@ -63,7 +61,7 @@ public final class RecalibrationTables {
     }
 
     public RecalibrationTables(final Covariate[] covariates, final int numReadGroups, final PrintStream log) {
-        tables = new ArrayList<NestedIntegerArray<RecalDatum>>(covariates.length);
+        tables = new ArrayList<RecalDatumTable>(covariates.length);
         for ( int i = 0; i < covariates.length; i++ )
             tables.add(i, null); // initialize so we can set below
 
@@ -72,30 +70,35 @@ public final class RecalibrationTables {
         this.log = log;
 
         tables.set(TableType.READ_GROUP_TABLE.ordinal(),
-                log == null ? new NestedIntegerArray<RecalDatum>(numReadGroups, eventDimension) :
-                        new LoggingNestedIntegerArray<RecalDatum>(log, "READ_GROUP_TABLE", numReadGroups, eventDimension));
+                new RecalDatumTable(log, "READ_GROUP_TABLE", numReadGroups, eventDimension));
 
         tables.set(TableType.QUALITY_SCORE_TABLE.ordinal(), makeQualityScoreTable());
 
         for (int i = TableType.OPTIONAL_COVARIATE_TABLES_START.ordinal(); i < covariates.length; i++)
             tables.set(i,
-                    log == null ? new NestedIntegerArray<RecalDatum>(numReadGroups, qualDimension, covariates[i].maximumKeyValue()+1, eventDimension) :
-                            new LoggingNestedIntegerArray<RecalDatum>(log, String.format("OPTIONAL_COVARIATE_TABLE_%d", i - TableType.OPTIONAL_COVARIATE_TABLES_START.ordinal() + 1),
-                                    numReadGroups, qualDimension, covariates[i].maximumKeyValue()+1, eventDimension));
+                    new RecalDatumTable(log, String.format("OPTIONAL_COVARIATE_TABLE_%d", i - TableType.OPTIONAL_COVARIATE_TABLES_START.ordinal() + 1),
+                            numReadGroups, qualDimension, covariates[i].maximumKeyValue()+1, eventDimension));
+    }
+
+    private RecalibrationTables(final RecalibrationTables dimensionsOf) {
+        tables = new ArrayList<RecalDatumTable>(dimensionsOf.numTables());
+        qualDimension = dimensionsOf.qualDimension;
+        numReadGroups = dimensionsOf.numReadGroups;
+        log = null;
     }
 
     @Ensures("result != null")
-    public NestedIntegerArray<RecalDatum> getReadGroupTable() {
+    public RecalDatumTable getReadGroupTable() {
         return getTable(TableType.READ_GROUP_TABLE.ordinal());
     }
 
     @Ensures("result != null")
-    public NestedIntegerArray<RecalDatum> getQualityScoreTable() {
+    public RecalDatumTable getQualityScoreTable() {
         return getTable(TableType.QUALITY_SCORE_TABLE.ordinal());
     }
 
     @Ensures("result != null")
-    public NestedIntegerArray<RecalDatum> getTable(final int index) {
+    public RecalDatumTable getTable(final int index) {
         return tables.get(index);
     }
 
@@ -108,7 +111,7 @@ public final class RecalibrationTables {
      * @return true if all the tables contain no RecalDatums
      */
     public boolean isEmpty() {
-        for( final NestedIntegerArray<RecalDatum> table : tables ) {
+        for( final RecalDatumTable table : tables ) {
             if( !table.getAllValues().isEmpty() ) { return false; }
         }
         return true;
@@ -121,10 +124,39 @@ public final class RecalibrationTables {
      * for quality score values
      * @return a newly allocated, empty read group x quality score table
      */
-    public NestedIntegerArray<RecalDatum> makeQualityScoreTable() {
-        return log == null
-                ? new NestedIntegerArray<RecalDatum>(numReadGroups, qualDimension, eventDimension)
-                : new LoggingNestedIntegerArray<RecalDatum>(log, "QUALITY_SCORE_TABLE", numReadGroups, qualDimension, eventDimension);
+    public RecalDatumTable makeQualityScoreTable() {
+        return new RecalDatumTable(log, "QUALITY_SCORE_TABLE", numReadGroups, qualDimension, eventDimension);
+    }
+
+    /**
+     * Allocate a new set of tables with the same dimensions as this one, without any data in it and without
+     * logging.  The result is suitable for counting observations in a single thread, see addCounts()
+     * @return a newly allocated, empty set of tables
+     */
+    public RecalibrationTables makeEmptyCopy() {
+        final RecalibrationTables copy = new RecalibrationTables(this);
+        for ( int i = 0; i < numTables(); i++ )
+            copy.tables.add(getTable(i).makeEmptyCopy());
+        return copy;
+    }
+
+    /**
+     * Add the observations counted in toAdd to this set of tables, as if they had been counted here
+     */
+    public void addCounts(final RecalibrationTables toAdd) {
+        if ( numTables() != toAdd.numTables() )
+            throw new IllegalArgumentException("Attempting to add counts of RecalibrationTables with different sizes");
+
+        for ( int i = 0; i < numTables(); i++ )
+            getTable(i).addCounts(toAdd.getTable(i));
+    }
+
+    /**
+     * Remove all RecalDatums from the tables
+     */
+    public void clear() {
+        for ( final RecalDatumTable table : tables )
+            table.clear();
     }
 
     /**
@@ -134,10 +166,7 @@ public final class RecalibrationTables {
         if ( numTables() != toMerge.numTables() )
             throw new IllegalArgumentException("Attempting to merge RecalibrationTables with different sizes");
 
-        for ( int i = 0; i < numTables(); i++ ) {
-            final NestedIntegerArray<RecalDatum> myTable = this.getTable(i);
-            final NestedIntegerArray<RecalDatum> otherTable = toMerge.getTable(i);
-            RecalUtils.combineTables(myTable, otherTable);
-        }
+        for ( int i = 0; i < numTables(); i++ )
+            getTable(i).combine(toMerge.getTable(i));
     }
 }
@@ -0,0 +1,84 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.recalibration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gives every thread counting recalibration data its own, empty copy of the RecalibrationTables.
+ *
+ * Counting threads call get() and count into the result with RecalUtils.incrementDatumOrPutIfNecessary(), without
+ * any synchronization.  Once all counting is done, mergeIntoTables() adds the counts of every thread into the
+ * RecalibrationTables given at construction time.
+ */
+public final class ThreadLocalRecalibrationCounts {
+    private final RecalibrationTables tables;
+
+    /**
+     * The tables of every thread that has called get(), so that they can be found again when merging.
+     */
+    private final List<RecalibrationTables> allCounts = new ArrayList<RecalibrationTables>();
+
+    private final ThreadLocal<RecalibrationTables> threadCounts = new ThreadLocal<RecalibrationTables>() {
+        @Override
+        protected RecalibrationTables initialValue() {
+            final RecalibrationTables counts = tables.makeEmptyCopy();
+            synchronized (allCounts) {
+                allCounts.add(counts);
+            }
+            return counts;
+        }
+    };
+
+    /**
+     * @param tables the tables into which all counts will be merged
+     */
+    public ThreadLocalRecalibrationCounts(final RecalibrationTables tables) {
+        if ( tables == null ) throw new IllegalArgumentException("tables cannot be null");
+        this.tables = tables;
+    }
+
+    /**
+     * @return the tables into which the calling thread counts
+     */
+    public RecalibrationTables get() {
+        return threadCounts.get();
+    }
+
+    /**
+     * Adds the counts of all threads into the tables given at construction time, and clears them.
+     * Must not be called while any thread is still counting.
+     */
+    public void mergeIntoTables() {
+        synchronized (allCounts) {
+            for ( final RecalibrationTables counts : allCounts ) {
+                tables.addCounts(counts);
+                counts.clear();
+            }
+        }
+    }
+}
@@ -31,6 +31,13 @@ import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
  * Models how threads are distributed between various components of the GATK.
  */
 public class ThreadAllocation {
+    /**
+     * When the GATK chooses the split of a total thread budget between data and CPU threads, each data thread
+     * gets at most this many CPU threads.  CPU threads share a single input stream per data thread, so past this
+     * point they tend to wait on IO, whereas data threads keep scaling at the cost of memory.
+     */
+    public static final int MAX_ADAPTIVE_CPU_THREADS_PER_DATA_THREAD = 4;
+
     /**
      * The number of CPU threads to be used by the GATK.
      */
@@ -46,11 +53,21 @@ public class ThreadAllocation {
      */
     private final int numIOThreads;
 
+    /**
+     * Should the IO threads load BAM blocks out of memory mapped files?
+     */
+    private final boolean memoryMappedIO;
+
     /**
      * Should we monitor thread efficiency?
      */
     private final boolean monitorEfficiency;
 
+    /**
+     * Should the CPU threads of each data thread use the work stealing nano scheduler?
+     */
+    private final boolean useWorkStealingNanoScheduler;
+
     public int getNumDataThreads() {
         return numDataThreads;
     }
@@ -63,10 +80,18 @@ public class ThreadAllocation {
         return numIOThreads;
     }
 
+    public boolean useMemoryMappedIO() {
+        return memoryMappedIO;
+    }
+
     public boolean monitorThreadEfficiency() {
         return monitorEfficiency;
     }
 
+    public boolean useWorkStealingNanoScheduler() {
+        return useWorkStealingNanoScheduler;
+    }
+
     /**
      * Are we running in parallel mode?
      *
@@ -89,7 +114,7 @@ public class ThreadAllocation {
      * Construct the default thread allocation.
      */
     public ThreadAllocation() {
-        this(1, 1, 0, false);
+        this(1, 1, 0, false, false, false);
     }
 
     /**
@@ -98,12 +123,16 @@ public class ThreadAllocation {
      * @param numDataThreads Total number of threads allocated to the traversal.
      * @param numCPUThreadsPerDataThread The number of CPU threads per data thread to allocate
      * @param numIOThreads Total number of threads allocated exclusively to IO.
+     * @param memoryMappedIO should the IO threads load BAM blocks out of memory mapped files?
      * @param monitorEfficiency should we monitor threading efficiency in the GATK?
+     * @param useWorkStealingNanoScheduler should CPU threads use the work stealing nano scheduler?
      */
     public ThreadAllocation(final int numDataThreads,
                             final int numCPUThreadsPerDataThread,
                             final int numIOThreads,
-                            final boolean monitorEfficiency) {
+                            final boolean memoryMappedIO,
+                            final boolean monitorEfficiency,
+                            final boolean useWorkStealingNanoScheduler) {
         if ( numDataThreads < 1 ) throw new ReviewedGATKException("numDataThreads cannot be less than 1, but saw " + numDataThreads);
         if ( numCPUThreadsPerDataThread < 1 ) throw new ReviewedGATKException("numCPUThreadsPerDataThread cannot be less than 1, but saw " + numCPUThreadsPerDataThread);
         if ( numIOThreads < 0 ) throw new ReviewedGATKException("numIOThreads cannot be less than 0, but saw " + numIOThreads);
@@ -111,6 +140,51 @@ public class ThreadAllocation {
         this.numDataThreads = numDataThreads;
         this.numCPUThreadsPerDataThread = numCPUThreadsPerDataThread;
         this.numIOThreads = numIOThreads;
+        this.memoryMappedIO = memoryMappedIO;
         this.monitorEfficiency = monitorEfficiency;
+        this.useWorkStealingNanoScheduler = useWorkStealingNanoScheduler;
+    }
+
+    /**
+     * Create a thread allocation that splits a total budget of threads between data and CPU threads,
+     * according to the kinds of parallelism the walker supports.
+     *
+     * Walkers that are only TreeReducible get all of the threads as data threads, walkers that are only
+     * NanoSchedulable get them all as CPU threads.  Walkers supporting both get the fewest data threads
+     * that keep each at or below MAX_ADAPTIVE_CPU_THREADS_PER_DATA_THREAD CPU threads, with the budget
+     * spread evenly over them, e.g. 6 or 7 threads become 2 x 3 and 11 threads 3 x 3.  The resulting
+     * allocation never uses more than totalThreads threads for the traversal, and leaves fewer threads
+     * idle than there are data threads.
+     *
+     * @param totalThreads the total number of threads available to the traversal
+     * @param treeReducible does the walker support data threads?
+     * @param nanoSchedulable does the walker support CPU threads?
+     * @param numIOThreads Total number of threads allocated exclusively to IO.
+     * @param memoryMappedIO should the IO threads load BAM blocks out of memory mapped files?
+     * @param monitorEfficiency should we monitor threading efficiency in the GATK?
+     * @param useWorkStealingNanoScheduler should CPU threads use the work stealing nano scheduler?
+     * @return a non-null ThreadAllocation
+     */
+    public static ThreadAllocation createAdaptive(final int totalThreads,
+                                                  final boolean treeReducible,
+                                                  final boolean nanoSchedulable,
+                                                  final int numIOThreads,
+                                                  final boolean memoryMappedIO,
+                                                  final boolean monitorEfficiency,
+                                                  final boolean useWorkStealingNanoScheduler) {
+        if ( totalThreads < 1 ) throw new ReviewedGATKException("totalThreads cannot be less than 1, but saw " + totalThreads);
+
+        final int numDataThreads;
+        if ( ! treeReducible )
+            numDataThreads = 1;
+        else if ( ! nanoSchedulable )
+            numDataThreads = totalThreads;
+        else
+            numDataThreads = (totalThreads + MAX_ADAPTIVE_CPU_THREADS_PER_DATA_THREAD - 1) / MAX_ADAPTIVE_CPU_THREADS_PER_DATA_THREAD;
+
+        final int numCPUThreadsPerDataThread = nanoSchedulable ? Math.max(1, totalThreads / numDataThreads) : 1;
+
+        return new ThreadAllocation(numDataThreads, numCPUThreadsPerDataThread,
+                numIOThreads, memoryMappedIO, monitorEfficiency, useWorkStealingNanoScheduler);
     }
 }
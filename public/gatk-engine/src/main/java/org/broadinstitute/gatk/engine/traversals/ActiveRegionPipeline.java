@@ -0,0 +1,162 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.traversals;
+
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs map calls on a pool of threads, and reduces their results in submission order on the calling thread
+ *
+ * Unlike the NanoScheduler, which maps and reduces all of the input of one call to execute before returning,
+ * map calls stay in flight between calls to submit.  This lets TraverseActiveRegions keep the pool busy with
+ * the active regions of one interval or shard while it discovers the active regions of the next one.
+ *
+ * At most maxPendingJobs map calls are queued or running at any time.  Submitting more blocks until the
+ * oldest one is done and reduced.
+ */
+class ActiveRegionPipeline<InputType, MapType, ReduceType> {
+    private final ExecutorService mapExecutor;
+    private final NSMapFunction<InputType, MapType> map;
+    private final NSReduceFunction<MapType, ReduceType> reduce;
+    private final int maxPendingJobs;
+
+    /**
+     * Map calls that haven't been reduced yet, in submission order
+     */
+    private final LinkedList<Future<MapType>> pendingJobs = new LinkedList<>();
+
+    /**
+     * Create a pipeline
+     *
+     * @param nThreads the number of threads running map calls
+     * @param maxPendingJobs the maximum number of map calls not yet reduced
+     * @param map the map function
+     * @param reduce the reduce function, only called from the thread calling submit and finish
+     */
+    public ActiveRegionPipeline(final int nThreads,
+                                final int maxPendingJobs,
+                                final NSMapFunction<InputType, MapType> map,
+                                final NSReduceFunction<MapType, ReduceType> reduce) {
+        if ( nThreads < 1 ) throw new IllegalArgumentException("nThreads must be >= 1, got " + nThreads);
+        if ( maxPendingJobs < 1 ) throw new IllegalArgumentException("maxPendingJobs must be >= 1, got " + maxPendingJobs);
+        if ( map == null ) throw new IllegalArgumentException("map function cannot be null");
+        if ( reduce == null ) throw new IllegalArgumentException("reduce function cannot be null");
+
+        this.mapExecutor = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("AR-pipeline-thread-%d"));
+        this.map = map;
+        this.reduce = reduce;
+        this.maxPendingJobs = maxPendingJobs;
+    }
+
+    /**
+     * Queue up a map call on input, and reduce the results of all of the map calls that are already done
+     *
+     * @param input the input to map
+     * @param sum the reduce value including all of the map calls reduced so far
+     * @return the reduce value updated with the map calls reduced during this call
+     */
+    public ReduceType submit(final InputType input, final ReduceType sum) {
+        ReduceType result = sum;
+        while ( pendingJobs.size() >= maxPendingJobs )
+            result = reduceOldestJob(result);
+
+        pendingJobs.add(mapExecutor.submit(new Callable<MapType>() {
+            @Override
+            public MapType call() {
+                return map.apply(input);
+            }
+        }));
+
+        return reduceFinishedJobs(result);
+    }
+
+    /**
+     * Reduce the results of the map calls that are done, stopping at the first one that isn't
+     *
+     * @param sum the reduce value including all of the map calls reduced so far
+     * @return the updated reduce value
+     */
+    public ReduceType reduceFinishedJobs(final ReduceType sum) {
+        ReduceType result = sum;
+        while ( ! pendingJobs.isEmpty() && pendingJobs.peek().isDone() )
+            result = reduceOldestJob(result);
+        return result;
+    }
+
+    /**
+     * Wait for all of the map calls in flight, and reduce them
+     *
+     * @param sum the reduce value including all of the map calls reduced so far
+     * @return the reduce value including all of the map calls submitted to this pipeline
+     */
+    public ReduceType finish(final ReduceType sum) {
+        ReduceType result = sum;
+        while ( ! pendingJobs.isEmpty() )
+            result = reduceOldestJob(result);
+        return result;
+    }
+
+    /**
+     * @return true if some map calls haven't been reduced yet
+     */
+    public boolean hasPendingJobs() {
+        return ! pendingJobs.isEmpty();
+    }
+
+    /**
+     * Stop the map threads, abandoning any map calls in flight
+     */
+    public void shutdown() {
+        mapExecutor.shutdownNow();
+        pendingJobs.clear();
+    }
+
+    private ReduceType reduceOldestJob(final ReduceType sum) {
+        final Future<MapType> job = pendingJobs.remove();
+        try {
+            return reduce.apply(job.get(), sum);
+        } catch ( InterruptedException e ) {
+            throw new ReviewedGATKException("Interrupted while waiting for an active region to be processed", e);
+        } catch ( ExecutionException e ) {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            if ( cause instanceof Error )
+                throw (Error)cause;
+            throw new ReviewedGATKException("Failed to process an active region", cause);
+        }
+    }
+}
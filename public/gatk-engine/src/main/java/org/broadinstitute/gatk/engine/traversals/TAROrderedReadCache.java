@@ -25,29 +25,47 @@
 
 package org.broadinstitute.gatk.engine.traversals;
 
-import org.broadinstitute.gatk.utils.downsampling.Downsampler;
-import org.broadinstitute.gatk.utils.downsampling.ReservoirDownsampler;
-import org.broadinstitute.gatk.utils.sam.AlignmentStartComparator;
+import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * Subsystem to track a list of all reads currently live in the TraverseActiveRegions system,
  * while limiting the total number of reads to a maximum capacity.
  *
+ * Once more than maxCapacity reads have been added, reads are reservoir downsampled exactly as the
+ * ReservoirDownsampler would, but in place: the reads are kept in the order they were added, and a
+ * read evicted from the reservoir just leaves a hole behind.  Since reads are added in sorted order,
+ * popping them never requires a sort, only a linear pass skipping over the holes.
+ *
  * User: depristo
  * Date: 4/7/13
  * Time: 11:23 AM
  */
 public class TAROrderedReadCache {
     private final int maxCapacity;
-    private ArrayList<GATKSAMRecord> undownsampledCache;
-    private Downsampler<GATKSAMRecord> downsampler;
 
-    private static final int UNDOWNSAMPLED_CACHE_MAX_INITIAL_SIZE = 10000;
+    /**
+     * All reads kept since the last pop, in the order they were added.  Reads evicted
+     * by the downsampling are replaced by null.
+     */
+    private ArrayList<GATKSAMRecord> orderedReads;
+
+    /**
+     * For each slot of the reservoir, the index in orderedReads of the read occupying it.  Null
+     * until we've seen more than maxCapacity reads since the last pop.
+     */
+    private int[] reservoirIndices = null;
+
+    /**
+     * Number of reads added since the last pop, and number of those we discarded
+     */
+    private int nReadsSeen = 0;
+    private int nDiscarded = 0;
+
+    private static final int ORDERED_READS_MAX_INITIAL_SIZE = 10000;
 
     /**
      * Create a new empty ReadCache
@@ -56,29 +74,14 @@ public class TAROrderedReadCache {
     public TAROrderedReadCache( final int maxCapacity ) {
         if ( maxCapacity < 0 ) throw new IllegalArgumentException("maxCapacity must be >= 0 but got " + maxCapacity);
         this.maxCapacity = maxCapacity;
-
-        // The one we're not currently using will always be null:
-        initializeUndownsampledCache();
-        this.downsampler = null;
-    }
-
-    /**
-     * Moves all reads over to the downsampler, causing it to be used from this point on. Should be called
-     * when the undownsampledCache fills up and we need to start discarding reads. Since the
-     * ReservoirDownsampler doesn't preserve relative ordering, pop operations become expensive
-     * after this point, as they require a O(n log n) sort.
-     */
-    private void activateDownsampler() {
-        downsampler = new ReservoirDownsampler<>(maxCapacity, false);
-        downsampler.submit(undownsampledCache);
-        undownsampledCache = null; // preferable to the O(n) clear() method
+        initializeOrderedReads();
     }
 
     /**
-     * Allocate the undownsampled cache used when we have fewer than maxCapacity items
+     * Allocate the list holding the reads, sized for the case where we have fewer than maxCapacity items
      */
-    private void initializeUndownsampledCache() {
-        undownsampledCache = new ArrayList<>(Math.min(maxCapacity + 1, UNDOWNSAMPLED_CACHE_MAX_INITIAL_SIZE));
+    private void initializeOrderedReads() {
+        orderedReads = new ArrayList<>(Math.min(maxCapacity + 1, ORDERED_READS_MAX_INITIAL_SIZE));
     }
 
     /**
@@ -96,17 +99,59 @@ public class TAROrderedReadCache {
     public void add( final GATKSAMRecord read ) {
         if ( read == null ) throw new IllegalArgumentException("Read cannot be null");
 
-        if ( downsampler != null ) {
-            downsampler.submit(read);
+        nReadsSeen++;
+        if ( nReadsSeen <= maxCapacity ) {
+            orderedReads.add(read);
+            return;
         }
-        else {
-            undownsampledCache.add(read);
 
-            // No more room in the undownsampledCache? Time to start downsampling
-            if ( undownsampledCache.size() > maxCapacity ) {
-                activateDownsampler();
+        if ( reservoirIndices == null )
+            activateDownsampling();
+
+        // same selection as the ReservoirDownsampler, so that the same reads are kept
+        final int randomSlot = Utils.getRandomGenerator().nextInt(nReadsSeen);
+        if ( randomSlot < maxCapacity ) {
+            orderedReads.set(reservoirIndices[randomSlot], null);
+            reservoirIndices[randomSlot] = orderedReads.size();
+            orderedReads.add(read);
+
+            // once holes outnumber the live reads, squeeze them out so memory stays proportional to maxCapacity
+            if ( orderedReads.size() >= 2 * maxCapacity )
+                compact();
+        }
+        nDiscarded++;
+    }
+
+    /**
+     * Start tracking which read occupies each slot of the reservoir.  Should be called when
+     * orderedReads fills up and we need to start discarding reads, at which point reservoir slot i
+     * is occupied by the i-th read added.
+     */
+    private void activateDownsampling() {
+        reservoirIndices = new int[maxCapacity];
+        for ( int i = 0; i < maxCapacity; i++ )
+            reservoirIndices[i] = i;
+    }
+
+    /**
+     * Remove all holes from orderedReads, preserving the order of the remaining reads and
+     * updating reservoirIndices to point to their new positions
+     */
+    private void compact() {
+        // which reservoir slot is occupied by the read at each index?
+        final int[] slotOfIndex = new int[orderedReads.size()];
+        for ( int slot = 0; slot < maxCapacity; slot++ )
+            slotOfIndex[reservoirIndices[slot]] = slot;
+
+        int nKept = 0;
+        for ( int i = 0; i < orderedReads.size(); i++ ) {
+            final GATKSAMRecord read = orderedReads.get(i);
+            if ( read != null ) {
+                reservoirIndices[slotOfIndex[i]] = nKept;
+                orderedReads.set(nKept++, read);
             }
         }
+        orderedReads.subList(nKept, orderedReads.size()).clear();
     }
 
     /**
@@ -125,7 +170,7 @@ public class TAROrderedReadCache {
      * @return a positive integer
      */
     public int size() {
-        return downsampler != null ? downsampler.size() : undownsampledCache.size();
+        return Math.min(nReadsSeen, maxCapacity);
     }
 
     /**
@@ -134,35 +179,28 @@ public class TAROrderedReadCache {
      * @return number of items discarded during downsampling since last pop operation
      */
     public int getNumDiscarded() {
-        return downsampler != null ? downsampler.getNumberOfDiscardedItems() : 0;
+        return nDiscarded;
     }
 
     /**
      * Removes all reads currently in the cache, and returns them in sorted order (w.r.t. alignmentStart)
      *
      * Flushes this cache, so after this call the cache will contain no reads, and we'll be in the same
-     * initial state as the constructor would put us in, with a non-null undownsampledCache and a null
-     * downsampler.
+     * initial state as the constructor would put us in.
      *
      * @return a list of GATKSAMRecords in this cache
      */
     public List<GATKSAMRecord> popCurrentReads() {
-        final List<GATKSAMRecord> poppedReads;
+        // there can only be holes once we've started downsampling
+        if ( reservoirIndices != null )
+            compact();
 
-        if ( downsampler == null ) {
-            poppedReads = undownsampledCache;  // avoid making a copy here, since we're going to allocate a new cache
-        }
-        else {
-            // If we triggered the downsampler, we need to sort the reads before returning them,
-            // since the ReservoirDownsampler is not guaranteed to preserve relative ordering of items.
-            // After consuming the downsampled items in this call to popCurrentReads(), we switch back
-            // to using the undownsampledCache until we fill up again.
-            poppedReads = downsampler.consumeFinalizedItems();  // avoid making a copy here
-            Collections.sort(poppedReads, new AlignmentStartComparator());
-            downsampler = null;
-        }
+        final List<GATKSAMRecord> poppedReads = orderedReads; // avoid making a copy here, since we're going to allocate a new list
 
-        initializeUndownsampledCache();
+        initializeOrderedReads();
+        reservoirIndices = null;
+        nReadsSeen = 0;
+        nDiscarded = 0;
         return poppedReads;
     }
 }
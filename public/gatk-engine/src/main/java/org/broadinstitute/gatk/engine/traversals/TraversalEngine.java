@@ -67,6 +67,30 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
                                ProviderType dataProvider,
                                T sum);
 
+    /**
+     * Does this traversal still hold work from previous calls to traverse that isn't included in the sum it returned?
+     *
+     * Traversals may keep work in flight across calls to traverse, to overlap it with the work of the next
+     * shard.  If so, the MicroScheduler must call finishPendingWork after the last call to traverse.
+     *
+     * @return true if finishPendingWork must be called before the reduce value is complete
+     */
+    public boolean hasPendingWork() {
+        return false;
+    }
+
+    /**
+     * Complete all of the work still held by this traversal
+     *
+     * @param walker the walker to run with
+     * @param sum    the accumulator, as returned by the last call to traverse
+     *
+     * @return the accumulator including all of the work done by this traversal
+     */
+    public T finishPendingWork(final WalkerType walker, final T sum) {
+        return sum;
+    }
+
     /**
      * Initialize the traversal engine.  After this point traversals can be run over the data
      *
@@ -46,6 +46,7 @@ import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
+import org.broadinstitute.gatk.utils.nanoScheduler.WorkStealingNanoScheduler;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
@@ -96,7 +97,30 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
     int maxReadsInMemory = 0;
     ActiveRegionWalker<M, T> walker;
 
-    final NanoScheduler<MapData, M, T> nanoScheduler;
+    /**
+     * Maps and reduces the active regions of each call to traverse when the pipeline isn't used.  Only created
+     * by initialize() when the pipeline isn't, so that we never hold two pools of threads at once.
+     */
+    NanoScheduler<MapData, M, T> nanoScheduler = null;
+
+    private final int nThreads;
+    private final boolean workStealing;
+
+    /**
+     * Maximum number of active regions per thread that the pipeline keeps in flight
+     */
+    private final static int MAX_PENDING_REGIONS_PER_THREAD = 10;
+
+    /**
+     * If true, active regions are processed by the pipeline instead of the nanoScheduler, when the walker allows it
+     */
+    private final boolean pipelineRegions;
+
+    /**
+     * Processes the active regions of successive calls to traverse concurrently, when pipelineRegions is true
+     * and the walker doesn't reduce by interval.  Null otherwise.
+     */
+    private ActiveRegionPipeline<MapData, M, T> pipeline = null;
 
     /**
      * Data to use in the ActiveRegionWalker.map function produced by the NanoScheduler input iterator
@@ -123,8 +147,45 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
      * @param nThreads number of threads
      */
     public TraverseActiveRegions(final int nThreads) {
-        nanoScheduler = new NanoScheduler<>(nThreads);
-        nanoScheduler.setProgressFunction(new NSProgressFunction<MapData>() {
+        this(nThreads, false);
+    }
+
+    /**
+     * Create an active region traverser that uses nThreads for getting its work done
+     * @param nThreads number of threads
+     * @param workStealing if true, use the WorkStealingNanoScheduler instead of the NanoScheduler
+     */
+    public TraverseActiveRegions(final int nThreads, final boolean workStealing) {
+        this(nThreads, workStealing, false);
+    }
+
+    /**
+     * Create an active region traverser that uses nThreads for getting its work done
+     *
+     * When pipelining, each active region is handed to a pool of nThreads threads as soon as it is finalized,
+     * and is processed while the traversal moves on to discover the active regions of the following intervals
+     * and shards, instead of waiting for all of the regions of the current one to be done.  Each region gets
+     * its own copy of the reads it shares with the regions still to come.  The results are still reduced in order.
+     *
+     * @param nThreads number of threads
+     * @param workStealing if true, use the WorkStealingNanoScheduler instead of the NanoScheduler
+     * @param pipelineRegions if true and nThreads > 1, process the active regions of successive calls to traverse concurrently
+     */
+    public TraverseActiveRegions(final int nThreads, final boolean workStealing, final boolean pipelineRegions) {
+        this.nThreads = nThreads;
+        this.workStealing = workStealing;
+        this.pipelineRegions = pipelineRegions && nThreads > 1;
+    }
+
+    /**
+     * Create the nano scheduler used to process the active regions of each call to traverse
+     * @return a non-null nano scheduler running on nThreads threads
+     */
+    private NanoScheduler<MapData, M, T> createNanoScheduler() {
+        final NanoScheduler<MapData, M, T> scheduler = workStealing
+                ? new WorkStealingNanoScheduler<MapData, M, T>(nThreads)
+                : new NanoScheduler<MapData, M, T>(nThreads);
+        scheduler.setProgressFunction(new NSProgressFunction<MapData>() {
             @Override
             public void progress(MapData lastActiveRegion) {
                 if ( lastActiveRegion != null )
@@ -132,6 +193,7 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                     printProgress(lastActiveRegion.activeRegion.getLocation().getStopLocation());
             }
         });
+        return scheduler;
     }
 
     /**
@@ -165,6 +227,14 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         final int maxReadsAcrossSamples = this.walker.maxReadsInMemoryPerSample * ReadUtils.getSAMFileSamples(engine.getSAMFileHeader()).size();
         final int maxReadsToHoldInMemory = Math.min(maxReadsAcrossSamples, this.walker.maxTotalReadsInMemory);
         myReads = new TAROrderedReadCache(maxReadsToHoldInMemory);
+
+        // reduce by interval walkers expect each call to traverse to return the reduction of all of its regions
+        if ( pipelineRegions && ! (this.walker.isReduceByInterval() && engine.getIntervals() != null) ) {
+            pipeline = new ActiveRegionPipeline<>(nThreads, nThreads * MAX_PENDING_REGIONS_PER_THREAD,
+                    new TraverseActiveRegionMap(), new TraverseActiveRegionReduce());
+        } else {
+            nanoScheduler = createNanoScheduler();
+        }
     }
 
     // -------------------------------------------------------------------------------------
@@ -267,8 +337,16 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         if ( LOG_READ_CARRYING || logger.isDebugEnabled() )
             logger.info(String.format("TraverseActiveRegions.traverse: Shard is %s", dataProvider));
 
-        nanoScheduler.setDebug(false);
         final Iterator<MapData> activeRegionIterator = new ActiveRegionIterator(dataProvider);
+
+        if ( pipeline != null ) {
+            T result = sum;
+            while ( activeRegionIterator.hasNext() )
+                result = pipeline.submit(activeRegionIterator.next(), result);
+            return result;
+        }
+
+        nanoScheduler.setDebug(false);
         final TraverseActiveRegionMap myMap = new TraverseActiveRegionMap();
         final TraverseActiveRegionReduce myReduce = new TraverseActiveRegionReduce();
         final T result = nanoScheduler.execute(activeRegionIterator, myMap, sum, myReduce);
@@ -276,6 +354,22 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         return result;
     }
 
+    @Override
+    public boolean hasPendingWork() {
+        return pipeline != null && pipeline.hasPendingJobs();
+    }
+
+    @Override
+    public T finishPendingWork(final ActiveRegionWalker<M,T> walker, final T sum) {
+        return pipeline == null ? sum : pipeline.finish(sum);
+    }
+
+    @Override
+    public void shutdown() {
+        if ( pipeline != null )
+            pipeline.shutdown();
+    }
+
     private class ActiveRegionIterator implements Iterator<MapData> {
         private final LocusShardDataProvider dataProvider;
         private LinkedList<MapData> readyActiveRegions = new LinkedList<>();
@@ -662,16 +756,17 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         final List<GATKSAMRecord> stillLive = new LinkedList<>();
         for ( final GATKSAMRecord read : myReads.popCurrentReads() ) {
             boolean killed = false;
+            boolean inRegion = false;
             final GenomeLoc readLoc = this.engine.getGenomeLocParser().createGenomeLoc( read );
 
             if( activeRegion.getLocation().overlapsP( readLoc ) ) {
-                activeRegion.add(read);
+                inRegion = true;
 
                 if ( ! walker.wantsNonPrimaryReads() ) {
                     killed = true;
                 }
             } else if( walker.wantsExtendedReads() && activeRegion.getExtendedLoc().overlapsP( readLoc )) {
-                activeRegion.add( read );
+                inRegion = true;
             }
 
             // if the read hasn't already been killed, check if it cannot occur in any more active regions, and maybe kill it
@@ -679,6 +774,11 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                 killed = true;
             }
 
+            // when pipelining, a read that may also go to later regions could be used by several map calls at
+            // once, so this region gets its own copy and the last region the read occurs in gets the original
+            if ( inRegion )
+                activeRegion.add(pipeline == null || killed ? read : (GATKSAMRecord) read.clone());
+
             // keep track of all of the still live active regions
             if ( ! killed ) stillLive.add(read);
         }
@@ -38,6 +38,7 @@ import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
+import org.broadinstitute.gatk.utils.nanoScheduler.WorkStealingNanoScheduler;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.Iterator;
@@ -61,7 +62,18 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
     final NanoScheduler<MapData, MapResult, T> nanoScheduler;
 
     public TraverseReadsNano(int nThreads) {
-        nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads);
+        this(nThreads, false);
+    }
+
+    /**
+     * Create a read traverser that uses nThreads for getting its work done
+     * @param nThreads number of threads
+     * @param workStealing if true, use the WorkStealingNanoScheduler instead of the NanoScheduler
+     */
+    public TraverseReadsNano(final int nThreads, final boolean workStealing) {
+        nanoScheduler = workStealing
+                ? new WorkStealingNanoScheduler<MapData, MapResult, T>(nThreads)
+                : new NanoScheduler<MapData, MapResult, T>(nThreads);
         nanoScheduler.setProgressFunction(new NSProgressFunction<MapData>() {
             @Override
             public void progress(MapData lastProcessedMap) {
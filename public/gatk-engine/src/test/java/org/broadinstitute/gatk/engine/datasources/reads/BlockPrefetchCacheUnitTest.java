@@ -0,0 +1,140 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.GATKChunk;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+public class BlockPrefetchCacheUnitTest extends BaseTest {
+    private final File bamFile = new File(publicTestDir + "exampleBAM.bam");
+
+    @Test
+    public void testPrefetchedBlocksMatchFile() throws Exception {
+        final SAMReaderID reader = new SAMReaderID(bamFile, new Tags());
+        final BlockPrefetchCache cache = new BlockPrefetchCache(Long.MAX_VALUE);
+        new BlockPrefetchLoader(cache, reader, new GATKChunk(0, bamFile.length() << 16)).run();
+
+        final RandomAccessFile file = new RandomAccessFile(bamFile, "r");
+        try {
+            long blockAddress = 0;
+            int nBlocks = 0;
+            final Object stream = new Object();
+            ByteBuffer block;
+            while((block = cache.getBlock(reader, stream, blockAddress)) != null) {
+                final byte[] expected = new byte[block.remaining()];
+                file.seek(blockAddress);
+                file.readFully(expected);
+                final byte[] actual = new byte[block.remaining()];
+                block.get(actual);
+                Assert.assertEquals(actual, expected, "Prefetched block at " + blockAddress + " differs from the file");
+                blockAddress += actual.length;
+                nBlocks++;
+            }
+            Assert.assertTrue(nBlocks > 0, "No blocks were prefetched");
+            // Empty blocks are left to the BlockLoader; this file ends with two of them.
+            Assert.assertEquals(bamFile.length() - blockAddress, 2 * 28, "Blocks were missing from the prefetch cache");
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testRegionsReleasedWhenReadPast() throws Exception {
+        final SAMReaderID reader = new SAMReaderID(bamFile, new Tags());
+        final BlockPrefetchCache cache = new BlockPrefetchCache(1024);
+        cache.addRegion(reader, 0, new byte[100]);
+        cache.addRegion(reader, 100, new byte[100]);
+        Assert.assertTrue(cache.containsRegion(reader, 0));
+
+        // A lookup past the first region releases it, even if the block can't be served.
+        cache.getBlock(reader, new Object(), 150);
+        Assert.assertFalse(cache.containsRegion(reader, 0), "Region read past was not released");
+        Assert.assertTrue(cache.containsRegion(reader, 100), "Region still in use was released");
+    }
+
+    @Test
+    public void testRegionsKeptUntilEveryStreamReadsPast() throws Exception {
+        final SAMReaderID reader = new SAMReaderID(bamFile, new Tags());
+        final BlockPrefetchCache cache = new BlockPrefetchCache(1024);
+        cache.addRegion(reader, 0, new byte[100]);
+        cache.addRegion(reader, 100, new byte[100]);
+        cache.addRegion(reader, 200, new byte[100]);
+
+        final Object slowStream = new Object();
+        final Object fastStream = new Object();
+        cache.getBlock(reader, slowStream, 50);
+        cache.getBlock(reader, fastStream, 250);
+        Assert.assertTrue(cache.containsRegion(reader, 0), "Region still needed by the slow stream was released");
+        Assert.assertTrue(cache.containsRegion(reader, 100), "Region still needed by the slow stream was released");
+
+        cache.getBlock(reader, slowStream, 150);
+        Assert.assertFalse(cache.containsRegion(reader, 0), "Region read past by every stream was not released");
+        Assert.assertTrue(cache.containsRegion(reader, 100), "Region still needed by the slow stream was released");
+    }
+
+    @Test
+    public void testFinishedStreamDoesNotHoldRegions() throws Exception {
+        final SAMReaderID reader = new SAMReaderID(bamFile, new Tags());
+        final BlockPrefetchCache cache = new BlockPrefetchCache(1024);
+        cache.addRegion(reader, 0, new byte[100]);
+        cache.addRegion(reader, 100, new byte[100]);
+        cache.addRegion(reader, 200, new byte[100]);
+
+        final Object finishedStream = new Object();
+        final Object readingStream = new Object();
+        cache.getBlock(reader, finishedStream, 50);
+        cache.getBlock(reader, readingStream, 150);
+        Assert.assertTrue(cache.containsRegion(reader, 0), "Region still needed by the first stream was released");
+
+        cache.releaseStream(reader, finishedStream);
+        Assert.assertFalse(cache.containsRegion(reader, 0), "Region held by a finished stream was not released");
+        Assert.assertTrue(cache.containsRegion(reader, 100), "Region still needed by the reading stream was released");
+
+        cache.getBlock(reader, readingStream, 250);
+        Assert.assertFalse(cache.containsRegion(reader, 100), "Region read past by the reading stream was not released");
+        Assert.assertTrue(cache.containsRegion(reader, 200), "Region still needed by the reading stream was released");
+    }
+
+    @Test
+    public void testFullBudgetDropsPrefetchRatherThanEvicting() throws Exception {
+        final SAMReaderID reader = new SAMReaderID(bamFile, new Tags());
+        final BlockPrefetchCache cache = new BlockPrefetchCache(150);
+        Assert.assertTrue(cache.reserve(100));
+        cache.addRegion(reader, 0, new byte[100]);
+
+        Assert.assertFalse(cache.reserve(100), "Reserved space beyond the budget");
+        Assert.assertTrue(cache.containsRegion(reader, 0), "Unread region was evicted");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.Bin;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Makes sure the compact, cached BAM index answers every query exactly like the index file it was built from.
+ */
+public class GATKCompactBAMIndexUnitTest extends BaseTest {
+    private static File bamFile = new File(publicTestDir+"exampleBAM.bam");
+    private static File bamIndexFile = new File(publicTestDir+"exampleBAM.bam.bai");
+
+    private SAMSequenceDictionary sequenceDictionary;
+    private File cacheDirectory;
+
+    @BeforeClass
+    public void init() throws IOException {
+        final SamReader reader = SamReaderFactory.makeDefault().open(bamFile);
+        sequenceDictionary = reader.getFileHeader().getSequenceDictionary();
+        reader.close();
+
+        cacheDirectory = Files.createTempDirectory("GATKCompactBAMIndexUnitTest").toFile();
+        cacheDirectory.deleteOnExit();
+    }
+
+    @Test
+    public void testCompactIndexMatchesIndexFile() {
+        final File cacheFile = GATKCompactBAMIndex.getCacheFile(bamIndexFile, cacheDirectory);
+        cacheFile.delete();
+        cacheFile.deleteOnExit();
+
+        final GATKBAMIndex expected = new GATKBAMIndexFromFile(bamIndexFile, sequenceDictionary);
+
+        // The first index writes the cache, the second one reads it back.
+        final GATKBAMIndex created = new GATKCompactBAMIndex(bamIndexFile, sequenceDictionary, cacheDirectory);
+        Assert.assertTrue(cacheFile.exists(), "Cache file was not written");
+        final GATKBAMIndex cached = new GATKCompactBAMIndex(bamIndexFile, sequenceDictionary, cacheDirectory);
+
+        for(final GATKBAMIndex actual: new GATKBAMIndex[] { created, cached }) {
+            Assert.assertEquals(actual.getStartOfLastLinearBin(), expected.getStartOfLastLinearBin());
+            for(int referenceSequence = 0; referenceSequence < sequenceDictionary.size(); referenceSequence++) {
+                final GATKBAMIndexData expectedData = expected.readReferenceSequence(referenceSequence);
+                final GATKBAMIndexData actualData = actual.readReferenceSequence(referenceSequence);
+                for(int binNumber = 0; binNumber < GATKBAMIndex.MAX_BINS; binNumber++) {
+                    final Bin bin = new Bin(referenceSequence, binNumber);
+                    Assert.assertEquals(actualData.getSpanOverlapping(bin).toString(), expectedData.getSpanOverlapping(bin).toString(),
+                            "Span mismatch for bin " + binNumber + " of contig " + referenceSequence);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStaleCacheIsRebuilt() throws IOException {
+        final File cacheFile = GATKCompactBAMIndex.getCacheFile(bamIndexFile, cacheDirectory);
+        cacheFile.deleteOnExit();
+        Files.write(cacheFile.toPath(), "GBC\1 not a real cache".getBytes());
+
+        final GATKBAMIndex index = new GATKCompactBAMIndex(bamIndexFile, sequenceDictionary, cacheDirectory);
+        Assert.assertEquals(index.getStartOfLastLinearBin(), new GATKBAMIndexFromFile(bamIndexFile, sequenceDictionary).getStartOfLastLinearBin());
+        Assert.assertTrue(cacheFile.length() > 32, "Stale cache was not rewritten");
+    }
+}
@@ -64,6 +64,9 @@ public class GATKWalkerBenchmark extends ReadProcessingBenchmark {
     @Param
     private WalkerType walkerType;
 
+    @Param
+    private BlockLoadingType blockLoadingType;
+
     @Override
     public String getBAMFile() { return bamFile; }
 
@@ -83,6 +86,7 @@ public class GATKWalkerBenchmark extends ReadProcessingBenchmark {
             GATKArgumentCollection argCollection = new GATKArgumentCollection();
             argCollection.referenceFile = new File(referenceFile);
             argCollection.samFiles = Collections.singletonList(inputFile.getAbsolutePath());
+            blockLoadingType.configure(argCollection);
 
             engine.setArguments(argCollection);
             // Bugs in the engine mean that this has to be set twice.
@@ -116,6 +120,25 @@ public class GATKWalkerBenchmark extends ReadProcessingBenchmark {
         };
         abstract Walker create();
     }
+
+    private enum BlockLoadingType {
+        SYNCHRONOUS {
+            @Override
+            void configure(GATKArgumentCollection argCollection) { argCollection.numberOfIOThreads = 0; }
+        },
+        FILE_HANDLES {
+            @Override
+            void configure(GATKArgumentCollection argCollection) { argCollection.numberOfIOThreads = 1; }
+        },
+        MEMORY_MAPPED {
+            @Override
+            void configure(GATKArgumentCollection argCollection) {
+                argCollection.numberOfIOThreads = 1;
+                argCollection.useMemoryMappedBAMIO = true;
+            }
+        };
+        abstract void configure(GATKArgumentCollection argCollection);
+    }
 }
 
 class CountLociPerformanceWalker extends TestCountLociWalker {
@@ -57,6 +57,7 @@ public class ReadShardBalancerUnitTest extends BaseTest {
         private int stackSize;
         private int numUnmappedReads;
         private DownsamplingMethod downsamplingMethod;
+        private long targetShardBytes;
         private int expectedReadCount;
 
         private SAMFileHeader header;
@@ -67,18 +68,28 @@ public class ReadShardBalancerUnitTest extends BaseTest {
                                       int stackSize,
                                       int numUnmappedReads,
                                       int downsamplingTargetCoverage ) {
+            this(numContigs, numStacksPerContig, stackSize, numUnmappedReads, downsamplingTargetCoverage, 0);
+        }
+
+        public ReadShardBalancerTest( int numContigs,
+                                      int numStacksPerContig,
+                                      int stackSize,
+                                      int numUnmappedReads,
+                                      int downsamplingTargetCoverage,
+                                      long targetShardBytes ) {
             super(ReadShardBalancerTest.class);
 
             this.numContigs = numContigs;
             this.numStacksPerContig = numStacksPerContig;
             this.stackSize = stackSize;
             this.numUnmappedReads = numUnmappedReads;
+            this.targetShardBytes = targetShardBytes;
 
             this.downsamplingMethod = new DownsamplingMethod(DownsampleType.BY_SAMPLE, downsamplingTargetCoverage, null);
             this.expectedReadCount = Math.min(stackSize, downsamplingTargetCoverage) * numStacksPerContig * numContigs + numUnmappedReads;
 
-            setName(String.format("%s: numContigs=%d numStacksPerContig=%d stackSize=%d numUnmappedReads=%d downsamplingTargetCoverage=%d",
-                                  getClass().getSimpleName(), numContigs, numStacksPerContig, stackSize, numUnmappedReads, downsamplingTargetCoverage));
+            setName(String.format("%s: numContigs=%d numStacksPerContig=%d stackSize=%d numUnmappedReads=%d downsamplingTargetCoverage=%d targetShardBytes=%d",
+                                  getClass().getSimpleName(), numContigs, numStacksPerContig, stackSize, numUnmappedReads, downsamplingTargetCoverage, targetShardBytes));
         }
 
         public void run() {
@@ -91,23 +102,33 @@ public class ReadShardBalancerUnitTest extends BaseTest {
                                                          new GenomeLocParser(header.getSequenceDictionary()),
                                                          false,
                                                          ValidationStringency.SILENT,
-                                                         ReadShard.DEFAULT_MAX_READS,  // reset ReadShard.MAX_READS to ReadShard.DEFAULT_MAX_READS for each test
+                                                         ReadShard.DEFAULT_MAX_READS,
                                                          downsamplingMethod,
                                                          new ValidationExclusion(),
                                                          new ArrayList<ReadFilter>(),
                                                          false);
 
-            Iterable<Shard> shardIterator = dataSource.createShardIteratorOverAllReads(new ReadShardBalancer());
+            Iterable<Shard> shardIterator = dataSource.createShardIteratorOverAllReads(new ReadShardBalancer(targetShardBytes));
+
+            // With single-read stacks, no shard may go past its read limit to keep a stack together.  Reads are
+            // at least 50 bases long, so a shard sized by memory can't hold more reads than fit at that length.
+            final int maxReadsPerShard = targetShardBytes > 0 && stackSize == 1 ?
+                    (int)(targetShardBytes / (ReadShard.READ_OVERHEAD_BYTES + 2 * 50)) + 1 :
+                    Integer.MAX_VALUE;
+            int numShards = 0;
 
             SAMRecord readAtEndOfLastShard = null;
             int totalReadsSeen = 0;
 
             for ( Shard shard : shardIterator ) {
                 int numContigsThisShard = 0;
+                int numReadsThisShard = 0;
                 SAMRecord lastRead = null;
+                numShards++;
 
                 for ( SAMRecord read : shard.iterator() ) {
                     totalReadsSeen++;
+                    numReadsThisShard++;
 
                     if ( lastRead == null ) {
                         numContigsThisShard = 1;
@@ -130,11 +151,14 @@ public class ReadShardBalancerUnitTest extends BaseTest {
 
                 // There should never be reads from more than 1 contig in a shard (ignoring unmapped reads)
                 Assert.assertTrue(numContigsThisShard == 1, "found a shard with reads from multiple contigs");
+                Assert.assertTrue(numReadsThisShard <= maxReadsPerShard, "found a shard with " + numReadsThisShard + " reads, larger than the target shard size allows");
 
                 readAtEndOfLastShard = lastRead;
             }
 
             Assert.assertEquals(totalReadsSeen, expectedReadCount, "did not encounter the expected number of reads");
+            if ( maxReadsPerShard != Integer.MAX_VALUE )
+                Assert.assertTrue(numShards >= expectedReadCount / maxReadsPerShard, "shards were not sized by memory");
         }
 
         private void createTestBAM() {
@@ -185,6 +209,13 @@ public class ReadShardBalancerUnitTest extends BaseTest {
             }
         }
 
+        // Shards sized by memory rather than by read count
+        for ( int numContigs = 1; numContigs <= 2; numContigs++ ) {
+            for ( long targetShardBytes : Arrays.asList(10000L, 100000L) ) {
+                new ReadShardBalancerTest(numContigs, 2000, 1, 0, ReadShard.DEFAULT_MAX_READS, targetShardBytes);
+            }
+        }
+
         return ReadShardBalancerTest.getTests(ReadShardBalancerTest.class);
     }
 
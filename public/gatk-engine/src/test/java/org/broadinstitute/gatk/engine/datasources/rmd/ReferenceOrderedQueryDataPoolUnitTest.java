@@ -38,6 +38,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ReferenceOrderedQueryDataPoolUnitTest extends BaseTest{
@@ -86,4 +87,42 @@ public class ReferenceOrderedQueryDataPoolUnitTest extends BaseTest{
         // Extra cleanup.
         CheckableCloseableTribbleIterator.clearThreadIterators();
     }
+
+    @Test
+    public void testFeatureCacheMatchesQueries() throws IOException {
+        File file = new File(BaseTest.privateTestDir + "NA12878.hg19.example1.vcf");
+        RMDTriplet triplet = new RMDTriplet("test", "VCF", file.getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags());
+        ReferenceSequenceFile seq = new CachingIndexedFastaSequenceFile(new File(BaseTest.hg19Reference));
+        GenomeLocParser parser = new GenomeLocParser(seq);
+        TestRMDTrackBuilder builder = new TestRMDTrackBuilder(seq.getSequenceDictionary(), parser);
+
+        RODFeatureCache cache = new RODFeatureCache(64 * 1024 * 1024);
+        ReferenceOrderedQueryDataPool pool = new ReferenceOrderedQueryDataPool(triplet, builder, seq.getSequenceDictionary(), parser);
+        ReferenceOrderedQueryDataPool cachedPool = new ReferenceOrderedQueryDataPool(triplet, builder, seq.getSequenceDictionary(), parser, cache);
+
+        // overlapping queries, some spanning several cache blocks
+        final int blockSize = RODFeatureCache.BLOCK_SIZE;
+        final List<GenomeLoc> locs = new ArrayList<GenomeLoc>();
+        locs.add(parser.createGenomeLoc("20", 1, 100000));
+        locs.add(parser.createGenomeLoc("20", 1, 100000));
+        locs.add(parser.createGenomeLoc("20", 10000000, 10000000 + 3 * blockSize));
+        locs.add(parser.createGenomeLoc("20", 10000000 + blockSize, 10000000 + 2 * blockSize));
+        locs.add(parser.createGenomeLoc("20", 9999000, 10001000));
+
+        for (GenomeLoc loc : locs) {
+            Assert.assertEquals(getFeatureLocations(cachedPool, loc), getFeatureLocations(pool, loc), "Cached features differ from queried ones at " + loc);
+        }
+        Assert.assertTrue(cache.getNumHits() > 0, "Overlapping queries should have been served from the cache");
+    }
+
+    private List<GenomeLoc> getFeatureLocations(ReferenceOrderedQueryDataPool pool, GenomeLoc loc) {
+        final List<GenomeLoc> featureLocs = new ArrayList<GenomeLoc>();
+        LocationAwareSeekableRODIterator rodIterator = pool.iterator(new MappedStreamSegment(loc));
+        while (rodIterator.hasNext()) {
+            for (GATKFeature feature : rodIterator.next())
+                featureLocs.add(feature.getLocation());
+        }
+        pool.release(rodIterator);
+        return featureLocs;
+    }
 }
@@ -25,15 +25,23 @@
 
 package org.broadinstitute.gatk.engine.recalibration;
 
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import org.broadinstitute.gatk.utils.BaseTest;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.recalibration.EventType;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 public class BaseRecalibrationUnitTest {
@@ -87,4 +95,46 @@ public class BaseRecalibrationUnitTest {
             }
         }
     }
+
+    @DataProvider(name = "QualityLookupTest")
+    public Object[][] makeQualityLookupTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final long maxLookupBytes : Arrays.asList(64L * 1024 * 1024, 1L) ) {
+            tests.add(new Object[]{maxLookupBytes, 0, false, null});
+            tests.add(new Object[]{maxLookupBytes, 4, false, null});
+            tests.add(new Object[]{maxLookupBytes, 0, true, null});
+            tests.add(new Object[]{maxLookupBytes, 0, false, Arrays.asList(10, 20, 30)});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "QualityLookupTest")
+    public void testQualityLookupMatchesComputedQualities(final long maxLookupBytes, final int quantizationLevels,
+                                                          final boolean disableIndelQuals, final List<Integer> staticQuantizedQuals) throws IOException {
+        final File recalFile = new File(BaseTest.publicTestDir + "exampleGRP.grp");
+        final File bam = new File(BaseTest.publicTestDir + "exampleBAM.bam");
+        final BaseRecalibration computed = new BaseRecalibration(recalFile, quantizationLevels, disableIndelQuals, QualityUtils.MIN_USABLE_Q_SCORE, false, -1.0, staticQuantizedQuals, false, 0);
+        final BaseRecalibration lookedUp = new BaseRecalibration(recalFile, quantizationLevels, disableIndelQuals, QualityUtils.MIN_USABLE_Q_SCORE, false, -1.0, staticQuantizedQuals, false, maxLookupBytes);
+
+        final SamReader computedReader = SamReaderFactory.makeDefault().open(bam);
+        final SamReader lookedUpReader = SamReaderFactory.makeDefault().open(bam);
+        final Iterator<SAMRecord> computedReads = computedReader.iterator();
+        final Iterator<SAMRecord> lookedUpReads = lookedUpReader.iterator();
+        int nReads = 0;
+        while ( computedReads.hasNext() ) {
+            final GATKSAMRecord computedRead = new GATKSAMRecord(computedReads.next());
+            final GATKSAMRecord lookedUpRead = new GATKSAMRecord(lookedUpReads.next());
+            computed.recalibrateRead(computedRead);
+            lookedUp.recalibrateRead(lookedUpRead);
+
+            for ( final EventType event : EventType.values() )
+                Assert.assertEquals(lookedUpRead.getBaseQualities(event), computedRead.getBaseQualities(event), "Qualities differ for " + event + " of read " + computedRead.getReadName());
+            nReads++;
+        }
+        Assert.assertFalse(lookedUpReads.hasNext());
+        Assert.assertTrue(nReads > 0);
+
+        computedReader.close();
+        lookedUpReader.close();
+    }
 }
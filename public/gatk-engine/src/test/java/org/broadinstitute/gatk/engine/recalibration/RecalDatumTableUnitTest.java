@@ -0,0 +1,200 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.recalibration;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.collections.NestedIntegerArray;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class RecalDatumTableUnitTest extends BaseTest {
+
+    @DataProvider(name = "TableDimensions")
+    public Object[][] makeTableDimensions() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        tests.add(new Object[]{new int[]{4, 3}});
+        tests.add(new Object[]{new int[]{4, 94, 3}});
+        tests.add(new Object[]{new int[]{2, 94, 1002, 3}});
+        return tests.toArray(new Object[][]{});
+    }
+
+    /**
+     * Fills the table with random observations, and returns a NestedIntegerArray with the same data
+     */
+    private NestedIntegerArray<RecalDatum> fill(final RecalDatumTable table, final int nObservations, final long seed) {
+        final int[] dimensions = table.getDimensions();
+        final NestedIntegerArray<RecalDatum> expected = new NestedIntegerArray<RecalDatum>(dimensions);
+        final Random random = new Random(seed);
+
+        for ( int i = 0; i < nObservations; i++ ) {
+            final int[] keys = new int[dimensions.length];
+            for ( int j = 0; j < keys.length; j++ )
+                keys[j] = random.nextInt(Math.min(dimensions[j], 20));
+            final byte qual = (byte)(10 + random.nextInt(30));
+            final double isError = random.nextInt(10) == 0 ? 1.0 : 0.0;
+
+            RecalUtils.incrementDatumOrPutIfNecessary(expected, qual, isError, keys);
+            if ( random.nextBoolean() )
+                RecalUtils.incrementDatumOrPutIfNecessary(table, qual, isError, keys);
+            else {
+                final RecalDatum datum = table.get(keys);
+                if ( datum == null )
+                    Assert.assertTrue(table.put(new RecalDatum(1L, isError, qual), keys));
+                else
+                    datum.increment(1L, isError);
+            }
+        }
+
+        return expected;
+    }
+
+    private void assertTablesEqual(final NestedIntegerArray<RecalDatum> actual, final NestedIntegerArray<RecalDatum> expected) {
+        final List<NestedIntegerArray.Leaf<RecalDatum>> actualLeaves = actual.getAllLeaves();
+        final List<NestedIntegerArray.Leaf<RecalDatum>> expectedLeaves = expected.getAllLeaves();
+        Assert.assertEquals(actualLeaves.size(), expectedLeaves.size());
+        Assert.assertEquals(actual.getAllValues().size(), expected.getAllValues().size());
+
+        for ( int i = 0; i < expectedLeaves.size(); i++ ) {
+            final RecalDatum actualDatum = actualLeaves.get(i).value;
+            final RecalDatum expectedDatum = expectedLeaves.get(i).value;
+            Assert.assertEquals(actualLeaves.get(i).keys, expectedLeaves.get(i).keys, "Leaves are not in the same order");
+            Assert.assertEquals(actualDatum.getNumObservations(), expectedDatum.getNumObservations());
+            Assert.assertEquals(actualDatum.getNumMismatches(), expectedDatum.getNumMismatches(), 1e-10);
+            Assert.assertEquals(actualDatum.getEstimatedQReported(), expectedDatum.getEstimatedQReported(), 1e-10);
+            Assert.assertEquals(actualDatum.getEmpiricalQuality(), expectedDatum.getEmpiricalQuality(), 1e-10);
+        }
+    }
+
+    @Test(dataProvider = "TableDimensions")
+    public void testMatchesNestedIntegerArray(final int[] dimensions) {
+        final RecalDatumTable table = new RecalDatumTable(dimensions);
+        final NestedIntegerArray<RecalDatum> expected = fill(table, 10000, 1);
+        assertTablesEqual(table, expected);
+    }
+
+    @Test(dataProvider = "TableDimensions")
+    public void testPrimitiveAccessors(final int[] dimensions) {
+        final RecalDatumTable table = new RecalDatumTable(dimensions);
+        final NestedIntegerArray<RecalDatum> expected = fill(table, 1000, 2);
+
+        for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : expected.getAllLeaves() ) {
+            final long cell = table.getCell(leaf.keys);
+            Assert.assertTrue(cell >= 0);
+            Assert.assertEquals(table.getNumObservations(cell), leaf.value.getNumObservations());
+            Assert.assertEquals(table.getNumMismatches(cell), leaf.value.getNumMismatches(), 1e-10);
+            Assert.assertEquals(table.getEstimatedQReported(cell), leaf.value.getEstimatedQReported(), 1e-10);
+            Assert.assertEquals(table.getEmpiricalQuality(cell, 25.0), leaf.value.getEmpiricalQuality(25.0), 1e-10);
+        }
+
+        final int[] outOfRange = new int[dimensions.length];
+        outOfRange[0] = dimensions[0];
+        Assert.assertEquals(table.getCell(outOfRange), -1);
+        Assert.assertNull(table.get(outOfRange));
+    }
+
+    @Test(dataProvider = "TableDimensions")
+    public void testCombine(final int[] dimensions) {
+        final RecalDatumTable table1 = new RecalDatumTable(dimensions);
+        final RecalDatumTable table2 = new RecalDatumTable(dimensions);
+        final NestedIntegerArray<RecalDatum> expected1 = fill(table1, 5000, 3);
+        final NestedIntegerArray<RecalDatum> expected2 = fill(table2, 5000, 4);
+
+        RecalUtils.combineTables(expected1, expected2);
+        table1.combine(table2);
+
+        assertTablesEqual(table1, expected1);
+        assertTablesEqual(table2, expected2);
+    }
+
+    @Test(dataProvider = "TableDimensions")
+    public void testAddCounts(final int[] dimensions) {
+        final RecalDatumTable table1 = new RecalDatumTable(dimensions);
+        final RecalDatumTable table2 = table1.makeEmptyCopy();
+        final RecalDatumTable countedTogether = new RecalDatumTable(dimensions);
+        fill(table1, 5000, 6);
+        fill(table2, 5000, 7);
+        fill(countedTogether, 5000, 6);
+        fill(countedTogether, 5000, 7);
+
+        table1.addCounts(table2);
+        assertTablesEqual(table1, countedTogether);
+
+        table2.clear();
+        Assert.assertTrue(table2.getAllValues().isEmpty());
+    }
+
+    @Test(dataProvider = "TableDimensions")
+    public void testWriteAndRead(final int[] dimensions) throws IOException {
+        final RecalDatumTable table = new RecalDatumTable(dimensions);
+        fill(table, 5000, 5);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.write(new DataOutputStream(bytes));
+        final RecalDatumTable read = RecalDatumTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(read.getDimensions(), dimensions);
+        assertTablesEqual(read, table);
+    }
+
+    @Test
+    public void testDatumsWriteThrough() {
+        final RecalDatumTable table = new RecalDatumTable(4, 3);
+        final RecalDatum original = new RecalDatum(10L, 1.0, (byte)20);
+        Assert.assertTrue(table.put(original, 1, 2));
+        Assert.assertFalse(table.put(new RecalDatum(5L, 0.0, (byte)30), 1, 2));
+
+        // put copies the datum
+        original.increment(100L, 0.0);
+        Assert.assertEquals(table.get(1, 2).getNumObservations(), 10L);
+
+        final RecalDatum datum = table.get(1, 2);
+        datum.increment(5L, 2.0);
+        datum.setEstimatedQReported(25.0);
+        Assert.assertEquals(table.get(1, 2).getNumObservations(), 15L);
+        Assert.assertEquals(table.get(1, 2).getNumMismatches(), 3.0);
+        Assert.assertEquals(table.get(1, 2).getEstimatedQReported(), 25.0);
+
+        final RecalDatum copy = new RecalDatum(datum);
+        Assert.assertEquals(copy.getNumObservations(), 15L);
+        Assert.assertEquals(copy.getEstimatedQReported(), 25.0);
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class)
+    public void testPutOutOfRange() {
+        new RecalDatumTable(4, 3).put(new RecalDatum(1L, 0.0, (byte)20), 4, 0);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.recalibration;
+
+import org.broadinstitute.gatk.engine.recalibration.covariates.Covariate;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.collections.NestedIntegerArray;
+import org.broadinstitute.gatk.utils.recalibration.EventType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ThreadLocalRecalibrationCountsUnitTest extends BaseTest {
+    private Covariate[] covariates;
+    private final int numReadGroups = 4;
+    private final byte[] quals = new byte[]{10, 20, 30};
+
+    @BeforeMethod
+    private void makeCovariates() {
+        covariates = RecalibrationTestUtils.makeInitializedStandardCovariates();
+    }
+
+    /**
+     * Counts a deterministic set of observations into the tables, restricted to the read groups in [firstRG, lastRG)
+     */
+    private void fill(final RecalibrationTables tables, final int firstRG, final int lastRG) {
+        for ( int iterations = 0; iterations < 5; iterations++ ) {
+            for ( final EventType et : EventType.values() ) {
+                for ( int rg = firstRG; rg < lastRG; rg++ ) {
+                    for ( final byte qual : quals ) {
+                        for ( int key = 0; key < 3; key++ ) {
+                            final double error = (rg + qual + key + iterations) % 3 == 0 ? 1.0 : 0.0;
+                            RecalUtils.incrementDatumOrPutIfNecessary(tables.getReadGroupTable(), qual, error, rg, et.ordinal());
+                            RecalUtils.incrementDatumOrPutIfNecessary(tables.getQualityScoreTable(), qual, error, rg, qual, et.ordinal());
+                            RecalUtils.incrementDatumOrPutIfNecessary(tables.getTable(2), qual, error, rg, qual, key, et.ordinal());
+                            RecalUtils.incrementDatumOrPutIfNecessary(tables.getTable(3), qual, error, rg, qual, key, et.ordinal());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void assertTablesEqual(final RecalibrationTables actual, final RecalibrationTables expected) {
+        Assert.assertEquals(actual.numTables(), expected.numTables());
+        for ( int i = 0; i < expected.numTables(); i++ ) {
+            final NestedIntegerArray<RecalDatum> expectedTable = expected.getTable(i);
+            final NestedIntegerArray<RecalDatum> actualTable = actual.getTable(i);
+            Assert.assertEquals(actualTable.getAllLeaves().size(), expectedTable.getAllLeaves().size(), "Number of cells differs in table " + i);
+            for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : expectedTable.getAllLeaves() ) {
+                final RecalDatum actualDatum = actualTable.get(leaf.keys);
+                Assert.assertNotNull(actualDatum, "Missing cell in table " + i);
+                Assert.assertEquals(actualDatum.getNumObservations(), leaf.value.getNumObservations());
+                Assert.assertEquals(actualDatum.getNumMismatches(), leaf.value.getNumMismatches(), 1e-10);
+                Assert.assertEquals(actualDatum.getEstimatedQReported(), leaf.value.getEstimatedQReported(), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testMergeMatchesDirectIncrements() {
+        final RecalibrationTables expected = new RecalibrationTables(covariates, numReadGroups);
+        fill(expected, 0, numReadGroups);
+
+        final RecalibrationTables actual = new RecalibrationTables(covariates, numReadGroups);
+        final ThreadLocalRecalibrationCounts counts = new ThreadLocalRecalibrationCounts(actual);
+        fill(counts.get(), 0, numReadGroups);
+        counts.mergeIntoTables();
+
+        assertTablesEqual(actual, expected);
+    }
+
+    @Test
+    public void testMergeIntoExistingData() {
+        final RecalibrationTables expected = new RecalibrationTables(covariates, numReadGroups);
+        fill(expected, 0, numReadGroups);
+        fill(expected, 1, 3);
+
+        final RecalibrationTables actual = new RecalibrationTables(covariates, numReadGroups);
+        fill(actual, 0, numReadGroups);
+        final ThreadLocalRecalibrationCounts counts = new ThreadLocalRecalibrationCounts(actual);
+        fill(counts.get(), 1, 3);
+        counts.mergeIntoTables();
+
+        assertTablesEqual(actual, expected);
+    }
+
+    @Test
+    public void testMergeClearsCounts() {
+        final RecalibrationTables expected = new RecalibrationTables(covariates, numReadGroups);
+        fill(expected, 0, numReadGroups);
+
+        final RecalibrationTables actual = new RecalibrationTables(covariates, numReadGroups);
+        final ThreadLocalRecalibrationCounts counts = new ThreadLocalRecalibrationCounts(actual);
+        fill(counts.get(), 0, numReadGroups);
+        counts.mergeIntoTables();
+        counts.mergeIntoTables();
+
+        assertTablesEqual(actual, expected);
+    }
+
+    @Test
+    public void testThreadLocalCounts() throws InterruptedException {
+        final RecalibrationTables expected = new RecalibrationTables(covariates, numReadGroups);
+        fill(expected, 0, numReadGroups);
+
+        final RecalibrationTables actual = new RecalibrationTables(covariates, numReadGroups);
+        final ThreadLocalRecalibrationCounts threadCounts = new ThreadLocalRecalibrationCounts(actual);
+
+        // each thread counts the observations of a single read group
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( int rg = 0; rg < numReadGroups; rg++ ) {
+            final int threadRG = rg;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    fill(threadCounts.get(), threadRG, threadRG + 1);
+                }
+            }));
+        }
+        for ( final Thread thread : threads )
+            thread.start();
+        for ( final Thread thread : threads )
+            thread.join();
+
+        threadCounts.mergeIntoTables();
+
+        assertTablesEqual(actual, expected);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.resourcemanagement;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ThreadAllocationUnitTest extends BaseTest {
+
+    @DataProvider(name = "AdaptiveAllocationTest")
+    public Object[][] makeAdaptiveAllocationTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+
+        for ( final int total : Arrays.asList(1, 2, 3, 4, 6, 7, 8, 11, 16, 32) ) {
+            // neither kind of parallelism, we can only use a single thread
+            tests.add(new Object[]{total, false, false, 1, 1});
+            // only data threads
+            tests.add(new Object[]{total, true, false, total, 1});
+            // only CPU threads
+            tests.add(new Object[]{total, false, true, 1, total});
+        }
+
+        // both, the fewest data threads with at most MAX_ADAPTIVE_CPU_THREADS_PER_DATA_THREAD CPU threads each
+        tests.add(new Object[]{1, true, true, 1, 1});
+        tests.add(new Object[]{2, true, true, 1, 2});
+        tests.add(new Object[]{3, true, true, 1, 3});
+        tests.add(new Object[]{4, true, true, 1, 4});
+        tests.add(new Object[]{6, true, true, 2, 3});
+        tests.add(new Object[]{7, true, true, 2, 3});
+        tests.add(new Object[]{8, true, true, 2, 4});
+        tests.add(new Object[]{11, true, true, 3, 3});
+        tests.add(new Object[]{16, true, true, 4, 4});
+        tests.add(new Object[]{32, true, true, 8, 4});
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "AdaptiveAllocationTest")
+    public void testAdaptiveAllocation(final int total, final boolean treeReducible, final boolean nanoSchedulable,
+                                       final int expectedDataThreads, final int expectedCPUThreads) {
+        final ThreadAllocation allocation = ThreadAllocation.createAdaptive(total, treeReducible, nanoSchedulable, 0, false, false, false);
+
+        Assert.assertEquals(allocation.getNumDataThreads(), expectedDataThreads, "data threads");
+        Assert.assertEquals(allocation.getNumCPUThreadsPerDataThread(), expectedCPUThreads, "CPU threads per data thread");
+        Assert.assertTrue(allocation.getTotalNumThreads() <= total, "allocation exceeds the thread budget");
+        if ( treeReducible )
+            Assert.assertTrue(total - allocation.getTotalNumThreads() < allocation.getNumDataThreads(), "allocation leaves too many threads idle");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.traversals;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ActiveRegionPipelineUnitTest extends BaseTest {
+    private static class SlowSquare implements NSMapFunction<Integer, Integer> {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Integer apply(final Integer input) {
+            final int nowRunning = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+            }
+            try {
+                // later inputs finish first, to check that results are still reduced in order
+                Thread.sleep(input % 3);
+            } catch ( InterruptedException e ) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return input * input;
+        }
+    }
+
+    private static class AppendToList implements NSReduceFunction<Integer, List<Integer>> {
+        @Override
+        public List<Integer> apply(final Integer one, final List<Integer> sum) {
+            sum.add(one);
+            return sum;
+        }
+    }
+
+    @DataProvider(name = "PipelineTest")
+    public Object[][] makePipelineTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final int nThreads : Arrays.asList(1, 2, 4) )
+            for ( final int maxPending : Arrays.asList(1, 3, 100) )
+                for ( final int nInputsPerCall : Arrays.asList(0, 1, 10) )
+                    tests.add(new Object[]{nThreads, maxPending, nInputsPerCall});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "PipelineTest")
+    public void testResultsAreReducedInOrder(final int nThreads, final int maxPending, final int nInputsPerCall) {
+        final SlowSquare map = new SlowSquare();
+        final ActiveRegionPipeline<Integer, Integer, List<Integer>> pipeline =
+                new ActiveRegionPipeline<>(nThreads, maxPending, map, new AppendToList());
+
+        // simulate several calls to traverse, each submitting a few inputs
+        List<Integer> sum = new ArrayList<Integer>();
+        final List<Integer> expected = new ArrayList<Integer>();
+        int input = 0;
+        for ( int call = 0; call < 5; call++ ) {
+            for ( int i = 0; i < nInputsPerCall; i++, input++ ) {
+                sum = pipeline.submit(input, sum);
+                expected.add(input * input);
+            }
+            Assert.assertTrue(sum.size() <= input);
+        }
+
+        sum = pipeline.finish(sum);
+        Assert.assertFalse(pipeline.hasPendingJobs());
+        Assert.assertEquals(sum, expected);
+        Assert.assertTrue(map.maxRunning.get() <= Math.min(nThreads, maxPending));
+        pipeline.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMapErrorIsRethrown() {
+        final ActiveRegionPipeline<Integer, Integer, List<Integer>> pipeline =
+                new ActiveRegionPipeline<>(2, 10, new NSMapFunction<Integer, Integer>() {
+                    @Override
+                    public Integer apply(final Integer input) {
+                        if ( input == 3 ) throw new IllegalStateException("bad input");
+                        return input;
+                    }
+                }, new AppendToList());
+
+        try {
+            List<Integer> sum = new ArrayList<Integer>();
+            for ( int i = 0; i < 10; i++ )
+                sum = pipeline.submit(i, sum);
+            pipeline.finish(sum);
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+}
@@ -50,7 +50,7 @@ class DummyActiveRegionWalker extends ActiveRegionWalker<Integer, Integer> {
     private GenomeLocSortedSet activeRegions = null;
 
     protected List<GenomeLoc> isActiveCalls = new ArrayList<GenomeLoc>();
-    protected Map<GenomeLoc, ActiveRegion> mappedActiveRegions = new LinkedHashMap<GenomeLoc, ActiveRegion>();
+    protected Map<GenomeLoc, ActiveRegion> mappedActiveRegions = Collections.synchronizedMap(new LinkedHashMap<GenomeLoc, ActiveRegion>());
     private boolean declareHavingPresetRegions = false;
 
     public DummyActiveRegionWalker() {
@@ -76,6 +76,7 @@ public class TraverseActiveRegionsUnitTest extends BaseTest {
     public Object[][] makeTraversals() {
         final List<Object[]> traversals = new LinkedList<Object[]>();
         traversals.add(new Object[]{new TraverseActiveRegions<>()});
+        traversals.add(new Object[]{new TraverseActiveRegions<>(2, false, true)});
         return traversals.toArray(new Object[][]{});
     }
 
@@ -161,6 +162,7 @@ public class TraverseActiveRegionsUnitTest extends BaseTest {
             t.traverse(walker, dataProvider, 0);
             activeIntervals.addAll(walker.isActiveCalls);
         }
+        t.finishPendingWork(walker, 0);
 
         return activeIntervals;
     }
@@ -403,8 +405,10 @@ public class TraverseActiveRegionsUnitTest extends BaseTest {
     private Map<GenomeLoc, ActiveRegion> getActiveRegions(TraverseActiveRegions t, DummyActiveRegionWalker walker, List<GenomeLoc> intervals, final File bam) {
         for (LocusShardDataProvider dataProvider : createDataProviders(t, walker, intervals, bam))
             t.traverse(walker, dataProvider, 0);
+        t.finishPendingWork(walker, 0);
 
-        return walker.mappedActiveRegions;
+        // regions may be mapped out of order when pipelined
+        return new TreeMap<GenomeLoc, ActiveRegion>(walker.mappedActiveRegions);
     }
 
     private Collection<GenomeLoc> toSingleBaseLocs(GenomeLoc interval) {
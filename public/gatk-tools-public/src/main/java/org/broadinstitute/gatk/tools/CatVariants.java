@@ -32,6 +32,7 @@ import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexCreator;
 import org.broadinstitute.gatk.utils.commandline.Argument;
 import org.broadinstitute.gatk.utils.commandline.Input;
@@ -39,8 +40,10 @@ import org.broadinstitute.gatk.utils.commandline.Output;
 import org.broadinstitute.gatk.utils.commandline.CommandLineProgram;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.iterators.ReadAheadMergingIterator;
 import org.broadinstitute.gatk.utils.text.XReadLines;
 import org.broadinstitute.gatk.utils.variant.GATKVCFIndexType;
+import org.broadinstitute.gatk.utils.variant.VariantFileConcatenator;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
 import htsjdk.variant.bcf2.BCF2Codec;
 import org.broadinstitute.gatk.utils.collections.Pair;
@@ -55,6 +58,8 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  *
@@ -69,6 +74,10 @@ import java.util.*;
  * </ul>
  * </p>
  * <p>When the input files are already sorted based on the intervals start positions, use -assumeSorted.</p>
+ * <p>With -rawCopy, the records of the inputs are copied byte for byte instead of being decoded and encoded again,
+ * which is much faster for block-compressed VCFs and BCFs. The output must then have the same type as the inputs.</p>
+ * <p>Inputs whose variants overlap can be combined with -allowOverlaps, which merges the records of all inputs by
+ * position. Use -nt to decode the inputs and encode the output on separate threads.</p>
  *
  * <h3>Input</h3>
  * <p>
@@ -129,6 +138,29 @@ public class CatVariants extends CommandLineProgram {
     @Argument(fullName = "assumeSorted", shortName = "assumeSorted", doc = "assumeSorted should be true if the input files are already sorted (based on the position of the variants)", required = false)
     private Boolean assumeSorted = false;
 
+    /**
+     * Copy the records of each input byte for byte, without decoding them. The inputs must be of non-overlapping
+     * intervals, all have the same samples (and for BCFs the same header), and the output must have the same type as
+     * the inputs. Only the header of the first input is kept.
+     */
+    @Argument(fullName = "rawCopy", shortName = "rawCopy", doc = "Copy the records of the inputs without decoding them", required = false)
+    private Boolean rawCopy = false;
+
+    /**
+     * Merge the records of all inputs by position instead of concatenating the inputs one after the other, so that
+     * the variants of different inputs may overlap. Each input must still be sorted, and all inputs must have the same
+     * samples in the same order, as only the header of the first input is written to the output.
+     */
+    @Argument(fullName = "allowOverlaps", shortName = "allowOverlaps", doc = "Merge the records of inputs whose variants overlap", required = false)
+    private Boolean allowOverlaps = false;
+
+    /**
+     * With more than one thread, the output is encoded on its own thread, and with -allowOverlaps the inputs are
+     * decoded ahead of the merge on the remaining threads.
+     */
+    @Argument(fullName = "num_threads", shortName = "nt", doc = "Number of threads to decode the inputs and encode the output with", required = false)
+    private Integer numThreads = 1;
+
     @Argument(fullName = "variant_index_type", doc = "which type of IndexCreator to use for VCF/BCF indices", required = false)
     private GATKVCFIndexType variant_index_type = GATKVCFUtils.DEFAULT_INDEX_TYPE;
 
@@ -144,6 +176,9 @@ public class CatVariants extends CommandLineProgram {
         System.err.println("    If the input files are already sorted, then indicate that with --assumeSorted to improve performance.");
     }
 
+    // number of records read from an input at a time when merging
+    private static final int READ_AHEAD_BATCH_SIZE = 256;
+
     private enum FileType {
         VCF,
         BCF,
@@ -231,10 +266,18 @@ public class CatVariants extends CommandLineProgram {
 
         variant = parseVariantList(variant);
 
+        if ( numThreads < 1 )
+            throw new UserException.BadArgumentValue("num_threads", "must be at least 1");
+        if ( rawCopy && allowOverlaps )
+            throw new UserException.BadArgumentValue("rawCopy", "overlapping inputs can't be copied without decoding them; use -allowOverlaps alone");
+
         Comparator<Pair<VariantContext,File>> positionComparator = new PositionComparator(ref.getSequenceDictionary());
 
+        // merged inputs don't need to be sorted by their first record
+        final boolean keepInputOrder = assumeSorted || allowOverlaps;
+
         Queue<Pair<VariantContext,File>> priorityQueue;
-        if (assumeSorted)
+        if (keepInputOrder)
             priorityQueue = new LinkedList<>();
         else
             priorityQueue = new PriorityQueue<>(10000, positionComparator);
@@ -246,7 +289,7 @@ public class CatVariants extends CommandLineProgram {
             if (fileType == FileType.INVALID)
                 return 1;
 
-            if (assumeSorted){
+            if (keepInputOrder){
                 priorityQueue.add(new Pair<VariantContext,File>(null,file));
             }
             else{
@@ -265,7 +308,17 @@ public class CatVariants extends CommandLineProgram {
             }
         }
 
+        if ( rawCopy ) {
+            if ( fileExtensionCheck(outputFile, fileType) != fileType )
+                throw new UserException.BadArgumentValue("rawCopy", "the output file must be of the same type as the input files");
+            copyRecords(priorityQueue, fileType, ref.getSequenceDictionary());
+            return 0;
+        }
+
         EnumSet<Options> options = EnumSet.of(Options.INDEX_ON_THE_FLY);
+        // encode the output on its own thread
+        if ( numThreads > 1 )
+            options.add(Options.USE_ASYNC_IO);
         IndexCreator idxCreator = GATKVCFUtils.makeIndexCreator(variant_index_type, variant_index_parameter, outputFile, ref.getSequenceDictionary());
 
         final VariantContextWriter outputWriter =
@@ -275,6 +328,15 @@ public class CatVariants extends CommandLineProgram {
                         .setIndexCreator(idxCreator)
                         .setOptions(options)
                         .build();
+        if ( allowOverlaps ) {
+            final List<File> files = new ArrayList<>(priorityQueue.size());
+            for ( final Pair<VariantContext,File> input : priorityQueue )
+                files.add(input.getSecond());
+            mergeRecords(files, fileType, outputWriter, ref.getSequenceDictionary());
+            outputWriter.close();
+            return 0;
+        }
+
         boolean firstFile = true;
         int count = 0;
         while(!priorityQueue.isEmpty() ){
@@ -312,6 +374,73 @@ public class CatVariants extends CommandLineProgram {
         return 0;
     }
 
+    /**
+     * Concatenate the inputs, in order, without decoding their records, then index the output.
+     */
+    private void copyRecords(final Queue<Pair<VariantContext,File>> inputs, final FileType fileType, final SAMSequenceDictionary sequenceDictionary) throws IOException {
+        final VariantFileConcatenator concatenator = new VariantFileConcatenator(outputFile, getConcatenationFormat(fileType));
+        try {
+            while ( !inputs.isEmpty() ) {
+                final File file = inputs.remove().getSecond();
+                if (!file.exists()) {
+                    throw new UserException(String.format("File %s doesn't exist",file.getAbsolutePath()));
+                }
+                concatenator.add(file);
+            }
+        } finally {
+            concatenator.close();
+        }
+
+        final Index index = GATKVCFUtils.makeIndex(variant_index_type, variant_index_parameter, outputFile,
+                fileType == FileType.BCF ? new BCF2Codec() : new VCFCodec(), sequenceDictionary);
+        index.writeBasedOnFeatureFile(outputFile);
+    }
+
+    private static VariantFileConcatenator.Format getConcatenationFormat(final FileType fileType) {
+        switch (fileType) {
+            case VCF: return VariantFileConcatenator.Format.VCF;
+            case BCF: return VariantFileConcatenator.Format.BCF;
+            case BLOCK_COMPRESSED_VCF: return VariantFileConcatenator.Format.BLOCK_COMPRESSED_VCF;
+            default: throw new IllegalArgumentException("Can't concatenate files of type " + fileType);
+        }
+    }
+
+    /**
+     * Merge the records of all inputs by position, decoding each input ahead of the merge when running with more than one thread.
+     */
+    private void mergeRecords(final List<File> files, final FileType fileType, final VariantContextWriter outputWriter, final SAMSequenceDictionary sequenceDictionary) throws IOException {
+        final List<FeatureReader<VariantContext>> readers = new ArrayList<>(files.size());
+        final ExecutorService readAheadService = numThreads > 1 ? Executors.newFixedThreadPool(numThreads - 1) : null;
+        try {
+            final List<Iterator<VariantContext>> iterators = new ArrayList<>(files.size());
+            for ( final File file : files ) {
+                if (!file.exists()) {
+                    throw new UserException(String.format("File %s doesn't exist",file.getAbsolutePath()));
+                }
+                final FeatureReader<VariantContext> reader = getFeatureReader(fileType, file);
+                readers.add(reader);
+                iterators.add(reader.iterator());
+            }
+            final VCFHeader header = (VCFHeader)readers.get(0).getHeader();
+            for ( int i = 1; i < readers.size(); i++ ) {
+                final List<String> samples = ((VCFHeader)readers.get(i).getHeader()).getGenotypeSamples();
+                if ( !samples.equals(header.getGenotypeSamples()) )
+                    throw new UserException.BadInput(String.format("-allowOverlaps requires all inputs to have the same samples in the same order, but %s has samples %s while %s has samples %s",
+                            files.get(i).getAbsolutePath(), samples, files.get(0).getAbsolutePath(), header.getGenotypeSamples()));
+            }
+            outputWriter.writeHeader(header);
+
+            final VariantContextComparator comparator = new VariantContextComparator(sequenceDictionary);
+            for ( final VariantContext vc : new ReadAheadMergingIterator<>(iterators, comparator, readAheadService, READ_AHEAD_BATCH_SIZE) )
+                outputWriter.add(vc);
+        } finally {
+            if ( readAheadService != null )
+                readAheadService.shutdownNow();
+            for ( final FeatureReader<VariantContext> reader : readers )
+                reader.close();
+        }
+    }
+
     public static void main(String[] args){
         try {
             CatVariants instance = new CatVariants();
@@ -113,7 +113,9 @@ public class AlleleBalanceBySample extends GenotypeAnnotation implements Experim
         for ( final Allele allele : vc.getAlleles() )
             alleleCounts.put(allele.getBases()[0], new MutableInt(0));
 
-        for ( final byte base : stratifiedContext.getBasePileup().getBases() ) {
+        final ReadBackedPileup pileup = stratifiedContext.getBasePileup();
+        for ( int i = 0; i < pileup.getNumberOfElements(); i++ ) {
+            final byte base = pileup.getBase(i);
             if ( alleleCounts.containsKey(base) )
                 alleleCounts.get(base).increment();
         }
@@ -140,7 +140,55 @@ public class CoverageUtils {
         Map<String, int[]> countsByRGName = new HashMap<String, int[]>();
         Map<String, SAMReadGroupRecord> RGByName = new HashMap<String, SAMReadGroupRecord>();
 
-        List<PileupElement> countPileup = new LinkedList<PileupElement>();
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
+
+            String readGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId();
+            int[] counts = countsByRGName.get(readGroupId);
+            if (counts == null) {
+                counts = new int[6];
+                countsByRGName.put(readGroupId, counts);
+                RGByName.put(readGroupId, readGroup);
+            }
+
+            updateCounts(counts, e);
+        }
+
+        for (String readGroupId : RGByName.keySet()) {
+            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
+        }
+
+        return countsByRG;
+    }
+
+    /**
+     * Returns the counts of bases passing the filters of the given count type, per read group.
+     *
+     * @param readGroupIndices the index of each read group ID into the returned array
+     * @return base counts indexed by the index fields of BaseUtils, by read group index; null for read groups without counted bases
+     */
+    public static int[][] getBaseCountsByReadGroupIndex(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType, Map<String,Integer> readGroupIndices) {
+        int[][] countsByRG = new int[readGroupIndices.size()][];
+
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
+
+            Integer index = readGroupIndices.get(readGroup.getReadGroupId());
+            if (index == null) {
+                throw new UserException.MalformedBAM(e.getRead(), "Read "+e.getRead().getReadName()+" has read group "+readGroup.getReadGroupId()+" which is not in the header");
+            }
+            if (countsByRG[index] == null) {
+                countsByRG[index] = new int[6];
+            }
+
+            updateCounts(countsByRG[index], e);
+        }
+
+        return countsByRG;
+    }
+
+    private static List<PileupElement> getCountedElements(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType) {
+        List<PileupElement> countPileup = new ArrayList<PileupElement>();
         FragmentCollection<PileupElement> fpile;
 
         switch (countType) {
@@ -203,25 +251,7 @@ public class CoverageUtils {
                 throw new UserException("Must use valid CountPileupType");
         }
 
-        for (PileupElement e : countPileup) {
-            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
-
-            String readGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId();
-            int[] counts = countsByRGName.get(readGroupId);
-            if (counts == null) {
-                counts = new int[6];
-                countsByRGName.put(readGroupId, counts);
-                RGByName.put(readGroupId, readGroup);
-            }
-
-            updateCounts(counts, e);
-        }
-
-        for (String readGroupId : RGByName.keySet()) {
-            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
-        }
-
-        return countsByRG;
+        return countPileup;
     }
 
     private static boolean countElement(PileupElement e, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ) {
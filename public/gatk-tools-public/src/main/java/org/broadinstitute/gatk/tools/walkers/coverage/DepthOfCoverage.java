@@ -110,7 +110,7 @@ import java.util.*;
 @By(DataSource.REFERENCE)
 @PartitionBy(PartitionType.NONE)
 @Downsample(by= DownsampleType.NONE, toCoverage=Integer.MAX_VALUE)
-public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map<String,int[]>>, CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
+public class DepthOfCoverage extends LocusWalker<int[][], CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
     private final static Logger logger = Logger.getLogger(DepthOfCoverage.class);
 
     /**
@@ -253,6 +253,8 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
     String[] OUTPUT_FORMATS = {"table","rtable","csv"};
     String separator = "\t";
     Map<DoCOutputType.Partition,List<String>> orderCheck = new HashMap<DoCOutputType.Partition,List<String>>();
+    List<SAMReadGroupRecord> readGroups; // read groups of the header; map() counts bases by index into this list
+    Map<String,Integer> readGroupIndices = new HashMap<String,Integer>();
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STANDARD WALKER METHODS
@@ -327,6 +329,11 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
             }
             Collections.sort(orderCheck.get(type));
         }
+
+        readGroups = getToolkit().getSAMFileHeader().getReadGroups();
+        for ( SAMReadGroupRecord rg : readGroups ) {
+            readGroupIndices.put(rg.getReadGroupId(),readGroupIndices.size());
+        }
     }
 
     private HashSet<String> getSamplesFromToolKit( Collection<DoCOutputType.Partition> types ) {
@@ -386,34 +393,34 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         for (DoCOutputType.Partition t : partitionTypes ) {
             aggro.addIdentifiers(t,getSamplesFromToolKit(t));
         }
-        aggro.initialize(includeDeletions,omitLocusTable);
+        aggro.initialize(readGroups,includeDeletions,omitLocusTable);
         checkOrder(aggro);
         return aggro;
     }
 
-    public Map<DoCOutputType.Partition,Map<String,int[]>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    public int[][] map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if (includeRefNBases || BaseUtils.isRegularBase(ref.getBase())) {
             if ( ! omitDepthOutput ) {
                 getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary).printf("%s",ref.getLocus()); // yes: print locus in map, and the rest of the info in reduce (for eventual cumulatives)
                 //System.out.printf("\t[log]\t%s",ref.getLocus());
             }
 
-            return CoverageUtils.getBaseCountsByPartition(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,partitionTypes);
+            return CoverageUtils.getBaseCountsByReadGroupIndex(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,readGroupIndices);
         } else {
             return null;
         }
     }
 
-    public CoveragePartitioner reduce(Map<DoCOutputType.Partition,Map<String,int[]>> thisMap, CoveragePartitioner prevReduce) {
+    public CoveragePartitioner reduce(int[][] thisMap, CoveragePartitioner prevReduce) {
         if ( thisMap != null ) { // skip sites we didn't want to include in the calculation (ref Ns)
+            prevReduce.update(thisMap);
+
             if ( ! omitDepthOutput ) {
                 //checkOrder(prevReduce); // tests prevReduce.getIdentifiersByType().get(t) against the initialized header order
-                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),thisMap,prevReduce.getIdentifiersByType());
-                // this is an additional iteration through thisMap, plus dealing with IO, so should be much slower without
+                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),prevReduce);
+                // this is an additional iteration through the counts, plus dealing with IO, so should be much slower without
                 // turning on omit
             }
-
-            prevReduce.update(thisMap); // note that in "useBoth" cases, this method alters the thisMap object
         }
 
         return prevReduce;
@@ -631,9 +638,9 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
 
         for ( String s : stats.getAllSamples() ) {
             targetSummary.append(separator);
-            targetSummary.append(stats.getTotals().get(s));
+            targetSummary.append(stats.getTotal(s));
             targetSummary.append(separator);
-            targetSummary.append(String.format("%.2f", stats.getMeans().get(s)));
+            targetSummary.append(String.format("%.2f", stats.getMean(s)));
             targetSummary.append(separator);
             int median = getQuantile(stats.getHistograms().get(s),0.5);
             int q1 = getQuantile(stats.getHistograms().get(s),0.25);
@@ -907,34 +914,36 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return 100*( (double) above )/( above + below );
     }
 
-    private void printDepths(PrintStream stream, Map<DoCOutputType.Partition,Map<String,int[]>> countsBySampleByType, Map<DoCOutputType.Partition,List<String>> identifiersByType) {
-        // get the depths per sample and build up the output string while tabulating total and average coverage
-        StringBuilder perSampleOutput = new StringBuilder();
+    private void printDepths(PrintStream stream, CoveragePartitioner partitioner) {
+        // the total depth is summed over the first partition type only
         int tDepth = 0;
-        boolean depthCounted = false;
-        for (DoCOutputType.Partition type : partitionTypes ) {
-            Map<String,int[]> countsByID = countsBySampleByType.get(type);
-            for ( String s : identifiersByType.get(type) ) {
-                perSampleOutput.append(separator);
-                long dp = (countsByID != null && countsByID.keySet().contains(s)) ? sumArray(countsByID.get(s)) : 0 ;
-                perSampleOutput.append(dp);
-                if ( printBaseCounts ) {
-                    perSampleOutput.append(separator);
-                    perSampleOutput.append(baseCounts(countsByID != null ? countsByID.get(s) : null ));
-                }
-                if ( ! depthCounted ) {
-                    tDepth += dp;
-                }
+        if ( ! partitionTypes.isEmpty() ) {
+            for ( int[] counts : partitioner.getLocusCounts(partitionTypes.iterator().next()) ) {
+                tDepth += sumArray(counts);
             }
-            depthCounted = true; // only sum the total depth once
         }
 
+        // build the rest of the line in one pass over the counts, and write it at once
         // remember -- genome locus was printed in map()
-        stream.printf("%s%d",separator,tDepth);
+        StringBuilder line = new StringBuilder();
+        line.append(separator);
+        line.append(tDepth);
         for (DoCOutputType.Partition type : partitionTypes ) {
-            stream.printf("%s%.2f",separator, ( (double) tDepth / identifiersByType.get(type).size() ) );
+            line.append(separator);
+            line.append(String.format("%.2f", ( (double) tDepth / partitioner.getIdentifiersByType().get(type).size() ) ));
         }
-        stream.printf("%s%n",perSampleOutput);
+        for (DoCOutputType.Partition type : partitionTypes ) {
+            int[][] countsByID = partitioner.getLocusCounts(type);
+            for ( int index : partitioner.getSortedIdentifierIndices(type) ) {
+                line.append(separator);
+                line.append(sumArray(countsByID[index]));
+                if ( printBaseCounts ) {
+                    line.append(separator);
+                    appendBaseCounts(line,countsByID[index]);
+                }
+            }
+        }
+        stream.println(line);
     }
 
     private long sumArray(int[] array) {
@@ -945,11 +954,7 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return i;
     }
 
-    private String baseCounts(int[] counts) {
-        if ( counts == null ) {
-            counts = new int[6];
-        }
-        StringBuilder s = new StringBuilder();
+    private void appendBaseCounts(StringBuilder s, int[] counts) {
         int nbases = 0;
         for ( byte b : BaseUtils.EXTENDED_BASES ) {
             nbases++;
@@ -962,8 +967,6 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
                 }
             }
         }
-
-        return s.toString();
     }
 
     private void checkOrder(CoveragePartitioner ag) {
@@ -1071,6 +1074,13 @@ class CoveragePartitioner {
     private Map<DoCOutputType.Partition,DepthOfCoverageStats> coverageProfiles;
     private Map<DoCOutputType.Partition,List<String>> identifiersByType;
     private Set<String> allIdentifiers;
+
+    // the arrays below are indexed by DepthOfCoverageStats.getSampleIndex() of each identifier
+    private Map<DoCOutputType.Partition,int[]> identifierIndexByReadGroup; // -1 for read groups without an identifier of the type
+    private Map<DoCOutputType.Partition,int[]> sortedIdentifierIndices; // in the order of identifiersByType
+    private Map<DoCOutputType.Partition,int[][]> locusCountsByIdentifier; // base counts at the last updated locus
+    private Map<DoCOutputType.Partition,int[]> locusDepthsByIdentifier;
+
     public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int start, int stop, int nBins) {
         coverageProfiles = new TreeMap<DoCOutputType.Partition,DepthOfCoverageStats>();
         identifiersByType = new HashMap<DoCOutputType.Partition,List<String>>();
@@ -1080,6 +1090,10 @@ class CoveragePartitioner {
             identifiersByType.put(type,new ArrayList<String>());
         }
         allIdentifiers = new HashSet<String>();
+        identifierIndexByReadGroup = new HashMap<DoCOutputType.Partition,int[]>();
+        sortedIdentifierIndices = new HashMap<DoCOutputType.Partition,int[]>();
+        locusCountsByIdentifier = new HashMap<DoCOutputType.Partition,int[][]>();
+        locusDepthsByIdentifier = new HashMap<DoCOutputType.Partition,int[]>();
     }
 
     public void merge(CoveragePartitioner otherAggregator) {
@@ -1101,23 +1115,87 @@ class CoveragePartitioner {
         Collections.sort(identifiersByType.get(t));
     }
 
-    public void initialize(boolean useDels, boolean omitLocusTable) {
+    /**
+     * Sets up the statistics once all identifiers were added.
+     *
+     * @param readGroups the read groups, in the order of the count arrays passed to update()
+     */
+    public void initialize(List<SAMReadGroupRecord> readGroups, boolean useDels, boolean omitLocusTable) {
         for ( DoCOutputType.Partition t : types ) {
+            DepthOfCoverageStats stats = coverageProfiles.get(t);
             if ( useDels ) {
-                coverageProfiles.get(t).initializeDeletions();
+                stats.initializeDeletions();
             }
             if ( ! omitLocusTable ) {
-                coverageProfiles.get(t).initializeLocusCounts();
+                stats.initializeLocusCounts();
+            }
+
+            int[] identifierIndices = new int[readGroups.size()];
+            for ( int rg = 0; rg < readGroups.size(); rg++ ) {
+                identifierIndices[rg] = stats.getSampleIndex(CoverageUtils.getTypeID(readGroups.get(rg),t));
             }
+            identifierIndexByReadGroup.put(t,identifierIndices);
+
+            List<String> identifiers = identifiersByType.get(t);
+            int[] sortedIndices = new int[identifiers.size()];
+            for ( int i = 0; i < identifiers.size(); i++ ) {
+                sortedIndices[i] = stats.getSampleIndex(identifiers.get(i));
+            }
+            sortedIdentifierIndices.put(t,sortedIndices);
         }
     }
 
-    public void update(Map<DoCOutputType.Partition,Map<String,int[]>> countsByIdentifierByType) {
+    /**
+     * Adds a locus to the statistics of every partition type.
+     *
+     * @param countsByReadGroup base counts by read group index, as returned by CoverageUtils.getBaseCountsByReadGroupIndex
+     */
+    public void update(int[][] countsByReadGroup) {
         for ( DoCOutputType.Partition t : types ) {
-            coverageProfiles.get(t).update(countsByIdentifierByType.get(t));
+            DepthOfCoverageStats stats = coverageProfiles.get(t);
+            int[] identifierIndices = identifierIndexByReadGroup.get(t);
+            int[][] counts = getLocusCounts(t);
+            int[] depths = locusDepthsByIdentifier.get(t);
+            if ( depths == null ) {
+                depths = new int[counts.length];
+                locusDepthsByIdentifier.put(t,depths);
+            }
+
+            for ( int[] c : counts ) {
+                Arrays.fill(c,0);
+            }
+            for ( int rg = 0; rg < countsByReadGroup.length; rg++ ) {
+                if ( countsByReadGroup[rg] != null && identifierIndices[rg] >= 0 ) {
+                    CoverageUtils.addCounts(counts[identifierIndices[rg]],countsByReadGroup[rg]);
+                }
+            }
+            for ( int i = 0; i < counts.length; i++ ) {
+                depths[i] = stats.getDepth(counts[i]);
+            }
+
+            stats.updateDepths(depths);
         }
     }
 
+    /**
+     * @return base counts at the last updated locus, by the identifier's sample index in getCoverageByAggregationType(t)
+     */
+    public int[][] getLocusCounts(DoCOutputType.Partition t) {
+        int[][] counts = locusCountsByIdentifier.get(t);
+        if ( counts == null ) {
+            counts = new int[identifiersByType.get(t).size()][6];
+            locusCountsByIdentifier.put(t,counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the sample index in getCoverageByAggregationType(t) of each identifier in getIdentifiersByType().get(t)
+     */
+    public int[] getSortedIdentifierIndices(DoCOutputType.Partition t) {
+        return sortedIdentifierIndices.get(t);
+    }
+
     public Set<String> getAllIdentifiers() {
         return allIdentifiers;
     }
@@ -26,9 +26,13 @@
 package org.broadinstitute.gatk.tools.walkers.coverage;
 
 import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -36,6 +40,9 @@ import java.util.TreeMap;
 /**
  * IF THERE IS NO JAVADOC RIGHT HERE, YELL AT chartl
  *
+ * Per-sample counts are held in primitive arrays indexed by the order in which samples were added
+ * (see getSampleIndex), so that updates and merges never box.
+ *
  * @Author chartl
  * @Date Feb 26, 2010
  */
@@ -50,10 +57,13 @@ public class DepthOfCoverageStats {
     // STANDARD DATA
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin
-    private Map<String,Long> totalCoverages; // holds total coverage per sample
+    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin; shares its arrays with histogramsByIndex
+    private Map<String,Integer> sampleIndices; // index of each sample into the per-sample arrays below
+    private List<String> samples; // sample names by index
+    private long[][] histogramsByIndex; // holds the counts per each bin, by sample index
+    private long[] totalCoverages; // holds total coverage, by sample index
     private int[] binLeftEndpoints; // describes the left endpoint for each bin
-    private long[][] locusCoverageCounts; // holds counts of number of bases with >=X samples at >=Y coverage
+    private long[][] lociByCoveredSamples; // [bin][n] holds the number of loci with exactly n samples at or above bin; rows grow as needed
     private boolean tabulateLocusCounts = false;
     private long nLoci; // number of loci seen
     private long totalDepthOfCoverage;
@@ -63,8 +73,8 @@ public class DepthOfCoverageStats {
     // TEMPORARY DATA ( not worth re-instantiating )
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private int[] locusHistogram; // holds a histogram for each locus; reset after each update() call
-    private int totalLocusDepth; // holds the total depth of coverage for each locus; reset after each update() call
+    private int[] locusHistogram; // holds the number of samples in each bin for a locus; reset after each update() call
+    private int[] locusDepths; // holds the depth by sample index for update() calls taking maps
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STATIC METHODS
@@ -104,58 +114,60 @@ public class DepthOfCoverageStats {
     public DepthOfCoverageStats(int[] leftEndpoints) {
         this.binLeftEndpoints = leftEndpoints;
         granularHistogramBySample = new HashMap<String,long[]>();
-        totalCoverages = new HashMap<String,Long>();
+        sampleIndices = new HashMap<String,Integer>();
+        samples = new ArrayList<String>();
+        histogramsByIndex = new long[0][];
+        totalCoverages = new long[0];
         nLoci = 0;
-        totalLocusDepth = 0;
         totalDepthOfCoverage = 0;
     }
 
     public DepthOfCoverageStats(DepthOfCoverageStats cloneMe) {
         this.binLeftEndpoints = cloneMe.binLeftEndpoints;
         granularHistogramBySample = new TreeMap<String,long[]>();
-        totalCoverages = new TreeMap<String,Long>();
-        for ( String s : cloneMe.getAllSamples() ) {
-            granularHistogramBySample.put(s,new long[cloneMe.getHistograms().get(s).length]);
-            for ( int i = 0; i < granularHistogramBySample.get(s).length; i++ ) {
-                granularHistogramBySample.get(s)[i] = cloneMe.getHistograms().get(s)[i];
-            }
-            totalCoverages.put(s,cloneMe.totalCoverages.get(s));
+        sampleIndices = new HashMap<String,Integer>();
+        samples = new ArrayList<String>();
+        histogramsByIndex = new long[0][];
+        totalCoverages = new long[0];
+        for ( String s : cloneMe.samples ) {
+            addSample(s);
+            final int index = getSampleIndex(s);
+            final int cloneIndex = cloneMe.getSampleIndex(s);
+            System.arraycopy(cloneMe.histogramsByIndex[cloneIndex],0,histogramsByIndex[index],0,histogramsByIndex[index].length);
+            totalCoverages[index] = cloneMe.totalCoverages[cloneIndex];
         }
 
         this.includeDeletions = cloneMe.includeDeletions;
         if ( cloneMe.tabulateLocusCounts ) {
-            this.locusCoverageCounts = new long[cloneMe.locusCoverageCounts.length][cloneMe.locusCoverageCounts[0].length];
+            initializeLocusCounts();
         }
-        //this.granularHistogramBySample = cloneMe.granularHistogramBySample;
-        //this.totalCoverages = cloneMe.totalCoverages;
         this.nLoci = cloneMe.nLoci;
         this.totalDepthOfCoverage = cloneMe.totalDepthOfCoverage;
         this.tabulateLocusCounts = cloneMe.tabulateLocusCounts;
     }
 
     public void addSample(String sample) {
-        if ( granularHistogramBySample.containsKey(sample) ) {
+        if ( sampleIndices.containsKey(sample) ) {
             return;
         }
 
         long[] binCounts = new long[this.binLeftEndpoints.length+1];
-        for ( int b = 0; b < binCounts.length; b ++ ) {
-            binCounts[b] = 0;
-        }
 
+        final int index = samples.size();
+        samples.add(sample);
+        sampleIndices.put(sample,index);
+        histogramsByIndex = Arrays.copyOf(histogramsByIndex,index+1);
+        histogramsByIndex[index] = binCounts;
+        totalCoverages = Arrays.copyOf(totalCoverages,index+1);
         granularHistogramBySample.put(sample,binCounts);
-        totalCoverages.put(sample,0l);
     }
 
     public void initializeLocusCounts() {
-        locusCoverageCounts = new long[granularHistogramBySample.size()][binLeftEndpoints.length+1];
-        locusHistogram = new int[binLeftEndpoints.length+1];
-        for ( int b = 0; b < binLeftEndpoints.length+1; b ++ ) {
-            for ( int a = 0; a < granularHistogramBySample.size(); a ++ ) {
-                locusCoverageCounts[a][b] = 0;
-            }
-            locusHistogram[b] = 0;
+        lociByCoveredSamples = new long[binLeftEndpoints.length+1][];
+        for ( int b = 0; b < lociByCoveredSamples.length; b++ ) {
+            lociByCoveredSamples[b] = new long[0];
         }
+        locusHistogram = new int[binLeftEndpoints.length+1];
 
         tabulateLocusCounts = true;
     }
@@ -168,116 +180,166 @@ public class DepthOfCoverageStats {
     // UPDATE METHODS
     ////////////////////////////////////////////////////////////////////////////////////
 
-    public void updateDepths(Map<String,Integer> depthBySample) {
-        int b;
-        for ( String sample : granularHistogramBySample.keySet() ) {
-            if ( depthBySample.containsKey(sample) ) {
-                b = updateSample(sample,depthBySample.get(sample));
-                totalLocusDepth += depthBySample.get(sample);
-            } else {
-                b = updateSample(sample,0);
-            }
+    /**
+     * Adds a locus at which the samples had the given depths.
+     *
+     * @param depthBySampleIndex the depth of each sample, indexed as by getSampleIndex
+     */
+    public void updateDepths(int[] depthBySampleIndex) {
+        if ( depthBySampleIndex.length < samples.size() ) {
+            throw new IllegalArgumentException("Expected depths for "+samples.size()+" samples but got "+depthBySampleIndex.length);
+        }
+
+        long totalLocusDepth = 0;
+        for ( int index = 0; index < samples.size(); index++ ) {
+            final int depth = depthBySampleIndex[index];
+            final int b = updateSample(index,depth);
+            totalLocusDepth += depth;
 
             if ( tabulateLocusCounts ) {
-                for ( int i = 0; i <= b; i ++ ) {
-                    locusHistogram[i]++;
-                }
+                locusHistogram[b]++;
             }
         }
         updateLocusCounts(locusHistogram);
 
         nLoci++;
         totalDepthOfCoverage += totalLocusDepth;
-        totalLocusDepth = 0;
+    }
+
+    public void updateDepths(Map<String,Integer> depthBySample) {
+        final int[] depths = clearLocusDepths();
+        for ( Map.Entry<String,Integer> entry : depthBySample.entrySet() ) {
+            final int index = getSampleIndex(entry.getKey());
+            if ( index >= 0 ) {
+                depths[index] = entry.getValue();
+            }
+        }
+
+        this.updateDepths(depths);
     }
 
     public void update(Map<String,int[]> countsBySample) {
-        if ( countsBySample == null ) {
-            this.updateDepths(new HashMap<String,Integer>(1));
-            return;
+        final int[] depths = clearLocusDepths();
+        if ( countsBySample != null ) {
+            for ( Map.Entry<String,int[]> entry : countsBySample.entrySet() ) {
+                final int index = getSampleIndex(entry.getKey());
+                if ( index >= 0 ) {
+                    depths[index] = getDepth(entry.getValue());
+                }
+            }
         }
+
+        this.updateDepths(depths);
+    }
+
+    /**
+     * Gets the depth represented by the given base counts, counting deletions only if initializeDeletions() was called.
+     *
+     * @param counts base counts, indexed by the index fields of BaseUtils
+     * @return the depth
+     */
+    public int getDepth(int[] counts) {
         // todo -- do we want to do anything special regarding base count or deletion statistics?
-        HashMap<String,Integer> depthBySample = new HashMap<String,Integer>();
         // todo -- needs fixing with advent of new baseutils functionality using ENUMS and handling N,D
-        for ( String s : countsBySample.keySet() ) {
-            int total = 0;
-            int[] counts = countsBySample.get(s);
-            for ( byte base : BaseUtils.EXTENDED_BASES ) {
-                if ( includeDeletions || ! ( base == BaseUtils.Base.D.base) ) { // note basesAreEqual assigns TRUE to (N,D) as both have simple index -1
-                    total += counts[BaseUtils.extendedBaseToBaseIndex(base)];
-                }
+        int total = 0;
+        for ( byte base : BaseUtils.EXTENDED_BASES ) {
+            if ( includeDeletions || ! ( base == BaseUtils.Base.D.base) ) { // note basesAreEqual assigns TRUE to (N,D) as both have simple index -1
+                total += counts[BaseUtils.extendedBaseToBaseIndex(base)];
             }
-            depthBySample.put(s,total);
         }
-        
-        this.updateDepths(depthBySample);
+        return total;
     }
 
-    private int updateSample(String sample, int depth) {
-        totalCoverages.put(sample,totalCoverages.get(sample)+depth);
+    private int[] clearLocusDepths() {
+        if ( locusDepths == null || locusDepths.length != samples.size() ) {
+            locusDepths = new int[samples.size()];
+        } else {
+            Arrays.fill(locusDepths,0);
+        }
+        return locusDepths;
+    }
 
-        long[] granularBins = granularHistogramBySample.get(sample);
-        for ( int b = 0; b < binLeftEndpoints.length; b ++ ) {
-            if ( depth < binLeftEndpoints[b] ) {
-                granularBins[b]++;
-                return b;
+    private int updateSample(int index, int depth) {
+        totalCoverages[index] += depth;
+
+        // binary search for the first bin whose left endpoint is greater than the depth
+        int low = 0;
+        int high = binLeftEndpoints.length;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( depth < binLeftEndpoints[mid] ) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
 
-        granularBins[binLeftEndpoints.length]++; // greater than all left-endpoints
-        return binLeftEndpoints.length;
+        histogramsByIndex[index][low]++; // low == binLeftEndpoints.length if greater than all left-endpoints
+        return low;
     }
 
     public void merge(DepthOfCoverageStats newStats) {
         this.mergeSamples(newStats);
         if ( this.tabulateLocusCounts && newStats.tabulateLocusCounts ) {
-            this.mergeLocusCounts(newStats.getLocusCounts());
+            this.mergeLocusCounts(newStats.lociByCoveredSamples);
         }
         nLoci += newStats.getTotalLoci();
         totalDepthOfCoverage += newStats.getTotalCoverage();
     }
 
     private void mergeSamples(DepthOfCoverageStats otherStats) {
-        Map<String,long[]> otherHistogram = otherStats.getHistograms();
-        Map<String,Double> otherMeans = otherStats.getMeans();
-        for ( String s : this.getAllSamples() ) {
-            long[] internalCounts = granularHistogramBySample.get(s);
-            long[] externalCounts = otherHistogram.get(s);
+        final boolean sameOrder = samples.equals(otherStats.samples);
+        for ( int index = 0; index < samples.size(); index++ ) {
+            final int otherIndex = sameOrder ? index : otherStats.getSampleIndex(samples.get(index));
+            if ( otherIndex < 0 ) {
+                throw new ReviewedGATKException("Cannot merge coverage statistics lacking sample "+samples.get(index));
+            }
+
+            long[] internalCounts = histogramsByIndex[index];
+            long[] externalCounts = otherStats.histogramsByIndex[otherIndex];
             for ( int b = 0; b < internalCounts.length; b++ ) {
                 internalCounts[b] += externalCounts[b];
             }
 
-            this.totalCoverages.put(s, this.totalCoverages.get(s) + otherStats.totalCoverages.get(s));
+            this.totalCoverages[index] += otherStats.totalCoverages[otherIndex];
         }
     }
 
     private void mergeLocusCounts( long[][] otherCounts ) {
-        for ( int a = 0; a < locusCoverageCounts.length; a ++ ) {
-            for ( int b = 0; b < locusCoverageCounts[0].length; b ++ ) {
-                locusCoverageCounts[a][b] += otherCounts[a][b];
+        for ( int b = 0; b < lociByCoveredSamples.length; b ++ ) {
+            if ( otherCounts[b].length > lociByCoveredSamples[b].length ) {
+                lociByCoveredSamples[b] = Arrays.copyOf(lociByCoveredSamples[b],otherCounts[b].length);
+            }
+            for ( int n = 0; n < otherCounts[b].length; n ++ ) {
+                lociByCoveredSamples[b][n] += otherCounts[b][n];
             }
         }
     }
 
     /*
      * Update locus counts -- takes an array in which the number of samples
-     * with depth ABOVE [i] is held. So if the bin left endpoints were 2, 5, 10
+     * with depth IN bin [i] is held. So if the bin left endpoints were 2, 5, 10
      * then we'd have an array that represented:
-     * [# samples with depth 0 - inf], [# samples with depth 2 - inf],
-     * [# samples with depth 5 - inf], [# samples with depth 10-inf];
+     * [# samples with depth 0 - 1], [# samples with depth 2 - 4],
+     * [# samples with depth 5 - 9], [# samples with depth 10-inf];
      *
-     * this is
-     * @argument cumulativeSamplesByDepthBin - see above
+     * Accumulating from the top bin down gives the number of samples at or above each
+     * bin, and only that number is recorded per bin: the table of loci with >=X samples
+     * at >=Y coverage is built from these in getLocusCounts().
+     *
+     * @argument samplesByDepthBin - see above
      */
-    private void updateLocusCounts(int[] cumulativeSamplesByDepthBin) {
+    private void updateLocusCounts(int[] samplesByDepthBin) {
         if ( tabulateLocusCounts ) {
-            for ( int bin = 0; bin < cumulativeSamplesByDepthBin.length; bin ++ ) {
-                int numSamples = cumulativeSamplesByDepthBin[bin];
-                for ( int i = 0; i < numSamples; i ++ ) {
-                    locusCoverageCounts[i][bin]++;
+            int numSamples = 0;
+            for ( int bin = samplesByDepthBin.length-1; bin >= 0; bin -- ) {
+                numSamples += samplesByDepthBin[bin];
+                if ( numSamples >= lociByCoveredSamples[bin].length ) {
+                    lociByCoveredSamples[bin] = Arrays.copyOf(lociByCoveredSamples[bin],numSamples+1);
                 }
+                lociByCoveredSamples[bin][numSamples]++;
 
-                cumulativeSamplesByDepthBin[bin] = 0; // reset counts in advance of next update()
+                samplesByDepthBin[bin] = 0; // reset counts in advance of next update()
             }
         }
     }
@@ -290,7 +352,27 @@ public class DepthOfCoverageStats {
         return granularHistogramBySample;
     }
 
+    /**
+     * @return counts of number of bases with >=X samples at >=Y coverage, indexed by [X-1][bin of Y],
+     *         or null if initializeLocusCounts() was never called
+     */
     public long[][] getLocusCounts() {
+        if ( ! tabulateLocusCounts ) {
+            return null;
+        }
+
+        long[][] locusCoverageCounts = new long[samples.size()][lociByCoveredSamples.length];
+        for ( int b = 0; b < lociByCoveredSamples.length; b ++ ) {
+            final long[] lociByCount = lociByCoveredSamples[b];
+            long loci = 0;
+            for ( int a = samples.size()-1; a >= 0; a -- ) {
+                if ( a+1 < lociByCount.length ) {
+                    loci += lociByCount[a+1];
+                }
+                locusCoverageCounts[a][b] = loci;
+            }
+        }
+
         return locusCoverageCounts;
     }
 
@@ -298,17 +380,39 @@ public class DepthOfCoverageStats {
         return binLeftEndpoints;
     }
 
+    /**
+     * @param sample the sample name
+     * @return the index of the sample into arrays passed to updateDepths(int[]), or -1 if the sample was never added
+     */
+    public int getSampleIndex(String sample) {
+        final Integer index = sampleIndices.get(sample);
+        return index == null ? -1 : index;
+    }
+
     public Map<String,Double> getMeans() {
         HashMap<String,Double> means = new HashMap<String,Double>();
         for ( String s : getAllSamples() ) {
-            means.put(s,( (double)totalCoverages.get(s))/( (double) nLoci ));
+            means.put(s,getMean(s));
         }
 
         return means;
     }
 
+    public double getMean(String sample) {
+        return ( (double) getTotal(sample) )/( (double) nLoci );
+    }
+
     public Map<String,Long> getTotals() {
-        return totalCoverages;
+        HashMap<String,Long> totals = new HashMap<String,Long>();
+        for ( String s : getAllSamples() ) {
+            totals.put(s,getTotal(s));
+        }
+
+        return totals;
+    }
+
+    public long getTotal(String sample) {
+        return totalCoverages[sampleIndices.get(sample)];
     }
 
     public long getTotalLoci() {
@@ -349,4 +453,4 @@ public class DepthOfCoverageStats {
         return binLeftEndpoints.length-1;
     }
 
-}
\ No newline at end of file
+}
@@ -41,6 +41,7 @@ import org.broadinstitute.gatk.engine.walkers.ReadWalker;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.smithwaterman.Parameters;
+import org.broadinstitute.gatk.utils.smithwaterman.BandedSWPairwiseAlignment;
 import org.broadinstitute.gatk.utils.smithwaterman.SWPairwiseAlignment;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.baq.BAQ;
@@ -63,6 +64,11 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Perform local realignment of reads around indels
@@ -116,6 +122,9 @@ import java.util.*;
  *     <li>Because reads produced from the 454 technology inherently contain false indels, the realigner will not work with them
  * (or with reads from similar technologies).</li>
  *     <li>This tool also ignores MQ0 reads and reads with consecutive indel operators in the CIGAR string.</li>
+ *     <li>With -realignThreads, target intervals are realigned in the background while the traversal moves on; the output is
+ * identical to a single threaded run except with the USE_SW model, which may pick a different random subset of reads
+ * for the alternate consenses of very deep intervals.</li>
  * </ul>
  *
  * @author ebanks
@@ -239,6 +248,10 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     @Argument(fullName="noOriginalAlignmentTags", shortName="noTags", required=false, doc="Don't output the original cigar or alignment start tags for each realigned read in the output bam")
     protected boolean NO_ORIGINAL_ALIGNMENT_TAGS = false;
 
+    @Advanced
+    @Argument(fullName="numRealignmentThreads", shortName="realignThreads", required=false, doc="Number of threads used to realign completed target intervals while the traversal moves on to the next ones")
+    protected int NUM_REALIGNMENT_THREADS = 1;
+
     /**
      * Reads from all input files will be realigned together, but then each read will be saved in the output file corresponding to the input file that
      * the read came from. There are two ways to generate output bam file names: 1) if the value of this argument is a general string (e.g. '.cleaned.bam'),
@@ -299,7 +312,17 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private final ArrayList<GATKSAMRecord> readsNotToClean = new ArrayList<GATKSAMRecord>();
     private final ArrayList<VariantContext> knownIndelsToTry = new ArrayList<VariantContext>();
     private final HashSet<Object> indelRodsSeen = new HashSet<Object>();
-    private final HashSet<GATKSAMRecord> readsActuallyCleaned = new HashSet<GATKSAMRecord>();
+
+    // the intervals (and the reads between them) that haven't been handed to the manager yet, in traversal order
+    private final LinkedList<PendingOutput> pendingOutput = new LinkedList<PendingOutput>();
+    private int nPendingIntervals = 0;
+    private int nPendingReads = 0;
+
+    // realigns the completed intervals in the background when running with more than one realignment thread
+    private ExecutorService cleaningService = null;
+
+    // how many intervals per realignment thread may be waiting before the traversal blocks on the oldest one
+    private static final int MAX_PENDING_INTERVALS_PER_THREAD = 4;
 
     private static final int MAX_QUAL = 99;
 
@@ -367,6 +390,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             throw new RuntimeException("LOD threshold cannot be a negative number");
         if ( MISMATCH_THRESHOLD <= 0.0 || MISMATCH_THRESHOLD > 1.0 )
             throw new RuntimeException("Entropy threshold must be a fraction between 0 and 1");
+        if ( NUM_REALIGNMENT_THREADS < 1 )
+            throw new UserException.BadArgumentValue("numRealignmentThreads", "must be at least 1");
 
         try {
             referenceReader = new CachingIndexedFastaSequenceFile(getToolkit().getArguments().referenceFile, false, true);
@@ -396,6 +421,20 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
         manager = new ConstrainedMateFixingManager(writerToUse, getToolkit().getGenomeLocParser(), MAX_ISIZE_FOR_MOVEMENT, MAX_POS_MOVE_ALLOWED, MAX_RECORDS_IN_MEMORY);
 
+        if ( NUM_REALIGNMENT_THREADS > 1 ) {
+            cleaningService = Executors.newFixedThreadPool(NUM_REALIGNMENT_THREADS, new ThreadFactory() {
+                private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = defaultFactory.newThread(runnable);
+                    // don't keep the JVM alive if the traversal dies with intervals still being realigned
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
         if ( OUT_INDELS != null ) {
             try {
                 indelOutput = new FileWriter(new File(OUT_INDELS));
@@ -460,24 +499,104 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
     private void emit(final GATKSAMRecord read) {
 
-        // check to see whether the read was modified by looking at the temporary tag
-        boolean wasModified = readsActuallyCleaned.contains(read);
+        // the read can't overtake the intervals that are still being realigned
+        if ( !pendingOutput.isEmpty() ) {
+            pendingOutput.add(new PendingOutput(read));
+            nPendingReads++;
+            flushPendingOutput(MAX_PENDING_INTERVALS_PER_THREAD * NUM_REALIGNMENT_THREADS);
+            return;
+        }
 
+        // reads emitted on their own were never part of an interval, so they can't have been modified
         try {
-            manager.addRead(read, wasModified);
+            manager.addRead(read, false);
         } catch (RuntimeIOException e) {
             throw new UserException.ErrorWritingBamFile(e.getMessage());
         }
     }
 
-    private void emitReadLists() {
-        // pre-merge lists to sort them in preparation for constrained SAMFileWriter
-        readsNotToClean.addAll(readsToClean.getReads());
-        ReadUtils.sortReadsByCoordinate(readsNotToClean);
-        manager.addReads(readsNotToClean, readsActuallyCleaned);
+    private void emitReadLists(final boolean tryToClean) {
+        IntervalCleaning cleaning = null;
+        if ( tryToClean && readsToClean.size() > 0 ) {
+            final GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
+
+            // background realignments each get their own generator, seeded in traversal order so that the output
+            //   doesn't depend on which interval happens to finish first
+            final Random random = cleaningService == null ? Utils.getRandomGenerator() : new Random(Utils.getRandomGenerator().nextLong());
+
+            // with nothing pending the manager is already in the state it will be in when these reads are written,
+            //   so we know right away whether it will let us move them; otherwise that is decided once they are written
+            if ( !pendingOutput.isEmpty() || manager.canMoveReads(earliestPossibleMove) )
+                cleaning = new IntervalCleaning(currentInterval, earliestPossibleMove, readsToClean, knownIndelsToTry, random);
+        }
+
+        // pre-merge lists; they get sorted for the constrained SAMFileWriter once the realignment has been applied
+        final ArrayList<GATKSAMRecord> reads = new ArrayList<GATKSAMRecord>(readsNotToClean.size() + readsToClean.size());
+        reads.addAll(readsNotToClean);
+        reads.addAll(readsToClean.getReads());
         readsToClean.clear();
         readsNotToClean.clear();
-        readsActuallyCleaned.clear();
+
+        Future<?> computation = null;
+        if ( cleaning != null ) {
+            if ( cleaningService == null )
+                cleaning.run();
+            else
+                computation = cleaningService.submit(cleaning);
+        }
+
+        pendingOutput.add(new PendingOutput(reads, cleaning, computation));
+        nPendingIntervals++;
+        nPendingReads += reads.size();
+        flushPendingOutput(MAX_PENDING_INTERVALS_PER_THREAD * NUM_REALIGNMENT_THREADS);
+    }
+
+    /**
+     * Hands the pending reads to the manager in traversal order, for as long as the interval at the head of the
+     * queue has finished realigning.  Waits for it if more than maxPendingIntervals intervals are outstanding, or
+     * if more than MAX_RECORDS_IN_MEMORY reads are pending, so that the reads held here stay bounded.
+     *
+     * @param maxPendingIntervals the number of intervals that may be left realigning in the background
+     */
+    private void flushPendingOutput(final int maxPendingIntervals) {
+        while ( !pendingOutput.isEmpty() ) {
+            final PendingOutput next = pendingOutput.peek();
+            if ( !next.isReady() && nPendingIntervals <= maxPendingIntervals && nPendingReads <= MAX_RECORDS_IN_MEMORY )
+                return;
+
+            pendingOutput.removeFirst();
+            if ( next.isInterval() ) {
+                nPendingIntervals--;
+                nPendingReads -= next.intervalReads.size();
+            } else {
+                nPendingReads--;
+            }
+            write(next);
+        }
+    }
+
+    private void write(final PendingOutput pending) {
+        try {
+            if ( !pending.isInterval() ) {
+                manager.addRead(pending.read, false);
+                return;
+            }
+
+            Set<GATKSAMRecord> readsActuallyCleaned = Collections.emptySet();
+            if ( pending.cleaning != null ) {
+                pending.waitForCleaning();
+
+                // the manager has now seen every read before this interval, so this is the check the realigner
+                //   has always made right before cleaning
+                if ( manager.canMoveReads(pending.cleaning.earliestPossibleMove) )
+                    readsActuallyCleaned = applyCleaning(pending.cleaning);
+            }
+
+            ReadUtils.sortReadsByCoordinate(pending.intervalReads);
+            manager.addReads(pending.intervalReads, readsActuallyCleaned);
+        } catch (RuntimeIOException e) {
+            throw new UserException.ErrorWritingBamFile(e.getMessage());
+        }
     }
 
     public Integer map(ReferenceContext ref, GATKSAMRecord read, RefMetaDataTracker metaDataTracker) {
@@ -531,7 +650,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void abortCleanForCurrentInterval() {
-        emitReadLists();
+        emitReadLists(false);
         currentInterval = intervals.hasNext() ? intervals.next() : null;
         sawReadInCurrentInterval = false;
     }
@@ -549,15 +668,10 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void cleanAndCallMap(ReferenceContext ref, GATKSAMRecord read, RefMetaDataTracker metaDataTracker, GenomeLoc readLoc) {
-        if ( readsToClean.size() > 0 ) {
-            GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
-            if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
-        }
+        emitReadLists(true);
         knownIndelsToTry.clear();
         indelRodsSeen.clear();
 
-        emitReadLists();
         try {
             do {
                 currentInterval = intervals.hasNext() ? intervals.next() : null;
@@ -581,14 +695,11 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     public void onTraversalDone(Integer result) {
-        if ( readsToClean.size() > 0 ) {
-            GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
-            if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
-            emitReadLists();
-        } else if ( readsNotToClean.size() > 0 ) {
-            emitReadLists();                            
-        }
+        if ( readsToClean.size() > 0 || readsNotToClean.size() > 0 )
+            emitReadLists(true);
+        flushPendingOutput(0);
+        if ( cleaningService != null )
+            cleaningService.shutdown();
 
         knownIndelsToTry.clear();
         indelRodsSeen.clear();
@@ -662,30 +773,33 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return sum;
     }
 
-    private void clean(ReadBin readsToClean) {
-
-        final List<GATKSAMRecord> reads = readsToClean.getReads();
-        if ( reads.size() == 0 )
-            return;
+    /**
+     * Searches for the consensus that best explains the reads of an interval.  This only reads the state captured by
+     * the cleaning, so it is safe to run on a worker thread; the reads themselves are left untouched until
+     * applyCleaning() is called on the traversal thread.
+     *
+     * @param cleaning the interval to realign, which also receives the outcome of the search
+     */
+    private void findBestConsensus(final IntervalCleaning cleaning) {
 
-        byte[] reference = readsToClean.getReference(referenceReader);
-        int leftmostIndex = readsToClean.getLocation().getStart();
+        final byte[] reference = cleaning.reference;
+        final int leftmostIndex = cleaning.leftmostIndex;
 
         final ArrayList<GATKSAMRecord> refReads = new ArrayList<GATKSAMRecord>();                 // reads that perfectly match ref
-        final ArrayList<AlignedRead> altReads = new ArrayList<AlignedRead>();               // reads that don't perfectly match
+        final ArrayList<AlignedRead> altReads = cleaning.altReads;                          // reads that don't perfectly match
         final LinkedList<AlignedRead> altAlignmentsToTest = new LinkedList<AlignedRead>();  // should we try to make an alt consensus from the read?
         final Set<Consensus> altConsenses = new LinkedHashSet<Consensus>();               // list of alt consenses
 
         // if there are any known indels for this region, get them and create alternate consenses
-        generateAlternateConsensesFromKnownIndels(altConsenses, leftmostIndex, reference);
+        generateAlternateConsensesFromKnownIndels(cleaning.knownIndels, altConsenses, leftmostIndex, reference);
 
         // decide which reads potentially need to be cleaned;
         // if there are reads with a single indel in them, add that indel to the list of alternate consenses
-        long totalRawMismatchSum = determineReadsThatNeedCleaning(reads, refReads, altReads, altAlignmentsToTest, altConsenses, leftmostIndex, reference);
+        final long totalRawMismatchSum = determineReadsThatNeedCleaning(cleaning.reads, refReads, altReads, altAlignmentsToTest, altConsenses, leftmostIndex, reference);
 
         // use 'Smith-Waterman' to create alternate consenses from reads that mismatch the reference, using totalRawMismatchSum as the random seed
         if ( consensusModel == ConsensusDeterminationModel.USE_SW )
-            generateAlternateConsensesFromReads(altAlignmentsToTest, altConsenses, reference, leftmostIndex);
+            generateAlternateConsensesFromReads(altAlignmentsToTest, altConsenses, reference, leftmostIndex, cleaning);
 
         // if ( debugOn ) System.out.println("------\nChecking consenses...\n--------\n");
 
@@ -748,8 +862,10 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         // 2) beats the LOD threshold for the sum of quality score mismatches of the raw version of the reads,
         // 3) didn't just move around the mismatching columns (i.e. it actually reduces entropy), 
         // then clean!
-        final double improvement = (bestConsensus == null ? -1 : ((double)(totalRawMismatchSum - bestConsensus.mismatchSum))/10.0);
-        if ( improvement >= LOD_THRESHOLD ) {
+        cleaning.bestConsensus = bestConsensus;
+        cleaning.totalRawMismatchSum = totalRawMismatchSum;
+        cleaning.improvement = (bestConsensus == null ? -1 : ((double)(totalRawMismatchSum - bestConsensus.mismatchSum))/10.0);
+        if ( cleaning.improvement >= LOD_THRESHOLD ) {
 
             bestConsensus.cigar = AlignmentUtils.leftAlignIndel(bestConsensus.cigar, reference, bestConsensus.str, bestConsensus.positionOnReference, bestConsensus.positionOnReference, true);
 
@@ -759,10 +875,43 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                 if ( !updateRead(bestConsensus.cigar, bestConsensus.positionOnReference, indexPair.second, aRead, leftmostIndex) )
                     return;
             }
-            if ( consensusModel != ConsensusDeterminationModel.KNOWNS_ONLY && !alternateReducesEntropy(altReads, reference, leftmostIndex) ) {
+            cleaning.updatedReads = true;
+            cleaning.reducesEntropy = consensusModel == ConsensusDeterminationModel.KNOWNS_ONLY || alternateReducesEntropy(altReads, reference, leftmostIndex, cleaning.snps);
+        }
+    }
+
+    /**
+     * Realigns the reads of an interval to the consensus found by findBestConsensus() and writes out the debugging
+     * output for it.  Must be called on the traversal thread, in traversal order.
+     *
+     * @param cleaning the interval whose consensus search has completed
+     * @return the reads that were actually realigned
+     */
+    private Set<GATKSAMRecord> applyCleaning(final IntervalCleaning cleaning) {
+
+        exactMatchesFound += cleaning.exactMatchesFound;
+        SWalignmentRuns += cleaning.SWalignmentRuns;
+        SWalignmentSuccess += cleaning.SWalignmentSuccess;
+
+        final Set<GATKSAMRecord> readsActuallyCleaned = new HashSet<GATKSAMRecord>();
+        final Consensus bestConsensus = cleaning.bestConsensus;
+        final ArrayList<AlignedRead> altReads = cleaning.altReads;
+        final long totalRawMismatchSum = cleaning.totalRawMismatchSum;
+        final int contigLength = referenceReader.getSequenceDictionary().getSequence(cleaning.interval.getContig()).getSequenceLength();
+        byte[] reference = cleaning.reference;
+        int leftmostIndex = cleaning.leftmostIndex;
+
+        final double improvement = cleaning.improvement;
+        if ( improvement >= LOD_THRESHOLD ) {
+
+            // we couldn't work out the new alignment of every read
+            if ( !cleaning.updatedReads )
+                return readsActuallyCleaned;
+
+            if ( !cleaning.reducesEntropy ) {
                 if ( statsOutput != null ) {
                     try {
-                        statsOutput.write(currentInterval.toString());
+                        statsOutput.write(cleaning.interval.toString());
                         statsOutput.write("\tFAIL (bad indel)\t"); // if improvement > LOD_THRESHOLD *BUT* entropy is not reduced (SNPs still exist)
                         statsOutput.write(Double.toString(improvement));
                         statsOutput.write("\n");
@@ -772,12 +921,21 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                     }
                 }
             } else {
+                if ( cleaning.snps != null && cleaning.snps.length() > 0 ) {
+                    try {
+                        snpsOutput.write(cleaning.snps.toString());
+                        snpsOutput.flush();
+                    } catch (Exception e) {
+                        throw new UserException.CouldNotCreateOutputFile("snpsOutput", "Failed to write SNPs output file", e);
+                    }
+                }
+
                 //logger.debug("CLEAN: " + bestConsensus.cigar + " " + bestConsensus.str.toString() + " " + bestConsensus.cigar.numCigarElements() );
                 if ( indelOutput != null && bestConsensus.cigar.numCigarElements() > 1 ) {
                     // NOTE: indels are printed out in the format specified for the low-coverage pilot1
                     //  indel calls (tab-delimited): chr position size type sequence
                     StringBuilder str = new StringBuilder();
-                    str.append(reads.get(0).getReferenceName());
+                    str.append(cleaning.reads.get(0).getReferenceName());
                     int position = bestConsensus.positionOnReference + bestConsensus.cigar.getCigarElement(0).getLength();
                     str.append("\t").append(leftmostIndex + position - 1);
                     CigarElement ce = bestConsensus.cigar.getCigarElement(1);
@@ -800,7 +958,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                 }
                 if ( statsOutput != null ) {
                     try {
-                        statsOutput.write(currentInterval.toString());
+                        statsOutput.write(cleaning.interval.toString());
                         statsOutput.write("\tCLEAN"); // if improvement > LOD_THRESHOLD *AND* entropy is reduced
                         if ( bestConsensus.cigar.numCigarElements() > 1 )
                             statsOutput.write(" (found indel)");
@@ -816,7 +974,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                 // finish cleaning the appropriate reads
                 for ( Pair<Integer, Integer> indexPair : bestConsensus.readIndexes ) {
                     final AlignedRead aRead = altReads.get(indexPair.first);
-                    if ( aRead.finalizeUpdate() ) {
+                    if ( aRead.finalizeUpdate(contigLength) ) {
                         // We need to update the mapping quality score of the cleaned reads;
                         // however we don't have enough info to use the proper MAQ scoring system.
                         // For now, we will just arbitrarily add 10 to the mapping quality. [EB, 6/7/2010].
@@ -831,8 +989,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                         int neededBases = Math.max(neededBasesToLeft, neededBasesToRight);
                         if ( neededBases > 0 ) {
                             int padLeft = Math.max(leftmostIndex-neededBases, 1);
-                            int padRight = Math.min(leftmostIndex+reference.length+neededBases, referenceReader.getSequenceDictionary().getSequence(currentInterval.getContig()).getSequenceLength());
-                            reference = referenceReader.getSubsequenceAt(currentInterval.getContig(), padLeft, padRight).getBases();
+                            int padRight = Math.min(leftmostIndex+reference.length+neededBases, contigLength);
+                            reference = referenceReader.getSubsequenceAt(cleaning.interval.getContig(), padLeft, padRight).getBases();
                             leftmostIndex = padLeft;
                         }
 
@@ -861,16 +1019,18 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         } else if ( statsOutput != null ) {
             try {
                 statsOutput.write(String.format("%s\tFAIL\t%.1f%n",
-                        currentInterval.toString(), improvement));
+                        cleaning.interval.toString(), improvement));
                 statsOutput.flush();
             } catch (Exception e) {
                 throw new UserException.CouldNotCreateOutputFile("statsOutput", "Failed to write stats output file", e);
             }
         }
+
+        return readsActuallyCleaned;
     }
 
-    private void generateAlternateConsensesFromKnownIndels(final Set<Consensus> altConsensesToPopulate, final int leftmostIndex, final byte[] reference) {
-        for ( VariantContext knownIndel : knownIndelsToTry ) {
+    private void generateAlternateConsensesFromKnownIndels(final List<VariantContext> knownIndels, final Set<Consensus> altConsensesToPopulate, final int leftmostIndex, final byte[] reference) {
+        for ( VariantContext knownIndel : knownIndels ) {
             if ( knownIndel == null || !knownIndel.isIndel() || knownIndel.isComplexIndel() )
                 continue;
             final byte[] indelStr;
@@ -948,12 +1108,13 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void generateAlternateConsensesFromReads(final LinkedList<AlignedRead> altAlignmentsToTest,
                                                      final Set<Consensus> altConsensesToPopulate,
                                                      final byte[] reference,
-                                                     final int leftmostIndex) {
+                                                     final int leftmostIndex,
+                                                     final IntervalCleaning cleaning) {
 
         // if we are under the limit, use all reads to generate alternate consenses
         if ( altAlignmentsToTest.size() <= MAX_READS_FOR_CONSENSUSES ) {
             for ( AlignedRead aRead : altAlignmentsToTest ) {
-                if ( CHECKEARLY ) createAndAddAlternateConsensus1(aRead, altConsensesToPopulate, reference,leftmostIndex);
+                if ( CHECKEARLY ) createAndAddAlternateConsensus1(aRead, altConsensesToPopulate, reference, leftmostIndex, cleaning);
                 else createAndAddAlternateConsensus(aRead.getReadBases(), altConsensesToPopulate, reference);
             }
         }
@@ -961,9 +1122,9 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         else {
             int readsSeen = 0;
             while ( readsSeen++ < MAX_READS_FOR_CONSENSUSES && altConsensesToPopulate.size() <= MAX_CONSENSUSES) {
-                int index = Utils.getRandomGenerator().nextInt(altAlignmentsToTest.size());
+                int index = cleaning.random.nextInt(altAlignmentsToTest.size());
                 AlignedRead aRead = altAlignmentsToTest.remove(index);
-                if ( CHECKEARLY ) createAndAddAlternateConsensus1(aRead, altConsensesToPopulate, reference,leftmostIndex);
+                if ( CHECKEARLY ) createAndAddAlternateConsensus1(aRead, altConsensesToPopulate, reference, leftmostIndex, cleaning);
                 else createAndAddAlternateConsensus(aRead.getReadBases(), altConsensesToPopulate, reference);
             }
         }
@@ -972,28 +1133,28 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void createAndAddAlternateConsensus(final byte[] read, final Set<Consensus> altConsensesToPopulate, final byte[] reference) {
 
         // do a pairwise alignment against the reference
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read, swParameters);
+         SWPairwiseAlignment swConsensus = new BandedSWPairwiseAlignment(reference, read, swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read);
          if ( c != null )
              altConsensesToPopulate.add(c);
     }
 
     private void createAndAddAlternateConsensus1(AlignedRead read, final Set<Consensus> altConsensesToPopulate,
-                                                 final byte[] reference, final int leftmostIndex) {
+                                                 final byte[] reference, final int leftmostIndex, final IntervalCleaning cleaning) {
 
          for ( Consensus known : altConsensesToPopulate ) {
               Pair<Integer, Integer> altAlignment = findBestOffset(known.str, read, leftmostIndex);
               // the mismatch score is the min of its alignment vs. the reference and vs. the alternate
               int myScore = altAlignment.second;
-              if ( myScore == 0 ) {exactMatchesFound++; return; }// read matches perfectly to a known alt consensus - no need to run SW, we already know the answer
+              if ( myScore == 0 ) {cleaning.exactMatchesFound++; return; }// read matches perfectly to a known alt consensus - no need to run SW, we already know the answer
          }
          // do a pairwise alignment against the reference
-         SWalignmentRuns++;
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read.getReadBases(), swParameters);
+         cleaning.SWalignmentRuns++;
+         SWPairwiseAlignment swConsensus = new BandedSWPairwiseAlignment(reference, read.getReadBases(), swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read.getReadBases());
          if ( c != null ) {
              altConsensesToPopulate.add(c);
-             SWalignmentSuccess++;
+             cleaning.SWalignmentSuccess++;
          }
     }
 
@@ -1250,7 +1411,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return true;
     }
 
-    private boolean alternateReducesEntropy(final List<AlignedRead> reads, final byte[] reference, final int leftmostIndex) {
+    private boolean alternateReducesEntropy(final List<AlignedRead> reads, final byte[] reference, final int leftmostIndex, final StringBuilder snpsToReport) {
         final int[] originalMismatchBases = new int[reference.length];
         final int[] cleanedMismatchBases = new int[reference.length];
         final int[] totalOriginalBases = new int[reference.length];
@@ -1327,7 +1488,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             } else if ( cleanedMismatchBases[i] > totalCleanedBases[i] * MISMATCH_THRESHOLD ) {
                 cleanedMismatchColumns++;
             }
-            if ( snpsOutput != null ) {
+            if ( snpsToReport != null ) {
                     if ( didMismatch ) {
                         sb.append(reads.get(0).getRead().getReferenceName()).append(":").append(leftmostIndex + i);
                         if ( stillMismatches )
@@ -1341,14 +1502,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         //logger.debug("Original mismatch columns = " + originalMismatchColumns + "; cleaned mismatch columns = " + cleanedMismatchColumns);
 
         final boolean reduces = (originalMismatchColumns == 0 || cleanedMismatchColumns < originalMismatchColumns);
-        if ( reduces && snpsOutput != null ) {
-            try {
-                snpsOutput.write(sb.toString());
-                snpsOutput.flush();
-            } catch (Exception e) {
-                throw new UserException.CouldNotCreateOutputFile("snpsOutput", "Failed to write SNPs output file", e);
-            }
-        }
+        if ( reduces && snpsToReport != null )
+            snpsToReport.append(sb);
         return reduces;
     }
 
@@ -1514,7 +1669,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
         // finalizes the changes made.
         // returns true if this record actually changes, false otherwise
-        public boolean finalizeUpdate() {
+        public boolean finalizeUpdate(final int contigLength) {
             // if we haven't made any changes, don't do anything
             if ( newCigar == null )
                 return false;
@@ -1534,7 +1689,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             read.setAlignmentStart(newStart);
 
             // back out if necessary
-            if ( realignmentProducesBadAlignment(read) ) {
+            if ( realignmentProducesBadAlignment(read, contigLength) ) {
                 read.setCigar(oldCigar);
                 read.setAlignmentStart(oldStart);
                 return false;
@@ -1567,17 +1722,6 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
     }
 
-    /**
-     * Determines whether the read aligns off the end of the contig
-     *
-     * @param read  the read to check
-     * @return true if it aligns off the end
-     */
-    private boolean realignmentProducesBadAlignment(final GATKSAMRecord read) {
-        final int contigLength = referenceReader.getSequenceDictionary().getSequence(currentInterval.getContig()).getSequenceLength();
-        return realignmentProducesBadAlignment(read, contigLength);
-    }
-
     /**
      * Determines whether the read aligns off the end of the contig.
      * Pulled out to make it testable.
@@ -1589,6 +1733,99 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return read.getAlignmentEnd() > contigLength;
     }
 
+    /**
+     * The realignment of a single target interval.  The consensus search only looks at the reads, known indels and
+     * reference captured here, so it can run on a worker thread while the traversal moves on.
+     */
+    private final class IntervalCleaning implements Runnable {
+        private final GenomeLoc interval;
+        private final GenomeLoc earliestPossibleMove;
+        private final List<GATKSAMRecord> reads;
+        private final List<VariantContext> knownIndels;
+        private final Random random;
+        private final byte[] reference;
+        private final int leftmostIndex;
+
+        // the outcome of the consensus search
+        private final ArrayList<AlignedRead> altReads = new ArrayList<AlignedRead>();
+        private final StringBuilder snps = snpsOutput == null ? null : new StringBuilder();
+        private Consensus bestConsensus = null;
+        private long totalRawMismatchSum = 0L;
+        private double improvement = -1;
+        private boolean updatedReads = false;
+        private boolean reducesEntropy = false;
+
+        // debug info for lazy SW evaluation, added to the totals when the realignment is applied
+        private long exactMatchesFound = 0;
+        private long SWalignmentRuns = 0;
+        private long SWalignmentSuccess = 0;
+
+        public IntervalCleaning(final GenomeLoc interval, final GenomeLoc earliestPossibleMove, final ReadBin readsToClean,
+                                final List<VariantContext> knownIndels, final Random random) {
+            this.interval = interval;
+            this.earliestPossibleMove = earliestPossibleMove;
+            this.reads = new ArrayList<GATKSAMRecord>(readsToClean.getReads());
+            this.knownIndels = new ArrayList<VariantContext>(knownIndels);
+            this.random = random;
+            // the reference reader isn't thread-safe, so the reference is pulled in before handing the interval off
+            this.reference = readsToClean.getReference(referenceReader);
+            this.leftmostIndex = readsToClean.getLocation().getStart();
+        }
+
+        @Override
+        public void run() {
+            findBestConsensus(this);
+        }
+    }
+
+    /**
+     * Reads waiting for the intervals before them to be realigned: either a single read that fell between intervals,
+     * or all of the reads of an interval together with its realignment, if one was attempted.
+     */
+    private static final class PendingOutput {
+        private final GATKSAMRecord read;
+        private final ArrayList<GATKSAMRecord> intervalReads;
+        private final IntervalCleaning cleaning;
+        private final Future<?> computation;
+
+        public PendingOutput(final GATKSAMRecord read) {
+            this(read, null, null, null);
+        }
+
+        public PendingOutput(final ArrayList<GATKSAMRecord> intervalReads, final IntervalCleaning cleaning, final Future<?> computation) {
+            this(null, intervalReads, cleaning, computation);
+        }
+
+        private PendingOutput(final GATKSAMRecord read, final ArrayList<GATKSAMRecord> intervalReads, final IntervalCleaning cleaning, final Future<?> computation) {
+            this.read = read;
+            this.intervalReads = intervalReads;
+            this.cleaning = cleaning;
+            this.computation = computation;
+        }
+
+        public boolean isInterval() {
+            return intervalReads != null;
+        }
+
+        public boolean isReady() {
+            return computation == null || computation.isDone();
+        }
+
+        public void waitForCleaning() {
+            if ( computation == null )
+                return;
+            try {
+                computation.get();
+            } catch ( InterruptedException e ) {
+                throw new ReviewedGATKException("Interrupted while realigning interval " + cleaning.interval, e);
+            } catch ( ExecutionException e ) {
+                if ( e.getCause() instanceof RuntimeException )
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedGATKException("Failed to realign interval " + cleaning.interval, e.getCause());
+            }
+        }
+    }
+
     private static class Consensus {
         public final byte[] str;
         public final ArrayList<Pair<Integer, Integer>> readIndexes;
@@ -66,6 +66,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * General-purpose tool for variant evaluation (% in dbSNP, genotype concordance, Ti/Tv ratios, and a lot more)
@@ -142,7 +143,7 @@ import java.util.*;
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VAREVAL, extraDocs = {CommandLineGATK.class} )
 @Reference(window=@Window(start=-50, stop=50))
 @PartitionBy(PartitionType.NONE)
-public class VariantEval extends RodWalker<Integer, Integer> implements TreeReducible<Integer> {
+public class VariantEval extends RodWalker<Integer, Integer> implements TreeReducible<Integer>, NanoSchedulable {
     public static final String IS_SINGLETON_KEY = "ISSINGLETON";
 
     @Output
@@ -277,7 +278,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final private static String ALL_FAMILY_NAME = "all";
 
     // the number of processed bp for this walker
-    long nProcessedLoci = 0;
+    final AtomicLong nProcessedLoci = new AtomicLong(0);
 
     // Utility class
     private final VariantEvalUtils variantEvalUtils = new VariantEvalUtils(this);
@@ -285,8 +286,27 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     // Ancestral alignments
     private ReferenceSequenceFile ancestralAlignments = null;
 
-    // The set of all possible evaluation contexts
+    // The set of all possible evaluation contexts, created as each key is first seen
     StratificationManager<VariantStratifier, EvaluationContext> stratManager;
+
+    // The evaluators run in each evaluation context
+    private Set<Class<? extends VariantEvaluator>> evaluationClasses;
+
+    // If all evaluators can be combined, each thread fills in its own evaluation contexts, without locking,
+    // and these are combined into stratManager in onTraversalDone.  Threads only see a few of the keys, so each
+    // keeps its contexts by stratification key
+    private boolean accumulateByThread = false;
+    private final List<Map<Integer, EvaluationContext>> evaluationContextsByThread = new ArrayList<Map<Integer, EvaluationContext>>();
+    private final ThreadLocal<Map<Integer, EvaluationContext>> threadEvaluationContexts = new ThreadLocal<Map<Integer, EvaluationContext>>() {
+        @Override
+        protected Map<Integer, EvaluationContext> initialValue() {
+            final Map<Integer, EvaluationContext> contexts = new HashMap<Integer, EvaluationContext>();
+            synchronized (evaluationContextsByThread) {
+                evaluationContextsByThread.add(contexts);
+            }
+            return contexts;
+        }
+    };
     //Set<DynamicStratification> dynamicStratifications = Collections.emptySet();
 
     /**
@@ -412,11 +432,38 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
         stratManager = new StratificationManager<VariantStratifier, EvaluationContext>(strats);
 
         logger.info("Creating " + stratManager.size() + " combinatorial stratification states");
-        for ( int i = 0; i < stratManager.size(); i++ ) {
-            EvaluationContext ec = new EvaluationContext(this, evaluationObjects);
-            stratManager.set(i, ec);
+        this.evaluationClasses = evaluationObjects;
+        this.accumulateByThread = new EvaluationContext(this, evaluationObjects).supportsCombine();
+        if ( ! accumulateByThread )
+            logger.info("Not all evaluators can be combined, so evaluation contexts will be shared between threads");
+    }
+
+    /**
+     * Get the evaluation context for key, creating it if this is the first time the key is seen
+     *
+     * @param threadContexts the contexts of the current thread, or null if contexts are shared between threads
+     * @param key the stratification key
+     * @return a non-null EvaluationContext
+     */
+    private EvaluationContext getEvaluationContext(final Map<Integer, EvaluationContext> threadContexts, final int key) {
+        if ( threadContexts != null ) {
+            EvaluationContext nec = threadContexts.get(key);
+            if ( nec == null ) {
+                nec = new EvaluationContext(this, evaluationClasses);
+                threadContexts.put(key, nec);
+            }
+            return nec;
+        }
+
+        synchronized (stratManager) {
+            EvaluationContext nec = stratManager.get(key);
+            if ( nec == null ) {
+                nec = new EvaluationContext(this, evaluationClasses);
+                stratManager.set(key, nec);
+            }
+            return nec;
         }
-    }    
+    }
     
     public final Map<String, IntervalTree<GenomeLoc>> createIntervalTreeByContig(final IntervalBinding<Feature> intervals) {
         final Map<String, IntervalTree<GenomeLoc>> byContig = new HashMap<String, IntervalTree<GenomeLoc>>();
@@ -441,11 +488,10 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         // we track the processed bp and expose this for modules instead of wasting CPU power on calculating
         // the same thing over and over in evals that want the processed bp
-        synchronized (this) {
-            nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
-        }
+        nProcessedLoci.addAndGet(context.getSkippedBases() + (ref == null ? 0 : 1));
 
         if (tracker != null) {
+            final Map<Integer, EvaluationContext> threadContexts = accumulateByThread ? threadEvaluationContexts.get() : null;
             String aastr = (ancestralAlignments == null) ? null : new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
 
 //            // update the dynamic stratifications
@@ -496,30 +542,26 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
                             // find the comp
                             final VariantContext comp = findMatchingComp(eval, compSet);
 
-                            Collection<EvaluationContext> contextsForStratification;
+                            final int[] keysForStratification;
                             if (perFamilyIsEnabled)
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
+                                keysForStratification = getStratificationKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
                             else {
                                 String familyID;
                                 if (stratLevelName.equals("all"))
                                     familyID = "all";
                                 else
                                     familyID = getSampleDB().getSample(stratLevelName).getFamilyID();
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
+                                keysForStratification = getStratificationKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
                             }
-                            for ( EvaluationContext nec : contextsForStratification ) {
-
-                                // eval against the comp
-                                synchronized (nec) {
-                                    nec.apply(tracker, ref, context, comp, eval);
-                                }
-
-                                // eval=null against all comps of different type that aren't bound to another eval
-                                for ( VariantContext otherComp : compSet ) {
-                                    if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
-                                        synchronized (nec) {
-                                            nec.apply(tracker, ref, context, otherComp, null);
-                                        }
+                            for ( final int key : keysForStratification ) {
+                                final EvaluationContext nec = getEvaluationContext(threadContexts, key);
+
+                                // contexts owned by this thread don't need to be locked
+                                if ( threadContexts != null ) {
+                                    applyToContext(nec, tracker, ref, context, comp, eval, compSet, evalSetBySample);
+                                } else {
+                                    synchronized (nec) {
+                                        applyToContext(nec, tracker, ref, context, comp, eval, compSet, evalSetBySample);
                                     }
                                 }
                             }
@@ -534,12 +576,30 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
         return null;
     }
 
+    private void applyToContext(final EvaluationContext nec,
+                                final RefMetaDataTracker tracker,
+                                final ReferenceContext ref,
+                                final AlignmentContext context,
+                                final VariantContext comp,
+                                final VariantContext eval,
+                                final Collection<VariantContext> compSet,
+                                final Collection<VariantContext> evalSetBySample) {
+        // eval against the comp
+        nec.apply(tracker, ref, context, comp, eval);
+
+        // eval=null against all comps of different type that aren't bound to another eval
+        for ( VariantContext otherComp : compSet ) {
+            if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
+                nec.apply(tracker, ref, context, otherComp, null);
+            }
+        }
+    }
+
     /**
-     * Given specific eval and comp VCs and the sample name, return an iterable
-     * over all of the applicable state keys.
+     * Given specific eval and comp VCs and the sample name, return the distinct
+     * applicable state keys.
      *
-     * this code isn't structured yet for efficiency.  Here we currently are
-     * doing the following inefficient algorithm:
+     * Here we currently are doing the following algorithm:
      *
      * for each strat:
      *   get list of relevant states that eval and comp according to strat
@@ -553,14 +613,10 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      *
      *   L = [[Eval], [Comp], [All, Novel]]
      *
-     * We then go through the strat manager tree to produce the keys associated with these states:
+     * We then ask the strat manager to pack each combination of these states into a key:
      *
      *   K = [0, 1] where EVAL x COMP x ALL = 0 and EVAL x COMP x NOVEL = 1
      *
-     * It's clear that a better
-     *
-     * TODO -- create an inline version that doesn't create the intermediate list of list
-     *
      * @param tracker
      * @param ref
      * @param eval
@@ -570,19 +626,20 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      * @param sampleName
      * @return
      */
-    protected Collection<EvaluationContext> getEvaluationContexts(final RefMetaDataTracker tracker,
-                                                                  final ReferenceContext ref,
-                                                                  final VariantContext eval,
-                                                                  final String evalName,
-                                                                  final VariantContext comp,
-                                                                  final String compName,
-                                                                  final String sampleName,
-                                                                  final String familyName) {
-        final List<List<Object>> states = new LinkedList<List<Object>>();
-        for ( final VariantStratifier vs : stratManager.getStratifiers() ) {
+    protected int[] getStratificationKeys(final RefMetaDataTracker tracker,
+                                          final ReferenceContext ref,
+                                          final VariantContext eval,
+                                          final String evalName,
+                                          final VariantContext comp,
+                                          final String compName,
+                                          final String sampleName,
+                                          final String familyName) {
+        final List<VariantStratifier> stratifiers = stratManager.getStratifiers();
+        final List<List<Object>> states = new ArrayList<List<Object>>(stratifiers.size());
+        for ( final VariantStratifier vs : stratifiers ) {
             states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName, familyName));
         }
-        return stratManager.values(states);
+        return stratManager.getKeysAsArray(states);
     }
 
 
@@ -660,13 +717,42 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      */
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
-        
+
+        // combine the contexts filled in by each thread
+        for ( final Map<Integer, EvaluationContext> threadContexts : evaluationContextsByThread ) {
+            for ( final Map.Entry<Integer, EvaluationContext> threadContext : threadContexts.entrySet() ) {
+                final int key = threadContext.getKey();
+                if ( stratManager.get(key) == null )
+                    stratManager.set(key, threadContext.getValue());
+                else
+                    stratManager.get(key).combine(threadContext.getValue());
+            }
+        }
+        evaluationContextsByThread.clear();
+
+        // keys that never saw a variant all share a single empty context
+        final List<EvaluationContext> contexts = new ArrayList<EvaluationContext>();
+        EvaluationContext emptyContext = null;
+        for ( final EvaluationContext nec : stratManager.values() ) {
+            if ( nec != null )
+                contexts.add(nec);
+            else if ( emptyContext == null )
+                emptyContext = new EvaluationContext(this, evaluationClasses);
+        }
+
         // go through the evaluations and finalize them
-        for ( final EvaluationContext nec : stratManager.values() )
+        for ( final EvaluationContext nec : contexts )
             for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
                 ve.finalizeEvaluation();
+        if ( emptyContext != null ) {
+            for ( final VariantEvaluator ve : emptyContext.getVariantEvaluators() )
+                ve.finalizeEvaluation();
+            for ( int key = 0; key < stratManager.size(); key++ )
+                if ( stratManager.get(key) == null )
+                    stratManager.set(key, emptyContext);
+        }
 
-        //send data to MetricsCollection
+        //send data to MetricsCollection, going through the contexts in key order
         CompOverlap compOverlap = null;
         IndelSummary indelSummary = null;
         CountVariants countVariants = null;
@@ -733,7 +819,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Set<SortableJexlVCMatchExp> getJexlExpressions() { return jexlExpressions; }
 
     public long getnProcessedLoci() {
-        return nProcessedLoci;
+        return nProcessedLoci.get();
     }
 
     public Set<String> getContigNames() {
@@ -70,6 +70,19 @@ public class CompOverlap extends VariantEvaluator implements StandardEval {
     public double compRate() { return rate(nVariantsAtComp, nEvalVariants); }
     public double concordanceRate() { return rate(nConcordant, nVariantsAtComp); }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final CompOverlap o = (CompOverlap)other;
+        nEvalVariants += o.nEvalVariants;
+        nVariantsAtComp += o.nVariantsAtComp;
+        nConcordant += o.nConcordant;
+    }
+
     public void finalizeEvaluation() {
         compRate = 100 * compRate();
         concordantRate = 100 * concordanceRate();
@@ -64,4 +64,14 @@ public class MetricsCollection extends VariantEvaluator {
         this.indelRatioLociBased = indelRatioLociBased;
         this.tiTvRatio = tiTvRatio;
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        // all values are set from the other evaluators once they are finalized
+    }
 }
@@ -149,6 +149,26 @@ public class MultiallelicSummary extends VariantEvaluator implements StandardEva
         // TODO -- implement me
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MultiallelicSummary o = (MultiallelicSummary)other;
+        nSNPs += o.nSNPs;
+        nMultiSNPs += o.nMultiSNPs;
+        nIndels += o.nIndels;
+        nMultiIndels += o.nMultiIndels;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        knownSNPsPartial += o.knownSNPsPartial;
+        knownSNPsComplete += o.knownSNPsComplete;
+        knownIndelsPartial += o.knownIndelsPartial;
+        knownIndelsComplete += o.knownIndelsComplete;
+    }
+
     public void finalizeEvaluation() {
         nProcessedLoci = getWalker().getnProcessedLoci();
         processedMultiSnpRatio = (double)nMultiSNPs / (double)nProcessedLoci;
@@ -90,6 +90,22 @@ public class TiTvVariantEvaluator extends VariantEvaluator implements StandardEv
             updateTiTv(comp, true);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final TiTvVariantEvaluator o = (TiTvVariantEvaluator)other;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        nTiInComp += o.nTiInComp;
+        nTvInComp += o.nTvInComp;
+        nTiDerived += o.nTiDerived;
+        nTvDerived += o.nTvDerived;
+    }
+
     @Override
     public void finalizeEvaluation() {
         // the ti/tv ratio needs to be set (it's not calculated per-variant).
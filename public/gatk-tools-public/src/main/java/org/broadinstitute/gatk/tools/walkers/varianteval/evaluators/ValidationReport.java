@@ -84,6 +84,20 @@ public class ValidationReport extends VariantEvaluator implements StandardEval {
 
     @Override public int getComparisonOrder() { return 2; }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final ValidationReport o = (ValidationReport)other;
+        nDifferentAlleleSites += o.nDifferentAlleleSites;
+        for ( int i = 0; i < counts.length; i++ )
+            for ( int j = 0; j < counts[i].length; j++ )
+                counts[i][j] += o.counts[i][j];
+    }
+
     @Override
     public void finalizeEvaluation() {
         for ( SiteStatus x : SiteStatus.values() )
@@ -100,67 +100,83 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
 
     private final static String ALL = "ALL";
 
-    private class TypeSampleMap extends EnumMap<Type, Map<String, Integer>> {
-        public TypeSampleMap(final Collection<String> samples) {
-            super(Type.class);
-            for ( Type type : Type.values() ) {
-                Map<String, Integer> bySample = new HashMap<String, Integer>(samples.size());
-                for ( final String sample : samples ) {
-                    bySample.put(sample, 0);
-                }
-                bySample.put(ALL, 0);
-                this.put(type, bySample);
-            }
-        }
+    // index of each sample, and of ALL, into the per-sample counts.  Indices follow the iteration order of a
+    // HashMap of the samples, so that per-sample ratios are always summed in the same order
+    private Map<String, Integer> sampleIndices;
+    private int allIndex;
+
+    private class TypeSampleMap {
+        // counts[type.ordinal()][sample index]
+        private final int[][] counts = new int[Type.values().length][sampleIndices.size()];
 
         public final void inc(final Type type, final String sample) {
-            final int count = this.get(type).get(sample);
-            get(type).put(sample, count + 1);
+            counts[type.ordinal()][sampleIndices.get(sample)]++;
+        }
+
+        public final void incAll(final Type type) {
+            counts[type.ordinal()][allIndex]++;
         }
 
         public final int all(Type type) {
-            return get(type).get(ALL);
+            return counts[type.ordinal()][allIndex];
         }
 
         public final int meanValue(Type type) {
+            final int[] bySample = counts[type.ordinal()];
             long sum = 0;
             int n = 0;
-            for ( final Map.Entry<String, Integer> pair : get(type).entrySet() ) {
-                if ( pair.getKey() != ALL)  { // truly must be string ==
+            for ( int i = 0; i < bySample.length; i++ ) {
+                if ( i != allIndex )  {
                     n++;
-                    sum += pair.getValue();
+                    sum += bySample[i];
                 }
             }
             return (int)(Math.round(sum / (1.0 * n)));
         }
 
         public final double ratioValue(Type type, TypeSampleMap denoms, boolean allP) {
+            final int[] nums = counts[type.ordinal()];
+            final int[] denomsBySample = denoms.counts[type.ordinal()];
             double sum = 0;
             int n = 0;
-            for ( final String sample : get(type).keySet() ) {
-                if ( (allP && sample == ALL) || (!allP && sample != ALL) ) { // truly must be string ==
-                    final long num = get(type).get(sample);
-                    final long denom = denoms.get(type).get(sample);
-                    sum += ratio(num, denom);
+            for ( int i = 0; i < nums.length; i++ ) {
+                if ( (allP && i == allIndex) || (!allP && i != allIndex) ) {
+                    sum += ratio(nums[i], denomsBySample[i]);
                     n++;
                 }
             }
 
             return n > 0 ? sum / (1.0 * n) : 0.0;
         }
+
+        public final void add(final TypeSampleMap other) {
+            for ( int t = 0; t < counts.length; t++ )
+                for ( int i = 0; i < counts[t].length; i++ )
+                    counts[t][i] += other.counts[t][i];
+        }
     }
 
 
     public void initialize(VariantEval walker) {
         super.initialize(walker);
 
-        nSamples = walker.getSampleNamesForEvaluation().size();
-        countsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        transitionsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        transversionsPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        allVariantCounts = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        knownVariantCounts = new TypeSampleMap(walker.getSampleNamesForEvaluation());
-        depthPerSample = new TypeSampleMap(walker.getSampleNamesForEvaluation());
+        final Collection<String> samples = walker.getSampleNamesForEvaluation();
+        nSamples = samples.size();
+        sampleIndices = new HashMap<String, Integer>(samples.size());
+        for ( final String sample : samples )
+            sampleIndices.put(sample, 0);
+        sampleIndices.put(ALL, 0);
+        int index = 0;
+        for ( final Map.Entry<String, Integer> entry : sampleIndices.entrySet() )
+            entry.setValue(index++);
+        allIndex = sampleIndices.get(ALL);
+
+        countsPerSample = new TypeSampleMap();
+        transitionsPerSample = new TypeSampleMap();
+        transversionsPerSample = new TypeSampleMap();
+        allVariantCounts = new TypeSampleMap();
+        knownVariantCounts = new TypeSampleMap();
+        depthPerSample = new TypeSampleMap();
 
         if ( walker.knownCNVsFile != null ) {
             knownCNVs = walker.createIntervalTreeByContig(walker.knownCNVsFile);
@@ -219,20 +235,20 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
 
         // update DP, if possible
         if ( eval.hasAttribute(VCFConstants.DEPTH_KEY) )
-            depthPerSample.inc(type, ALL);
+            depthPerSample.incAll(type);
 
         // update counts
-        allVariantCounts.inc(type, ALL);
+        allVariantCounts.incAll(type);
 
         // type specific calculations
         if ( type == Type.SNP && eval.isBiallelic() ) {
             titvTable = GATKVariantContextUtils.isTransition(eval) ? transitionsPerSample : transversionsPerSample;
-            titvTable.inc(type, ALL);
+            titvTable.incAll(type);
         }
 
         // novelty calculation
         if ( comp != null || (type == Type.CNV && overlapsKnownCNV(eval)))
-            knownVariantCounts.inc(type, ALL);
+            knownVariantCounts.incAll(type);
 
         // per sample metrics
         for (final Genotype g : eval.getGenotypes()) {
@@ -248,6 +264,22 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         }
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final VariantSummary o = (VariantSummary)other;
+        allVariantCounts.add(o.allVariantCounts);
+        knownVariantCounts.add(o.knownVariantCounts);
+        countsPerSample.add(o.countsPerSample);
+        transitionsPerSample.add(o.transitionsPerSample);
+        transversionsPerSample.add(o.transversionsPerSample);
+        depthPerSample.add(o.depthPerSample);
+    }
+
     private String noveltyRate(Type type) {
         final int all = allVariantCounts.all(type);
         final int known = knownVariantCounts.all(type);
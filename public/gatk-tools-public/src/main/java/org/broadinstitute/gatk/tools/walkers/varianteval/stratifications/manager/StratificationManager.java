@@ -40,15 +40,19 @@ import java.util.*;
  * @since 3/27/12
  */
 public class StratificationManager<K extends Stratifier, V> implements Map<List<Object>, V> {
-    private final StratNode<K> root;
     private final int size;
 
     private final ArrayList<K> stratifiers;
 
+    // the distinct states of each stratifier, and the index of each state within them
+    private final ArrayList<List<Object>> statesByStratifier;
+    private final ArrayList<Map<Object, Integer>> stateIndicesByStratifier;
+
+    // keys are packed in mixed radix: key = sum over i of stateIndex[i] * strides[i]
+    private final int[] strides;
+
     // values associated with each key
     private final ArrayList<V> valuesByKey;
-    private final ArrayList<List<Object>> stratifierValuesByKey;
-    private final ArrayList<String> keyStrings;
 
     // -------------------------------------------------------------------------------------
     //
@@ -60,110 +64,58 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
      * Create a new StratificationManager with nodes to store data for all combinations
      * of the ordered list of strats
      *
+     * Rather than building the full tree of combinations, each combination of states is
+     * packed into a single int key, with the first stratifier the most significant digit,
+     * so that keys and states can be converted into one another arithmetically.
+     *
      * @param strats ordered list of stratifications to representation
      */
     @Requires("!strats.isEmpty()")
     public StratificationManager(final List<K> strats) {
         this.stratifiers = new ArrayList<K>(strats);
+        this.statesByStratifier = new ArrayList<List<Object>>(strats.size());
+        this.stateIndicesByStratifier = new ArrayList<Map<Object, Integer>>(strats.size());
+        this.strides = new int[strats.size()];
 
-        // construct and store the full tree of strats
-        this.root = buildStratificationTree(new LinkedList<K>(strats));
-        // assign the linear key ordering to the leafs
-        assignKeys(root);
+        for ( final K strat : strats ) {
+            final Collection<Object> states = strat.getAllStates();
 
-        // cache the size, and check for a bad state
-        this.size = root.size();
-        if ( this.size == 0 )
-            throw new ReviewedGATKException("Size == 0 in StratificationManager");
-
-        // prepare the assocated data vectors mapping from key -> data
-        this.valuesByKey = new ArrayList<V>(size());
-        this.stratifierValuesByKey = new ArrayList<List<Object>>(size());
-        this.keyStrings = new ArrayList<String>(size());
-        for ( int i = 0; i < size(); i++ ) {
-            this.valuesByKey.add(null);
-            this.stratifierValuesByKey.add(null);
-            this.keyStrings.add(null);
-        }
-
-        assignStratifierValuesByKey(root);
-    }
-
-    /**
-     * Recursive construction helper for main constructor that fills into the
-     * complete tree of StratNodes.  This function returns the complete tree
-     * suitable for associating data with each combinatino of keys.  Note
-     * that the tree is not fully complete as the keys are not yet set for
-     * each note (see assignStratifierValuesByKey)
-     *
-     * @param strats
-     * @return
-     */
-    private StratNode<K> buildStratificationTree(final Queue<K> strats) {
-        final K first = strats.poll();
-        if ( first == null ) {
-            // we are at a leaf
-            return new StratNode<K>();
-        } else {
-            // we are in the middle of the tree
-            final Collection<Object> states = first.getAllStates();
-            
             if ( states.isEmpty() )
-                throw new ReviewedGATKException("State " + first + " is empty!");
-            
-            final LinkedHashMap<Object, StratNode<K>> subNodes = new LinkedHashMap<Object, StratNode<K>>(states.size());
+                throw new ReviewedGATKException("State " + strat + " is empty!");
+
+            final List<Object> distinctStates = new ArrayList<Object>(states.size());
+            final Map<Object, Integer> stateIndices = new HashMap<Object, Integer>(states.size());
             for ( final Object state : states ) {
-                // have to copy because poll modifies the queue
-                final Queue<K> copy = new LinkedList<K>(strats);
-                subNodes.put(state, buildStratificationTree(copy));
+                if ( ! stateIndices.containsKey(state) ) {
+                    stateIndices.put(state, distinctStates.size());
+                    distinctStates.add(state);
+                }
             }
-            return new StratNode<K>(first, subNodes);
+
+            statesByStratifier.add(Collections.unmodifiableList(distinctStates));
+            stateIndicesByStratifier.add(stateIndices);
         }
-    }
 
-    /**
-     * Set the key for each leaf from root, in order from 0 to N - 1 for N leaves in the tree
-     * @param root
-     */
-    @Requires("root == this.root")
-    private void assignKeys(final StratNode<K> root) {
-        int key = 0;
-        for ( final StratNode<K> node : root ) {
-            if ( node.isLeaf() )
-                node.setKey(key++);
+        // the last stratifier varies fastest
+        long nKeys = 1;
+        for ( int i = strats.size() - 1; i >= 0; i-- ) {
+            strides[i] = (int)nKeys;
+            nKeys *= statesByStratifier.get(i).size();
+            if ( nKeys > Integer.MAX_VALUE )
+                throw new ReviewedGATKException("Too many combinations of stratification states in StratificationManager: " + nKeys);
         }
-    }
 
-    /**
-     * Entry point to recursive tool that fills in the list of state values corresponding
-     * to each key.  After this function is called you can map from key -> List of StateValues
-     * instead of walking the tree to find the key and reading the list of state values
-     *
-     * @param root
-     */
-    private void assignStratifierValuesByKey(final StratNode<K> root) {
-        assignStratifierValuesByKey(root, new LinkedList<Object>());
+        // cache the size, and check for a bad state
+        this.size = (int)nKeys;
+        if ( this.size == 0 )
+            throw new ReviewedGATKException("Size == 0 in StratificationManager");
 
-        // do a last sanity check that no key has null value after assigning
-        for ( List<Object> stateValues : stratifierValuesByKey )
-            if ( stateValues == null )
-                throw new ReviewedGATKException("Found a null state value set that's null");
+        // prepare the assocated data vector mapping from key -> data
+        this.valuesByKey = new ArrayList<V>(size());
+        for ( int i = 0; i < size(); i++ )
+            this.valuesByKey.add(null);
     }
 
-    private void assignStratifierValuesByKey(final StratNode<K> node, final LinkedList<Object> states) {
-        if ( node.isLeaf() ) { // we're here!
-            if ( states.isEmpty() )
-                throw new ReviewedGATKException("Found a leaf node with an empty state values vector");
-            stratifierValuesByKey.set(node.getKey(), Collections.unmodifiableList(new ArrayList<Object>(states)));
-        } else {
-            for ( Map.Entry<Object, StratNode<K>> entry : node.getSubnodes().entrySet() ) {
-                final LinkedList<Object> newStates = new LinkedList<Object>(states);
-                newStates.addLast(entry.getKey());
-                assignStratifierValuesByKey(entry.getValue(), newStates);
-            }
-        }
-    }
-    
     // -------------------------------------------------------------------------------------
     //
     // simple accessors
@@ -179,11 +131,6 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
         return size;
     }
 
-    @Ensures("result != null")
-    protected StratNode<K> getRoot() {
-        return root;
-    }
-
     @Ensures("result != null")
     public List<K> getStratifiers() {
         return stratifiers;
@@ -198,48 +145,101 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     @Requires("states != null")
     @Ensures("result >= -1")
     public int getKey(final List<Object> states) {
-        return root.find(states, 0);
+        int key = 0;
+        for ( int i = 0; i < stratifiers.size(); i++ ) {
+            final Integer stateIndex = stateIndicesByStratifier.get(i).get(states.get(i));
+            if ( stateIndex == null )
+                return -1;
+            key += stateIndex * strides[i];
+        }
+        return key;
     }
 
     @Requires("allStates != null")
     @Ensures("result != null")
     public Set<Integer> getKeys(final List<List<Object>> allStates) {
-        final HashSet<Integer> keys = new HashSet<Integer>();
-        root.find(allStates, 0, keys);
+        final int[] keys = getKeysAsArray(allStates);
+        final HashSet<Integer> keySet = new HashSet<Integer>(keys.length);
+        for ( final int key : keys )
+            keySet.add(key);
+        return keySet;
+    }
+
+    /**
+     * Get the distinct keys of all combinations of the given states, without boxing them
+     *
+     * @param allStates for each stratifier, in order, the states to combine
+     * @return an array containing each matching key exactly once
+     */
+    @Requires("allStates != null")
+    @Ensures("result != null")
+    public int[] getKeysAsArray(final List<List<Object>> allStates) {
+        int[] keys = new int[]{0};
+        int i = 0;
+        for ( final List<Object> states : allStates ) {
+            if ( i == stratifiers.size() )
+                break;
+
+            // the distinct state indices at this level
+            final Map<Object, Integer> stateIndices = stateIndicesByStratifier.get(i);
+            final int[] offsets = new int[states.size()];
+            int nOffsets = 0;
+            for ( final Object state : states ) {
+                final Integer stateIndex = stateIndices.get(state);
+                if ( stateIndex == null )
+                    throw new ReviewedGATKException("Couldn't find state for: " + state + " at node " + stratifiers.get(i));
+                final int offset = stateIndex * strides[i];
+                if ( ! contains(offsets, nOffsets, offset) )
+                    offsets[nOffsets++] = offset;
+            }
+
+            final int[] nextKeys = new int[keys.length * nOffsets];
+            int nextKey = 0;
+            for ( final int key : keys )
+                for ( int j = 0; j < nOffsets; j++ )
+                    nextKeys[nextKey++] = key + offsets[j];
+            keys = nextKeys;
+            i++;
+        }
+
+        if ( i != stratifiers.size() )
+            throw new ReviewedGATKException("Expected states for " + stratifiers.size() + " stratifiers but found " + i);
+
         return keys;
     }
 
+    private static boolean contains(final int[] values, final int nValues, final int value) {
+        for ( int i = 0; i < nValues; i++ )
+            if ( values[i] == value )
+                return true;
+        return false;
+    }
+
+    @Requires("key >= 0 && key < size()")
+    private Object getState(final int key, final int stratIndex) {
+        final List<Object> states = statesByStratifier.get(stratIndex);
+        return states.get((key / strides[stratIndex]) % states.size());
+    }
+
     public List<Object> getStatesForKey(final int key) {
         final List<Object> states = new ArrayList<Object>(stratifiers.size());
-        for ( int i = 0; i < stratifiers.size(); i++ ) {
-            final Object stratValue = stratifierValuesByKey.get(key).get(i);
-            states.add(stratValue);
-        }
+        for ( int i = 0; i < stratifiers.size(); i++ )
+            states.add(getState(key, i));
         return states;
     }
 
     public List<Pair<K, Object>> getStratsAndStatesForKey(final int key) {
         final List<Pair<K, Object>> states = new ArrayList<Pair<K, Object>>(stratifiers.size());
-        for ( int i = 0; i < stratifiers.size(); i++ ) {
-            final K strat = stratifiers.get(i);
-            final Object stratValue = stratifierValuesByKey.get(key).get(i);
-            states.add(new Pair<K, Object>(strat, stratValue));
-        }
+        for ( int i = 0; i < stratifiers.size(); i++ )
+            states.add(new Pair<K, Object>(stratifiers.get(i), getState(key, i)));
         return states;
     }
 
     public String getStratsAndStatesStringForKey(final int key) {
-        if ( keyStrings.get(key) == null ) {
-            StringBuilder b = new StringBuilder();
-            for ( int i = 0; i < stratifiers.size(); i++ ) {
-                final K strat = stratifiers.get(i);
-                final Object stratValue = stratifierValuesByKey.get(key).get(i);
-                b.append(strat.toString()).append(":").append(stratValue.toString());
-            }
-            keyStrings.set(key, b.toString());
-        }
-        
-        return keyStrings.get(key);
+        final StringBuilder b = new StringBuilder();
+        for ( int i = 0; i < stratifiers.size(); i++ )
+            b.append(stratifiers.get(i).toString()).append(":").append(getState(key, i).toString());
+        return b.toString();
     }
 
     // -------------------------------------------------------------------------------------
@@ -255,20 +255,20 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     }
     
     public Collection<V> values(List<List<Object>> states) {
-        // TODO -- SHOULD BE INLINE TO AVOID CREATING LIST OF KEYS JUST TO ITERATE OVER IT
-        Collection<V> vals = new LinkedList<V>();
-        for ( int key : getKeys(states) ) 
+        final int[] keys = getKeysAsArray(states);
+        final Collection<V> vals = new ArrayList<V>(keys.length);
+        for ( final int key : keys )
             vals.add(get(key));
         return vals;
     }
 
-    @Requires("key >= 0 && key <= size()")
+    @Requires("key >= 0 && key < size()")
     @Ensures("get(key) == value")
     public void set(final int key, final V value) {
         valuesByKey.set(key, value);
     }
 
-    @Requires("key >= 0 && key <= size()")
+    @Requires("key >= 0 && key < size()")
     public V get(final int key) {
         return valuesByKey.get(key);
     }
@@ -404,6 +404,10 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
 
         // for each key, get its state, update it according to the map, and update the combined manager
         for ( int key = 0; key < size(); key++ ) {
+            // keys that were never given a value have nothing to contribute
+            if ( get(key) == null )
+                continue;
+
             // the new state is just the old one with the replacement
             final List<Object> newStates = new ArrayList<Object>(getStatesForKey(key));
             final Object oldState = newStates.get(stratOffset);
@@ -97,6 +97,18 @@ public final class EvaluationContext {
         }
     }
 
+    /**
+     * Can the evaluators of this context be combined with those of another context?
+     *
+     * @return true if every evaluator supports combine()
+     */
+    public boolean supportsCombine() {
+        for ( final VariantEvaluator evaluation : evaluationInstances )
+            if ( ! evaluation.supportsCombine() )
+                return false;
+        return true;
+    }
+
     public void combine(final EvaluationContext rhs) {
         for ( int i = 0; i < evaluationInstances.size(); i++ )
             evaluationInstances.get(i).combine(rhs.evaluationInstances.get(i));
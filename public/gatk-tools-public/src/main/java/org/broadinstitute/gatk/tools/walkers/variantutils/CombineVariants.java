@@ -31,6 +31,7 @@ import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.engine.io.stubs.VariantContextWriterStub;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.engine.walkers.NanoSchedulable;
 import org.broadinstitute.gatk.engine.walkers.Reference;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.TreeReducible;
@@ -134,6 +135,8 @@ import java.util.*;
  * doing the conversion, and the GATK engine is smart enough to merge the partial BCF2 blocks together
  * efficiently.  However, since this merge runs in only one thread, you can quickly reach diminishing
  * returns with the number of parallel threads.  In our hands, `-nt 4` works well but `-nt 8` tends to be be too much.</li>
+ * <li> With `-nct`, the records at different sites are merged on separate threads while a single thread encodes the
+ * merged records in order.</li>
  * <li>Since GATK 2.1, when merging multiple VCF records at a site, the combined VCF record has the QUAL of the first
  * VCF record with a non-MISSING QUAL value.  The previous behavior was to take the max QUAL, which could result
  * in strange downstream confusion</li>
@@ -142,7 +145,7 @@ import java.util.*;
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
 @Reference(window=@Window(start=-50,stop=50))
-public class CombineVariants extends RodWalker<Integer, Integer> implements TreeReducible<Integer> {
+public class CombineVariants extends RodWalker<List<VariantContext>, Integer> implements TreeReducible<Integer>, NanoSchedulable {
 
     @Input(fullName="variant", shortName = "V", doc="VCF files to merge together", required=true)
     public List<RodBindingCollection<VariantContext>> variantCollections;
@@ -239,6 +242,9 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
     private boolean sitesOnlyVCF = false;
     private Set<String> samples;
 
+    /** Number of inputs with a VCF header, which is what simpleMerge expects as the number of inputs */
+    private int numInputs;
+
     public void initialize() {
         Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(getToolkit());
 
@@ -291,6 +297,7 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
 
     private void validateAnnotateUnionArguments() {
         Set<String> rodNames = SampleUtils.getRodNamesWithVCFHeader(getToolkit(), null);
+        numInputs = rodNames.size();
 
         if ( genotypeMergeOption == GATKVariantContextUtils.GenotypeMergeType.PRIORITIZE && PRIORITY_STRING == null )
             throw new UserException.MissingArgument("rod_priority_list", "Priority string must be provided if you want to prioritize genotypes");
@@ -306,11 +313,14 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
 
     }
 
-    public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    /**
+     * Merge the records at this locus.  Sites are merged in parallel with -nct, so the merged records are
+     * returned to be written by reduce, in order.
+     */
+    public List<VariantContext> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
-            return 0;
+            return Collections.emptyList();
 
-        final Set<String> rodNames = SampleUtils.getRodNamesWithVCFHeader(getToolkit(), null);
         // get all of the vcf rods at this locus
         // Need to provide reference bases to simpleMerge starting at current locus
         Collection<VariantContext> vcs = tracker.getValues(variants, context.getLocation());
@@ -319,13 +329,8 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
             vcs = VariantContextUtils.sitesOnlyVariantContexts(vcs);
         }
 
-        if ( ASSUME_IDENTICAL_SAMPLES ) {
-            for ( final VariantContext vc : vcs ) {
-                vcfWriter.add(vc);
-            }
-
-            return vcs.isEmpty() ? 0 : 1;
-        }
+        if ( ASSUME_IDENTICAL_SAMPLES )
+            return new ArrayList<>(vcs);
 
         int numFilteredRecords = 0;
         for (final VariantContext vc : vcs) {
@@ -334,7 +339,7 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
         }
 
         if (minimumN > 1 && (vcs.size() - numFilteredRecords < minimumN))
-            return 0;
+            return Collections.emptyList();
 
         final List<VariantContext> mergedVCs = new ArrayList<>();
 
@@ -358,7 +363,7 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
                 // make sure that it is a variant or in case it is not, that we want to include the sites with no variants
                 if (!EXCLUDE_NON_VARIANTS || !type.equals(VariantContext.Type.NO_VARIATION)) {
                     if (VCsByType.containsKey(type)) {
-                        mergedVCs.add(GATKVariantContextUtils.simpleMerge(VCsByType.get(type), priority, rodNames.size(),
+                        mergedVCs.add(GATKVariantContextUtils.simpleMerge(VCsByType.get(type), priority, numInputs,
                                 filteredRecordsMergeType, genotypeMergeOption, true, printComplexMerges,
                                 SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC));
                     }
@@ -366,13 +371,14 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
             }
         }
         else if (multipleAllelesMergeType == GATKVariantContextUtils.MultipleAllelesMergeType.MIX_TYPES) {
-            mergedVCs.add(GATKVariantContextUtils.simpleMerge(vcs, priority, rodNames.size(), filteredRecordsMergeType,
+            mergedVCs.add(GATKVariantContextUtils.simpleMerge(vcs, priority, numInputs, filteredRecordsMergeType,
                     genotypeMergeOption, true, printComplexMerges, SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC));
         }
         else {
             logger.warn("Ignoring all records at site " + ref.getLocus());
         }
 
+        final List<VariantContext> outputVCs = new ArrayList<>(mergedVCs.size());
         for ( final VariantContext mergedVC : mergedVCs ) {
             // only operate at the start of events
             if ( mergedVC == null )
@@ -389,23 +395,25 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
                 GATKVariantContextUtils.pruneVariantContext(builder, Arrays.asList(SET_KEY));
             final VariantContext vc = builder.make();
             if( !EXCLUDE_NON_VARIANTS || vc.isPolymorphicInSamples() )
-                vcfWriter.add(builder.make());
+                outputVCs.add(vc);
         }
 
-        return vcs.isEmpty() ? 0 : 1;
+        return outputVCs;
     }
 
     public Integer reduceInit() {
         return 0;
     }
 
-    public Integer reduce(Integer counter, Integer sum) {
-        return counter + sum;
+    public Integer reduce(List<VariantContext> vcs, Integer sum) {
+        for ( final VariantContext vc : vcs )
+            vcfWriter.add(vc);
+        return vcs.isEmpty() ? sum : sum + 1;
     }
 
     @Override
     public Integer treeReduce(Integer lhs, Integer rhs) {
-        return reduce(lhs, rhs);
+        return lhs + rhs;
     }
 
     public void onTraversalDone(Integer sum) {}
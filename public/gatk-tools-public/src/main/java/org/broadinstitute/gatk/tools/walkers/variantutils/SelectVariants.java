@@ -610,6 +610,10 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
     private TreeSet<String> samples = new TreeSet<>();
     private boolean noSamplesSpecified = false;
 
+    // are genotypes of unselected samples skipped when the variant track is read?
+    private boolean samplesSelectedOnRead = false;
+    private int numVCFSamples = 0;
+
     private boolean discordanceOnly = false;
     private boolean concordanceOnly = false;
 
@@ -691,6 +695,14 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
             for ( String sample : samples )
             logger.info("Including sample '" + sample + "'");
 
+        // Only the selected samples' genotypes need to be decoded, unless the filters look at the others too
+        numVCFSamples = vcfSamples.size();
+        if ( ! noSamplesSpecified && ! mendelianViolations && ! considerNoCallGenotypes() ) {
+            GATKVCFUtils.selectGenotypeSamplesFromRods(getToolkit(), Arrays.asList(variantCollection.variants), samples);
+            samplesSelectedOnRead = true;
+            logger.info("Decoding genotypes for " + samples.size() + " of " + numVCFSamples + " samples in " + variantCollection.variants.getName());
+        }
+
         // if user specified types to include, add these, otherwise, add all possible variant context types to list of vc types to include
         if (typesToInclude.isEmpty()) {
             for (VariantContext.Type t : VariantContext.Type.values())
@@ -1083,8 +1095,9 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         // strip out the alternate alleles that aren't being used
         final VariantContext sub = vc.subContextFromSamples(samples, removeUnusedAlternates);
 
-        //If no subsetting happened, exit now
-        if ( sub.getNSamples() == vc.getNSamples() && sub.getNAlleles() == vc.getNAlleles() )
+        //If no subsetting happened, exit now.  Records read with only the selected samples were already subset.
+        final int originalNSamples = samplesSelectedOnRead ? numVCFSamples : vc.getNSamples();
+        if ( sub.getNSamples() == originalNSamples && sub.getNAlleles() == vc.getNAlleles() )
             return vc;
 
         final VariantContextBuilder builder = new VariantContextBuilder(sub);
@@ -201,6 +201,12 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
             final String separator = (!baseHeader.isEmpty() && !genotypeHeader.isEmpty()) ? "\t" : "";
             out.println(baseHeader + separator + genotypeHeader);
         }
+
+        // optimization: if no field looks at the genotypes, don't decode them at all
+        if ( genotypeFieldsToTake.isEmpty() && Collections.disjoint(fieldsToTake, genotypeGetters) ) {
+            GATKVCFUtils.selectGenotypeSamplesFromRods(getToolkit(), variants, Collections.<String>emptySet());
+            logger.info("No genotype fields requested; decoding sites only");
+        }
     }
 
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
@@ -402,6 +408,9 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
     public static abstract class Getter { public abstract String get(VariantContext vc); }
     public static final Map<String, Getter> getters = new HashMap<String, Getter>();
 
+    // the getters above that count genotypes
+    private static final Set<String> genotypeGetters = new HashSet<String>(Arrays.asList("HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NSAMPLES", "NCALLED"));
+
     static {
         // #CHROM  POS     ID      REF     ALT     QUAL    FILTER  INFO    FORMAT
         getters.put("CHROM", new Getter() { public String get(VariantContext vc) { return vc.getChr(); } });
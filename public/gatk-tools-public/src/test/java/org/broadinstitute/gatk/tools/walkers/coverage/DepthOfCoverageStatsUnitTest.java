@@ -0,0 +1,137 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.coverage;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class DepthOfCoverageStatsUnitTest extends BaseTest {
+
+    @DataProvider(name = "StatsTest")
+    public Object[][] makeStatsTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final int nSamples : Arrays.asList(1, 2, 10, 50) )
+            for ( final int nLoci : Arrays.asList(0, 1, 100) )
+                for ( final int maxDepth : Arrays.asList(1, 30, 1000) )
+                    tests.add(new Object[]{nSamples, nLoci, maxDepth});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "StatsTest")
+    public void testStatsMatchBruteForce(final int nSamples, final int nLoci, final int maxDepth) {
+        final Random random = new Random(nSamples * 31 + nLoci * 7 + maxDepth);
+        final int[] endpoints = DepthOfCoverageStats.calculateBinEndpoints(1, 500, 20);
+
+        final List<String> samples = new ArrayList<String>();
+        for ( int s = 0; s < nSamples; s++ )
+            samples.add("sample" + s);
+
+        // stats accumulated in two halves and merged, as with -nt
+        final DepthOfCoverageStats left = new DepthOfCoverageStats(endpoints);
+        final DepthOfCoverageStats right = new DepthOfCoverageStats(endpoints);
+        for ( final DepthOfCoverageStats stats : Arrays.asList(left, right) ) {
+            for ( final String sample : samples )
+                stats.addSample(sample);
+            stats.initializeLocusCounts();
+        }
+
+        final long[][] histograms = new long[nSamples][endpoints.length + 1];
+        final long[] totals = new long[nSamples];
+        final long[][] locusCounts = new long[nSamples][endpoints.length + 1];
+        for ( int locus = 0; locus < nLoci; locus++ ) {
+            final Map<String,Integer> depths = new HashMap<String,Integer>();
+            final int[] samplesAtOrAboveBin = new int[endpoints.length + 1];
+            for ( int s = 0; s < nSamples; s++ ) {
+                final int depth = random.nextInt(maxDepth + 1);
+                if ( depth > 0 || random.nextBoolean() )
+                    depths.put(samples.get(s), depth);
+
+                int bin = 0;
+                while ( bin < endpoints.length && depth >= endpoints[bin] )
+                    bin++;
+                histograms[s][bin]++;
+                totals[s] += depth;
+                for ( int b = 0; b <= bin; b++ )
+                    samplesAtOrAboveBin[b]++;
+            }
+            for ( int b = 0; b < samplesAtOrAboveBin.length; b++ )
+                for ( int n = 0; n < samplesAtOrAboveBin[b]; n++ )
+                    locusCounts[n][b]++;
+
+            (locus % 2 == 0 ? left : right).updateDepths(depths);
+        }
+        left.merge(right);
+
+        Assert.assertEquals(left.getTotalLoci(), nLoci);
+        long totalCoverage = 0;
+        for ( int s = 0; s < nSamples; s++ ) {
+            Assert.assertEquals(left.getHistograms().get(samples.get(s)), histograms[s], "histogram of " + samples.get(s));
+            Assert.assertEquals(left.getTotal(samples.get(s)), totals[s], "total of " + samples.get(s));
+            totalCoverage += totals[s];
+        }
+        Assert.assertEquals(left.getTotalCoverage(), totalCoverage);
+
+        final long[][] actualLocusCounts = left.getLocusCounts();
+        Assert.assertEquals(actualLocusCounts.length, nSamples);
+        for ( int n = 0; n < nSamples; n++ )
+            Assert.assertEquals(actualLocusCounts[n], locusCounts[n], "locus counts for at least " + (n + 1) + " samples");
+    }
+
+    @Test
+    public void testUpdateByIndex() {
+        final DepthOfCoverageStats stats = new DepthOfCoverageStats(new int[]{1, 5, 10});
+        stats.addSample("b");
+        stats.addSample("a");
+        Assert.assertEquals(stats.getSampleIndex("b"), 0);
+        Assert.assertEquals(stats.getSampleIndex("a"), 1);
+        Assert.assertEquals(stats.getSampleIndex("c"), -1);
+
+        stats.updateDepths(new int[]{7, 0});
+        stats.updateDepths(new int[]{12, 1});
+        Assert.assertEquals(stats.getHistograms().get("b"), new long[]{0, 0, 1, 1});
+        Assert.assertEquals(stats.getHistograms().get("a"), new long[]{1, 1, 0, 0});
+        Assert.assertEquals(stats.getTotal("b"), 19);
+        Assert.assertEquals(stats.getMean("a"), 0.5);
+    }
+
+    @Test
+    public void testDeletionsOnlyCountedWhenIncluded() {
+        final int[] counts = new int[]{1, 2, 3, 4, 5, 6};
+        final DepthOfCoverageStats stats = new DepthOfCoverageStats(new int[]{1, 5, 10});
+        Assert.assertEquals(stats.getDepth(counts), 15);
+        stats.initializeDeletions();
+        Assert.assertEquals(stats.getDepth(counts), 21);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.varianteval.stratifications.manager;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class StratificationManagerUnitTest extends BaseTest {
+
+    private static class IntegerStratifier implements Stratifier<Object> {
+        final List<Object> states;
+
+        private IntegerStratifier(final int nStates) {
+            states = new ArrayList<Object>(nStates);
+            for ( int i = 0; i < nStates; i++ )
+                states.add(i);
+        }
+
+        @Override
+        public List<Object> getAllStates() {
+            return states;
+        }
+
+        @Override
+        public String toString() {
+            return "Strat" + states.size();
+        }
+    }
+
+    @DataProvider(name = "StratificationManagerTest")
+    public Object[][] makeStratificationManagerTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+        tests.add(new Object[]{Arrays.asList(1)});
+        tests.add(new Object[]{Arrays.asList(3)});
+        tests.add(new Object[]{Arrays.asList(1, 1, 1)});
+        tests.add(new Object[]{Arrays.asList(2, 3)});
+        tests.add(new Object[]{Arrays.asList(3, 1, 4, 2)});
+        return tests.toArray(new Object[][]{});
+    }
+
+    private static StratificationManager<IntegerStratifier, Object> makeManager(final List<Integer> nStatesByStrat) {
+        final List<IntegerStratifier> strats = new ArrayList<IntegerStratifier>();
+        for ( final int nStates : nStatesByStrat )
+            strats.add(new IntegerStratifier(nStates));
+        return new StratificationManager<IntegerStratifier, Object>(strats);
+    }
+
+    @Test(dataProvider = "StratificationManagerTest")
+    public void testKeysRoundTrip(final List<Integer> nStatesByStrat) {
+        final StratificationManager<IntegerStratifier, Object> manager = makeManager(nStatesByStrat);
+
+        int expectedSize = 1;
+        for ( final int nStates : nStatesByStrat )
+            expectedSize *= nStates;
+        Assert.assertEquals(manager.size(), expectedSize);
+
+        // every key maps to a distinct combination of states, which maps back to the same key
+        final Set<List<Object>> seen = new HashSet<List<Object>>();
+        for ( int key = 0; key < manager.size(); key++ ) {
+            final List<Object> states = manager.getStatesForKey(key);
+            Assert.assertEquals(states.size(), nStatesByStrat.size());
+            Assert.assertTrue(seen.add(states), "Duplicate states " + states + " for key " + key);
+            Assert.assertEquals(manager.getKey(states), key);
+            Assert.assertEquals(manager.getStratsAndStatesForKey(key).get(0).getSecond(), states.get(0));
+        }
+    }
+
+    @Test(dataProvider = "StratificationManagerTest")
+    public void testGetKeysForAllCombinations(final List<Integer> nStatesByStrat) {
+        final StratificationManager<IntegerStratifier, Object> manager = makeManager(nStatesByStrat);
+
+        // asking for every state of every strat, with duplicates, gives each key once
+        final List<List<Object>> allStates = new ArrayList<List<Object>>();
+        for ( final IntegerStratifier strat : manager.getStratifiers() ) {
+            final List<Object> states = new ArrayList<Object>(strat.getAllStates());
+            states.addAll(strat.getAllStates());
+            allStates.add(states);
+        }
+
+        final int[] keys = manager.getKeysAsArray(allStates);
+        Assert.assertEquals(keys.length, manager.size());
+        final Set<Integer> keySet = manager.getKeys(allStates);
+        Assert.assertEquals(keySet.size(), manager.size());
+        for ( final int key : keys )
+            Assert.assertTrue(keySet.contains(key));
+    }
+
+    @Test
+    public void testUnknownStates() {
+        final StratificationManager<IntegerStratifier, Object> manager = makeManager(Arrays.asList(2, 3));
+        Assert.assertEquals(manager.getKey(Arrays.<Object>asList(1, 3)), -1);
+        Assert.assertEquals(manager.getKey(Arrays.<Object>asList(1, 2)), 5);
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class)
+    public void testGetKeysWithUnknownState() {
+        final StratificationManager<IntegerStratifier, Object> manager = makeManager(Arrays.asList(2, 3));
+        manager.getKeysAsArray(Arrays.asList(Collections.<Object>singletonList(0), Collections.<Object>singletonList(7)));
+    }
+}
@@ -0,0 +1,446 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils;
+
+import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
+
+import java.util.*;
+
+/**
+ * A sorted set of non-overlapping genomic intervals packed into int arrays of contig indices, starts and stops.
+ *
+ * Building, sorting and merging millions of intervals (capture kits, per-base callable BED files) as GenomeLoc
+ * objects costs seconds and hundreds of MB.  This index does all of that on primitive arrays, and creates
+ * GenomeLocs only when asked for them, either all at once with toList() or one at a time with iterator().
+ *
+ * Supports O(log n) overlap queries, and linear time intersection, union and subtraction with another index.
+ * The GenomeLoc.UNMAPPED location is tracked separately, and always comes last, as in GenomeLoc.compareTo.
+ *
+ * Instances are immutable.
+ */
+public final class GenomeLocIntervalIndex implements Iterable<GenomeLoc> {
+    /** Ranges at most this long are sorted by insertion sort */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /** The contig name for each contig index, shared with the GenomeLocs we were created from */
+    private final String[] contigNames;
+
+    private final int[] contigs;
+    private final int[] starts;
+    private final int[] stops;
+    private final int size;
+    private final boolean includesUnmapped;
+
+    private GenomeLocIntervalIndex(final String[] contigNames, final int[] contigs, final int[] starts, final int[] stops,
+                                   final int size, final boolean includesUnmapped) {
+        this.contigNames = contigNames;
+        this.contigs = contigs;
+        this.starts = starts;
+        this.stops = stops;
+        this.size = size;
+        this.includesUnmapped = includesUnmapped;
+    }
+
+    /**
+     * Create an index of locs, which can be in any order and can overlap.  They will be sorted and then
+     * merged according to rule.
+     *
+     * @param locs the locations to index, may include GenomeLoc.UNMAPPED
+     * @param rule ALL merges overlapping and abutting locs, OVERLAPPING_ONLY only overlapping ones.  null means ALL
+     * @return a non-null index
+     */
+    public static GenomeLocIntervalIndex create(final Collection<GenomeLoc> locs, final IntervalMergingRule rule) {
+        if ( locs == null ) throw new IllegalArgumentException("locs cannot be null");
+
+        final Builder builder = new Builder(locs.size());
+        for ( final GenomeLoc loc : locs )
+            builder.add(loc);
+        return builder.build(rule);
+    }
+
+    /**
+     * Accumulates intervals, in any order, into packed arrays
+     */
+    public static final class Builder {
+        private String[] contigNames = new String[0];
+        private int[] contigs, starts, stops;
+        private int size = 0;
+        private boolean includesUnmapped = false;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(final int initialCapacity) {
+            final int capacity = Math.max(initialCapacity, 1);
+            contigs = new int[capacity];
+            starts = new int[capacity];
+            stops = new int[capacity];
+        }
+
+        /**
+         * Add loc to this builder
+         *
+         * @param loc a mapped GenomeLoc or GenomeLoc.UNMAPPED
+         * @return this builder
+         */
+        public Builder add(final GenomeLoc loc) {
+            if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+            if ( GenomeLoc.isUnmapped(loc) ) {
+                includesUnmapped = true;
+                return this;
+            }
+            return add(loc.getContig(), loc.getContigIndex(), loc.getStart(), loc.getStop());
+        }
+
+        /**
+         * Add the interval contig:start-stop to this builder
+         *
+         * @param contig the name of the contig, which should be the interned name used by the GenomeLocParser
+         * @param contigIndex the index of contig in the sequence dictionary
+         * @param start the 1-based start of the interval
+         * @param stop the 1-based, inclusive stop of the interval
+         * @return this builder
+         */
+        public Builder add(final String contig, final int contigIndex, final int start, final int stop) {
+            if ( contigIndex < 0 ) throw new IllegalArgumentException("Cannot index a location without a valid contig index: " + contig);
+            if ( stop < start ) throw new IllegalArgumentException("Interval stop " + stop + " < start " + start);
+
+            if ( contigIndex >= contigNames.length )
+                contigNames = Arrays.copyOf(contigNames, Math.max(contigIndex + 1, contigNames.length * 2));
+            if ( contigNames[contigIndex] == null )
+                contigNames[contigIndex] = contig;
+
+            if ( size == contigs.length ) {
+                final int capacity = size * 2;
+                contigs = Arrays.copyOf(contigs, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                stops = Arrays.copyOf(stops, capacity);
+            }
+            contigs[size] = contigIndex;
+            starts[size] = start;
+            stops[size] = stop;
+            size++;
+            return this;
+        }
+
+        /**
+         * Sort and merge the intervals added so far into an index.  The builder should not be used afterwards.
+         *
+         * @param rule ALL merges overlapping and abutting intervals, OVERLAPPING_ONLY only overlapping ones.  null means ALL
+         * @return a non-null index
+         */
+        public GenomeLocIntervalIndex build(final IntervalMergingRule rule) {
+            if ( ! isSorted() )
+                sort(0, size - 1);
+
+            final boolean mergeAbutting = rule == null || rule == IntervalMergingRule.ALL;
+            int n = 0;
+            for ( int i = 0; i < size; i++ ) {
+                if ( n > 0 && contigs[i] == contigs[n-1] && (starts[i] <= stops[n-1] || (mergeAbutting && starts[i] == stops[n-1] + 1)) ) {
+                    stops[n-1] = Math.max(stops[n-1], stops[i]);
+                } else {
+                    contigs[n] = contigs[i];
+                    starts[n] = starts[i];
+                    stops[n] = stops[i];
+                    n++;
+                }
+            }
+            return toIndex(n);
+        }
+
+        private GenomeLocIntervalIndex toIndex(final int n) {
+            return new GenomeLocIntervalIndex(contigNames, Arrays.copyOf(contigs, n), Arrays.copyOf(starts, n), Arrays.copyOf(stops, n), n, includesUnmapped);
+        }
+
+        private boolean isSorted() {
+            for ( int i = 1; i < size; i++ )
+                if ( compare(i - 1, i) > 0 )
+                    return false;
+            return true;
+        }
+
+        private int compare(final int i, final int j) {
+            if ( contigs[i] != contigs[j] ) return contigs[i] < contigs[j] ? -1 : 1;
+            if ( starts[i] != starts[j] ) return starts[i] < starts[j] ? -1 : 1;
+            return stops[i] < stops[j] ? -1 : (stops[i] == stops[j] ? 0 : 1);
+        }
+
+        private void swap(final int i, final int j) {
+            int t = contigs[i]; contigs[i] = contigs[j]; contigs[j] = t;
+            t = starts[i]; starts[i] = starts[j]; starts[j] = t;
+            t = stops[i]; stops[i] = stops[j]; stops[j] = t;
+        }
+
+        /**
+         * Quicksort of the parallel arrays in [lo, hi], in GenomeLoc order, recursing only into the smaller half
+         */
+        private void sort(int lo, int hi) {
+            while ( hi - lo > INSERTION_SORT_THRESHOLD ) {
+                // median of three pivot, moved to hi
+                final int mid = (lo + hi) >>> 1;
+                if ( compare(mid, lo) < 0 ) swap(mid, lo);
+                if ( compare(hi, lo) < 0 ) swap(hi, lo);
+                if ( compare(mid, hi) < 0 ) swap(mid, hi);
+
+                int store = lo;
+                for ( int i = lo; i < hi; i++ )
+                    if ( compare(i, hi) < 0 )
+                        swap(i, store++);
+                swap(store, hi);
+
+                if ( store - lo < hi - store ) {
+                    sort(lo, store - 1);
+                    lo = store + 1;
+                } else {
+                    sort(store + 1, hi);
+                    hi = store - 1;
+                }
+            }
+
+            for ( int i = lo + 1; i <= hi; i++ )
+                for ( int j = i; j > lo && compare(j - 1, j) > 0; j-- )
+                    swap(j - 1, j);
+        }
+    }
+
+    /**
+     * @return the number of mapped intervals in this index, not counting GenomeLoc.UNMAPPED
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no intervals, mapped or not, in this index
+     */
+    public boolean isEmpty() {
+        return size == 0 && ! includesUnmapped;
+    }
+
+    /**
+     * @return true if this index includes GenomeLoc.UNMAPPED
+     */
+    public boolean includesUnmapped() {
+        return includesUnmapped;
+    }
+
+    public int getContigIndex(final int i) {
+        return contigs[i];
+    }
+
+    public String getContig(final int i) {
+        return contigNames[contigs[i]];
+    }
+
+    public int getStart(final int i) {
+        return starts[i];
+    }
+
+    public int getStop(final int i) {
+        return stops[i];
+    }
+
+    /**
+     * @param i the index of a mapped interval, 0 <= i < size()
+     * @return a new GenomeLoc for the i-th interval
+     */
+    public GenomeLoc getLoc(final int i) {
+        return new GenomeLoc(contigNames[contigs[i]], contigs[i], starts[i], stops[i]);
+    }
+
+    /**
+     * @return the number of bp covered by the mapped intervals of this index
+     */
+    public long coveredSize() {
+        long s = 0;
+        for ( int i = 0; i < size; i++ )
+            s += stops[i] - starts[i] + 1;
+        return s;
+    }
+
+    /**
+     * Find the first interval overlapping contigIndex:start-stop
+     *
+     * @return the index of the first overlapping interval, or -1 if there are none
+     */
+    public int firstOverlapping(final int contigIndex, final int start, final int stop) {
+        // intervals don't overlap, so they are sorted by stop as well.  Find the first one that doesn't end before start
+        int lo = 0, hi = size;
+        while ( lo < hi ) {
+            final int mid = (lo + hi) >>> 1;
+            if ( contigs[mid] < contigIndex || (contigs[mid] == contigIndex && stops[mid] < start) )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo < size && contigs[lo] == contigIndex && starts[lo] <= stop ? lo : -1;
+    }
+
+    /**
+     * Does loc overlap any interval in this index?
+     *
+     * @param loc the location to test
+     * @return true if loc overlaps an interval
+     */
+    public boolean overlaps(final GenomeLoc loc) {
+        if ( GenomeLoc.isUnmapped(loc) )
+            return includesUnmapped;
+        return firstOverlapping(loc.getContigIndex(), loc.getStart(), loc.getStop()) != -1;
+    }
+
+    /**
+     * Intersect this index with other, in time linear in the sizes of both
+     *
+     * @param other the index to intersect with
+     * @return a new index covering the bases covered by both this and other
+     */
+    public GenomeLocIntervalIndex intersect(final GenomeLocIntervalIndex other) {
+        final Builder builder = newBuilder(other);
+        int i = 0, j = 0;
+        while ( i < size && j < other.size ) {
+            if ( contigs[i] != other.contigs[j] ) {
+                if ( contigs[i] < other.contigs[j] ) i++; else j++;
+            } else if ( stops[i] < other.starts[j] ) {
+                i++;
+            } else if ( other.stops[j] < starts[i] ) {
+                j++;
+            } else {
+                builder.add(contigNames[contigs[i]], contigs[i], Math.max(starts[i], other.starts[j]), Math.min(stops[i], other.stops[j]));
+                // drop the interval that ends first, as it cannot overlap anything else
+                if ( stops[i] < other.stops[j] ) i++; else j++;
+            }
+        }
+        builder.includesUnmapped = includesUnmapped && other.includesUnmapped;
+        return builder.toIndex(builder.size);
+    }
+
+    /**
+     * Subtract other from this index, in time linear in the sizes of both.  Intervals of this index that
+     * abut each other remain separate.
+     *
+     * @param other the index to subtract
+     * @return a new index covering the bases covered by this but not by other
+     */
+    public GenomeLocIntervalIndex subtract(final GenomeLocIntervalIndex other) {
+        final Builder builder = newBuilder(other);
+        int j = 0;
+        for ( int i = 0; i < size; i++ ) {
+            final int contig = contigs[i];
+            int start = starts[i];
+            final int stop = stops[i];
+
+            // skip the intervals of other that end before this one starts
+            while ( j < other.size && (other.contigs[j] < contig || (other.contigs[j] == contig && other.stops[j] < start)) )
+                j++;
+
+            // carve out each interval of other overlapping this one, without consuming the last one, which may extend into the next
+            int k = j;
+            while ( k < other.size && other.contigs[k] == contig && other.starts[k] <= stop ) {
+                if ( other.starts[k] > start )
+                    builder.add(contigNames[contig], contig, start, other.starts[k] - 1);
+                start = Math.max(start, other.stops[k] + 1);
+                if ( start > stop ) break;
+                k++;
+            }
+            if ( start <= stop )
+                builder.add(contigNames[contig], contig, start, stop);
+        }
+        builder.includesUnmapped = includesUnmapped && ! other.includesUnmapped;
+        return builder.toIndex(builder.size);
+    }
+
+    /**
+     * Union this index with other, in time linear in the sizes of both
+     *
+     * @param other the index to union with
+     * @param rule ALL merges overlapping and abutting intervals, OVERLAPPING_ONLY only overlapping ones.  null means ALL
+     * @return a new index covering the bases covered by either this or other
+     */
+    public GenomeLocIntervalIndex union(final GenomeLocIntervalIndex other, final IntervalMergingRule rule) {
+        final Builder builder = newBuilder(other);
+        int i = 0, j = 0;
+        while ( i < size || j < other.size ) {
+            final boolean takeThis = j == other.size
+                    || (i < size && (contigs[i] < other.contigs[j] || (contigs[i] == other.contigs[j] && starts[i] <= other.starts[j])));
+            if ( takeThis ) {
+                builder.add(contigNames[contigs[i]], contigs[i], starts[i], stops[i]);
+                i++;
+            } else {
+                builder.add(other.contigNames[other.contigs[j]], other.contigs[j], other.starts[j], other.stops[j]);
+                j++;
+            }
+        }
+        builder.includesUnmapped = includesUnmapped || other.includesUnmapped;
+        // already sorted by contig and start, so this only merges
+        return builder.build(rule);
+    }
+
+    private Builder newBuilder(final GenomeLocIntervalIndex other) {
+        final Builder builder = new Builder(size + other.size);
+        builder.contigNames = contigNames.length >= other.contigNames.length ? contigNames.clone() : other.contigNames.clone();
+        for ( int c = 0; c < Math.min(contigNames.length, other.contigNames.length); c++ )
+            if ( builder.contigNames[c] == null )
+                builder.contigNames[c] = contigNames[c] != null ? contigNames[c] : other.contigNames[c];
+        return builder;
+    }
+
+    /**
+     * @return an iterator creating the GenomeLocs of this index one at a time, followed by GenomeLoc.UNMAPPED if included
+     */
+    @Override
+    public Iterator<GenomeLoc> iterator() {
+        return new Iterator<GenomeLoc>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size || (next == size && includesUnmapped);
+            }
+
+            @Override
+            public GenomeLoc next() {
+                if ( ! hasNext() ) throw new NoSuchElementException();
+                return next++ < size ? getLoc(next - 1) : GenomeLoc.UNMAPPED;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("GenomeLocIntervalIndex is immutable");
+            }
+        };
+    }
+
+    /**
+     * @return a new, modifiable list of the GenomeLocs of this index, followed by GenomeLoc.UNMAPPED if included
+     */
+    public List<GenomeLoc> toList() {
+        final List<GenomeLoc> locs = new ArrayList<>(size + 1);
+        for ( final GenomeLoc loc : this )
+            locs.add(loc);
+        return locs;
+    }
+}
@@ -27,9 +27,7 @@ package org.broadinstitute.gatk.utils;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.log4j.Logger;
-import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
-import org.broadinstitute.gatk.utils.interval.IntervalUtils;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -90,11 +88,22 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @param l a collection of genome locs to add to this set
      */
     public GenomeLocSortedSet(final GenomeLocParser parser, final Collection<GenomeLoc> l) {
+        this(parser, GenomeLocIntervalIndex.create(l, IntervalMergingRule.OVERLAPPING_ONLY));
+    }
+
+    /**
+     * Create a new GenomeLocSortedSet containing the intervals of index, which are already sorted and merged
+     *
+     * @param parser a non-null the parser we use to create genome locs
+     * @param index a non-null index of the genome locs to add to this set
+     */
+    public GenomeLocSortedSet(final GenomeLocParser parser, final GenomeLocIntervalIndex index) {
         this(parser);
+        if ( index == null ) throw new IllegalArgumentException("index cannot be null");
 
-        final ArrayList<GenomeLoc> sorted = new ArrayList<>(l);
-        Collections.sort(sorted);
-        mArray.addAll(IntervalUtils.mergeIntervalLocations(sorted, IntervalMergingRule.OVERLAPPING_ONLY));
+        ((ArrayList<GenomeLoc>)mArray).ensureCapacity(index.size() + 1);
+        for ( final GenomeLoc loc : index )
+            mArray.add(loc);
     }
 
     /**
@@ -381,47 +390,16 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
         return false;
     }
 
+    /**
+     * Subtract the regions of toRemoveSet from this set, in time linear in the sizes of both sets
+     *
+     * @param toRemoveSet the regions to remove
+     * @return a new set with the regions of this set not covered by toRemoveSet.  Abutting regions remain separate
+     */
     public GenomeLocSortedSet subtractRegions(GenomeLocSortedSet toRemoveSet) {
-        LinkedList<GenomeLoc> good = new LinkedList<>();
-        Stack<GenomeLoc> toProcess = new Stack<>();
-        Stack<GenomeLoc> toExclude = new Stack<>();
-
-        // initialize the stacks
-        toProcess.addAll(mArray);
-        Collections.reverse(toProcess);
-        toExclude.addAll(toRemoveSet.mArray);
-        Collections.reverse(toExclude);
-
-        int i = 0;
-        while ( ! toProcess.empty() ) {    // while there's still stuff to process
-            if ( toExclude.empty() ) {
-                good.addAll(toProcess);         // no more excludes, all the processing stuff is good
-                break;
-            }
-
-            GenomeLoc p = toProcess.peek();
-            GenomeLoc e = toExclude.peek();
-
-            if ( p.overlapsP(e) ) {
-                toProcess.pop();
-                p.subtract(e).forEach(toProcess::push);
-            } else if ( p.compareContigs(e) < 0 ) {
-                good.add(toProcess.pop());         // p is now good
-            } else if ( p.compareContigs(e) > 0 ) {
-                toExclude.pop();                 // e can't effect anything
-            } else if ( p.getStop() < e.getStart() ) {
-                good.add(toProcess.pop());         // p stops before e starts, p is good
-            } else if ( e.getStop() < p.getStart() ) {
-                toExclude.pop();                 // p starts after e stops, e is done
-            } else {
-                throw new ReviewedGATKException("BUG: unexpected condition: p=" + p + ", e=" + e);
-            }
-
-            if ( i++ % 10000 == 0 )
-                logger.debug("removeRegions operation: i = " + i);
-        }
-
-        return createSetFromList(genomeLocParser,good);
+        final GenomeLocIntervalIndex remaining = GenomeLocIntervalIndex.create(mArray, IntervalMergingRule.OVERLAPPING_ONLY)
+                .subtract(GenomeLocIntervalIndex.create(toRemoveSet.mArray, IntervalMergingRule.OVERLAPPING_ONLY));
+        return new GenomeLocSortedSet(genomeLocParser, remaining);
     }
 
     /**
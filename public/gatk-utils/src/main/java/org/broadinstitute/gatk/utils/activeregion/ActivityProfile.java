@@ -41,7 +41,8 @@ import java.util.*;
  * @since Date created
  */
 public class ActivityProfile {
-    protected final List<ActivityProfileState> stateList;
+    private static final int INITIAL_STATE_CAPACITY = 256;
+
     protected final GenomeLocParser parser;
     protected final GenomeLocSortedSet restrictToIntervals;
 
@@ -51,6 +52,17 @@ public class ActivityProfile {
     protected GenomeLoc regionStartLoc = null;
     protected GenomeLoc regionStopLoc = null;
 
+    /**
+     * The isActive probabilities of the states in this profile, the first of which is at regionStartLoc.
+     *
+     * Stored as a ring buffer of primitives starting at firstStateIndex, whose capacity is always a power
+     * of two.  States popped off into regions free their slots for reuse, so the buffer only grows to
+     * the size of the window of states not yet converted to regions.
+     */
+    private double[] stateProbs = new double[INITIAL_STATE_CAPACITY];
+    private int firstStateIndex = 0;
+    private int nStates = 0;
+
     /**
      * A cached value of the regionStartLoc contig length, to make calls to
      * getCurrentContigLength efficient
@@ -78,7 +90,6 @@ public class ActivityProfile {
         if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
 
         this.parser = parser;
-        this.stateList = new ArrayList<ActivityProfileState>();
         this.restrictToIntervals = intervals;
         this.maxProbPropagationDistance = maxProbPropagationDistance;
         this.activeProbThreshold = activeProbThreshold;
@@ -113,7 +124,7 @@ public class ActivityProfile {
      */
     @Ensures("result >= 0")
     public int size() {
-        return stateList.size();
+        return nStates;
     }
 
     /**
@@ -122,7 +133,7 @@ public class ActivityProfile {
      */
     @Ensures("isEmpty() == (size() == 0)")
     public boolean isEmpty() {
-        return stateList.isEmpty();
+        return nStates == 0;
     }
 
     /**
@@ -145,11 +156,15 @@ public class ActivityProfile {
 
     /**
      * Get the list of active profile results in this object
+     *
+     * The states are created on demand from the probabilities stored in this profile, so modifying them
+     * doesn't change the profile.
+     *
      * @return a non-null, ordered list of active profile results
      */
     @Ensures("result != null")
     protected List<ActivityProfileState> getStateList() {
-        return stateList;
+        return makeStates(0, nStates);
     }
 
     /**
@@ -158,29 +173,38 @@ public class ActivityProfile {
      */
     @Ensures("result != null")
     protected double[] getProbabilitiesAsArray() {
-        final double[] probs = new double[getStateList().size()];
-        int i = 0;
-        for ( final ActivityProfileState state : getStateList() )
-            probs[i++] = state.isActiveProb;
+        final double[] probs = new double[nStates];
+        for ( int i = 0; i < nStates; i++ )
+            probs[i] = getProb(i);
         return probs;
     }
 
     /**
-     * Helper function that gets the genome loc for a site offset from relativeLoc, protecting ourselves from
-     * falling off the edge of the contig.
-     *
-     * @param relativeLoc the location offset is relative to
-     * @param offset the offset from relativeLoc where we'd like to create a GenomeLoc
-     * @return a genome loc with relativeLoc.start + offset, if this is on the contig, null otherwise
+     * Make states for the stretch [offset, offset + n) of this profile
+     * @param offset the offset of the first state w.r.t. regionStartLoc
+     * @param n the number of states to make
+     * @return a non-null list of n states
      */
-    @Requires("relativeLoc != null")
-    protected GenomeLoc getLocForOffset(final GenomeLoc relativeLoc, final int offset) {
-        final int start = relativeLoc.getStart() + offset;
-        if ( start < 0 || start > getCurrentContigLength() ) {
-            return null;
-        } else {
-            return parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start);
+    @Requires({"offset >= 0", "n >= 0", "offset + n <= size()"})
+    private List<ActivityProfileState> makeStates(final int offset, final int n) {
+        final List<ActivityProfileState> states = new ArrayList<ActivityProfileState>(n);
+        for ( int i = 0; i < n; i++ ) {
+            final int start = regionStartLoc.getStart() + offset + i;
+            final GenomeLoc loc = parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start);
+            states.add(new ActivityProfileState(loc, getProb(offset + i)));
         }
+        return states;
+    }
+
+    /**
+     * Helper function that tells us whether a position on the current contig exists, protecting ourselves
+     * from falling off the edge of the contig.
+     *
+     * @param start a position on the contig of this profile
+     * @return true if start is on the contig, false otherwise
+     */
+    protected boolean isWithinContig(final int start) {
+        return start >= 0 && start <= getCurrentContigLength();
     }
 
     /**
@@ -220,76 +244,124 @@ public class ActivityProfile {
             regionStopLoc = loc;
         }
 
-        final Collection<ActivityProfileState> processedStates = processState(state);
-        for ( final ActivityProfileState processedState : processedStates ) {
-            incorporateSingleState(processedState);
-        }
+        processState(state);
     }
 
     /**
-     * Incorporate a single activity profile state into the current list of states
+     * Incorporate the probability of a single position into the current states
      *
-     * If state's position occurs immediately after the last position in this profile, then
-     * the state is appended to the state list.  If it's within the existing states list,
-     * the prob of stateToAdd is added to its corresponding state in the list.  If the
-     * position would be before the start of this profile, stateToAdd is simply ignored.
+     * If the position occurs immediately after the last position in this profile, then
+     * a new state is appended to the profile.  If it's within the existing states,
+     * prob is added to its corresponding state.  If the position would be before the
+     * start of this profile, prob is simply ignored.
      *
-     * @param stateToAdd the state we want to add to the states list
+     * @param start the position on the current contig of the state we want to add
+     * @param prob the probability to add to the state at start
      */
-    @Requires("stateToAdd != null")
-    private void incorporateSingleState(final ActivityProfileState stateToAdd) {
-        final int position = stateToAdd.getOffset(regionStartLoc);
+    protected void incorporateSingleState(final int start, final double prob) {
+        final int position = start - regionStartLoc.getStart();
 
         if ( position > size() )
             // should we allow this?  probably not
-            throw new IllegalArgumentException("Must add state contiguous to existing states: adding " + stateToAdd);
+            throw new IllegalArgumentException("Must add state contiguous to existing states: adding state at " + start + " to " + this);
 
         if ( position >= 0 ) {
             // ignore states starting before this region's start
             if ( position < size() ) {
-                stateList.get(position).isActiveProb += stateToAdd.isActiveProb;
+                stateProbs[ringIndex(position)] += prob;
             } else {
-                if ( position != size() ) throw new IllegalStateException("position == size but it wasn't");
-                stateList.add(stateToAdd);
+                appendState(prob);
             }
         }
     }
 
     /**
-     * Process justAddedState, returning a collection of derived states that actually be added to the stateList
+     * Process justAddedState, incorporating the probabilities of the states derived from it into this profile
      *
      * The purpose of this function is to transform justAddedStates, if needed, into a series of atomic states
      * that we actually want to track.  For example, if state is for soft clips, we transform that single
-     * state into a list of states that surround the state up to the distance of the soft clip.
+     * state into a series of states that surround the state up to the distance of the soft clip.  Each derived
+     * state is handed to incorporateState.
      *
      * Can be overridden by subclasses to transform states in any way
      *
-     * There's no particular contract for the output states, except that they can never refer to states
-     * beyond the current end of the stateList unless the explicitly include preceding states before
-     * the reference.  So for example if the current state list is [1, 2, 3] this function could return
+     * There's no particular contract for the derived states, except that they can never refer to states
+     * beyond the current end of the profile unless the explicitly include preceding states before
+     * the reference.  So for example if the current states are [1, 2, 3] this function could derive
      * [1,2,3,4,5] but not [1,2,3,5].
      *
-     * @param justAddedState the state our client provided to use to add to the list
-     * @return a list of derived states that should actually be added to this profile's state list
+     * @param justAddedState the state our client provided to use to add to the profile
      */
-    protected Collection<ActivityProfileState> processState(final ActivityProfileState justAddedState) {
+    protected void processState(final ActivityProfileState justAddedState) {
+        final int start = justAddedState.getLoc().getStart();
         if ( justAddedState.resultState.equals(ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS) ) {
             // special code to deal with the problem that high quality soft clipped bases aren't added to pileups
-            final List<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
             // add no more than the max prob propagation distance num HQ clips
             final int numHQClips = Math.min(justAddedState.resultValue.intValue(), getMaxProbPropagationDistance());
             for( int jjj = - numHQClips; jjj <= numHQClips; jjj++ ) {
-                final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
-                if ( loc != null )
-                    states.add(new ActivityProfileState(loc, justAddedState.isActiveProb));
+                if ( isWithinContig(start + jjj) )
+                    incorporateState(justAddedState, start + jjj, justAddedState.isActiveProb);
             }
-
-            return states;
         } else {
-            return Collections.singletonList(justAddedState);
+            incorporateState(justAddedState, start, justAddedState.isActiveProb);
         }
     }
 
+    /**
+     * Incorporate a state derived from justAddedState by processState into this profile
+     *
+     * Can be overridden by subclasses to spread the probability of derived states around.  By default
+     * the probability is simply added to the state at start.
+     *
+     * @param justAddedState the state our client provided to use to add to the profile
+     * @param start the position on the current contig of the derived state
+     * @param prob the probability of the derived state
+     */
+    protected void incorporateState(final ActivityProfileState justAddedState, final int start, final double prob) {
+        incorporateSingleState(start, prob);
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // ring buffer of state probabilities
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Get the index into stateProbs of the state at offset from the start of this profile
+     * @param offset a valid offset into the states
+     * @return an index into stateProbs
+     */
+    private int ringIndex(final int offset) {
+        return (firstStateIndex + offset) & (stateProbs.length - 1);
+    }
+
+    /**
+     * Add a state with probability prob to the end of this profile, growing the ring buffer if it's full
+     * @param prob the probability of the new state
+     */
+    private void appendState(final double prob) {
+        if ( nStates == stateProbs.length ) {
+            final double[] grown = new double[stateProbs.length * 2];
+            for ( int i = 0; i < nStates; i++ )
+                grown[i] = stateProbs[ringIndex(i)];
+            stateProbs = grown;
+            firstStateIndex = 0;
+        }
+        stateProbs[ringIndex(nStates)] = prob;
+        nStates++;
+    }
+
+    /**
+     * Remove the first n states from this profile
+     * @param n the number of states to remove
+     */
+    @Requires({"n >= 0", "n <= size()"})
+    private void removeFirstStates(final int n) {
+        firstStateIndex = ringIndex(n);
+        nStates -= n;
+    }
+
     // --------------------------------------------------------------------------------
     //
     // routines to get active regions from the profile
@@ -314,7 +386,7 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
      * @return a non-null list of active regions
      */
@@ -350,46 +422,45 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
      * @return a fully formed active region, or null if none can be made
      */
     private ActiveRegion popNextReadyActiveRegion(final int activeRegionExtension, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
-        if ( stateList.isEmpty() )
+        if ( isEmpty() )
             return null;
 
         // If we are flushing the activity profile we need to trim off the excess states so that we don't create regions outside of our current processing interval
         if( forceConversion ) {
-            final List<ActivityProfileState> statesToTrimAway = new ArrayList<ActivityProfileState>(stateList.subList(getSpan().size(), stateList.size()));
-            stateList.removeAll(statesToTrimAway);
+            nStates = Math.min(nStates, getSpan().size());
         }
 
-        final ActivityProfileState first = stateList.get(0);
-        final boolean isActiveRegion = first.isActiveProb > activeProbThreshold;
+        final boolean isActiveRegion = getProb(0) > activeProbThreshold;
         final int offsetOfNextRegionEnd = findEndOfRegion(isActiveRegion, minRegionSize, maxRegionSize, forceConversion);
         if ( offsetOfNextRegionEnd == -1 )
             // couldn't find a valid ending offset, so we return null
             return null;
 
         // we need to create the active region, and clip out the states we're extracting from this profile
-        final List<ActivityProfileState> sub = stateList.subList(0, offsetOfNextRegionEnd + 1);
-        final List<ActivityProfileState> supportingStates = new ArrayList<ActivityProfileState>(sub);
-        sub.clear();
+        final GenomeLoc first = regionStartLoc;
+        final List<ActivityProfileState> supportingStates = makeStates(0, offsetOfNextRegionEnd + 1);
+        removeFirstStates(offsetOfNextRegionEnd + 1);
 
         // update the start and stop locations as necessary
-        if ( stateList.isEmpty() ) {
+        if ( isEmpty() ) {
             regionStartLoc = regionStopLoc = null;
         } else {
-            regionStartLoc = stateList.get(0).getLoc();
+            final int newStart = first.getStart() + offsetOfNextRegionEnd + 1;
+            regionStartLoc = parser.createGenomeLoc(first.getContig(), first.getContigIndex(), newStart, newStart);
         }
-        final GenomeLoc regionLoc = parser.createGenomeLoc(first.getLoc().getContig(), first.getLoc().getStart(), first.getLoc().getStart() + offsetOfNextRegionEnd);
+        final GenomeLoc regionLoc = parser.createGenomeLoc(first.getContig(), first.getStart(), first.getStart() + offsetOfNextRegionEnd);
         return new ActiveRegion(regionLoc, supportingStates, isActiveRegion, parser, activeRegionExtension);
     }
 
     /**
      * Find the end of the current region, returning the index into the element isActive element, or -1 if the region isn't done
      *
-     * The current region is defined from the start of the stateList, looking for elements that have the same isActiveRegion
+     * The current region is defined from the start of the profile, looking for elements that have the same isActiveRegion
      * flag (i.e., if isActiveRegion is true we are looking for states with isActiveProb > threshold, or alternatively
      * for states < threshold).  The maximize size of the returned region is maxRegionSize.  If forceConversion is
      * true, then we'll return the region end even if this isn't safely beyond the max prob propagation distance.
@@ -402,16 +473,16 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
-     * @return the index into stateList of the last element of this region, or -1 if it cannot be found
+     * @return the index into the states of the last element of this region, or -1 if it cannot be found
      */
     @Ensures({
             "result >= -1",
             "result == -1 || result < maxRegionSize",
             "! (result == -1 && forceConversion)"})
     private int findEndOfRegion(final boolean isActiveRegion, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
-        if ( ! forceConversion && stateList.size() < maxRegionSize + getMaxProbPropagationDistance() ) {
+        if ( ! forceConversion && nStates < maxRegionSize + getMaxProbPropagationDistance() ) {
             // we really haven't finalized at the probability mass that might affect our decision, so keep
             // waiting until we do before we try to make any decisions
             return -1;
@@ -470,9 +541,8 @@ public class ActivityProfile {
      *         if no such element exists
      */
     @Requires({"maxRegionSize > 0"})
-    @Ensures({"result >= 0", "result <= stateList.size()"})
+    @Ensures({"result >= 0", "result <= size()"})
     private int findFirstActivityBoundary(final boolean isActiveRegion, final int maxRegionSize) {
-        final int nStates = stateList.size();
         int endOfActiveRegion = 0;
 
         while ( endOfActiveRegion < nStates && endOfActiveRegion < maxRegionSize ) {
@@ -490,9 +560,9 @@ public class ActivityProfile {
      * @param index a valid offset into the state list
      * @return the isActiveProb of the state at index
      */
-    @Requires({"index >= 0", "index < stateList.size()"})
+    @Requires({"index >= 0", "index < size()"})
     private double getProb(final int index) {
-        return stateList.get(index).isActiveProb;
+        return stateProbs[ringIndex(index)];
     }
 
     /**
@@ -504,9 +574,9 @@ public class ActivityProfile {
      * @param index the index of the state we want to test
      * @return true if prob at state is a minimum, false otherwise
      */
-    @Requires({"index >= 0", "index < stateList.size()"})
+    @Requires({"index >= 0", "index < size()"})
     private boolean isMinimum(final int index) {
-        if ( index == stateList.size() - 1 )
+        if ( index == nStates - 1 )
             // we cannot be at a minimum if the current position is the last in the state list
             return false;
         else if ( index < 1 )
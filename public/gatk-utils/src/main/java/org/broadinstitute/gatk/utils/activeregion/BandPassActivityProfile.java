@@ -26,14 +26,10 @@
 package org.broadinstitute.gatk.utils.activeregion;
 
 import com.google.java.contract.Ensures;
-import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.MathUtils;
 
-import java.util.Collection;
-import java.util.LinkedList;
-
 /**
  * A band pass filtering version of the activity profile
  *
@@ -168,27 +164,21 @@ public class BandPassActivityProfile extends ActivityProfile {
     }
 
     /**
-     * Band pass the probabilities in the ActivityProfile, producing a new profile that's band pass filtered
-     * @return a new double[] that's the band-pass filtered version of this profile
+     * Band pass the probabilities in the ActivityProfile, spreading the probability of each derived state
+     * over the band around the just added state
      */
     @Override
-    protected Collection<ActivityProfileState> processState(final ActivityProfileState justAddedState) {
-        final Collection<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
-
-        for ( final ActivityProfileState superState : super.processState(justAddedState) ) {
-            if ( superState.isActiveProb > 0.0 ) {
-                for( int jjj = -filterSize; jjj <= filterSize; jjj++ ) {
-                    final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
-                    if ( loc != null ) {
-                        final double newProb = superState.isActiveProb * GaussianKernel[jjj + filterSize];
-                        states.add(new ActivityProfileState(loc, newProb));
-                    }
+    protected void incorporateState(final ActivityProfileState justAddedState, final int start, final double prob) {
+        final int center = justAddedState.getLoc().getStart();
+        if ( prob > 0.0 ) {
+            for( int jjj = -filterSize; jjj <= filterSize; jjj++ ) {
+                if ( isWithinContig(center + jjj) ) {
+                    final double newProb = prob * GaussianKernel[jjj + filterSize];
+                    incorporateSingleState(center + jjj, newProb);
                 }
-            } else {
-                states.add(justAddedState);
             }
+        } else {
+            incorporateSingleState(start, prob);
         }
-
-        return states;
     }
 }
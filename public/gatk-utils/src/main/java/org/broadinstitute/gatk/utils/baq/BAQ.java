@@ -29,6 +29,7 @@ import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.SAMUtils;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import org.apache.log4j.Logger;
@@ -37,6 +38,11 @@ import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /*
   The topology of the profile HMM:
 
@@ -90,6 +96,37 @@ public class BAQ {
     // Phred scaled now (changed 1/10/2011)
     public static final double DEFAULT_GOP = 40;
 
+    /**
+     * Minimum number of reference bases fetched at a time for the sliding reference window used by
+     * calcBAQFromHMM(read, refReader).  Consecutive coordinate sorted reads are served from the same window.
+     */
+    public static final int REFERENCE_WINDOW_SIZE = 10000;
+
+    /**
+     * Forward/backward matrices used by hmm_glocal, grown as needed and reused across calls on the same thread
+     */
+    private final ThreadLocal<HMMMatrices> hmmMatrices = new ThreadLocal<HMMMatrices>() {
+        @Override
+        protected HMMMatrices initialValue() {
+            return new HMMMatrices();
+        }
+    };
+
+    /**
+     * The reference window shared by consecutive reads on the same thread
+     */
+    private final ThreadLocal<ReferenceWindow> referenceWindow = new ThreadLocal<ReferenceWindow>() {
+        @Override
+        protected ReferenceWindow initialValue() {
+            return new ReferenceWindow();
+        }
+    };
+
+    /**
+     * Optional cache of calculated BAQ qualities, null if disabled.  See enableResultCache
+     */
+    private Map<CachedReadKey, byte[]> resultCache = null;
+
     /*  Takes a Phred Scale quality score and returns the error probability.
      *
      *  Quick conversion function to maintain internal structure of BAQ calculation on
@@ -223,17 +260,19 @@ public class BAQ {
         //System.out.printf("c->bw = %d, bw = %d, l_ref = %d, l_query = %d\n", cb, bw, l_ref, l_query);
 		bw2 = bw * 2 + 1;
 
-        // allocate the forward and backward matrices f[][] and b[][] and the scaling array s[]
-		double[][] f = new double[l_query+1][bw2*3 + 6];
-		double[][] b = new double[l_query+1][bw2*3 + 6];
-		double[] s = new double[l_query+2];
+        // get the forward and backward matrices f[][] and b[][] and the scaling array s[], cleared for this query
+        final HMMMatrices matrices = hmmMatrices.get();
+        matrices.prepare(l_query, bw2*3 + 6);
+		final double[][] f = matrices.f;
+		final double[][] b = matrices.b;
+		final double[] s = matrices.s;
 
 		// initialize transition probabilities
 		double sM, sI, bM, bI;
 		sM = sI = 1. / (2 * l_query + 2);
         bM = (1 - cd) / l_ref; bI = cd / l_ref; // (bM+bI)*l_ref==1
 
-		double[] m = new double[9];
+		final double[] m = matrices.m;
 		m[0*3+0] = (1 - cd - cd) * (1 - sM); m[0*3+1] = m[0*3+2] = cd * (1 - sM);
 		m[1*3+0] = (1 - ce) * (1 - sI); m[1*3+1] = ce * (1 - sI); m[1*3+2] = 0.;
 		m[2*3+0] = 1 - ce; m[2*3+1] = 0.; m[2*3+2] = ce;
@@ -360,6 +399,37 @@ public class BAQ {
 		return 0;
 	}
 
+    /**
+     * Working storage for hmm_glocal.  Rows are only ever grown, so a thread that has seen the longest read
+     * in a traversal never allocates again.
+     */
+    private static final class HMMMatrices {
+        double[][] f = new double[0][0];
+        double[][] b = new double[0][0];
+        double[] s = new double[0];
+        final double[] m = new double[9];
+
+        /**
+         * Make sure we can hold l_query+1 rows of width cells, and zero the cells hmm_glocal will use, since
+         * the recursions read the cells outside of the band of the previous row as 0
+         */
+        void prepare(final int l_query, final int width) {
+            if ( f.length < l_query + 1 || (f.length > 0 && f[0].length < width) ) {
+                final int nRows = Math.max(l_query + 1, f.length);
+                final int nCols = Math.max(width, f.length > 0 ? f[0].length : 0);
+                f = new double[nRows][nCols];
+                b = new double[nRows][nCols];
+            } else {
+                for ( int i = 0; i <= l_query; i++ ) {
+                    Arrays.fill(f[i], 0, width, 0.0);
+                    Arrays.fill(b[i], 0, width, 0.0);
+                }
+            }
+            if ( s.length < l_query + 2 )
+                s = new double[l_query + 2];
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------------------
     //
     // Helper routines
@@ -528,12 +598,50 @@ public class BAQ {
         long start = Math.max(readStart - offset - ReadUtils.getFirstInsertionOffset(read), 1);
         long stop = (includeClippedBases ? read.getUnclippedEnd() : read.getAlignmentEnd()) + offset + ReadUtils.getLastInsertionOffset(read);
 
-        if ( stop > refReader.getSequenceDictionary().getSequence(read.getReferenceName()).getSequenceLength() ) {
+        final long contigLength = refReader.getSequenceDictionary().getSequence(read.getReferenceName()).getSequenceLength();
+        if ( stop > contigLength ) {
             return null;
         } else {
             // now that we have the start and stop, get the reference sequence covering it
-            ReferenceSequence refSeq = refReader.getSubsequenceAt(read.getReferenceName(), start, stop);
-            return calcBAQFromHMM(read, refSeq.getBases(), (int)(start - readStart));
+            final byte[] refBases = referenceWindow.get().getBases(refReader, read.getReferenceName(), contigLength, start, stop);
+            return calcBAQFromHMM(read, refBases, (int)(start - readStart));
+        }
+    }
+
+    /**
+     * A window of reference bases on a single contig that slides forward with the reads.  Coordinate sorted
+     * reads overlap heavily, so most of them can be served from the bases already fetched for their neighbors
+     * instead of going back to the ReferenceSequenceFile for every read.
+     */
+    private static final class ReferenceWindow {
+        private ReferenceSequenceFile refReader = null;
+        private String contig = null;
+        private long windowStart = -1, windowStop = -1;
+        private byte[] bases = null;
+
+        /**
+         * Get the reference bases in [start, stop] (1-based, inclusive) of contig
+         *
+         * @param refReader the reference to fetch from if the window doesn't cover start - stop
+         * @param contig the contig of the bases
+         * @param contigLength the length of contig, used to bound the window
+         * @param start the first base to return
+         * @param stop the last base to return, must be <= contigLength
+         * @return a newly allocated array of stop - start + 1 bases
+         */
+        byte[] getBases(final ReferenceSequenceFile refReader, final String contig, final long contigLength, final long start, final long stop) {
+            if ( refReader != this.refReader || ! contig.equals(this.contig) || start < windowStart || stop > windowStop ) {
+                final long newStop = Math.min(contigLength, Math.max(stop, start + REFERENCE_WINDOW_SIZE - 1));
+                final ReferenceSequence refSeq = refReader.getSubsequenceAt(contig, start, newStop);
+                this.refReader = refReader;
+                this.contig = contig;
+                this.windowStart = start;
+                this.windowStop = newStop;
+                this.bases = refSeq.getBases();
+            }
+
+            final int offset = (int)(start - windowStart);
+            return Arrays.copyOfRange(bases, offset, offset + (int)(stop - start + 1));
         }
     }
 
@@ -677,12 +785,12 @@ public class BAQ {
 
             if ( calculationType == CalculationMode.RECALCULATE || ! readHasBAQTag ) {
                 if ( DEBUG ) System.out.printf("  Calculating BAQ on the fly%n");
-                BAQCalculationResult hmmResult = calcBAQFromHMM(read, refReader);
-                if ( hmmResult != null ) {
+                final byte[] bq = calcBAQQuals(read, refReader);
+                if ( bq != null ) {
                     switch ( qmode ) {
-                        case ADD_TAG:         addBAQTag(read, hmmResult.bq); break;
-                        case OVERWRITE_QUALS: System.arraycopy(hmmResult.bq, 0, read.getBaseQualities(), 0, hmmResult.bq.length); break;
-                        case DONT_MODIFY:     BAQQuals = hmmResult.bq; break;
+                        case ADD_TAG:         addBAQTag(read, bq); break;
+                        case OVERWRITE_QUALS: System.arraycopy(bq, 0, read.getBaseQualities(), 0, bq.length); break;
+                        case DONT_MODIFY:     BAQQuals = bq; break;
                         default:              throw new ReviewedGATKException("BUG: unexpected qmode " + qmode);
                     }
                 } else if ( readHasBAQTag ) {
@@ -699,6 +807,107 @@ public class BAQ {
         return BAQQuals;
     }
 
+    /**
+     * Calculate the BAQ qualities of read, going through the result cache if it's enabled
+     *
+     * @param read the read to BAQ
+     * @param refReader the reference to fetch the bases under read from
+     * @return the BAQ'd qualities of read, or null if the read cannot be BAQ'd
+     */
+    private byte[] calcBAQQuals(final SAMRecord read, final ReferenceSequenceFile refReader) {
+        final Map<CachedReadKey, byte[]> cache = resultCache;
+        final CachedReadKey key = cache == null ? null : new CachedReadKey(read);
+        if ( key != null ) {
+            final byte[] cached = cache.get(key);
+            if ( cached != null )
+                return cached.clone();
+        }
+
+        final BAQCalculationResult hmmResult = calcBAQFromHMM(read, refReader);
+        if ( hmmResult == null )
+            return null;
+        if ( key != null )
+            cache.put(key, hmmResult.bq.clone());
+        return hmmResult.bq;
+    }
+
+    /**
+     * Cache the BAQ qualities calculated by baqRead for up to maxCachedReads reads, so that reads BAQ'd again
+     * within the same traversal (with CALCULATE_AS_NECESSARY and no tag, or with RECALCULATE) don't have to go
+     * through the HMM again.  Reads are matched on their read group, name, flags, position, cigar, bases and
+     * qualities, so a read whose qualities were overwritten by an earlier BAQ is calculated afresh.
+     *
+     * @param maxCachedReads the maximum number of results to keep, least recently used first out.  0 disables the cache
+     */
+    public void enableResultCache(final int maxCachedReads) {
+        if ( maxCachedReads < 0 ) throw new IllegalArgumentException("maxCachedReads must be >= 0 but got " + maxCachedReads);
+
+        if ( maxCachedReads == 0 ) {
+            resultCache = null;
+        } else {
+            resultCache = Collections.synchronizedMap(new LinkedHashMap<CachedReadKey, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<CachedReadKey, byte[]> eldest) {
+                    return size() > maxCachedReads;
+                }
+            });
+        }
+    }
+
+    /**
+     * Everything about a read that its BAQ depends on
+     */
+    private static final class CachedReadKey {
+        private final String readGroup, readName, contig, cigar;
+        private final int flags, alignmentStart;
+        private final byte[] bases, quals;
+        private final int hashCode;
+
+        CachedReadKey(final SAMRecord read) {
+            readGroup = read.getStringAttribute(SAMTag.RG.name());
+            readName = read.getReadName();
+            contig = read.getReferenceName();
+            cigar = read.getCigarString();
+            flags = read.getFlags();
+            alignmentStart = read.getAlignmentStart();
+            // copies, as the qualities of the read itself may be overwritten by the BAQ
+            bases = read.getReadBases().clone();
+            quals = read.getBaseQualities().clone();
+
+            int h = readName == null ? 0 : readName.hashCode();
+            h = 31 * h + (readGroup == null ? 0 : readGroup.hashCode());
+            h = 31 * h + contig.hashCode();
+            h = 31 * h + alignmentStart;
+            h = 31 * h + flags;
+            h = 31 * h + cigar.hashCode();
+            h = 31 * h + Arrays.hashCode(bases);
+            h = 31 * h + Arrays.hashCode(quals);
+            hashCode = h;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if ( this == o ) return true;
+            if ( ! (o instanceof CachedReadKey) ) return false;
+
+            final CachedReadKey that = (CachedReadKey) o;
+            return hashCode == that.hashCode
+                    && alignmentStart == that.alignmentStart
+                    && flags == that.flags
+                    && contig.equals(that.contig)
+                    && cigar.equals(that.cigar)
+                    && (readName == null ? that.readName == null : readName.equals(that.readName))
+                    && (readGroup == null ? that.readGroup == null : readGroup.equals(that.readGroup))
+                    && Arrays.equals(bases, that.bases)
+                    && Arrays.equals(quals, that.quals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
      * Returns true if we don't think this read is eligible for the BAQ calculation.  Examples include non-PF reads,
      * duplicates, or unmapped reads.  Used by baqRead to determine if a read should fall through the calculation.
@@ -51,11 +51,25 @@ public class NestedIntegerArray<T> {
     private static final int NUM_DIMENSIONS_TO_PREALLOCATE = 2;
 
     public NestedIntegerArray(final int... dimensions) {
+        this(true, dimensions);
+    }
+
+    /**
+     * @param allocateTree if false, the tree holding the values is not allocated at all.  Only meant for
+     *                     subclasses that store their values in some other way, and override every accessor.
+     * @param dimensions the size of each dimension
+     */
+    protected NestedIntegerArray(final boolean allocateTree, final int... dimensions) {
         numDimensions = dimensions.length;
         if ( numDimensions == 0 )
             throw new ReviewedGATKException("There must be at least one dimension to an NestedIntegerArray");
         this.dimensions = dimensions.clone();
 
+        if ( ! allocateTree ) {
+            data = null;
+            return;
+        }
+
         int dimensionsToPreallocate = Math.min(dimensions.length, NUM_DIMENSIONS_TO_PREALLOCATE);
 
         if ( logger.isDebugEnabled() ) logger.debug(String.format("Creating NestedIntegerArray with dimensions %s", Arrays.toString(dimensions)));
@@ -198,6 +198,20 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
      * @throws IllegalArgumentException if Fasta file is null
      */
     public static ReferenceSequenceFile checkAndCreate(final File fastaFile) {
+        return checkAndCreate(fastaFile, 0);
+    }
+
+    /**
+     * Create reference data source from fasta file, after performing several preliminary checks on the file.
+     *
+     * @param fastaFile Fasta file to be used as reference
+     * @param sharedStoreSize if > 0, the reference is served from a SharedIndexedFastaSequenceFile holding up to
+     *                        this many bases in memory, otherwise a CachingIndexedFastaSequenceFile is used
+     * @return A new instance of a CachingIndexedFastaSequenceFile.
+     * @throws IllegalArgumentException if Fasta file is null or sharedStoreSize is negative
+     */
+    public static ReferenceSequenceFile checkAndCreate(final File fastaFile, final long sharedStoreSize) {
+        if ( sharedStoreSize < 0 ) throw new IllegalArgumentException("sharedStoreSize must be >= 0");
         if ( fastaFile == null ) {
             throw new IllegalArgumentException("Fasta file is null");
         }
@@ -232,7 +246,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
 
         // Read reference data by creating an IndexedFastaSequenceFile.
         try {
-            return new CachingIndexedFastaSequenceFile(fastaFile);
+            return sharedStoreSize > 0 ? new SharedIndexedFastaSequenceFile(fastaFile, sharedStoreSize) : new CachingIndexedFastaSequenceFile(fastaFile);
         }
         catch (IllegalArgumentException e) {
             throw new UserException.CouldNotReadInputFile(fastaFile, "Could not read reference sequence.  The FASTA must have either a .fasta or .fa extension", e);
@@ -259,7 +273,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
      * Print the efficiency (hits / queries) to logger with priority
      */
     public void printEfficiency(final Priority priority) {
-        logger.log(priority, String.format("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%", cacheHits, cacheMisses, calcEfficiency()));
+        logger.log(priority, String.format("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%", getCacheHits(), getCacheMisses(), calcEfficiency()));
     }
 
     /**
@@ -267,7 +281,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
      * @return
      */
     public double calcEfficiency() {
-        return 100.0 * cacheHits / (cacheMisses + cacheHits * 1.0);
+        return 100.0 * getCacheHits() / (getCacheMisses() + getCacheHits() * 1.0);
     }
 
     /**
@@ -338,9 +352,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
 
         if ( (stop - start) >= cacheSize ) {
             cacheMisses++;
-            result = super.getSubsequenceAt(contig, start, stop);
-            if ( ! preserveCase ) StringUtil.toUpperCase(result.getBases());
-            if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(result.getBases(), true, start < 1);
+            result = readSubsequenceFromFasta(contig, start, stop);
         } else {
             // todo -- potential optimization is to check if contig.name == contig, as this in general will be true
             SAMSequenceRecord contigInfo = super.getSequenceDictionary().getSequence(contig);
@@ -352,11 +364,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
                 cacheMisses++;
                 myCache.start = Math.max(start - cacheMissBackup, 0);
                 myCache.stop  = Math.min(start + cacheSize + cacheMissBackup, contigInfo.getSequenceLength());
-                myCache.seq   = super.getSubsequenceAt(contig, myCache.start, myCache.stop);
-
-                // convert all of the bases in the sequence to upper case if we aren't preserving cases
-                if ( ! preserveCase ) StringUtil.toUpperCase(myCache.seq.getBases());
-                if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(myCache.seq.getBases(), true, myCache.start == 0);
+                myCache.seq   = readSubsequenceFromFasta(contig, myCache.start, myCache.stop);
             } else {
                 cacheHits++;
             }
@@ -379,4 +387,22 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
 
         return result;
     }
+
+    /**
+     * Reads the subsequence of the contig in the range [start,stop] from the FASTA itself, bypassing any caching,
+     * and upper cases the bases and converts IUPAC bases to Ns unless we are preserving them
+     *
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return a newly read ReferenceSequence
+     */
+    protected ReferenceSequence readSubsequenceFromFasta( final String contig, final long start, final long stop ) {
+        final ReferenceSequence seq = super.getSubsequenceAt(contig, start, stop);
+
+        // convert all of the bases in the sequence to upper case if we aren't preserving cases
+        if ( ! preserveCase ) StringUtil.toUpperCase(seq.getBases());
+        if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(seq.getBases(), true, start < 1);
+        return seq;
+    }
 }
\ No newline at end of file
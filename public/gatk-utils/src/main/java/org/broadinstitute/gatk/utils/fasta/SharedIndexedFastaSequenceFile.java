@@ -0,0 +1,190 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A CachingIndexedFastaSequenceFile that keeps whole contigs in memory, shared by all threads.
+ *
+ * The first query on a contig reads the entire contig from the FASTA, upper cased and with IUPAC bases
+ * converted to Ns as by CachingIndexedFastaSequenceFile, and all later queries on that contig from any
+ * thread are served from those bases.  Unlike the thread-local cache of the base class, shards and views
+ * jumping around the genome don't evict each other's bases, so the FASTA is read once per contig.
+ *
+ * At most maxResidentBases bases are kept.  Contigs are never evicted, as re-reading a whole contig under the
+ * lock on every miss would cost far more than the thread-local cache: once a contig no longer fits in the
+ * remaining space, it is served by the thread-local cache of the base class instead.
+ *
+ * Thread-safe!
+ */
+public class SharedIndexedFastaSequenceFile extends CachingIndexedFastaSequenceFile {
+    /** The maximum number of bases we will keep in memory */
+    private final long maxResidentBases;
+
+    /** The bases of the contigs currently in memory, by contig name */
+    private final ConcurrentHashMap<String, byte[]> residentContigs = new ConcurrentHashMap<String, byte[]>();
+
+    /** The total number of bases in residentContigs.  Only updated while holding the lock on this */
+    private final AtomicLong residentBases = new AtomicLong(0);
+
+    // information about checking efficiency, on top of the counts of the base class cache
+    private final AtomicLong storeHits = new AtomicLong(0);
+    private final AtomicLong storeMisses = new AtomicLong(0);
+
+    /**
+     * Open the given indexed fasta sequence file.  Throw an exception if the file cannot be opened.
+     *
+     * Looks for a index file for fasta on disk.  Bases are upper cased and IUPAC bases converted to Ns.
+     *
+     * @param fasta The file to open.
+     * @param maxResidentBases the maximum number of bases to keep in memory, must be > 0
+     */
+    public SharedIndexedFastaSequenceFile(final File fasta, final long maxResidentBases) throws FileNotFoundException {
+        super(fasta);
+        if ( maxResidentBases <= 0 ) throw new IllegalArgumentException("maxResidentBases must be > 0");
+        this.maxResidentBases = maxResidentBases;
+    }
+
+    /**
+     * @return the maximum number of bases this reader keeps in memory
+     */
+    public long getMaxResidentBases() {
+        return maxResidentBases;
+    }
+
+    /**
+     * @return the number of bases currently in memory
+     */
+    public long getResidentBases() {
+        return residentBases.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return storeHits.get() + super.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return storeMisses.get() + super.getCacheMisses();
+    }
+
+    /**
+     * Gets the subsequence of the contig in the range [start,stop]
+     *
+     * The bases are copied out of the shared contig, so callers can modify them freely.  Use getSubsequenceSlice
+     * to avoid the copy.
+     *
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return The partial reference sequence associated with this range.
+     */
+    @Override
+    public ReferenceSequence getSubsequenceAt( final String contig, final long start, final long stop ) {
+        final SAMSequenceRecord contigInfo = getSequenceDictionary().getSequence(contig);
+        final byte[] bases = contigInfo == null || start < 1 || stop < start - 1 ? null : getContigBases(contigInfo);
+        if ( bases == null )
+            return super.getSubsequenceAt(contig, start, stop);
+
+        if ( stop > bases.length )
+            throw new SAMException("Query asks for data past end of contig");
+
+        return new ReferenceSequence(contigInfo.getSequenceName(), contigInfo.getSequenceIndex(), Arrays.copyOfRange(bases, (int)start - 1, (int)stop));
+    }
+
+    /**
+     * Gets the bases of the contig in the range [start,stop] without copying them
+     *
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return a read-only buffer over the bases in [start,stop], positioned at start
+     */
+    public ByteBuffer getSubsequenceSlice( final String contig, final long start, final long stop ) {
+        final SAMSequenceRecord contigInfo = getSequenceDictionary().getSequence(contig);
+        if ( contigInfo == null ) throw new IllegalArgumentException("Unknown contig " + contig);
+        if ( start < 1 || stop > contigInfo.getSequenceLength() || stop < start - 1 )
+            throw new IllegalArgumentException(String.format("Bad range %d-%d for contig %s of length %d", start, stop, contig, contigInfo.getSequenceLength()));
+
+        final byte[] bases = getContigBases(contigInfo);
+        if ( bases == null )
+            return ByteBuffer.wrap(super.getSubsequenceAt(contig, start, stop).getBases()).asReadOnlyBuffer();
+
+        return ByteBuffer.wrap(bases, (int)start - 1, (int)(stop - start + 1)).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the bases of the contig, loading it if necessary
+     *
+     * @param contigInfo the contig
+     * @return the bases of the contig, or null if it doesn't fit in this store
+     */
+    private byte[] getContigBases(final SAMSequenceRecord contigInfo) {
+        final byte[] bases = residentContigs.get(contigInfo.getSequenceName());
+        if ( bases != null ) {
+            storeHits.incrementAndGet();
+            return bases;
+        }
+        return contigInfo.getSequenceLength() > maxResidentBases - getResidentBases() ? null : loadContig(contigInfo);
+    }
+
+    /**
+     * Load the bases of the contig from the FASTA, if they fit within maxResidentBases.
+     *
+     * Synchronized so that threads wanting the same contig at the same time only read it once
+     *
+     * @param contigInfo the contig
+     * @return the bases of the contig, or null if they don't fit in the remaining space
+     */
+    private synchronized byte[] loadContig(final SAMSequenceRecord contigInfo) {
+        final String contig = contigInfo.getSequenceName();
+        final byte[] loaded = residentContigs.get(contig);
+        if ( loaded != null ) {
+            storeHits.incrementAndGet();
+            return loaded;
+        }
+
+        if ( contigInfo.getSequenceLength() > maxResidentBases - residentBases.get() )
+            return null;
+
+        storeMisses.incrementAndGet();
+        final byte[] bases = readSubsequenceFromFasta(contig, 1, contigInfo.getSequenceLength()).getBases();
+        residentContigs.put(contig, bases);
+        residentBases.addAndGet(bases.length);
+        return bases;
+    }
+}
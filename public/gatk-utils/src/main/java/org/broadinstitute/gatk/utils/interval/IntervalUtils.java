@@ -36,6 +36,7 @@ import htsjdk.tribble.Feature;
 import org.broadinstitute.gatk.utils.commandline.IntervalArgumentCollection;
 import org.broadinstitute.gatk.utils.commandline.IntervalBinding;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocIntervalIndex;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.Utils;
@@ -212,31 +213,16 @@ public class IntervalUtils {
             return Collections.unmodifiableList(retList);
         }
 
-        // else we're INTERSECTION, create two indexes into the lists
-        int iOne = 0;
-        int iTwo = 0;
-
-        // merge the second into the first using the rule
-        while (iTwo < setTwo.size() && iOne < setOne.size())
-            // if the first list is ahead, drop items off the second until we overlap
-            if (setTwo.get(iTwo).isBefore(setOne.get(iOne)))
-                iTwo++;
-            // if the second is ahead, drop intervals off the first until we overlap
-            else if (setOne.get(iOne).isBefore(setTwo.get(iTwo)))
-                iOne++;
-            // we overlap, intersect the two intervals and add the result.  Then remove the interval that ends first.
-            else {
-                retList.add(setOne.get(iOne).intersect(setTwo.get(iTwo)));
-                if (setOne.get(iOne).getStop() < setTwo.get(iTwo).getStop()) iOne++;
-                else iTwo++;
-            }
+        // else we're INTERSECTION, sort the two lists (merging only overlapping intervals, so that abutting intervals
+        // remain separate) and intersect them in a single pass
+        final GenomeLocIntervalIndex intersection = GenomeLocIntervalIndex.create(setOne, IntervalMergingRule.OVERLAPPING_ONLY)
+                .intersect(GenomeLocIntervalIndex.create(setTwo, IntervalMergingRule.OVERLAPPING_ONLY));
 
         //if we have an empty list, throw an exception.  If they specified intersection and there are no items, this is bad.
-        if (retList.size() == 0)
+        if (intersection.isEmpty())
                 throw new UserException.BadInput("The INTERSECTION of your -L options produced no intervals.");
 
-        // we don't need to add the rest of remaining locations, since we know they don't overlap. return what we have
-        return Collections.unmodifiableList(retList);
+        return Collections.unmodifiableList(intersection.toList());
     }
 
     /**
@@ -250,14 +236,8 @@ public class IntervalUtils {
      * @return A sorted, merged version of the intervals passed in.
      */
     public static GenomeLocSortedSet sortAndMergeIntervals(GenomeLocParser parser, List<GenomeLoc> intervals, IntervalMergingRule mergingRule) {
-        // Make a copy of the (potentially unmodifiable) list to be sorted
-        intervals = new ArrayList<GenomeLoc>(intervals);
-        // sort raw interval list
-        Collections.sort(intervals);
-        // now merge raw interval list
-        intervals = mergeIntervalLocations(intervals, mergingRule);
-
-        return GenomeLocSortedSet.createSetFromList(parser,intervals);
+        // sort and merge on packed arrays, creating GenomeLocs only for the merged intervals
+        return new GenomeLocSortedSet(parser, GenomeLocIntervalIndex.create(intervals, mergingRule));
     }
 
     /**
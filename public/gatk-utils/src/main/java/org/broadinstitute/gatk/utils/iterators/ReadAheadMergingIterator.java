@@ -0,0 +1,187 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.iterators;
+
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Merges any number of sorted iterators into one sorted iteration.
+ *
+ * The next element of every input is kept in a heap, so each element costs O(log k) comparisons for k inputs.
+ * Elements that compare equal are returned in the order of their inputs.  Elements are pulled from the inputs
+ * in batches; given an executor, the next batch of each input is read in the background while the current one is
+ * merged, so that the decoding of all inputs overlaps with the merge and with each other.  Each input is only
+ * ever read by one task at a time.
+ *
+ * @param <T> the type of the elements
+ */
+public class ReadAheadMergingIterator<T> implements Iterator<T>, Iterable<T> {
+    private final PriorityQueue<Input> queue;
+    private final Comparator<? super T> comparator;
+    private final ExecutorService readAheadService;
+    private final int batchSize;
+
+    /**
+     * @param iterators the sorted inputs
+     * @param comparator the order of the inputs
+     * @param readAheadService executor reading the next batch of each input ahead of time, or null to read the inputs on the calling thread
+     * @param batchSize the number of elements read from an input at a time
+     */
+    public ReadAheadMergingIterator(final List<? extends Iterator<T>> iterators, final Comparator<? super T> comparator,
+                                    final ExecutorService readAheadService, final int batchSize) {
+        if ( iterators == null ) throw new IllegalArgumentException("iterators cannot be null");
+        if ( comparator == null ) throw new IllegalArgumentException("comparator cannot be null");
+        if ( batchSize < 1 ) throw new IllegalArgumentException("batchSize must be >= 1, got " + batchSize);
+
+        this.comparator = comparator;
+        this.readAheadService = readAheadService;
+        this.batchSize = batchSize;
+        this.queue = new PriorityQueue<Input>(Math.max(1, iterators.size()));
+
+        // start reading all inputs before waiting for any of them
+        final List<Input> inputs = new ArrayList<Input>(iterators.size());
+        for ( int i = 0; i < iterators.size(); i++ )
+            inputs.add(new Input(i, iterators.get(i)));
+        for ( final Input input : inputs )
+            if ( input.nextBatch() )
+                queue.add(input);
+    }
+
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    public boolean hasNext() {
+        return ! queue.isEmpty();
+    }
+
+    public T next() {
+        final Input input = queue.poll();
+        if ( input == null )
+            throw new NoSuchElementException("No more elements to merge");
+
+        final T value = input.next();
+        if ( input.hasNext() )
+            queue.add(input);
+        return value;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * One of the merged inputs, with the batch of its elements being merged and the one being read.
+     */
+    private class Input implements Comparable<Input> {
+        private final int index;
+        private final Iterator<T> iterator;
+
+        private List<T> batch = Collections.emptyList();
+        private int offset = 0;
+        private Future<List<T>> pendingBatch = null;
+
+        private Input(final int index, final Iterator<T> iterator) {
+            this.index = index;
+            this.iterator = iterator;
+            readAhead();
+        }
+
+        private boolean hasNext() {
+            return offset < batch.size();
+        }
+
+        private T next() {
+            final T value = batch.get(offset++);
+            if ( offset == batch.size() )
+                nextBatch();
+            return value;
+        }
+
+        /**
+         * Replace the exhausted batch with the next one, and start reading the one after.
+         * @return true if the input has more elements
+         */
+        private boolean nextBatch() {
+            batch = pendingBatch == null ? readBatch() : awaitBatch();
+            offset = 0;
+            pendingBatch = null;
+            if ( batch.isEmpty() )
+                return false;
+
+            readAhead();
+            return true;
+        }
+
+        private void readAhead() {
+            if ( readAheadService != null ) {
+                pendingBatch = readAheadService.submit(new Callable<List<T>>() {
+                    @Override
+                    public List<T> call() {
+                        return readBatch();
+                    }
+                });
+            }
+        }
+
+        private List<T> readBatch() {
+            final List<T> elements = new ArrayList<T>(batchSize);
+            while ( elements.size() < batchSize && iterator.hasNext() )
+                elements.add(iterator.next());
+            return elements;
+        }
+
+        private List<T> awaitBatch() {
+            try {
+                return pendingBatch.get();
+            } catch ( InterruptedException e ) {
+                throw new ReviewedGATKException("Interrupted while reading ahead input " + index, e);
+            } catch ( ExecutionException e ) {
+                if ( e.getCause() instanceof RuntimeException )
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedGATKException("Failed to read ahead input " + index, e.getCause());
+            }
+        }
+
+        @Override
+        public int compareTo(final Input other) {
+            final int cmp = comparator.compare(batch.get(offset), other.batch.get(other.offset));
+            return cmp != 0 ? cmp : Integer.compare(index, other.index);
+        }
+    }
+}
@@ -53,57 +53,85 @@ import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
         "nCigarElements >= 0",
         "cigar != null",
         "read != null",
-        "currentCigarElementOffset >= -1",
-        "currentCigarElementOffset <= nCigarElements"
+        "getCurrentCigarElementOffset() >= -1",
+        "getCurrentCigarElementOffset() <= nCigarElements"
 })
 public class AlignmentStateMachine {
 
     public static final String MAKE_PILEUP_EDGE_ERROR = "Cannot make a pileup element from an edge alignment state";
+
+    /**
+     * The state of an alignment is kept in STATE_SIZE consecutive ints of a primitive array, so that
+     * PerSampleReadStateManager can keep the states of all of its reads in a single array and step
+     * them forward without an AlignmentStateMachine object per read.  These are the positions of
+     * each state variable relative to the start of the state in that array.
+     */
+    static final int READ_OFFSET = 0;
+    static final int GENOME_OFFSET = 1;
+    static final int CIGAR_ELEMENT_OFFSET = 2;
+    static final int OFFSET_INTO_CIGAR_ELEMENT = 3;
+    static final int STATE_SIZE = 4;
+
     /**
      * Our read
      */
     private final GATKSAMRecord read;
     private final Cigar cigar;
     private final int nCigarElements;
-    private int currentCigarElementOffset = -1;
-
-    /**
-     * how far are we offset from the start of the read bases?
-     */
-    private int readOffset;
 
     /**
-     * how far are we offset from the alignment start on the genome?
+     * how far are we offset from the start of the read bases, how far are we offset from the alignment
+     * start on the genome, which cigar element are we in, and how far are we into it?
      */
-    private int genomeOffset;
+    private final int[] state = new int[STATE_SIZE];
 
-    /**
-     * Our cigar element
-     */
-    private CigarElement currentElement;
+    @Requires({"read != null", "read.getAlignmentStart() != -1", "read.getCigar() != null"})
+    public AlignmentStateMachine(final GATKSAMRecord read) {
+        this.read = read;
+        this.cigar = read.getCigar();
+        this.nCigarElements = cigar.numCigarElements();
+        initializeAsLeftEdge(state, 0);
+    }
 
     /**
-     * how far are we into our cigarElement?
+     * Create a machine for read in the state stored at offset base of states
+     *
+     * @param read the read whose state is stored in states
+     * @param states an array of packed alignment states
+     * @param base the offset of the state of read in states
      */
-    private int offsetIntoCurrentCigarElement;
-
-    @Requires({"read != null", "read.getAlignmentStart() != -1", "read.getCigar() != null"})
-    public AlignmentStateMachine(final GATKSAMRecord read) {
+    @Requires({"read != null", "states != null", "base >= 0", "base + STATE_SIZE <= states.length"})
+    AlignmentStateMachine(final GATKSAMRecord read, final int[] states, final int base) {
         this.read = read;
         this.cigar = read.getCigar();
         this.nCigarElements = cigar.numCigarElements();
-        initializeAsLeftEdge();
+        System.arraycopy(states, base, state, 0, STATE_SIZE);
     }
 
     /**
-     * Initialize the state variables to put this machine one bp before the
+     * Initialize the state variables at offset base of states to put the alignment one bp before the
      * start of the alignment, so that a call to stepForwardOnGenome() will advance
      * us to the first proper location
+     *
+     * @param states an array of packed alignment states
+     * @param base the offset of the state to initialize in states
+     */
+    static void initializeAsLeftEdge(final int[] states, final int base) {
+        states[base + READ_OFFSET] = -1;
+        states[base + GENOME_OFFSET] = -1;
+        states[base + CIGAR_ELEMENT_OFFSET] = -1;
+        states[base + OFFSET_INTO_CIGAR_ELEMENT] = -1;
+    }
+
+    /**
+     * Copy the state of this machine into states at offset base
+     *
+     * @param states an array of packed alignment states
+     * @param base the offset in states where our state should be written
      */
-    @Ensures("isLeftEdge()")
-    private void initializeAsLeftEdge() {
-        readOffset = offsetIntoCurrentCigarElement = genomeOffset = -1;
-        currentElement = null;
+    @Requires({"states != null", "base >= 0", "base + STATE_SIZE <= states.length"})
+    void copyStateTo(final int[] states, final int base) {
+        System.arraycopy(state, 0, states, base, STATE_SIZE);
     }
 
     /**
@@ -130,7 +158,7 @@ public class AlignmentStateMachine {
      * @return true if this state is an edge state, false otherwise
      */
     public boolean isLeftEdge() {
-        return readOffset == -1;
+        return state[READ_OFFSET] == -1;
     }
 
     /**
@@ -138,7 +166,7 @@ public class AlignmentStateMachine {
      * @return true if off the right edge, false if otherwise
      */
     public boolean isRightEdge() {
-        return readOffset == read.getReadLength();
+        return state[READ_OFFSET] == read.getReadLength();
     }
 
     /**
@@ -148,7 +176,7 @@ public class AlignmentStateMachine {
      */
     @Ensures("result >= -1")
     public int getReadOffset() {
-        return readOffset;
+        return state[READ_OFFSET];
     }
 
     /**
@@ -159,7 +187,7 @@ public class AlignmentStateMachine {
      */
     @Ensures("result >= -1")
     public int getGenomeOffset() {
-        return genomeOffset;
+        return state[GENOME_OFFSET];
     }
 
     /**
@@ -194,7 +222,7 @@ public class AlignmentStateMachine {
      */
     @Ensures("result != null || isLeftEdge() || isRightEdge()")
     public CigarElement getCurrentCigarElement() {
-        return currentElement;
+        return getCigarElement(cigar, state[CIGAR_ELEMENT_OFFSET]);
     }
 
     /**
@@ -211,7 +239,7 @@ public class AlignmentStateMachine {
      */
     @Ensures({"result >= -1", "result <= nCigarElements"})
     public int getCurrentCigarElementOffset() {
-        return currentCigarElementOffset;
+        return state[CIGAR_ELEMENT_OFFSET];
     }
 
     /**
@@ -227,7 +255,7 @@ public class AlignmentStateMachine {
      */
     @Ensures({"result >= 0 || (result == -1 && isLeftEdge())", "!isRightEdge() || result == 0"})
     public int getOffsetIntoCurrentCigarElement() {
-        return offsetIntoCurrentCigarElement;
+        return state[OFFSET_INTO_CIGAR_ELEMENT];
     }
 
     /**
@@ -240,12 +268,12 @@ public class AlignmentStateMachine {
      */
     @Ensures("result != null || isLeftEdge() || isRightEdge()")
     public CigarOperator getCigarOperator() {
-        return currentElement == null ? null : currentElement.getOperator();
+        return getCigarOperator(read, state, 0);
     }
 
     @Override
     public String toString() {
-        return String.format("%s ro=%d go=%d cec=%d %s", read.getReadName(), readOffset, genomeOffset, offsetIntoCurrentCigarElement, currentElement);
+        return String.format("%s ro=%d go=%d cec=%d %s", read.getReadName(), getReadOffset(), getGenomeOffset(), getOffsetIntoCurrentCigarElement(), getCurrentCigarElement());
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -278,6 +306,31 @@ public class AlignmentStateMachine {
      */
     @Ensures("result != null || isRightEdge()")
     public CigarOperator stepForwardOnGenome() {
+        return stepForwardOnGenome(read, state, 0);
+    }
+
+    /**
+     * Step the alignment state of read stored at offset base of states forward one unit
+     *
+     * This is the implementation of #stepForwardOnGenome() over a packed state, so that it can be
+     * shared by all of the reads held by a PerSampleReadStateManager.
+     *
+     * @param read the read whose state is stored in states
+     * @param states an array of packed alignment states
+     * @param base the offset of the state of read in states
+     * @return the operator of the cigar element that the state stopped at, null if we advanced off the end of the read
+     */
+    @Requires({"read != null", "states != null", "base >= 0", "base + STATE_SIZE <= states.length"})
+    static CigarOperator stepForwardOnGenome(final GATKSAMRecord read, final int[] states, final int base) {
+        final Cigar cigar = read.getCigar();
+        final int nCigarElements = cigar.numCigarElements();
+
+        int readOffset = states[base + READ_OFFSET];
+        int genomeOffset = states[base + GENOME_OFFSET];
+        int currentCigarElementOffset = states[base + CIGAR_ELEMENT_OFFSET];
+        int offsetIntoCurrentCigarElement = states[base + OFFSET_INTO_CIGAR_ELEMENT];
+        CigarElement currentElement = getCigarElement(cigar, currentCigarElementOffset);
+
         // loop until we either find a cigar element step that moves us one base on the genome, or we run
         // out of cigar elements
         while ( true ) {
@@ -299,7 +352,6 @@ public class AlignmentStateMachine {
                     // we're done, so set the offset of the cigar to 0 for cleanliness, as well as the current element
                     offsetIntoCurrentCigarElement = 0;
                     readOffset = read.getReadLength();
-                    currentElement = null;
 
                     // Reads that contain indels model the genomeOffset as the following base in the reference.  Because
                     // we fall into this else block only when indels end the read, increment genomeOffset  such that the
@@ -308,6 +360,7 @@ public class AlignmentStateMachine {
                     genomeOffset++; // extended events need that. Logically, it's legal to advance the genomic offset here:
 
                     // we do step forward on the ref, and by returning null we also indicate that we are past the read end.
+                    saveState(states, base, readOffset, genomeOffset, currentCigarElementOffset, offsetIntoCurrentCigarElement);
                     return null;
                 }
             }
@@ -346,11 +399,28 @@ public class AlignmentStateMachine {
                     throw new IllegalStateException("Case statement didn't deal with cigar op: " + currentElement.getOperator());
             }
 
-            if ( done )
+            if ( done ) {
+                saveState(states, base, readOffset, genomeOffset, currentCigarElementOffset, offsetIntoCurrentCigarElement);
                 return currentElement.getOperator();
+            }
         }
     }
 
+    /**
+     * Get the cigar element at offset in cigar, or null if offset is before the first or after the last element
+     */
+    private static CigarElement getCigarElement(final Cigar cigar, final int offset) {
+        return offset >= 0 && offset < cigar.numCigarElements() ? cigar.getCigarElement(offset) : null;
+    }
+
+    private static void saveState(final int[] states, final int base, final int readOffset, final int genomeOffset,
+                                  final int currentCigarElementOffset, final int offsetIntoCurrentCigarElement) {
+        states[base + READ_OFFSET] = readOffset;
+        states[base + GENOME_OFFSET] = genomeOffset;
+        states[base + CIGAR_ELEMENT_OFFSET] = currentCigarElementOffset;
+        states[base + OFFSET_INTO_CIGAR_ELEMENT] = offsetIntoCurrentCigarElement;
+    }
+
     /**
      * Create a new PileupElement based on the current state of this element
      *
@@ -360,13 +430,45 @@ public class AlignmentStateMachine {
      */
     @Ensures("result != null")
     public final PileupElement makePileupElement() {
-        if ( isLeftEdge() || isRightEdge() )
+        return makePileupElement(read, state, 0);
+    }
+
+    /**
+     * Create a new PileupElement for read based on its state stored at offset base of states
+     *
+     * The state must not be a left or right edge
+     *
+     * @param read the read whose state is stored in states
+     * @param states an array of packed alignment states
+     * @param base the offset of the state of read in states
+     * @return a pileup element
+     */
+    @Requires({"read != null", "states != null", "base >= 0", "base + STATE_SIZE <= states.length"})
+    @Ensures("result != null")
+    static PileupElement makePileupElement(final GATKSAMRecord read, final int[] states, final int base) {
+        final int readOffset = states[base + READ_OFFSET];
+        if ( readOffset == -1 || readOffset == read.getReadLength() )
             throw new IllegalStateException(MAKE_PILEUP_EDGE_ERROR);
+        final int currentCigarElementOffset = states[base + CIGAR_ELEMENT_OFFSET];
         return new PileupElement(read,
-                getReadOffset(),
-                getCurrentCigarElement(),
-                getCurrentCigarElementOffset(),
-                getOffsetIntoCurrentCigarElement());
+                readOffset,
+                read.getCigar().getCigarElement(currentCigarElementOffset),
+                currentCigarElementOffset,
+                states[base + OFFSET_INTO_CIGAR_ELEMENT]);
+    }
+
+    /**
+     * Get the operator of the cigar element of read in the state stored at offset base of states
+     *
+     * @param read the read whose state is stored in states
+     * @param states an array of packed alignment states
+     * @param base the offset of the state of read in states
+     * @return null if the state is an edge state
+     */
+    @Requires({"read != null", "states != null", "base >= 0", "base + STATE_SIZE <= states.length"})
+    static CigarOperator getCigarOperator(final GATKSAMRecord read, final int[] states, final int base) {
+        final CigarElement currentElement = getCigarElement(read.getCigar(), states[base + CIGAR_ELEMENT_OFFSET]);
+        return currentElement == null ? null : currentElement.getOperator();
     }
 }
 
@@ -97,16 +97,20 @@ public class LIBSPerformance extends CommandLineProgram {
 
         final SimpleTimer timer = new SimpleTimer().start();
         int bp = 0;
+        long nElements = 0;
         double lastElapsed = 0;
         while ( libs.hasNext() ) {
             AlignmentContext context = libs.next();
             bp++;
+            nElements += context.size();
             if ( timer.getElapsedTime() - lastElapsed > 10 ) {
                 logger.info(bp + " iterations at " + context.getLocation());
                 lastElapsed = timer.getElapsedTime();
             }
         }
-        logger.info(String.format("runtime in seconds: %.2f", timer.getElapsedTime()));
+        final double runtime = timer.getElapsedTime();
+        logger.info(String.format("runtime in seconds: %.2f", runtime));
+        logger.info(String.format("%d pileup elements at %d loci, %.2e elements per second", nElements, bp, nElements / runtime));
 
         return 0;
     }
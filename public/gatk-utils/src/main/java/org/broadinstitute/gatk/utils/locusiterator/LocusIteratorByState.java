@@ -300,14 +300,13 @@ public final class LocusIteratorByState extends LocusIterator {
             for (final Map.Entry<String, PerSampleReadStateManager> sampleStatePair : readStates ) {
                 final String sample = sampleStatePair.getKey();
                 final PerSampleReadStateManager readState = sampleStatePair.getValue();
-                final Iterator<AlignmentStateMachine> iterator = readState.iterator();
-                final List<PileupElement> pile = new ArrayList<PileupElement>(readState.size());
+                final int nStates = readState.size();
+                final List<PileupElement> pile = new ArrayList<PileupElement>(nStates);
 
-                while (iterator.hasNext()) {
-                    // state object with the read/offset information
-                    final AlignmentStateMachine state = iterator.next();
-                    final GATKSAMRecord read = state.getRead();
-                    final CigarOperator op = state.getCigarOperator();
+                // walk the packed read states directly, so that we don't need an object per read to find its offset
+                for (int i = 0; i < nStates; i++) {
+                    final GATKSAMRecord read = readState.getRead(i);
+                    final CigarOperator op = readState.getCigarOperator(i);
 
                     if (op == CigarOperator.N) // N's are never added to any pileup
                         continue;
@@ -317,7 +316,7 @@ public final class LocusIteratorByState extends LocusIterator {
                             continue;
                         }
 
-                        pile.add(state.makePileupElement());
+                        pile.add(readState.makePileupElement(i));
                     }
                 }
 
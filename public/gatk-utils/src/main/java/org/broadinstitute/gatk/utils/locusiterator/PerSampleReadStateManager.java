@@ -30,16 +30,29 @@ import com.google.java.contract.Invariant;
 import com.google.java.contract.Requires;
 import htsjdk.samtools.CigarOperator;
 import org.apache.log4j.Logger;
-import org.broadinstitute.gatk.utils.downsampling.Downsampler;
-import org.broadinstitute.gatk.utils.downsampling.LevelingDownsampler;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.broadinstitute.gatk.utils.locusiterator.AlignmentStateMachine.STATE_SIZE;
 
 /**
  * ReadStateManager for a single sample
  *
+ * Rather than keeping an AlignmentStateMachine per read, the alignment states of all of the reads of the sample
+ * are packed into a single primitive array, STATE_SIZE ints per read in the layout of AlignmentStateMachine,
+ * alongside an array of the reads themselves.  Stepping every read forward on the genome and dropping the reads
+ * that have run off their end then happens in place, without allocating anything per read or per locus.
+ * Leveling the reads down to the downsampling target works the same way, on the ranges of reads sharing an
+ * alignment start, and picks the same reads as a LevelingDownsampler given the same random generator.
+ *
  * User: depristo
  * Date: 1/13/13
  * Time: 12:28 PM
@@ -49,23 +62,49 @@ import java.util.List;
         "! isDownsampling() || downsamplingTarget > 0",
         "nSites >= 0",
         "nSitesNeedingDownsampling >= 0",
-        "nSitesNeedingDownsampling <= nSites"
+        "nSitesNeedingDownsampling <= nSites",
+        "nStates >= 0",
+        "nStates <= reads.length",
+        "states.length == reads.length * STATE_SIZE"
 })
 final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine> {
     private final static Logger logger = Logger.getLogger(ReadStateManager.class);
     private final static boolean CAPTURE_DOWNSAMPLING_STATS = false;
 
     /**
-     * A list (potentially empty) of alignment state machines.
+     * Number of reads we have room for before we first need to grow our arrays
+     */
+    private final static int INITIAL_CAPACITY = 64;
+
+    /**
+     * The reads (potentially none) aligned to the current position, in the first nStates entries.
      *
-     * The state machines must be ordered by the alignment start of their underlying reads, with the
-     * lowest alignment starts on the left, and the largest on the right
+     * The reads must be ordered by their alignment start, with the lowest alignment starts on the left,
+     * and the largest on the right
+     */
+    private GATKSAMRecord[] reads = new GATKSAMRecord[INITIAL_CAPACITY];
+
+    /**
+     * The alignment state of reads[i] is stored at states[i * STATE_SIZE]
+     */
+    private int[] states = new int[INITIAL_CAPACITY * STATE_SIZE];
+
+    /**
+     * The number of reads we are currently managing
      */
-    private LinkedList<AlignmentStateMachine> readStatesByAlignmentStart = new LinkedList<AlignmentStateMachine>();
+    private int nStates = 0;
 
-    private final Downsampler<LinkedList<AlignmentStateMachine>> levelingDownsampler;
     private final int downsamplingTarget;
 
+    /**
+     * Scratch space for leveling: the number of reads at each alignment start, the number of them to keep, a
+     * permutation of the reads at one alignment start, and whether to keep each read
+     */
+    private int[] groupSizes = new int[INITIAL_CAPACITY];
+    private int[] groupSizesToKeep = new int[INITIAL_CAPACITY];
+    private int[] permutation = new int[INITIAL_CAPACITY];
+    private boolean[] keep = new boolean[INITIAL_CAPACITY];
+
     /**
      * The number of sites where downsampling has been invoked
      */
@@ -82,49 +121,94 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     public PerSampleReadStateManager(final LIBSDownsamplingInfo LIBSDownsamplingInfo) {
         this.downsamplingTarget = LIBSDownsamplingInfo.isPerformDownsampling() ? LIBSDownsamplingInfo.getToCoverage() : -1;
-        this.levelingDownsampler = LIBSDownsamplingInfo.isPerformDownsampling()
-                ? new LevelingDownsampler<LinkedList<AlignmentStateMachine>, AlignmentStateMachine>(LIBSDownsamplingInfo.getToCoverage())
-                : null;
     }
 
     /**
-     * Group the underlying readStatesByAlignmentStart into a list of list of alignment state machines,
-     * where each list contains machines with a unique genome site.  The outer list is ordered
-     * by alignment start.
+     * Count the reads at each genome site into groupSizes.  As the reads are ordered by alignment start, the reads
+     * of each group are contiguous.
      *
-     * For example, if the flat list has alignment starts [10, 10, 11, 12, 12, 13] then
-     * the resulting grouping will be [[10, 10], [11], [12, 12], [13]].
+     * For example, if the reads have alignment starts [10, 10, 11, 12, 12, 13] then
+     * the resulting group sizes will be [2, 1, 2, 1].
      *
-     * @return a non-null list of lists
+     * @return the number of groups
      */
-    @Ensures("result != null")
-    private List<LinkedList<AlignmentStateMachine>> groupByAlignmentStart() {
-        final LinkedList<LinkedList<AlignmentStateMachine>> grouped = new LinkedList<LinkedList<AlignmentStateMachine>>();
+    @Ensures("result >= 0")
+    private int groupByAlignmentStart() {
+        if ( groupSizes.length < nStates ) {
+            groupSizes = new int[reads.length];
+            groupSizesToKeep = new int[reads.length];
+        }
 
-        AlignmentStateMachine last = null;
-        for ( final AlignmentStateMachine stateMachine : readStatesByAlignmentStart ) {
-            if ( last == null || stateMachine.getGenomeOffset() != last.getGenomeOffset() ) {
+        int nGroups = 0;
+        int lastGenomeOffset = 0;
+        for ( int i = 0; i < nStates; i++ ) {
+            final int genomeOffset = states[i * STATE_SIZE + AlignmentStateMachine.GENOME_OFFSET];
+            if ( i == 0 || genomeOffset != lastGenomeOffset ) {
                 // we've advanced to a place where the state machine has a different state,
-                // so start a new list
-                grouped.add(new LinkedList<AlignmentStateMachine>());
-                last = stateMachine;
+                // so start a new group
+                groupSizes[nGroups++] = 0;
+                lastGenomeOffset = genomeOffset;
             }
-            grouped.getLast().add(stateMachine);
+            groupSizes[nGroups - 1]++;
         }
 
-        return grouped;
+        return nGroups;
     }
 
     /**
-     * Flattens the grouped list of list of alignment state machines into a single list in order
-     * @return a non-null list contains the state machines
+     * Work out how many reads of each group to keep, removing reads from the groups evenly until no more than
+     * downsamplingTarget remain, but never leaving a group without reads.  Same as LevelingDownsampler.
+     *
+     * @param nGroups the number of groups in groupSizes
      */
-    @Ensures("result != null")
-    private LinkedList<AlignmentStateMachine> flattenByAlignmentStart(final List<LinkedList<AlignmentStateMachine>> grouped) {
-        final LinkedList<AlignmentStateMachine> flat = new LinkedList<AlignmentStateMachine>();
-        for ( final List<AlignmentStateMachine> l : grouped )
-            flat.addAll(l);
-        return flat;
+    private void levelGroupSizes(final int nGroups) {
+        System.arraycopy(groupSizes, 0, groupSizesToKeep, 0, nGroups);
+
+        int numItemsToRemove = nStates - downsamplingTarget;
+        int currentGroupIndex = 0;
+        int numConsecutiveUmodifiableGroups = 0;
+
+        while ( numItemsToRemove > 0 && numConsecutiveUmodifiableGroups < nGroups ) {
+            if ( groupSizesToKeep[currentGroupIndex] > 1 ) {
+                groupSizesToKeep[currentGroupIndex]--;
+                numItemsToRemove--;
+                numConsecutiveUmodifiableGroups = 0;
+            }
+            else {
+                numConsecutiveUmodifiableGroups++;
+            }
+
+            currentGroupIndex = (currentGroupIndex + 1) % nGroups;
+        }
+    }
+
+    /**
+     * Mark numToKeep randomly chosen reads of the group of groupSize reads starting at groupStart to be kept.
+     * The reads are chosen exactly as MathUtils.sampleIndicesWithoutReplacement() does.
+     */
+    private void chooseReadsToKeep(final int groupStart, final int groupSize, final int numToKeep) {
+        if ( numToKeep >= groupSize ) {
+            Arrays.fill(keep, groupStart, groupStart + groupSize, true);
+            return;
+        }
+
+        if ( permutation.length < groupSize )
+            permutation = new int[reads.length];
+        for ( int i = 0; i < groupSize; i++ )
+            permutation[i] = i;
+
+        // the shuffle of Collections.shuffle()
+        final Random random = Utils.getRandomGenerator();
+        for ( int i = groupSize; i > 1; i-- ) {
+            final int j = random.nextInt(i);
+            final int tmp = permutation[i - 1];
+            permutation[i - 1] = permutation[j];
+            permutation[j] = tmp;
+        }
+
+        Arrays.fill(keep, groupStart, groupStart + groupSize, false);
+        for ( int i = 0; i < numToKeep; i++ )
+            keep[groupStart + permutation[i]] = true;
     }
 
     /**
@@ -133,16 +217,16 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     private boolean readStartsAreWellOrdered() {
         int lastStart = -1;
-        for ( final AlignmentStateMachine machine : readStatesByAlignmentStart ) {
-            if ( lastStart > machine.getRead().getAlignmentStart() )
+        for ( int i = 0; i < nStates; i++ ) {
+            if ( lastStart > reads[i].getAlignmentStart() )
                 return false;
-            lastStart = machine.getRead().getAlignmentStart();
+            lastStart = reads[i].getAlignmentStart();
         }
         return true;
     }
 
     /**
-     * Assumes it can just keep the states linked lists without making a copy
+     * Copies the current state of each of the machines in states into this manager
      * @param states the new states to add to this manager
      * @return The change in the number of states, after including states and potentially downsampling.  Note
      * that this return result might be negative, if downsampling is enabled, as we might drop
@@ -154,23 +238,81 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
             return 0;
         }
 
-        readStatesByAlignmentStart.addAll(states);
-        int nStatesAdded = states.size();
+        ensureCapacity(nStates + states.size());
+        for ( final AlignmentStateMachine state : states ) {
+            reads[nStates] = state.getRead();
+            state.copyStateTo(this.states, nStates * STATE_SIZE);
+            nStates++;
+        }
 
-        if ( isDownsampling() && readStatesByAlignmentStart.size() > downsamplingTarget ) {
-            // only go into the downsampling branch if we are downsampling and the coverage > the target
-            captureDownsamplingStats();
-            levelingDownsampler.submit(groupByAlignmentStart());
-            levelingDownsampler.signalEndOfInput();
+        return states.size() - levelIfNeeded();
+    }
 
-            nStatesAdded -= levelingDownsampler.getNumberOfDiscardedItems();
+    /**
+     * Add reads that all start at the next alignment start to this manager, stepping each of them onto
+     * its first position on the genome.  Reads that never reach the genome (such as reads that are all
+     * insertions or soft clips) are skipped.
+     *
+     * @param newReads the reads to add to this manager
+     * @return The change in the number of states, after including states and potentially downsampling.  Note
+     * that this return result might be negative, if downsampling is enabled, as we might drop
+     * more sites than have been added by the downsampler
+     */
+    @Requires("newReads != null")
+    public int addReadsAtNextAlignmentStart(final Collection<GATKSAMRecord> newReads) {
+        if ( newReads.isEmpty() ) {
+            return 0;
+        }
 
-            // use returned List directly rather than make a copy, for efficiency's sake
-            readStatesByAlignmentStart = flattenByAlignmentStart(levelingDownsampler.consumeFinalizedItems());
-            levelingDownsampler.resetStats();
+        ensureCapacity(nStates + newReads.size());
+        int nStatesAdded = 0;
+        for ( final GATKSAMRecord read : newReads ) {
+            final int base = nStates * STATE_SIZE;
+            AlignmentStateMachine.initializeAsLeftEdge(states, base);
+            if ( AlignmentStateMachine.stepForwardOnGenome(read, states, base) != null ) { // todo -- should be an assertion not a skip
+                // explicitly filter out reads that are all insertions / soft clips
+                reads[nStates] = read;
+                nStates++;
+                nStatesAdded++;
+            }
         }
 
-        return nStatesAdded;
+        return nStatesAdded - levelIfNeeded();
+    }
+
+    /**
+     * Level the reads we have by alignment start, if we are downsampling and our coverage is above the target
+     * @return the number of reads that were discarded
+     */
+    @Ensures("result >= 0")
+    private int levelIfNeeded() {
+        if ( ! isDownsampling() || nStates <= downsamplingTarget )
+            return 0;
+
+        // only go into the downsampling branch if we are downsampling and the coverage > the target
+        captureDownsamplingStats();
+        final int nGroups = groupByAlignmentStart();
+        levelGroupSizes(nGroups);
+
+        if ( keep.length < nStates )
+            keep = new boolean[reads.length];
+        int groupStart = 0;
+        for ( int group = 0; group < nGroups; group++ ) {
+            chooseReadsToKeep(groupStart, groupSizes[group], groupSizesToKeep[group]);
+            groupStart += groupSizes[group];
+        }
+
+        int nKept = 0;
+        for ( int i = 0; i < nStates; i++ ) {
+            if ( keep[i] ) {
+                moveState(i, nKept);
+                nKept++;
+            }
+        }
+
+        final int nDiscarded = nStates - nKept;
+        truncate(nKept);
+        return nDiscarded;
     }
 
     /**
@@ -178,15 +320,60 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return true if we are downsampling, false otherwise
      */
     private boolean isDownsampling() {
-        return levelingDownsampler != null;
+        return downsamplingTarget >= 0;
     }
 
     /**
      * Get the leftmost alignment state machine, or null if the read states is empty
+     *
+     * The machine is a copy of the state of the leftmost read, so stepping it forward does not change this manager.
+     *
      * @return a potentially null AlignmentStateMachine
      */
     public AlignmentStateMachine getFirst() {
-        return isEmpty() ? null : readStatesByAlignmentStart.getFirst();
+        return isEmpty() ? null : new AlignmentStateMachine(reads[0], states, 0);
+    }
+
+    /**
+     * Get the i-th read of this manager, in alignment start order
+     * @param i the index of the read
+     * @return a non-null read
+     */
+    @Requires({"i >= 0", "i < size()"})
+    @Ensures("result != null")
+    public GATKSAMRecord getRead(final int i) {
+        return reads[i];
+    }
+
+    /**
+     * Get the position (1-based) on the genome of the current alignment state of the i-th read
+     * @param i the index of the read
+     * @return the position on the genome of the current state in absolute coordinates
+     */
+    @Requires({"i >= 0", "i < size()"})
+    public int getGenomePosition(final int i) {
+        return reads[i].getAlignmentStart() + states[i * STATE_SIZE + AlignmentStateMachine.GENOME_OFFSET];
+    }
+
+    /**
+     * Get the operator of the cigar element the i-th read is currently aligned with
+     * @param i the index of the read
+     * @return the cigar operator, or null if the read is on an edge
+     */
+    @Requires({"i >= 0", "i < size()"})
+    public CigarOperator getCigarOperator(final int i) {
+        return AlignmentStateMachine.getCigarOperator(reads[i], states, i * STATE_SIZE);
+    }
+
+    /**
+     * Create a new PileupElement for the current alignment state of the i-th read
+     * @param i the index of the read
+     * @return a pileup element
+     */
+    @Requires({"i >= 0", "i < size()"})
+    @Ensures("result != null")
+    public PileupElement makePileupElement(final int i) {
+        return AlignmentStateMachine.makePileupElement(reads[i], states, i * STATE_SIZE);
     }
 
     /**
@@ -196,7 +383,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
     private void captureDownsamplingStats() {
         if ( CAPTURE_DOWNSAMPLING_STATS ) {
             nSites++;
-            final int loc = getFirst().getGenomePosition();
+            final int loc = getGenomePosition(0);
             String message = "Pass through";
             final boolean downsampling = size() > downsamplingTarget;
             if ( downsampling ) {
@@ -215,7 +402,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return true if there's at least one alignment, false otherwise
      */
     public boolean isEmpty() {
-        return readStatesByAlignmentStart.isEmpty();
+        return nStates == 0;
     }
 
     /**
@@ -224,7 +411,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     @Ensures("result >= 0")
     public int size() {
-        return readStatesByAlignmentStart.size();
+        return nStates;
     }
 
     /**
@@ -233,29 +420,102 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return the number of states we're removed after advancing
      */
     public int updateReadStates() {
-        int nRemoved = 0;
-        final Iterator<AlignmentStateMachine> it = iterator();
-        while (it.hasNext()) {
-            final AlignmentStateMachine state = it.next();
-            final CigarOperator op = state.stepForwardOnGenome();
-            if (op == null) {
-                // we discard the read only when we are past its end AND indel at the end of the read (if any) was
-                // already processed. Keeping the read state that returned null upon stepForwardOnGenome() is safe
-                // as the next call to stepForwardOnGenome() will return null again AND will clear hadIndel() flag.
-                it.remove();                                                // we've stepped off the end of the object
-                nRemoved++;
+        int nKept = 0;
+        for ( int i = 0; i < nStates; i++ ) {
+            // we discard the read only when we are past its end AND indel at the end of the read (if any) was
+            // already processed, which is exactly when stepping forward returns null
+            if ( AlignmentStateMachine.stepForwardOnGenome(reads[i], states, i * STATE_SIZE) != null ) {
+                moveState(i, nKept);
+                nKept++;
             }
         }
 
+        final int nRemoved = nStates - nKept;
+        truncate(nKept);
         return nRemoved;
     }
 
     /**
-     * Iterate over the AlignmentStateMachine in this manager in alignment start order.
+     * Iterate over the alignment states in this manager in alignment start order.
+     *
+     * Each AlignmentStateMachine returned is a copy of the state of its read at the time of the call to next(),
+     * so stepping it forward does not change this manager.  The iterator supports removal of the last read
+     * returned.
+     *
      * @return a valid iterator
      */
     @Ensures("result != null")
     public Iterator<AlignmentStateMachine> iterator() {
-        return readStatesByAlignmentStart.iterator();
+        return new Iterator<AlignmentStateMachine>() {
+            private int next = 0;
+            private boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return next < nStates;
+            }
+
+            @Override
+            public AlignmentStateMachine next() {
+                if ( ! hasNext() ) throw new NoSuchElementException("PerSampleReadStateManager: out of read states");
+                canRemove = true;
+                final AlignmentStateMachine state = new AlignmentStateMachine(reads[next], states, next * STATE_SIZE);
+                next++;
+                return state;
+            }
+
+            @Override
+            public void remove() {
+                if ( ! canRemove ) throw new IllegalStateException("next() has not been called since the last remove()");
+                canRemove = false;
+                next--;
+                removeState(next);
+            }
+        };
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    //
+    // Managing the packed arrays of reads and states
+    //
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Make sure our arrays can hold at least capacity reads, preserving the reads we already have
+     */
+    private void ensureCapacity(final int capacity) {
+        if ( capacity > reads.length ) {
+            final int newCapacity = Math.max(capacity, reads.length * 2);
+            reads = Arrays.copyOf(reads, newCapacity);
+            states = Arrays.copyOf(states, newCapacity * STATE_SIZE);
+        }
+    }
+
+    /**
+     * Move the read and state at from to to, with to <= from
+     */
+    private void moveState(final int from, final int to) {
+        if ( from != to ) {
+            reads[to] = reads[from];
+            System.arraycopy(states, from * STATE_SIZE, states, to * STATE_SIZE, STATE_SIZE);
+        }
+    }
+
+    /**
+     * Remove the read and state at i, shifting all of the following ones left by one
+     */
+    private void removeState(final int i) {
+        final int nFollowing = nStates - i - 1;
+        System.arraycopy(reads, i + 1, reads, i, nFollowing);
+        System.arraycopy(states, (i + 1) * STATE_SIZE, states, i * STATE_SIZE, nFollowing * STATE_SIZE);
+        truncate(nStates - 1);
+    }
+
+    /**
+     * Drop all reads past the first newSize, so that we don't hold on to them
+     */
+    private void truncate(final int newSize) {
+        Arrays.fill(reads, newSize, nStates, null);
+        nStates = newSize;
     }
 }
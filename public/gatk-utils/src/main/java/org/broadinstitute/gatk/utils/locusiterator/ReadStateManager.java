@@ -119,9 +119,18 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
     }
 
     public AlignmentStateMachine getFirst() {
+        final PerSampleReadStateManager manager = getFirstNonEmptyManager();
+        return manager == null ? null : manager.getFirst();
+    }
+
+    /**
+     * Get the manager of the first sample with at least one read state
+     * @return a potentially null PerSampleReadStateManager
+     */
+    private PerSampleReadStateManager getFirstNonEmptyManager() {
         for ( final PerSampleReadStateManager manager : readStatesBySample.values() ) {
             if ( ! manager.isEmpty() )
-                return manager.getFirst();
+                return manager;
         }
         return null;
     }
@@ -170,10 +179,10 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
             firstAlignmentStart = iterator.peek().getAlignmentStart();
         } else {
             // there's a read in the system, so it's our targeted first read
-            final AlignmentStateMachine firstState = getFirst();
-            firstContigIndex = firstState.getReferenceIndex();
+            final PerSampleReadStateManager firstManager = getFirstNonEmptyManager();
+            firstContigIndex = firstManager.getRead(0).getReferenceIndex();
             // note this isn't the alignment start of the read, but rather the alignment start position
-            firstAlignmentStart = firstState.getGenomePosition();
+            firstAlignmentStart = firstManager.getGenomePosition(0);
         }
 
         while ( iterator.hasNext() && readStartsAtCurrentPosition(iterator.peek(), firstContigIndex, firstAlignmentStart) ) {
@@ -275,15 +284,6 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
         if (reads.isEmpty())
             return;
 
-        final LinkedList<AlignmentStateMachine> newReadStates = new LinkedList<AlignmentStateMachine>();
-
-        for (final GATKSAMRecord read : reads) {
-            final AlignmentStateMachine state = new AlignmentStateMachine(read);
-            if ( state.stepForwardOnGenome() != null ) // todo -- should be an assertion not a skip
-                // explicitly filter out reads that are all insertions / soft clips
-                newReadStates.add(state);
-        }
-
-        totalReadStates += readStates.addStatesAtNextAlignmentStart(newReadStates);
+        totalReadStates += readStates.addReadsAtNextAlignmentStart(reads);
     }
 }
@@ -99,13 +99,27 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
     }
 
     protected NanoScheduler(final int bufferSize, final int nThreads) {
+        this(bufferSize, nThreads, true);
+    }
+
+    /**
+     * Create a new nanoscheduler, optionally without the master / map executors
+     *
+     * Subclasses that provide their own execution engine pass false for createExecutors, so that
+     * we don't spin up thread pools that will never be used.
+     *
+     * @param bufferSize the input buffer size
+     * @param nThreads the number of threads to use to get work done
+     * @param createExecutors if true, and nThreads > 1, create the master and map executors
+     */
+    protected NanoScheduler(final int bufferSize, final int nThreads, final boolean createExecutors) {
         if ( bufferSize < 1 ) throw new IllegalArgumentException("bufferSize must be >= 1, got " + bufferSize);
         if ( nThreads < 1 ) throw new IllegalArgumentException("nThreads must be >= 1, got " + nThreads);
 
         this.bufferSize = bufferSize;
         this.nThreads = nThreads;
 
-        if ( nThreads == 1 ) {
+        if ( nThreads == 1 || ! createExecutors ) {
             this.mapExecutor = this.masterExecutor = null;
         } else {
             this.masterExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("NS-master-thread-%d"));
@@ -137,7 +151,7 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
      * After this call, execute cannot be invoked without throwing an error
      */
     public void shutdown() {
-        if ( nThreads > 1 ) {
+        if ( mapExecutor != null ) {
             shutdownExecutor("mapExecutor", mapExecutor);
             shutdownExecutor("masterExecutor", masterExecutor);
         }
@@ -256,7 +270,7 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
      * @return the reduce result of this map/reduce job
      */
     @Requires({"inputReader != null", "map != null", "reduce != null"})
-    private ReduceType executeSingleThreaded(final Iterator<InputType> inputReader,
+    protected ReduceType executeSingleThreaded(final Iterator<InputType> inputReader,
                                              final NSMapFunction<InputType, MapType> map,
                                              final ReduceType initialValue,
                                              final NSReduceFunction<MapType, ReduceType> reduce) {
@@ -288,7 +302,7 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
      * @param counter increasing counter to use to cut down on updates
      * @param input the input we're currently at
      */
-    private void updateProgress(final int counter, final InputType input) {
+    protected void updateProgress(final int counter, final InputType input) {
         if ( progressFunction != null && counter % UPDATE_PROGRESS_FREQ == 0 )
             progressFunction.progress(input);
     }
@@ -0,0 +1,264 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import com.google.java.contract.Ensures;
+import com.google.java.contract.Requires;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A NanoScheduler that executes map jobs with fork/join work stealing over batched chunks of input
+ *
+ * The classic NanoScheduler pushes every single input element through the InputProducer and then
+ * reduces MapResults one at a time through the MapResultsQueue, so with many threads most of the
+ * time is spent contending on those two queues.  This engine instead works like this:
+ *
+ * - The calling thread reads the input in chunks of bufferSize / nThreads elements and submits
+ *   each chunk as a single task to a ForkJoinPool of nThreads workers
+ * - Each chunk recursively splits itself in half while other workers are starving for work, so
+ *   idle workers steal the unprocessed halves of chunks from busy workers.  With cheap map functions
+ *   chunks are mapped as a unit, with expensive ones they spread out over all of the workers
+ * - The calling thread reduces completed chunks in input order, as the reduce contract of the
+ *   NanoScheduler requires
+ *
+ * At most 2 * nThreads chunks are in flight at any one time, so this scheduler never holds more than
+ * 2 * bufferSize input elements and map results in memory.
+ *
+ * Single threaded execution uses the same fast path as the NanoScheduler.
+ *
+ * @since 2016
+ */
+public class WorkStealingNanoScheduler<InputType, MapType, ReduceType> extends NanoScheduler<InputType, MapType, ReduceType> {
+    /**
+     * A chunk keeps splitting itself while its worker has no more than this number of
+     * surplus tasks queued up, which is the standard adaptive splitting heuristic for fork/join
+     */
+    private final static int MAX_SURPLUS_QUEUED_TASKS = 3;
+
+    /**
+     * The fork/join pool running our map jobs, or null if we are single threaded
+     */
+    final ForkJoinPool mapPool;
+
+    /**
+     * The number of input elements we read into each chunk submitted to the mapPool
+     */
+    final int chunkSize;
+
+    /**
+     * The maximum number of chunks waiting to be mapped or reduced at any one time
+     */
+    final int maxChunksInFlight;
+
+    /**
+     * Create a new work stealing nanoscheduler with nThreads map threads
+     *
+     * @param nThreads the number of threads to use to get work done
+     */
+    public WorkStealingNanoScheduler(final int nThreads) {
+        this(nThreads*100, nThreads);
+    }
+
+    protected WorkStealingNanoScheduler(final int bufferSize, final int nThreads) {
+        super(bufferSize, nThreads, false);
+
+        this.chunkSize = Math.max(bufferSize / nThreads, 1);
+        this.maxChunksInFlight = 2 * nThreads;
+        this.mapPool = nThreads == 1 ? null : new ForkJoinPool(nThreads, new NamedWorkerThreadFactory(), null, false);
+    }
+
+    /**
+     * @return the number of input elements processed together as a single chunk
+     */
+    @Ensures("result > 0")
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public void shutdown() {
+        if ( mapPool != null ) {
+            if ( mapPool.isShutdown() )
+                throw new IllegalStateException("Executor service mapPool is already shut down!");
+            mapPool.shutdownNow();
+        }
+
+        shutdown = true;
+    }
+
+    @Override
+    public ReduceType execute(final Iterator<InputType> inputReader,
+                              final NSMapFunction<InputType, MapType> map,
+                              final ReduceType initialValue,
+                              final NSReduceFunction<MapType, ReduceType> reduce) {
+        if ( isShutdown() ) throw new IllegalStateException("execute called on already shutdown NanoScheduler");
+        if ( inputReader == null ) throw new IllegalArgumentException("inputReader cannot be null");
+        if ( map == null ) throw new IllegalArgumentException("map function cannot be null");
+        if ( reduce == null ) throw new IllegalArgumentException("reduce function cannot be null");
+
+        if ( getnThreads() == 1 )
+            return executeSingleThreaded(inputReader, map, initialValue, reduce);
+        else
+            return executeWorkStealing(inputReader, map, initialValue, reduce);
+    }
+
+    /**
+     * Read, map, and reduce all of the data in inputReader with the mapPool
+     *
+     * @return the reduce result of this map/reduce job
+     */
+    @Requires({"inputReader != null", "map != null", "reduce != null"})
+    private ReduceType executeWorkStealing(final Iterator<InputType> inputReader,
+                                           final NSMapFunction<InputType, MapType> map,
+                                           final ReduceType initialValue,
+                                           final NSReduceFunction<MapType, ReduceType> reduce) {
+        debugPrint("Executing work stealing nanoScheduler");
+
+        final LinkedList<MapChunk> chunksInFlight = new LinkedList<MapChunk>();
+        ReduceType sum = initialValue;
+        int nElementsRead = 0;
+
+        try {
+            while ( true ) {
+                // keep the pool busy with up to maxChunksInFlight chunks of input
+                while ( chunksInFlight.size() < maxChunksInFlight && inputReader.hasNext() ) {
+                    final MapChunk chunk = readChunk(inputReader, map, nElementsRead);
+                    nElementsRead += chunk.inputs.size();
+                    chunksInFlight.add(chunk);
+                    mapPool.execute(chunk);
+                }
+
+                if ( chunksInFlight.isEmpty() )
+                    break;
+
+                // reduce the oldest chunk; join rethrows any error that occurred in its map
+                final MapChunk chunk = chunksInFlight.removeFirst();
+                chunk.join();
+                sum = chunk.reduce(reduce, sum);
+            }
+
+            return sum;
+        } finally {
+            // only non-empty if an error occurred, so don't leave anything running in the pool
+            for ( final MapChunk chunk : chunksInFlight )
+                chunk.cancel(true);
+        }
+    }
+
+    /**
+     * Read the next chunk of up to chunkSize elements from inputReader
+     *
+     * @param firstElementIndex the index in the input of the first element of this chunk
+     * @return a new MapChunk ready to be submitted to the mapPool
+     */
+    @Requires({"inputReader != null", "inputReader.hasNext()", "map != null"})
+    private MapChunk readChunk(final Iterator<InputType> inputReader,
+                               final NSMapFunction<InputType, MapType> map,
+                               final int firstElementIndex) {
+        final List<InputType> inputs = new ArrayList<InputType>(chunkSize);
+        while ( inputs.size() < chunkSize && inputReader.hasNext() )
+            inputs.add(inputReader.next());
+        return new MapChunk(map, inputs, new Object[inputs.size()], firstElementIndex, 0, inputs.size());
+    }
+
+    /**
+     * A contiguous range [start, stop) of a chunk of input elements to map
+     *
+     * The top-level task covers the whole chunk, and recursively splits into sub-ranges
+     * that share the inputs and results of the top-level task, so stealing a range
+     * requires no copying.
+     */
+    private class MapChunk extends RecursiveAction {
+        final NSMapFunction<InputType, MapType> map;
+        final List<InputType> inputs;
+        final Object[] results;
+        final int firstElementIndex;
+        final int start, stop;
+
+        private MapChunk(final NSMapFunction<InputType, MapType> map,
+                         final List<InputType> inputs,
+                         final Object[] results,
+                         final int firstElementIndex,
+                         final int start,
+                         final int stop) {
+            this.map = map;
+            this.inputs = inputs;
+            this.results = results;
+            this.firstElementIndex = firstElementIndex;
+            this.start = start;
+            this.stop = stop;
+        }
+
+        @Override
+        protected void compute() {
+            if ( stop - start > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_QUEUED_TASKS ) {
+                // split in half, making the second half available for idle threads to steal
+                final int middle = (start + stop) >>> 1;
+                invokeAll(new MapChunk(map, inputs, results, firstElementIndex, start, middle),
+                          new MapChunk(map, inputs, results, firstElementIndex, middle, stop));
+            } else {
+                for ( int i = start; i < stop; i++ )
+                    results[i] = map.apply(inputs.get(i));
+            }
+        }
+
+        /**
+         * Reduce all of the map results of this (completed) chunk, in order, into sum
+         *
+         * @param reduce the reduce function
+         * @param sum the reduce value so far
+         * @return the reduce value after reducing all of the map results of this chunk
+         */
+        @SuppressWarnings("unchecked")
+        private ReduceType reduce(final NSReduceFunction<MapType, ReduceType> reduce, final ReduceType sum) {
+            ReduceType newSum = sum;
+            for ( int i = start; i < stop; i++ ) {
+                newSum = reduce.apply((MapType)results[i], newSum);
+                updateProgress(firstElementIndex + i, inputs.get(i));
+            }
+            return newSum;
+        }
+    }
+
+    /**
+     * Gives the fork/join worker threads of this scheduler recognizable names
+     */
+    private static class NamedWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("NS-ws-thread-" + thread.getPoolIndex());
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import org.broadinstitute.gatk.utils.QualityUtils;
+
+import java.util.Arrays;
+
+import static org.broadinstitute.gatk.utils.pairhmm.PairHMMModel.*;
+
+/**
+ * Pure Java logless PairHMM that computes in single precision first, and recomputes in double precision only
+ * when the single precision result underflows.  Follows the scheme of the native VectorLoglessPairHMM, so it can
+ * be used on machines where the native library can't be loaded.
+ *
+ * Probabilities are kept in real space, scaled by a large initial constant so that typical reads don't
+ * underflow a float.  Only two rows of each state are kept.  Each row is computed in two passes: the match and
+ * insertion states of a cell only depend on the previous row, so the first pass has no loop carried dependency
+ * and the JIT can unroll and vectorize it, while the deletion state, which runs along the row, is done in a
+ * second, scalar pass.
+ */
+public class FloatLoglessPairHMM extends PairHMM {
+    /**
+     * Scaling applied to the initial deletion state, so that the float computation has room before underflowing.
+     */
+    private static final float INITIAL_CONSTANT_FLOAT = (float)Math.scalb(1.0, 120);
+    private static final double LOG10_INITIAL_CONSTANT_FLOAT = Math.log10(INITIAL_CONSTANT_FLOAT);
+
+    /**
+     * Scaling applied to the initial deletion state when recomputing in double precision.
+     */
+    private static final double INITIAL_CONSTANT_DOUBLE = Math.scalb(1.0, 1020);
+    private static final double LOG10_INITIAL_CONSTANT_DOUBLE = Math.log10(INITIAL_CONSTANT_DOUBLE);
+
+    /**
+     * Scaled float results below this are considered to have lost too much precision, and are recomputed in double.
+     */
+    private static final float MIN_ACCEPTED_FLOAT_RESULT = 1e-28f;
+
+    // per read base transition probabilities, indexed by padded read position
+    private double[] matchToMatchProb, indelToMatchProb, matchToInsertionProb, insertionToInsertionProb, matchToDeletionProb, deletionToDeletionProb;
+    private float[] matchToMatchProbF, indelToMatchProbF, matchToInsertionProbF, insertionToInsertionProbF, matchToDeletionProbF, deletionToDeletionProbF;
+
+    // per read base priors for a read base matching or mismatching the haplotype base, indexed by padded read position
+    private double[] matchPrior, mismatchPrior;
+    private float[] matchPriorF, mismatchPriorF;
+
+    // previous and current rows of the match, insertion and deletion states
+    private float[] prevMatchF, prevInsertionF, prevDeletionF, curMatchF, curInsertionF, curDeletionF;
+    private double[] prevMatch, prevInsertion, prevDeletion, curMatch, curInsertion, curDeletion;
+
+    private final double[] transitionBuffer = new double[TRANS_PROB_ARRAY_LENGTH];
+
+    /**
+     * Number of likelihoods that had to be recomputed in double precision
+     */
+    private long numDoublePrecisionRecomputations = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize(final int readMaxLength, final int haplotypeMaxLength) {
+        super.initialize(readMaxLength, haplotypeMaxLength);
+
+        matchToMatchProb = new double[paddedMaxReadLength];
+        indelToMatchProb = new double[paddedMaxReadLength];
+        matchToInsertionProb = new double[paddedMaxReadLength];
+        insertionToInsertionProb = new double[paddedMaxReadLength];
+        matchToDeletionProb = new double[paddedMaxReadLength];
+        deletionToDeletionProb = new double[paddedMaxReadLength];
+        matchToMatchProbF = new float[paddedMaxReadLength];
+        indelToMatchProbF = new float[paddedMaxReadLength];
+        matchToInsertionProbF = new float[paddedMaxReadLength];
+        insertionToInsertionProbF = new float[paddedMaxReadLength];
+        matchToDeletionProbF = new float[paddedMaxReadLength];
+        deletionToDeletionProbF = new float[paddedMaxReadLength];
+
+        matchPrior = new double[paddedMaxReadLength];
+        mismatchPrior = new double[paddedMaxReadLength];
+        matchPriorF = new float[paddedMaxReadLength];
+        mismatchPriorF = new float[paddedMaxReadLength];
+
+        prevMatchF = new float[paddedMaxHaplotypeLength];
+        prevInsertionF = new float[paddedMaxHaplotypeLength];
+        prevDeletionF = new float[paddedMaxHaplotypeLength];
+        curMatchF = new float[paddedMaxHaplotypeLength];
+        curInsertionF = new float[paddedMaxHaplotypeLength];
+        curDeletionF = new float[paddedMaxHaplotypeLength];
+
+        // the double precision rows are only needed once a float computation underflows
+        prevMatch = prevInsertion = prevDeletion = curMatch = curInsertion = curDeletion = null;
+    }
+
+    /**
+     * How many likelihoods had to be recomputed in double precision since this PairHMM was created?
+     * @return a non-negative count
+     */
+    public long getNumDoublePrecisionRecomputations() {
+        return numDoublePrecisionRecomputations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected double subComputeReadLikelihoodGivenHaplotypeLog10( final byte[] haplotypeBases,
+                                                                  final byte[] readBases,
+                                                                  final byte[] readQuals,
+                                                                  final byte[] insertionGOP,
+                                                                  final byte[] deletionGOP,
+                                                                  final byte[] overallGCP,
+                                                                  final int hapStartIndex,
+                                                                  final boolean recacheReadValues,
+                                                                  final int nextHapStartIndex) {
+        if ( ! constantsAreInitialized || recacheReadValues )
+            initializeReadValues(readQuals, insertionGOP, deletionGOP, overallGCP);
+
+        final float floatResult = computeFloat(haplotypeBases, readBases);
+        if ( floatResult >= MIN_ACCEPTED_FLOAT_RESULT && floatResult <= Float.MAX_VALUE )
+            return Math.log10(floatResult) - LOG10_INITIAL_CONSTANT_FLOAT;
+
+        numDoublePrecisionRecomputations++;
+        return Math.log10(computeDouble(haplotypeBases, readBases)) - LOG10_INITIAL_CONSTANT_DOUBLE;
+    }
+
+    /**
+     * Caches the transition probabilities and priors of each base of the read, in both precisions
+     *
+     * @param readQuals      base quality scores of the read
+     * @param insertionGOP   insertion quality scores of the read
+     * @param deletionGOP    deletion quality scores of the read
+     * @param overallGCP     overall gap continuation penalty
+     */
+    private void initializeReadValues(final byte[] readQuals, final byte[] insertionGOP, final byte[] deletionGOP, final byte[] overallGCP) {
+        for ( int i = 0; i < readQuals.length; i++ ) {
+            final int row = i + 1;
+            PairHMMModel.qualToTransProbs(transitionBuffer, insertionGOP[i], deletionGOP[i], overallGCP[i]);
+            matchToMatchProb[row] = transitionBuffer[matchToMatch];
+            indelToMatchProb[row] = transitionBuffer[indelToMatch];
+            matchToInsertionProb[row] = transitionBuffer[matchToInsertion];
+            insertionToInsertionProb[row] = transitionBuffer[insertionToInsertion];
+            matchToDeletionProb[row] = transitionBuffer[matchToDeletion];
+            deletionToDeletionProb[row] = transitionBuffer[deletionToDeletion];
+            matchToMatchProbF[row] = (float)matchToMatchProb[row];
+            indelToMatchProbF[row] = (float)indelToMatchProb[row];
+            matchToInsertionProbF[row] = (float)matchToInsertionProb[row];
+            insertionToInsertionProbF[row] = (float)insertionToInsertionProb[row];
+            matchToDeletionProbF[row] = (float)matchToDeletionProb[row];
+            deletionToDeletionProbF[row] = (float)deletionToDeletionProb[row];
+
+            // we divide e by 3 because the observed base could have come from any of the non-observed alleles
+            matchPrior[row] = QualityUtils.qualToProb(readQuals[i]);
+            mismatchPrior[row] = QualityUtils.qualToErrorProb(readQuals[i]) / (doNotUseTristateCorrection ? 1.0 : 3.0);
+            matchPriorF[row] = (float)matchPrior[row];
+            mismatchPriorF[row] = (float)mismatchPrior[row];
+        }
+        constantsAreInitialized = true;
+    }
+
+    /**
+     * Runs the HMM in single precision
+     *
+     * @return the scaled likelihood of the read, which may have underflowed
+     */
+    private float computeFloat(final byte[] haplotypeBases, final byte[] readBases) {
+        float[] prevM = prevMatchF, prevX = prevInsertionF, prevY = prevDeletionF;
+        float[] curM = curMatchF, curX = curInsertionF, curY = curDeletionF;
+
+        // free deletions in the beginning of the haplotype
+        Arrays.fill(prevM, 0, paddedHaplotypeLength, 0f);
+        Arrays.fill(prevX, 0, paddedHaplotypeLength, 0f);
+        Arrays.fill(prevY, 0, paddedHaplotypeLength, INITIAL_CONSTANT_FLOAT / haplotypeBases.length);
+
+        for ( int i = 1; i < paddedReadLength; i++ ) {
+            curM[0] = curX[0] = curY[0] = 0f;
+            final byte readBase = readBases[i - 1];
+            final boolean readBaseIsN = readBase == (byte) 'N';
+            final float pMatch = matchPriorF[i], pMismatch = mismatchPriorF[i];
+            final float mm = matchToMatchProbF[i], gm = indelToMatchProbF[i];
+            final float mx = matchToInsertionProbF[i], xx = insertionToInsertionProbF[i];
+            final float my = matchToDeletionProbF[i], yy = deletionToDeletionProbF[i];
+
+            // match and insertion states only depend on the previous row
+            for ( int j = 1; j < paddedHaplotypeLength; j++ ) {
+                final byte hapBase = haplotypeBases[j - 1];
+                final float prior = (hapBase == readBase || readBaseIsN || hapBase == (byte) 'N') ? pMatch : pMismatch;
+                curM[j] = prior * (prevM[j - 1] * mm + (prevX[j - 1] + prevY[j - 1]) * gm);
+                curX[j] = prevM[j] * mx + prevX[j] * xx;
+            }
+
+            // the deletion state runs along the current row
+            float y = 0f;
+            for ( int j = 1; j < paddedHaplotypeLength; j++ ) {
+                y = curM[j - 1] * my + y * yy;
+                curY[j] = y;
+            }
+
+            float[] swap = prevM; prevM = curM; curM = swap;
+            swap = prevX; prevX = curX; curX = swap;
+            swap = prevY; prevY = curY; curY = swap;
+        }
+
+        // sum all the paths ending in the match and insertion states of the last row
+        float result = 0f;
+        for ( int j = 1; j < paddedHaplotypeLength; j++ )
+            result += prevM[j] + prevX[j];
+        return result;
+    }
+
+    /**
+     * Runs the HMM in double precision
+     *
+     * @return the scaled likelihood of the read
+     */
+    private double computeDouble(final byte[] haplotypeBases, final byte[] readBases) {
+        if ( prevMatch == null ) {
+            prevMatch = new double[paddedMaxHaplotypeLength];
+            prevInsertion = new double[paddedMaxHaplotypeLength];
+            prevDeletion = new double[paddedMaxHaplotypeLength];
+            curMatch = new double[paddedMaxHaplotypeLength];
+            curInsertion = new double[paddedMaxHaplotypeLength];
+            curDeletion = new double[paddedMaxHaplotypeLength];
+        }
+
+        double[] prevM = prevMatch, prevX = prevInsertion, prevY = prevDeletion;
+        double[] curM = curMatch, curX = curInsertion, curY = curDeletion;
+
+        Arrays.fill(prevM, 0, paddedHaplotypeLength, 0.0);
+        Arrays.fill(prevX, 0, paddedHaplotypeLength, 0.0);
+        Arrays.fill(prevY, 0, paddedHaplotypeLength, INITIAL_CONSTANT_DOUBLE / haplotypeBases.length);
+
+        for ( int i = 1; i < paddedReadLength; i++ ) {
+            curM[0] = curX[0] = curY[0] = 0.0;
+            final byte readBase = readBases[i - 1];
+            final boolean readBaseIsN = readBase == (byte) 'N';
+            final double pMatch = matchPrior[i], pMismatch = mismatchPrior[i];
+            final double mm = matchToMatchProb[i], gm = indelToMatchProb[i];
+            final double mx = matchToInsertionProb[i], xx = insertionToInsertionProb[i];
+            final double my = matchToDeletionProb[i], yy = deletionToDeletionProb[i];
+
+            for ( int j = 1; j < paddedHaplotypeLength; j++ ) {
+                final byte hapBase = haplotypeBases[j - 1];
+                final double prior = (hapBase == readBase || readBaseIsN || hapBase == (byte) 'N') ? pMatch : pMismatch;
+                curM[j] = prior * (prevM[j - 1] * mm + (prevX[j - 1] + prevY[j - 1]) * gm);
+                curX[j] = prevM[j] * mx + prevX[j] * xx;
+            }
+
+            double y = 0.0;
+            for ( int j = 1; j < paddedHaplotypeLength; j++ ) {
+                y = curM[j - 1] * my + y * yy;
+                curY[j] = y;
+            }
+
+            double[] swap = prevM; prevM = curM; curM = swap;
+            swap = prevX; prevX = curX; curX = swap;
+            swap = prevY; prevY = curY; curY = swap;
+        }
+
+        double result = 0.0;
+        for ( int j = 1; j < paddedHaplotypeLength; j++ )
+            result += prevM[j] + prevX[j];
+        return result;
+    }
+}
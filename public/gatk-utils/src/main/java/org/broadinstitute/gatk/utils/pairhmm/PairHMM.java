@@ -65,7 +65,9 @@ public abstract class PairHMM {
         /* Debugging for vector implementation of LOGLESS_CACHING */
         DEBUG_VECTOR_LOGLESS_CACHING,
         /* Logless caching PairHMM that stores computations in 1D arrays instead of matrices, and which proceeds diagonally over the (read x haplotype) intersection matrix */
-        ARRAY_LOGLESS
+        ARRAY_LOGLESS,
+        /* Pure Java logless PairHMM that computes in single precision and recomputes in double precision only on underflow, like VECTOR_LOGLESS_CACHING but without the native library */
+        FLOAT_LOGLESS
     }
 
     /* Instruction sets for computing VectorLoglessHMM */
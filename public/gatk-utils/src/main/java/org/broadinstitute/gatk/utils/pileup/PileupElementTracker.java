@@ -38,6 +38,13 @@ import java.util.*;
 abstract class PileupElementTracker<PE extends PileupElement> implements Iterable<PE> {
     public abstract int size();
 
+    /**
+     * Get the element at index, in the order of iteration of this tracker
+     * @param index the index of the element, from 0 to size() - 1
+     * @return the element at index
+     */
+    public abstract PE get(int index);
+
     /**
      * Iterate through the PEs here, but in any order, which may improve performance
      * if you don't care about the underlying order the reads are coming to you in.
@@ -54,40 +61,132 @@ abstract class PileupElementTracker<PE extends PileupElement> implements Iterabl
     public abstract PileupElementTracker<PE> copy();
 }
 
+/**
+ * Tracks the elements of a single list, or a view of the elements at a set of indices of a list.
+ *
+ * Views share the list of the tracker they were made from, so filtering a pileup only costs an array of the
+ * indices it keeps, rather than a copy of the elements.  Views of views index directly into the shared list.
+ */
 class UnifiedPileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
     private final List<PE> pileup;
 
+    /**
+     * If not null, this tracker only contains the elements of pileup at these indices, in order
+     */
+    private final int[] indices;
+
     @Override
     public UnifiedPileupElementTracker<PE> copy() {
         UnifiedPileupElementTracker<PE> result = new UnifiedPileupElementTracker<PE>();
-        for(PE element : pileup)
+        for(PE element : this)
             result.add(element);
         return result;
     }
 
-    public UnifiedPileupElementTracker() { pileup = new LinkedList<PE>(); }
-    public UnifiedPileupElementTracker(List<PE> pileup) { this.pileup = pileup; }
+    public UnifiedPileupElementTracker() { this(new ArrayList<PE>()); }
+    public UnifiedPileupElementTracker(List<PE> pileup) { this(pileup, null); }
+
+    private UnifiedPileupElementTracker(final List<PE> pileup, final int[] indices) {
+        this.pileup = pileup;
+        this.indices = indices;
+    }
 
     public void add(PE element) {
+        if ( indices != null ) throw new UnsupportedOperationException("Cannot add elements to a view of a pileup");
         pileup.add(element);
     }
 
     public PE get(int index) {
-        return pileup.get(index);
+        return pileup.get(indices == null ? index : indices[index]);
     }
 
     public int size() {
-        return pileup.size();
+        return indices == null ? pileup.size() : indices.length;
+    }
+
+    public Iterator<PE> iterator() {
+        if ( indices == null )
+            return pileup.iterator();
+
+        return new Iterator<PE>() {
+            private int next = 0;
+
+            @Override public boolean hasNext() { return next < indices.length; }
+            @Override public PE next() {
+                if ( ! hasNext() ) throw new NoSuchElementException("No more elements in pileup view");
+                return pileup.get(indices[next++]);
+            }
+            @Override public void remove() { throw new UnsupportedOperationException("Cannot remove"); }
+        };
     }
 
-    public Iterator<PE> iterator() { return pileup.iterator(); }
     public Iterable<PE> unorderedIterable() { return this; }
+
+    /**
+     * Get the elements of this tracker allowed by filter
+     *
+     * @param filter the filter to apply to each element
+     * @return this tracker if every element is allowed, or a view of this tracker with the allowed elements
+     */
+    public UnifiedPileupElementTracker<PE> filter(final PileupElementFilter filter) {
+        // count first, so that we don't need anything but the exact indices we keep
+        int nAllowed = 0;
+        for ( final PE element : this ) {
+            if ( filter.allow(element) )
+                nAllowed++;
+        }
+        if ( nAllowed == size() )
+            return this;
+
+        final int[] selected = new int[nAllowed];
+        int index = 0, nSelected = 0;
+        for ( final PE element : this ) {
+            if ( filter.allow(element) )
+                selected[nSelected++] = index;
+            index++;
+        }
+        return view(selected);
+    }
+
+    /**
+     * Get a view of the elements of this tracker at selected
+     *
+     * @param selected indices of the elements of this tracker to keep, in increasing order.  The array is taken
+     *                 over by the view, so it must not be modified by the caller afterwards
+     * @return a non-null tracker with selected.length elements
+     */
+    public UnifiedPileupElementTracker<PE> view(final int[] selected) {
+        if ( ! (pileup instanceof RandomAccess) ) {
+            // views need cheap random access into the shared list, so fall back to a copy
+            final UnifiedPileupElementTracker<PE> copy = new UnifiedPileupElementTracker<PE>(new ArrayList<PE>(selected.length));
+            final Iterator<PE> it = iterator();
+            int index = -1;
+            PE element = null;
+            for ( final int next : selected ) {
+                for ( ; index < next; index++ )
+                    element = it.next();
+                copy.add(element);
+            }
+            return copy;
+        }
+
+        if ( indices != null ) {
+            for ( int i = 0; i < selected.length; i++ )
+                selected[i] = indices[selected[i]];
+        }
+        return new UnifiedPileupElementTracker<PE>(pileup, selected);
+    }
 }
 
 class PerSamplePileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
     private final Map<String,PileupElementTracker<PE>> pileup;
     private int size = 0;
 
+    /**
+     * The elements of all samples in merged order, built the first time an element is requested by index
+     */
+    private List<PE> mergedElements = null;
+
     public PerSamplePileupElementTracker() {
         pileup = new HashMap<String,PileupElementTracker<PE>>();
     }
@@ -123,6 +222,16 @@ class PerSamplePileupElementTracker<PE extends PileupElement> extends PileupElem
     public void addElements(final String sample, PileupElementTracker<PE> elements) {
         pileup.put(sample,elements);
         size += elements.size();
+        mergedElements = null;
+    }
+
+    public PE get(final int index) {
+        if ( mergedElements == null ) {
+            mergedElements = new ArrayList<PE>(size);
+            for ( final PE element : this )
+                mergedElements.add(element);
+        }
+        return mergedElements.get(index);
     }
 
     public Iterator<PE> iterator() { return new MergingPileupElementIterator<PE>(this); }
@@ -272,6 +272,37 @@ public interface ReadBackedPileup extends Iterable<PileupElement>, HasGenomeLoca
      */
     public int[] getMappingQuals();
 
+    /**
+     * Get the i-th element of this pileup, in the order of iteration over the pileup.  Unlike getBases() and
+     * friends, this doesn't allocate anything for pileups of a single sample or views of them.
+     *
+     * @param i the index of the element, from 0 to getNumberOfElements() - 1
+     * @return the i-th pileup element
+     */
+    public PileupElement getElement(int i);
+
+    /**
+     * Get the base of the i-th element of this pileup, without copying all of the bases as getBases() does
+     * @param i the index of the element, from 0 to getNumberOfElements() - 1
+     * @return the base of the i-th element
+     */
+    public byte getBase(int i);
+
+    /**
+     * Get the base quality of the i-th element of this pileup, without copying all of the quals as getQuals() does
+     * @param i the index of the element, from 0 to getNumberOfElements() - 1
+     * @return the base quality of the i-th element
+     */
+    public byte getQual(int i);
+
+    /**
+     * Get the mapping quality of the read of the i-th element of this pileup, without copying all of them as
+     * getMappingQuals() does
+     * @param i the index of the element, from 0 to getNumberOfElements() - 1
+     * @return the mapping quality of the i-th element
+     */
+    public int getMappingQual(int i);
+
     /**
      * Returns a new ReadBackedPileup that is sorted by start coordinate of the reads.
      *
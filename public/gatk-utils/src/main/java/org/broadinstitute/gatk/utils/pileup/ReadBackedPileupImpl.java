@@ -49,6 +49,22 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
     private int nDeletions = UNINITIALIZED_CACHED_INT_VALUE;            // cached value of the number of deletions
     private int nMQ0Reads = UNINITIALIZED_CACHED_INT_VALUE;             // cached value of the number of MQ0 reads
 
+    private final static PileupElementFilter NO_DELETIONS_FILTER = new PileupElementFilter() {
+        public boolean allow(final PileupElement p) { return !p.isDeletion(); }
+    };
+
+    private final static PileupElementFilter NO_MQ0_FILTER = new PileupElementFilter() {
+        public boolean allow(final PileupElement p) { return p.getRead().getMappingQuality() > 0; }
+    };
+
+    private final static PileupElementFilter POSITIVE_STRAND_FILTER = new PileupElementFilter() {
+        public boolean allow(final PileupElement p) { return !p.getRead().getReadNegativeStrandFlag(); }
+    };
+
+    private final static PileupElementFilter NEGATIVE_STRAND_FILTER = new PileupElementFilter() {
+        public boolean allow(final PileupElement p) { return p.getRead().getReadNegativeStrandFlag(); }
+    };
+
     /**
      * Create a new version of a read backed pileup at loc, using the reads and their corresponding
      * offsets.  This pileup will contain a list, in order of the reads, of the piled bases at
@@ -164,6 +180,16 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
     protected PileupElement createNewPileupElement(GATKSAMRecord read, int offset) {
         return LocusIteratorByState.createPileupForReadAndOffset(read, offset);
     }    
+
+    /**
+     * Get the elements of our unified (not per sample) tracker allowed by filter, as a view sharing our elements
+     *
+     * @param filter the filter to apply to each element
+     * @return a non-null tracker
+     */
+    private UnifiedPileupElementTracker<PileupElement> filterUnifiedTracker(final PileupElementFilter filter) {
+        return ((UnifiedPileupElementTracker<PileupElement>) pileupElementTracker).filter(filter);
+    }
     
     // --------------------------------------------------------
     //
@@ -193,15 +219,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
                 return createNewPileup(loc, filteredTracker);
 
             } else {
-                UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
-                UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-                for (PileupElement p : tracker) {
-                    if (!p.isDeletion()) {
-                        filteredTracker.add(p);
-                    }
-                }
-                return createNewPileup(loc, filteredTracker);
+                return createNewPileup(loc, filterUnifiedTracker(NO_DELETIONS_FILTER));
             }
         } else {
             return this;
@@ -242,7 +260,8 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return createNewPileup(loc, filteredTracker);
         } else {
-            Map<String, PileupElement> filteredPileup = new HashMap<String, PileupElement>();
+            final UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
+            final Map<String, PileupElement> filteredPileup = new HashMap<String, PileupElement>();
 
             for (PileupElement p : pileupElementTracker) {
                 String readName = p.getRead().getReadName();
@@ -270,11 +289,16 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
                 }
             }
 
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement filteredElement : filteredPileup.values())
-                filteredTracker.add(filteredElement);
+            // keep the surviving elements in their original order
+            final int[] selected = new int[filteredPileup.size()];
+            int index = 0, nSelected = 0;
+            for (PileupElement p : tracker) {
+                if (filteredPileup.get(p.getRead().getReadName()) == p)
+                    selected[nSelected++] = index;
+                index++;
+            }
 
-            return createNewPileup(loc, filteredTracker);
+            return createNewPileup(loc, tracker.view(selected));
         }
     }
 
@@ -301,15 +325,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
                 return createNewPileup(loc, filteredTracker);
 
             } else {
-                UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
-                UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-                for (PileupElement p : tracker) {
-                    if (p.getRead().getMappingQuality() > 0) {
-                        filteredTracker.add(p);
-                    }
-                }
-                return createNewPileup(loc, filteredTracker);
+                return createNewPileup(loc, filterUnifiedTracker(NO_MQ0_FILTER));
             }
         } else {
             return this;
@@ -328,15 +344,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return createNewPileup(loc, filteredTracker);
         } else {
-            UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-            for (PileupElement p : tracker) {
-                if (!p.getRead().getReadNegativeStrandFlag()) {
-                    filteredTracker.add(p);
-                }
-            }
-            return createNewPileup(loc, filteredTracker);
+            return createNewPileup(loc, filterUnifiedTracker(POSITIVE_STRAND_FILTER));
         }
     }
 
@@ -357,15 +365,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return createNewPileup(loc, filteredTracker);
         } else {
-            UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-            for (PileupElement p : tracker) {
-                if (p.getRead().getReadNegativeStrandFlag()) {
-                    filteredTracker.add(p);
-                }
-            }
-            return createNewPileup(loc, filteredTracker);
+            return createNewPileup(loc, filterUnifiedTracker(NEGATIVE_STRAND_FILTER));
         }
     }
 
@@ -388,14 +388,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
 
             return createNewPileup(loc, filteredTracker);
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-            for (PileupElement p : pileupElementTracker) {
-                if (filter.allow(p))
-                    filteredTracker.add(p);
-            }
-
-            return createNewPileup(loc, filteredTracker);
+            return createNewPileup(loc, filterUnifiedTracker(filter));
         }
     }
 
@@ -408,7 +401,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
      * @return
      */
     @Override
-    public ReadBackedPileupImpl getBaseAndMappingFilteredPileup(int minBaseQ, int minMapQ) {
+    public ReadBackedPileupImpl getBaseAndMappingFilteredPileup(final int minBaseQ, final int minMapQ) {
         if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
             PerSamplePileupElementTracker<PileupElement> tracker = (PerSamplePileupElementTracker<PileupElement>) pileupElementTracker;
             PerSamplePileupElementTracker<PileupElement> filteredTracker = new PerSamplePileupElementTracker<PileupElement>();
@@ -421,15 +414,11 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
 
             return createNewPileup(loc, filteredTracker);
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-            for (PileupElement p : pileupElementTracker) {
-                if (p.getRead().getMappingQuality() >= minMapQ && (p.isDeletion() || p.getQual() >= minBaseQ)) {
-                    filteredTracker.add(p);
+            return createNewPileup(loc, filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    return p.getRead().getMappingQuality() >= minMapQ && (p.isDeletion() || p.getQual() >= minBaseQ);
                 }
-            }
-
-            return createNewPileup(loc, filteredTracker);
+            }));
         }
     }
 
@@ -477,7 +466,7 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
      * @return A read-backed pileup containing only the reads in the given read group.
      */
     @Override
-    public ReadBackedPileupImpl getPileupForReadGroup(String targetReadGroupId) {
+    public ReadBackedPileupImpl getPileupForReadGroup(final String targetReadGroupId) {
         if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
             PerSamplePileupElementTracker<PileupElement> tracker = (PerSamplePileupElementTracker<PileupElement>) pileupElementTracker;
             PerSamplePileupElementTracker<PileupElement> filteredTracker = new PerSamplePileupElementTracker<PileupElement>();
@@ -490,17 +479,15 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement p : pileupElementTracker) {
-                GATKSAMRecord read = p.getRead();
-                if (targetReadGroupId != null) {
-                    if (read.getReadGroup() != null && targetReadGroupId.equals(read.getReadGroup().getReadGroupId()))
-                        filteredTracker.add(p);
-                } else {
-                    if (read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null)
-                        filteredTracker.add(p);
+            final UnifiedPileupElementTracker<PileupElement> filteredTracker = filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    final GATKSAMRecord read = p.getRead();
+                    if (targetReadGroupId != null)
+                        return read.getReadGroup() != null && targetReadGroupId.equals(read.getReadGroup().getReadGroupId());
+                    else
+                        return read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null;
                 }
-            }
+            });
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         }
     }
@@ -525,23 +512,21 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement p : pileupElementTracker) {
-                GATKSAMRecord read = p.getRead();
-                if (rgSet != null && !rgSet.isEmpty()) {
-                    if (read.getReadGroup() != null && rgSet.contains(read.getReadGroup().getReadGroupId()))
-                        filteredTracker.add(p);
-                } else {
-                    if (read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null)
-                        filteredTracker.add(p);
+            final UnifiedPileupElementTracker<PileupElement> filteredTracker = filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    final GATKSAMRecord read = p.getRead();
+                    if (rgSet != null && !rgSet.isEmpty())
+                        return read.getReadGroup() != null && rgSet.contains(read.getReadGroup().getReadGroupId());
+                    else
+                        return read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null;
                 }
-            }
+            });
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         }
     }
 
     @Override
-    public ReadBackedPileupImpl getPileupForLane(String laneID) {
+    public ReadBackedPileupImpl getPileupForLane(final String laneID) {
         if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
             PerSamplePileupElementTracker<PileupElement> tracker = (PerSamplePileupElementTracker<PileupElement>) pileupElementTracker;
             PerSamplePileupElementTracker<PileupElement> filteredTracker = new PerSamplePileupElementTracker<PileupElement>();
@@ -554,19 +539,17 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             }
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement p : pileupElementTracker) {
-                GATKSAMRecord read = p.getRead();
-                if (laneID != null) {
-                    if (read.getReadGroup() != null &&
-                            (read.getReadGroup().getReadGroupId().startsWith(laneID + ".")) ||   // lane is the same, but sample identifier is different
-                            (read.getReadGroup().getReadGroupId().equals(laneID)))               // in case there is no sample identifier, they have to be exactly the same
-                        filteredTracker.add(p);
-                } else {
-                    if (read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null)
-                        filteredTracker.add(p);
+            final UnifiedPileupElementTracker<PileupElement> filteredTracker = filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    final GATKSAMRecord read = p.getRead();
+                    if (laneID != null)
+                        return read.getReadGroup() != null &&
+                                (read.getReadGroup().getReadGroupId().startsWith(laneID + ".")) ||   // lane is the same, but sample identifier is different
+                                (read.getReadGroup().getReadGroupId().equals(laneID));               // in case there is no sample identifier, they have to be exactly the same
+                    else
+                        return read.getReadGroup() == null || read.getReadGroup().getReadGroupId() == null;
                 }
-            }
+            });
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         }
     }
@@ -628,38 +611,33 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
             return createNewPileup(loc, filteredTracker);
         } else {
             UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-
-            Iterator positionIter = positions.iterator();
 
-            while (positionIter.hasNext()) {
-                int nextReadToKeep = (Integer) positionIter.next();
-                filteredTracker.add(tracker.get(nextReadToKeep));
-            }
+            final int[] selected = new int[positions.size()];
+            int nSelected = 0;
+            for (final int nextReadToKeep : positions)
+                selected[nSelected++] = nextReadToKeep;
 
-            return createNewPileup(getLocation(), filteredTracker);
+            return createNewPileup(getLocation(), tracker.view(selected));
         }
     }
 
     @Override
-    public ReadBackedPileup getPileupForSamples(Collection<String> sampleNames) {
+    public ReadBackedPileup getPileupForSamples(final Collection<String> sampleNames) {
         if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
             PerSamplePileupElementTracker<PileupElement> tracker = (PerSamplePileupElementTracker<PileupElement>) pileupElementTracker;
             PileupElementTracker<PileupElement> filteredElements = tracker.getElements(sampleNames);
             return filteredElements != null ? createNewPileup(loc, filteredElements) : null;
         } else {
-            HashSet<String> hashSampleNames = new HashSet<String>(sampleNames);                                         // to speed up the "contains" access in the for loop
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement p : pileupElementTracker) {
-                GATKSAMRecord read = p.getRead();
-                if (sampleNames != null) {                                                                              // still checking on sampleNames because hashSampleNames will never be null. And empty means something else.
-                    if (read.getReadGroup() != null && hashSampleNames.contains(read.getReadGroup().getSample()))
-                        filteredTracker.add(p);
-                } else {
-                    if (read.getReadGroup() == null || read.getReadGroup().getSample() == null)
-                        filteredTracker.add(p);
+            final HashSet<String> hashSampleNames = new HashSet<String>(sampleNames);                                   // to speed up the "contains" access in the filter
+            final UnifiedPileupElementTracker<PileupElement> filteredTracker = filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    final GATKSAMRecord read = p.getRead();
+                    if (sampleNames != null)                                                                            // still checking on sampleNames because hashSampleNames will never be null. And empty means something else.
+                        return read.getReadGroup() != null && hashSampleNames.contains(read.getReadGroup().getSample());
+                    else
+                        return read.getReadGroup() == null || read.getReadGroup().getSample() == null;
                 }
-            }
+            });
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         }
     }
@@ -675,46 +653,61 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
                     result.put(sample, createNewPileup(loc, filteredElements));
             }
         } else {
-            Map<String, UnifiedPileupElementTracker<PileupElement>> trackerMap = new HashMap<String, UnifiedPileupElementTracker<PileupElement>>();
+            final UnifiedPileupElementTracker<PileupElement> tracker = (UnifiedPileupElementTracker<PileupElement>) pileupElementTracker;
+            final Map<String, int[]> countsBySample = new HashMap<String, int[]>();
+
+            for (String sample : sampleNames)                                                                           // initialize counts for each sample
+                countsBySample.put(sample, new int[1]);
+            for (PileupElement p : tracker) {                                                                           // count the elements of each requested sample. Completely ignore the rest
+                final int[] count = getCountForSample(countsBySample, p);
+                if (count != null)
+                    count[0]++;
+            }
 
-            for (String sample : sampleNames) {                                                                         // initialize pileups for each sample
-                UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-                trackerMap.put(sample, filteredTracker);
+            final Map<String, int[]> selectedBySample = new HashMap<String, int[]>();
+            for (Map.Entry<String, int[]> entry : countsBySample.entrySet()) {
+                selectedBySample.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
             }
-            for (PileupElement p : pileupElementTracker) {                                                                         // go through all pileup elements only once and add them to the respective sample's pileup
-                GATKSAMRecord read = p.getRead();
-                if (read.getReadGroup() != null) {
-                    String sample = read.getReadGroup().getSample();
-                    UnifiedPileupElementTracker<PileupElement> tracker = trackerMap.get(sample);
-                    if (tracker != null)                                                                                // we only add the pileup the requested samples. Completely ignore the rest
-                        tracker.add(p);
-                }
+
+            int index = 0;
+            for (PileupElement p : tracker) {                                                                           // go through all pileup elements once more, recording their indices in the respective sample's pileup
+                final int[] count = getCountForSample(countsBySample, p);
+                if (count != null)
+                    selectedBySample.get(p.getRead().getReadGroup().getSample())[count[0]++] = index;
+                index++;
             }
-            for (Map.Entry<String, UnifiedPileupElementTracker<PileupElement>> entry : trackerMap.entrySet())                      // create the ReadBackedPileup for each sample
-                result.put(entry.getKey(), createNewPileup(loc, entry.getValue()));
+            for (Map.Entry<String, int[]> entry : selectedBySample.entrySet())                                          // create a view of our elements for each sample
+                result.put(entry.getKey(), createNewPileup(loc, tracker.view(entry.getValue())));
         }
         return result;
     }
 
 
+    /**
+     * Get the counter of the sample of the read of p, for getPileupsForSamples
+     */
+    private static int[] getCountForSample(final Map<String, int[]> countsBySample, final PileupElement p) {
+        final GATKSAMRecord read = p.getRead();
+        return read.getReadGroup() != null ? countsBySample.get(read.getReadGroup().getSample()) : null;
+    }
+
     @Override
-    public ReadBackedPileup getPileupForSample(String sampleName) {
+    public ReadBackedPileup getPileupForSample(final String sampleName) {
         if (pileupElementTracker instanceof PerSamplePileupElementTracker) {
             PerSamplePileupElementTracker<PileupElement> tracker = (PerSamplePileupElementTracker<PileupElement>) pileupElementTracker;
             PileupElementTracker<PileupElement> filteredElements = tracker.getElements(sampleName);
             return filteredElements != null ? createNewPileup(loc, filteredElements) : null;
         } else {
-            UnifiedPileupElementTracker<PileupElement> filteredTracker = new UnifiedPileupElementTracker<PileupElement>();
-            for (PileupElement p : pileupElementTracker) {
-                GATKSAMRecord read = p.getRead();
-                if (sampleName != null) {
-                    if (read.getReadGroup() != null && sampleName.equals(read.getReadGroup().getSample()))
-                        filteredTracker.add(p);
-                } else {
-                    if (read.getReadGroup() == null || read.getReadGroup().getSample() == null)
-                        filteredTracker.add(p);
+            final UnifiedPileupElementTracker<PileupElement> filteredTracker = filterUnifiedTracker(new PileupElementFilter() {
+                public boolean allow(final PileupElement p) {
+                    final GATKSAMRecord read = p.getRead();
+                    if (sampleName != null)
+                        return read.getReadGroup() != null && sampleName.equals(read.getReadGroup().getSample());
+                    else
+                        return read.getReadGroup() == null || read.getReadGroup().getSample() == null;
                 }
-            }
+            });
             return filteredTracker.size() > 0 ? createNewPileup(loc, filteredTracker) : null;
         }
     }
@@ -960,6 +953,26 @@ public class ReadBackedPileupImpl implements ReadBackedPileup {
         return v;
     }
 
+    @Override
+    public PileupElement getElement(final int i) {
+        return pileupElementTracker.get(i);
+    }
+
+    @Override
+    public byte getBase(final int i) {
+        return pileupElementTracker.get(i).getBase();
+    }
+
+    @Override
+    public byte getQual(final int i) {
+        return pileupElementTracker.get(i).getQual();
+    }
+
+    @Override
+    public int getMappingQual(final int i) {
+        return pileupElementTracker.get(i).getRead().getMappingQuality();
+    }
+
     /**
      * Get an array of the mapping qualities
      *
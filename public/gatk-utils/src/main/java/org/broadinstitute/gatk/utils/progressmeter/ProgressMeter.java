@@ -31,6 +31,7 @@ import com.google.java.contract.Requires;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.*;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.fasta.SharedIndexedFastaSequenceFile;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -155,6 +156,11 @@ public class ProgressMeter {
     /** We use the SimpleTimer to time our run */
     private final SimpleTimer timer = new SimpleTimer();
 
+    /**
+     * A potentially null shared reference store whose hits and misses we report along with our progress
+     */
+    private SharedIndexedFastaSequenceFile reference = null;
+
     private GenomeLoc maxGenomeLoc = null;
     private Position position = new Position(PositionStatus.STARTING);
     private long nTotalRecordsProcessed = 0;
@@ -212,6 +218,24 @@ public class ProgressMeter {
         return progressMeterDaemon;
     }
 
+    /**
+     * Report the hits and misses of the shared reference store along with our progress
+     *
+     * @param reference the shared reference store being traversed, or null to stop reporting
+     */
+    public synchronized void setReference(final SharedIndexedFastaSequenceFile reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * Print the cache hits and misses of the reference, if we have one, to our logger
+     */
+    private void printReferenceStatistics() {
+        if ( reference != null )
+            logger.info(String.format("Reference cache: %d hits, %d misses, %.2f%% efficiency",
+                    reference.getCacheHits(), reference.getCacheMisses(), reference.calcEfficiency()));
+    }
+
     /**
      * Start up the progress meter, printing initialization message and starting up the
      * daemon thread for periodic printing.
@@ -383,6 +407,8 @@ public class ProgressMeter {
                 logger.info(String.format(progressFormatString,
                         position.getMessage(), progressData.getUnitsProcessed()*1.0, elapsed, unitRate,
                         100*fractionGenomeTargetCompleted, estTotalRuntime, timeToCompletion));
+                if ( logger.isDebugEnabled() )
+                    printReferenceStatistics();
 
             }
 
@@ -436,6 +462,7 @@ public class ProgressMeter {
 
         logger.info(String.format("Total runtime %.2f secs, %.2f min, %.2f hours",
                 timer.getElapsedTime(), timer.getElapsedTime() / 60, timer.getElapsedTime() / 3600));
+        printReferenceStatistics();
 
         if ( performanceLog != null )
             performanceLog.close();
@@ -0,0 +1,239 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.Tribble;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.file.FSLockWithShared;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.EnumSet;
+import java.util.Scanner;
+import java.util.zip.CRC32;
+
+/**
+ * Pre-decoded binary copies of text VCF tracks.
+ *
+ * The sidecar of input.vcf is a BCF2 file, input.vcf.gatk.bcf, built from the VCF the first time it's needed.  Later
+ * runs read the sidecar instead of parsing the text, indexing it by genomic block through the regular Tribble index
+ * auto-creation, and decoding the genotypes of each record lazily.
+ *
+ * Next to the sidecar, input.vcf.gatk.bcf.source records the length, modification time and CRC32 checksum of the
+ * VCF it was built from.  A sidecar is only used while the VCF still has the same length and checksum; the checksum
+ * is only recomputed when the modification time changed, so that unchanged multi-GB files aren't read at startup.
+ *
+ * Sidecars are created and validated under the same file locking protocol as Tribble indices: readers hold a
+ * shared lock on the sidecar while validating it, and it is (re)built under an exclusive lock.  If a sidecar
+ * can't be locked, written, or built (e.g. because the VCF uses fields missing from its header, which BCF2 can't
+ * represent), the VCF is read as text.
+ */
+class BCFSidecar {
+    private final static Logger logger = Logger.getLogger(BCFSidecar.class);
+
+    public static final String SIDECAR_EXTENSION = ".gatk.bcf";
+    public static final String SOURCE_EXTENSION = ".source";
+
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+    private final SAMSequenceDictionary dict;
+
+    /**
+     * If true, use existing valid sidecars but never create them, and don't lock them.
+     */
+    private final boolean disableAutoCreation;
+
+    /**
+     * @param dict the reference sequence dictionary, used for the contigs of VCFs without contig header lines.
+     * @param disableAutoCreation if true, don't create sidecars, and don't use file locking when reading existing ones.
+     */
+    public BCFSidecar(final SAMSequenceDictionary dict, final boolean disableAutoCreation) {
+        this.dict = dict;
+        this.disableAutoCreation = disableAutoCreation;
+    }
+
+    /**
+     * @param inputFile a VCF file
+     * @return the location of the sidecar of inputFile
+     */
+    public static File sidecarFile(final File inputFile) {
+        return new File(inputFile.getAbsolutePath() + SIDECAR_EXTENSION);
+    }
+
+    private static File sourceFile(final File sidecarFile) {
+        return new File(sidecarFile.getAbsolutePath() + SOURCE_EXTENSION);
+    }
+
+    /**
+     * Gets an up-to-date sidecar of inputFile, building it if necessary.
+     *
+     * @param inputFile the VCF file
+     * @param codec a codec for reading inputFile as text
+     * @return the sidecar, or null if inputFile should be read as text
+     */
+    public synchronized File getSidecar(final File inputFile, final FeatureCodec codec) {
+        final File sidecarFile = sidecarFile(inputFile);
+        final FSLockWithShared lock = new FSLockWithShared(sidecarFile);
+
+        if ( sidecarFile.canRead() ) {
+            if ( disableAutoCreation )
+                return isCurrent(inputFile, sidecarFile) ? sidecarFile : null;
+
+            boolean locked = false;
+            try {
+                locked = lock.sharedLock();
+                if ( ! locked ) {
+                    logger.info(String.format("Could not acquire a shared lock on sidecar file %s, reading %s as text for this GATK run.",
+                                              sidecarFile, inputFile));
+                    return null;
+                }
+                if ( isCurrent(inputFile, sidecarFile) )
+                    return sidecarFile;
+            } finally {
+                if ( locked ) lock.unlock();
+            }
+            logger.warn("Sidecar file " + sidecarFile + " is out of date, rebuilding it");
+        }
+
+        if ( disableAutoCreation )
+            return null;
+
+        boolean locked = false;
+        try {
+            locked = lock.exclusiveLock();
+            if ( ! locked ) {
+                logger.warn("Unable to lock " + sidecarFile + " to write the sidecar file, reading " + inputFile + " as text");
+                return null;
+            }
+
+            // someone else may have built it while we were waiting for the lock
+            if ( sidecarFile.canRead() && isCurrent(inputFile, sidecarFile) )
+                return sidecarFile;
+
+            buildSidecar(inputFile, codec, sidecarFile);
+            return sidecarFile;
+        } catch ( IOException | RuntimeException e ) {
+            logger.warn("Unable to create sidecar file " + sidecarFile + " (" + e.getMessage() + "), reading " + inputFile + " as text");
+            deleteSidecar(sidecarFile);
+            return null;
+        } finally {
+            if ( locked ) lock.unlock();
+        }
+    }
+
+    /**
+     * Is the sidecar built from the current contents of inputFile?
+     */
+    protected boolean isCurrent(final File inputFile, final File sidecarFile) {
+        final File sourceFile = sourceFile(sidecarFile);
+        if ( ! sourceFile.canRead() )
+            return false;
+
+        try ( final Scanner scanner = new Scanner(sourceFile) ) {
+            final long length = scanner.nextLong();
+            final long lastModified = scanner.nextLong();
+            final long checksum = scanner.nextLong();
+
+            if ( length != inputFile.length() )
+                return false;
+            return lastModified == inputFile.lastModified() || checksum == computeChecksum(inputFile);
+        } catch ( IOException | RuntimeException e ) {
+            logger.warn("Unable to read " + sourceFile + " (" + e.getMessage() + "), the sidecar file will not be trusted");
+            return false;
+        }
+    }
+
+    /**
+     * Write the sidecar and the record of its source.  The record is written last, so a partially written
+     * sidecar is never trusted.
+     */
+    protected void buildSidecar(final File inputFile, final FeatureCodec codec, final File sidecarFile) throws IOException {
+        logger.info("Writing binary sidecar file " + sidecarFile + " for " + inputFile);
+        deleteSidecar(sidecarFile);
+
+        // read the checksum first, so that changes to the input while we convert it invalidate the sidecar
+        final long lastModified = inputFile.lastModified();
+        final long checksum = computeChecksum(inputFile);
+
+        try ( final AbstractFeatureReader<Feature, ?> reader = AbstractFeatureReader.getFeatureReader(inputFile.getAbsolutePath(), codec, false) ) {
+            final VCFHeader header = (VCFHeader)reader.getHeader();
+            final VCFHeader sidecarHeader = new VCFHeader(header.getMetaDataInInputOrder(), header.getGenotypeSamples());
+            if ( sidecarHeader.getContigLines().isEmpty() && dict != null )
+                sidecarHeader.setSequenceDictionary(dict);
+
+            final VariantContextWriter writer = new VariantContextWriterBuilder()
+                    .setOutputFile(sidecarFile)
+                    .setOutputFileType(VariantContextWriterBuilder.OutputType.BCF)
+                    .setReferenceDictionary(dict)
+                    .setOptions(EnumSet.noneOf(Options.class))
+                    .build();
+            try ( final CloseableTribbleIterator<Feature> iterator = reader.iterator() ) {
+                writer.writeHeader(sidecarHeader);
+                for ( final Feature feature : iterator )
+                    writer.add((VariantContext)feature);
+            } finally {
+                writer.close();
+            }
+        }
+
+        try ( final PrintWriter sourceWriter = new PrintWriter(sourceFile(sidecarFile)) ) {
+            sourceWriter.println(inputFile.length() + " " + lastModified + " " + checksum);
+        }
+    }
+
+    private static void deleteSidecar(final File sidecarFile) {
+        sourceFile(sidecarFile).delete();
+        Tribble.indexFile(sidecarFile).delete();
+        sidecarFile.delete();
+    }
+
+    /**
+     * @return the CRC32 checksum of the contents of file
+     */
+    protected static long computeChecksum(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try ( final InputStream stream = new FileInputStream(file) ) {
+            int nRead;
+            while ( (nRead = stream.read(buffer)) != -1 )
+                crc.update(buffer, 0, nRead);
+        }
+        return crc.getValue();
+    }
+}
@@ -35,6 +35,7 @@ import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.classloader.PluginManager;
 import htsjdk.variant.vcf.AbstractVCFCodec;
+import htsjdk.variant.vcf.VCFCodec;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.help.GATKDocUtils;
 
@@ -261,7 +262,27 @@ public class FeatureManager  {
     @Ensures("result != null")
     public FeatureCodec createCodec(final FeatureDescriptor descriptor, final String name, final GenomeLocParser genomeLocParser,
                                     final String remappedSampleName) {
-        FeatureCodec codex = pluginManager.createByType(descriptor.getCodecClass());
+        return createCodec(descriptor, name, genomeLocParser, remappedSampleName, null);
+    }
+
+    /**
+     * Create a new FeatureCodec of the type described in descriptor, as above, decoding VCF genotypes
+     * for the samples in sampleSelection only
+     *
+     * @param descriptor FeatureDescriptor of the Tribble FeatureCodec we want to create
+     * @param name the name to assign this codec
+     * @param genomeLocParser GenomeLocParser for ReferenceDependentFeatureCodecs
+     * @param remappedSampleName replacement sample name for single-sample vcfs, or null if we're not performing
+     *                           sample name remapping
+     * @param sampleSelection the samples whose genotypes a VCFCodec decodes, or null to decode all of them
+     * @return the feature codec itself
+     */
+    @Requires({"descriptor != null", "name != null", "genomeLocParser != null"})
+    @Ensures("result != null")
+    public FeatureCodec createCodec(final FeatureDescriptor descriptor, final String name, final GenomeLocParser genomeLocParser,
+                                    final String remappedSampleName, final VCFSampleSelection sampleSelection) {
+        FeatureCodec codex = sampleSelection != null && descriptor.getCodecClass().equals(VCFCodec.class) ?
+                sampleSelection.createCodec() : pluginManager.createByType(descriptor.getCodecClass());
         if ( codex instanceof NameAwareCodec )
             ((NameAwareCodec)codex).setName(name);
         if ( codex instanceof ReferenceDependentFeatureCodec )
@@ -27,6 +27,8 @@ package org.broadinstitute.gatk.utils.refdata.tracks;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import org.apache.log4j.Logger;
@@ -54,6 +56,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -96,6 +99,12 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
     // Map of file name -> new sample name used when performing on-the-fly sample renaming
     private final Map<String, String> sampleRenameMap;
 
+    // If not null, VCF tracks are read from binary sidecar files, created as needed
+    private final BCFSidecar sidecars;
+
+    // Map of track name -> samples whose genotypes are decoded from that track
+    private final Map<String, VCFSampleSelection> sampleSelections = new HashMap<String, VCFSampleSelection>();
+
     /**
      * Construct an RMDTrackerBuilder, allowing the user to define tracks to build after-the-fact.  This is generally
      * used when walkers want to directly manage the ROD system for whatever reason.  Before using this constructor,
@@ -113,12 +122,31 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
                            final ValidationExclusion.TYPE validationExclusionType,
                            final boolean disableAutoIndexCreation,
                            final Map<String, String> sampleRenameMap) {
+        this(dict, genomeLocParser, validationExclusionType, disableAutoIndexCreation, sampleRenameMap, false);
+    }
+
+    /**
+     * Construct an RMDTrackerBuilder, optionally reading VCF tracks from pre-decoded binary sidecar files.
+     * @param dict Sequence dictionary to use.
+     * @param genomeLocParser Location parser to use.
+     * @param validationExclusionType Types of validations to exclude, for sequence dictionary verification.
+     * @param disableAutoIndexCreation Do not auto-create index or sidecar files, and do not use file locking when accessing them.
+     * @param sampleRenameMap Map of file name -> new sample name used when performing on-the-fly sample renaming
+     * @param useBinarySidecars Read uncompressed VCF files from BCF2 sidecar files, which are created next to them as needed.
+     */
+    public RMDTrackBuilder(final SAMSequenceDictionary dict,
+                           final GenomeLocParser genomeLocParser,
+                           final ValidationExclusion.TYPE validationExclusionType,
+                           final boolean disableAutoIndexCreation,
+                           final Map<String, String> sampleRenameMap,
+                           final boolean useBinarySidecars) {
         this.dict = dict;
         this.validationExclusionType = validationExclusionType;
         this.genomeLocParser = genomeLocParser;
         this.featureManager = new FeatureManager(ValidationExclusion.lenientVCFProcessing(validationExclusionType));
         this.disableAutoIndexCreation = disableAutoIndexCreation;
         this.sampleRenameMap = sampleRenameMap;
+        this.sidecars = useBinarySidecars ? new BCFSidecar(dict, disableAutoIndexCreation) : null;
     }
 
     /**
@@ -145,17 +173,46 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
         if (descriptor == null)
             throw new UserException.BadArgumentValue("-B",fileDescriptor.getType());
 
+        // the descriptor of the codec that actually decodes the file, if we're reading a sidecar file instead
+        FeatureManager.FeatureDescriptor readerDescriptor = descriptor;
+
         // return a feature reader track
         Pair<AbstractFeatureReader, SAMSequenceDictionary> pair;
+        final File sidecarFile;
         if (ArgumentTypeDescriptor.isCompressed(inputFile.toString()))
             pair = createTabixIndexedFeatureSource(descriptor, name, inputFile);
+        else if ((sidecarFile = getBinarySidecar(descriptor, name, inputFile, fileDescriptor.getStorageType())) != null) {
+            readerDescriptor = getFeatureManager().getByCodec(BCF2Codec.class);
+            pair = getFeatureSource(readerDescriptor, name, sidecarFile, RMDStorageType.FILE);
+        }
         else
             pair = getFeatureSource(descriptor, name, inputFile, fileDescriptor.getStorageType());
         if (pair == null) throw new UserException.CouldNotReadInputFile(inputFile, "Unable to make the feature reader for input file");
 
         validateVariantAgainstSequenceDictionary(name, descriptor.getName(), pair.first, pair.second);
 
-        return new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, createCodec(descriptor, name, inputFile));
+        return new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, createCodec(readerDescriptor, name, inputFile));
+    }
+
+    /**
+     * Get the up-to-date binary sidecar of a VCF track, creating it if necessary
+     *
+     * Only uncompressed VCF files, without on-the-fly sample renaming, are read from sidecars.
+     *
+     * @param descriptor the FeatureDescriptor describing the FeatureCodec of the track
+     * @param name the name of the track
+     * @param inputFile the file to load
+     * @param storageType How the RMD is streamed into the input file.
+     * @return the sidecar file, or null if the track should be read from inputFile
+     */
+    private File getBinarySidecar(final FeatureManager.FeatureDescriptor descriptor, final String name,
+                                  final File inputFile, final RMDStorageType storageType) {
+        if (sidecars == null || storageType != RMDStorageType.FILE || !descriptor.getCodecClass().equals(VCFCodec.class))
+            return null;
+        if (sampleRenameMap != null && sampleRenameMap.containsKey(inputFile.getAbsolutePath()))
+            return null;
+        // the sidecar holds all of the samples, whatever the track's sample selection
+        return sidecars.getSidecar(inputFile, featureManager.createCodec(descriptor, name, genomeLocParser, null));
     }
 
     /**
@@ -237,7 +294,25 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
         // or the user's sample rename map file didn't contain an entry for this file:
         final String remappedSampleName = sampleRenameMap != null ? sampleRenameMap.get(inputFile.getAbsolutePath()) : null;
 
-        return featureManager.createCodec(descriptor, name, genomeLocParser, remappedSampleName);
+        return featureManager.createCodec(descriptor, name, genomeLocParser, remappedSampleName, getSampleSelection(name));
+    }
+
+    /**
+     * Get the samples whose genotypes are decoded from the VCF track with the given name.  Changes to the selection
+     * apply to all readers of the track, including those that were already created.
+     *
+     * Tracks read from binary sidecar files always decode all of their samples, lazily.
+     *
+     * @param name the name of the track
+     * @return the selection, initially all samples
+     */
+    public synchronized VCFSampleSelection getSampleSelection(final String name) {
+        VCFSampleSelection selection = sampleSelections.get(name);
+        if (selection == null) {
+            selection = new VCFSampleSelection();
+            sampleSelections.put(name, selection);
+        }
+        return selection;
     }
 
     /**
@@ -0,0 +1,195 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The samples whose genotypes are decoded from a VCF track.
+ *
+ * Walkers that only look at some of the samples of a VCF, or at none of its genotypes, select them before the
+ * traversal starts.  The codecs created by createCodec() then cut the columns of all other samples out of each
+ * line before it is parsed, so that decoding a record costs in proportion to the selected samples instead of the
+ * width of the file.  Records decoded this way only carry genotypes for the selected samples, but the header of
+ * the track still lists all of them.
+ */
+public class VCFSampleSelection {
+    /**
+     * The selected samples, or null if the genotypes of all samples are decoded.
+     */
+    private volatile Set<String> samples = null;
+
+    /**
+     * Decode the genotypes of all samples.
+     */
+    public void selectAllSamples() {
+        this.samples = null;
+    }
+
+    /**
+     * Decode the genotypes of only the given samples.  Samples that aren't in the VCF are ignored.
+     * @param samples The samples to decode, or an empty collection to decode no genotypes at all.
+     */
+    public void selectSamples(final Collection<String> samples) {
+        if ( samples == null ) throw new IllegalArgumentException("samples cannot be null");
+        this.samples = Collections.unmodifiableSet(new LinkedHashSet<String>(samples));
+    }
+
+    /**
+     * @return The selected samples, or null if all samples are decoded.
+     */
+    public Set<String> getSelectedSamples() {
+        return samples;
+    }
+
+    /**
+     * Create a VCF codec that decodes only the genotypes of the samples selected at the time each line is decoded.
+     * @return A new codec.
+     */
+    public VCFCodec createCodec() {
+        return new VCFCodec() {
+            // the header as read from the file
+            private VCFHeader fileHeader = null;
+
+            // the selection the header and columns below were computed for
+            private Set<String> appliedSamples = null;
+
+            // the sample columns to keep, in increasing order, or null to keep the whole line
+            private int[] selectedColumns = null;
+
+            @Override
+            public Object readActualHeader(final LineIterator lineIterator) {
+                final Object header = super.readActualHeader(lineIterator);
+                fileHeader = this.header;
+                appliedSamples = null;
+                selectedColumns = null;
+                return header;
+            }
+
+            @Override
+            public VariantContext decode(final String line) {
+                final Set<String> selected = samples;
+                if ( selected != appliedSamples && fileHeader != null )
+                    applySelection(selected);
+                if ( selectedColumns == null || line.startsWith(VCFHeader.HEADER_INDICATOR) )
+                    return super.decode(line);
+                return super.decode(subsetLine(line, selectedColumns));
+            }
+
+            private void applySelection(final Set<String> selected) {
+                appliedSamples = selected;
+                selectedColumns = getSelectedColumns(fileHeader.getGenotypeSamples(), selected);
+                if ( selectedColumns == null ) {
+                    this.header = fileHeader;
+                } else {
+                    final List<String> selectedNames = new ArrayList<String>(selectedColumns.length);
+                    for ( final int column : selectedColumns )
+                        selectedNames.add(fileHeader.getGenotypeSamples().get(column));
+                    this.header = new VCFHeader(fileHeader.getMetaDataInInputOrder(), selectedNames);
+                }
+
+                // the split buffers are sized for the header they were first used with
+                parts = null;
+                genotypeParts = null;
+            }
+        };
+    }
+
+    /**
+     * Get the sample columns of a VCF to keep for a selection.
+     * @param fileSamples The samples of the VCF, in column order.
+     * @param selected The selected samples, or null for all samples.
+     * @return The indices of the selected samples in fileSamples, in increasing order, or null if all columns are kept.
+     */
+    static int[] getSelectedColumns(final List<String> fileSamples, final Set<String> selected) {
+        if ( selected == null || fileSamples.isEmpty() )
+            return null;
+
+        final int[] columns = new int[fileSamples.size()];
+        int nColumns = 0;
+        for ( int i = 0; i < fileSamples.size(); i++ )
+            if ( selected.contains(fileSamples.get(i)) )
+                columns[nColumns++] = i;
+
+        if ( nColumns == fileSamples.size() )
+            return null;
+
+        final int[] selectedColumns = new int[nColumns];
+        System.arraycopy(columns, 0, selectedColumns, 0, nColumns);
+        return selectedColumns;
+    }
+
+    /**
+     * Cut a VCF record down to its site fields, and the FORMAT field and given sample columns if any are given.
+     * Only the line up to the last selected column is scanned.
+     * @param line A VCF record.
+     * @param selectedColumns The sample columns to keep, in increasing order.
+     * @return The record without the other sample columns, or line itself if it doesn't have genotype columns.
+     */
+    static String subsetLine(final String line, final int[] selectedColumns) {
+        // the site fields end at the 8th tab, and the FORMAT field at the 9th
+        final int nFieldsToSkip = selectedColumns.length == 0 ? 8 : 9;
+        int end = -1;
+        for ( int i = 0; i < nFieldsToSkip; i++ ) {
+            end = line.indexOf('\t', end + 1);
+            if ( end == -1 )
+                return line;
+        }
+
+        if ( selectedColumns.length == 0 )
+            return line.substring(0, end);
+
+        final StringBuilder subset = new StringBuilder(end + 16 * selectedColumns.length);
+        subset.append(line, 0, end);
+        int column = 0;
+        int start = end + 1;
+        for ( final int selectedColumn : selectedColumns ) {
+            // skip to the start of the selected column
+            while ( column < selectedColumn && start > 0 ) {
+                start = line.indexOf('\t', start) + 1;
+                column++;
+            }
+            if ( start == 0 )
+                break;
+
+            final int stop = line.indexOf('\t', start);
+            subset.append('\t').append(line, start, stop == -1 ? line.length() : stop);
+            start = stop + 1;
+            column++;
+        }
+        return subset.toString();
+    }
+}
@@ -0,0 +1,454 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pairwise discrete Smith-Waterman alignment that doesn't allocate a matrix per alignment
+ *
+ * This produces exactly the same cigars and alignment offsets as SWPairwiseAlignment, for every overhang strategy,
+ * but only ever keeps two rows of scores around: the scores of the reference bases against the alternate sequence
+ * come from a precomputed query profile, and the only full matrix, the back track, lives in a flat buffer that is
+ * reused by all of the alignments made on the same thread.  The back track is only read from the single best cell.
+ *
+ * Optionally the calculation can be restricted to a band of diagonals around the corner to corner paths, which is
+ * appropriate when the two sequences are expected to align end to end (e.g. a haplotype against its reference).
+ * Alignments that leave the band are not found, so banded results only match SWPairwiseAlignment when the best
+ * alignment stays within bandWidth bases of those paths.
+ *
+ * ************************************************************************
+ * ****                    IMPORTANT NOTE:                             ****
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ * ************************************************************************
+ */
+public final class BandedSWPairwiseAlignment extends SWPairwiseAlignment {
+
+    /**
+     * Band width that makes the aligner consider the whole matrix
+     */
+    public static final int NO_BAND = -1;
+
+    /**
+     * Score of the cells outside of the band; well below anything the recursion can produce
+     */
+    private static final int LOW_INIT_VALUE = Integer.MIN_VALUE / 2;
+
+    /**
+     * Back track buffers larger than this many cells are not kept around for the next alignment on the thread
+     */
+    private static final int MAX_RETAINED_BACK_TRACK_CELLS = 1 << 22;
+
+    private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private final int bandWidth;
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters) {
+        this(reference, alternate, parameters, OVERHANG_STRATEGY.SOFTCLIP, NO_BAND);
+    }
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final SWParameterSet parameters, final OVERHANG_STRATEGY strategy) {
+        this(reference, alternate, parameters.parameters, strategy, NO_BAND);
+    }
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param namedParameters the named parameter set to get our parameters from
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final SWParameterSet namedParameters) {
+        this(reference, alternate, namedParameters.parameters);
+    }
+
+    /**
+     * @see #BandedSWPairwiseAlignment(byte[], byte[], SWParameterSet) with original default parameters
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate) {
+        this(reference, alternate, SWParameterSet.ORIGINAL_DEFAULT);
+    }
+
+    /**
+     * Create a new SW pairwise aligner that only considers the cells near the corner to corner paths
+     *
+     * @param reference the reference sequence we want to align
+     * @param alternate the alternate sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     * @param bandWidth  how many diagonals on either side of the corner to corner paths to consider, or NO_BAND
+     */
+    public BandedSWPairwiseAlignment(final byte[] reference, final byte[] alternate, final Parameters parameters, final OVERHANG_STRATEGY strategy, final int bandWidth) {
+        super(parameters);
+        if ( strategy == null ) throw new IllegalArgumentException("strategy cannot be null");
+        if ( bandWidth < 0 && bandWidth != NO_BAND ) throw new IllegalArgumentException("bandWidth must be >= 0 or NO_BAND but got " + bandWidth);
+
+        this.bandWidth = bandWidth;
+        overhang_strategy = strategy;
+        align(reference, alternate);
+    }
+
+    /**
+     * Aligns the alternate sequence to the reference sequence
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     */
+    @Override
+    protected void align(final byte[] reference, final byte[] alternate) {
+        if ( reference == null || reference.length == 0 || alternate == null || alternate.length == 0 )
+            throw new IllegalArgumentException("Non-null, non-empty sequences are required for the Smith-Waterman calculation");
+
+        final Buffers buffers = BandedSWPairwiseAlignment.buffers.get();
+        final int[] btrack = fillMatrix(reference, alternate, buffers);
+        alignmentResult = calculateCigar(reference.length, alternate.length, btrack, buffers);
+    }
+
+    /**
+     * Runs the same recursion as SWPairwiseAlignment.calculateMatrix(), keeping only the last column and bottom row
+     * of the scores.  All of the ties are broken in the same way, so the back track is identical.
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     * @param buffers    the buffers of the current thread
+     * @return the back track, with the back track of cell (i, j) at buffers.rowStart[i] + j
+     */
+    private int[] fillMatrix(final byte[] reference, final byte[] alternate, final Buffers buffers) {
+        final int refLength = reference.length;
+        final int altLength = alternate.length;
+        final int w_open = parameters.w_open;
+        final int w_extend = parameters.w_extend;
+        final int matrixMinCutoff = cutoff ? 0 : (int) -1e8; // never let matrix elements drop below this cutoff
+        final boolean indelOverhangs = overhang_strategy == OVERHANG_STRATEGY.INDEL || overhang_strategy == OVERHANG_STRATEGY.LEADING_INDEL;
+
+        // the band is expressed in diagonals, j - i, and always includes both corners
+        final int minDiagonal, maxDiagonal;
+        if ( bandWidth == NO_BAND || bandWidth >= refLength + altLength ) {
+            minDiagonal = -refLength;
+            maxDiagonal = altLength;
+        } else {
+            minDiagonal = Math.min(0, altLength - refLength) - bandWidth;
+            maxDiagonal = Math.max(0, altLength - refLength) + bandWidth;
+        }
+
+        buffers.ensureCapacity(refLength, altLength);
+        final int[] profile = buffers.buildProfile(reference, alternate, parameters);
+        final int[] profileOffsets = buffers.profileOffsets;
+        final int[] bestGapV = buffers.bestGapV;
+        final int[] gapSizeV = buffers.gapSizeV;
+        final int[] lastColumn = buffers.lastColumn;
+        final int[] rowStart = buffers.rowStart;
+
+        long cells = 0;
+        for ( int i = 1; i <= refLength; i++ )
+            cells += Math.min(altLength, i + maxDiagonal) - Math.max(1, i + minDiagonal) + 1;
+        final int[] btrack = buffers.getBackTrack(cells);
+
+        int[] lastRow = buffers.rowA;
+        int[] curRow = buffers.rowB;
+
+        // initialize the first row, with gap penalties if we want to keep track of indels at the edges of alignments
+        lastRow[0] = 0;
+        for ( int j = 1; j <= altLength; j++ )
+            lastRow[j] = indelOverhangs ? w_open + (j - 1) * w_extend : 0;
+        Arrays.fill(bestGapV, 0, altLength + 1, LOW_INIT_VALUE);
+        Arrays.fill(gapSizeV, 0, altLength + 1, 0);
+
+        int cell = 0;
+        for ( int i = 1; i <= refLength; i++ ) {
+            final int firstCol = Math.max(1, i + minDiagonal);
+            final int lastCol = Math.min(altLength, i + maxDiagonal);
+            final int profileOffset = profileOffsets[reference[i-1] & 0xff] - 1; // profile[profileOffset + j] scores alternate[j-1]
+
+            curRow[0] = indelOverhangs ? w_open + (i - 1) * w_extend : 0;
+            if ( firstCol > 1 )
+                curRow[firstCol - 1] = LOW_INIT_VALUE;
+            rowStart[i] = cell - firstCol;
+
+            int bestGapH = LOW_INIT_VALUE;
+            int gapSizeH = 0;
+            for ( int j = firstCol; j <= lastCol; j++ ) {
+                final int stepDiag = lastRow[j-1] + profile[profileOffset + j];
+
+                // best gap ending here from above; on a tie we keep extending the older gap
+                int prevGap = lastRow[j] + w_open;
+                bestGapV[j] += w_extend;
+                if ( prevGap > bestGapV[j] ) {
+                    bestGapV[j] = prevGap;
+                    gapSizeV[j] = 1;
+                } else {
+                    gapSizeV[j]++;
+                }
+                final int stepDown = bestGapV[j];
+
+                // best gap ending here from the left
+                prevGap = curRow[j-1] + w_open;
+                bestGapH += w_extend;
+                if ( prevGap > bestGapH ) {
+                    bestGapH = prevGap;
+                    gapSizeH = 1;
+                } else {
+                    gapSizeH++;
+                }
+                final int stepRight = bestGapH;
+
+                //priority here will be step diagonal, step right, step down
+                if ( stepDiag >= stepDown && stepDiag >= stepRight ) {
+                    curRow[j] = Math.max(matrixMinCutoff, stepDiag);
+                    btrack[cell++] = 0;
+                } else if ( stepRight >= stepDown ) {
+                    curRow[j] = Math.max(matrixMinCutoff, stepRight);
+                    btrack[cell++] = -gapSizeH; // negative = horizontal
+                } else {
+                    curRow[j] = Math.max(matrixMinCutoff, stepDown);
+                    btrack[cell++] = gapSizeV[j]; // positive = vertical
+                }
+            }
+
+            if ( lastCol < altLength )
+                curRow[lastCol + 1] = LOW_INIT_VALUE;
+            lastColumn[i] = lastCol == altLength ? curRow[altLength] : LOW_INIT_VALUE;
+
+            final int[] tmp = lastRow;
+            lastRow = curRow;
+            curRow = tmp;
+        }
+
+        buffers.bottomRow = lastRow;
+        buffers.bottomRowFirstCol = Math.max(1, refLength + minDiagonal);
+        buffers.bottomRowLastCol = Math.min(altLength, refLength + maxDiagonal);
+        return btrack;
+    }
+
+    /**
+     * Calculates the CIGAR for the alignment from the back track, exactly as SWPairwiseAlignment.calculateCigar() does
+     * from the full matrices
+     *
+     * @param refLength  the length of the reference sequence
+     * @param altLength  the length of the alternate sequence
+     * @param btrack     the back track filled in by fillMatrix()
+     * @param buffers    the buffers holding the last column and bottom row of the scores
+     * @return non-null SWPairwiseAlignmentResult object
+     */
+    private SWPairwiseAlignmentResult calculateCigar(final int refLength, final int altLength, final int[] btrack, final Buffers buffers) {
+        final int[] rowStart = buffers.rowStart;
+
+        // p holds the position we start backtracking from; we will be assembling a cigar in the backwards order
+        int p1 = 0, p2 = 0;
+        int segment_length = 0; // length of the segment (continuous matches, insertions or deletions)
+
+        // if we want to consider overhangs as legitimate operators, then just start from the corner of the matrix
+        if ( overhang_strategy == OVERHANG_STRATEGY.INDEL ) {
+            p1 = refLength;
+            p2 = altLength;
+        } else {
+            // look for the largest score on the rightmost column, preferring the cell closest to the diagonal
+            int maxscore = Integer.MIN_VALUE; // sw scores are allowed to be negative
+            p2 = altLength;
+            for ( int i = 1; i <= refLength; i++ ) {
+                final int curScore = buffers.lastColumn[i];
+                if ( curScore >= maxscore ) {
+                    p1 = i;
+                    maxscore = curScore;
+                }
+            }
+
+            // now look for a larger score on the bottom-most row; cells outside of the band can't win
+            if ( overhang_strategy != OVERHANG_STRATEGY.LEADING_INDEL ) {
+                final int[] bottomRow = buffers.bottomRow;
+                for ( int j = buffers.bottomRowFirstCol; j <= buffers.bottomRowLastCol; j++ ) {
+                    final int curScore = bottomRow[j];
+                    if ( curScore > maxscore ||
+                            (curScore == maxscore && Math.abs(refLength-j) < Math.abs(p1 - p2) ) ) {
+                        p1 = refLength;
+                        p2 = j;
+                        maxscore = curScore;
+                        segment_length = altLength - j; // end of sequence 2 is overhanging; we will just record it as 'M' segment
+                    }
+                }
+            }
+        }
+
+        final List<CigarElement> lce = new ArrayList<CigarElement>(5);
+        if ( segment_length > 0 && overhang_strategy == OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(makeElement(State.CLIP, segment_length));
+            segment_length = 0;
+        }
+
+        // we will be placing all insertions and deletions into sequence b, so the states are named w/regard
+        // to that sequence
+        State state = State.MATCH;
+        do {
+            final int btr = btrack[rowStart[p1] + p2];
+            final State new_state;
+            int step_length = 1;
+            if ( btr > 0 ) {
+                new_state = State.DELETION;
+                step_length = btr;
+            } else if ( btr < 0 ) {
+                new_state = State.INSERTION;
+                step_length = (-btr);
+            } else new_state = State.MATCH; // and step_length =1, already set above
+
+            // move to next best location in the sw matrix:
+            switch( new_state ) {
+                case MATCH:  p1--; p2--; break; // move back along the diag in the sw matrix
+                case INSERTION: p2 -= step_length; break; // move left
+                case DELETION:  p1 -= step_length; break; // move up
+            }
+
+            // now let's see if the state actually changed:
+            if ( new_state == state ) segment_length+=step_length;
+            else {
+                // state changed, lets emit previous segment, whatever it was (Insertion Deletion, or (Mis)Match).
+                lce.add(makeElement(state, segment_length));
+                segment_length = step_length;
+                state = new_state;
+            }
+        } while ( p1 > 0 && p2 > 0 );
+
+        // post-process the last segment we are still keeping (see SWPairwiseAlignment.calculateCigar())
+        final int alignment_offset;
+        if ( overhang_strategy == OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(makeElement(state, segment_length));
+            if ( p2 > 0 ) lce.add(makeElement(State.CLIP, p2));
+            alignment_offset = p1;
+        } else if ( overhang_strategy == OVERHANG_STRATEGY.IGNORE ) {
+            lce.add(makeElement(state, segment_length + p2));
+            alignment_offset = p1 - p2;
+        } else {  // overhang_strategy == OVERHANG_STRATEGY.INDEL || overhang_strategy == OVERHANG_STRATEGY.LEADING_INDEL
+
+            // take care of the actual alignment
+            lce.add(makeElement(state, segment_length));
+
+            // take care of overhangs at the beginning of the alignment
+            if ( p1 > 0 )
+                lce.add(makeElement(State.DELETION, p1));
+            else if ( p2 > 0 )
+                lce.add(makeElement(State.INSERTION, p2));
+
+            alignment_offset = 0;
+        }
+
+        Collections.reverse(lce);
+        return new SWPairwiseAlignmentResult(AlignmentUtils.consolidateCigar(new Cigar(lce)), alignment_offset);
+    }
+
+    /**
+     * The primitive arrays used by the alignments of a single thread, grown as needed
+     */
+    private static final class Buffers {
+        private int[] rowA = new int[0];
+        private int[] rowB = new int[0];
+        private int[] bestGapV = new int[0];
+        private int[] gapSizeV = new int[0];
+        private int[] lastColumn = new int[0];
+        private int[] rowStart = new int[0];
+        private int[] btrack = new int[0];
+        private int[] profile = new int[0];
+        private final int[] profileOffsets = new int[256];
+
+        // the last row of scores of the latest alignment, valid from bottomRowFirstCol to bottomRowLastCol
+        private int[] bottomRow;
+        private int bottomRowFirstCol;
+        private int bottomRowLastCol;
+
+        private void ensureCapacity(final int refLength, final int altLength) {
+            if ( rowA.length < altLength + 1 ) {
+                rowA = new int[altLength + 1];
+                rowB = new int[altLength + 1];
+                bestGapV = new int[altLength + 1];
+                gapSizeV = new int[altLength + 1];
+            }
+            if ( lastColumn.length < refLength + 1 ) {
+                lastColumn = new int[refLength + 1];
+                rowStart = new int[refLength + 1];
+            }
+        }
+
+        private int[] getBackTrack(final long cells) {
+            if ( cells > Integer.MAX_VALUE )
+                throw new IllegalArgumentException("Sequences are too long for a Smith-Waterman alignment: " + cells + " cells");
+            if ( cells <= btrack.length )
+                return btrack;
+            final int[] newBackTrack = new int[(int)cells];
+            if ( cells <= MAX_RETAINED_BACK_TRACK_CELLS )
+                btrack = newBackTrack;
+            return newBackTrack;
+        }
+
+        /**
+         * Builds the query profile: for every distinct reference base, the match or mismatch score against each
+         * base of the alternate sequence, starting at profileOffsets[base]
+         */
+        private int[] buildProfile(final byte[] reference, final byte[] alternate, final Parameters parameters) {
+            Arrays.fill(profileOffsets, -1);
+            int nBases = 0;
+            for ( final byte base : reference ) {
+                if ( profileOffsets[base & 0xff] == -1 )
+                    profileOffsets[base & 0xff] = nBases++ * alternate.length;
+            }
+
+            if ( profile.length < nBases * alternate.length )
+                profile = new int[nBases * alternate.length];
+            for ( int b = 0; b < profileOffsets.length; b++ ) {
+                final int offset = profileOffsets[b];
+                if ( offset == -1 )
+                    continue;
+                for ( int j = 0; j < alternate.length; j++ )
+                    profile[offset + j] = (alternate[j] == (byte)b ? parameters.w_match : parameters.w_mismatch);
+            }
+            return profile;
+        }
+    }
+}
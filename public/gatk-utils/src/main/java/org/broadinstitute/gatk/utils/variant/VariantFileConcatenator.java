@@ -0,0 +1,403 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Concatenates VCF or BCF files of sorted, non-overlapping intervals by copying their records byte for byte.
+ *
+ * The first file is copied whole, header included.  Only the records of the following files are appended, without
+ * being decoded.  For block-compressed VCFs, only the block holding the end of each header is decompressed and
+ * compressed again; all later blocks are copied as they are.
+ *
+ * All files must have the same samples in the same order.  BCF records refer to the FILTER, INFO, FORMAT and contig
+ * lines of their header by index, so BCF files must also have the same such lines.
+ */
+public class VariantFileConcatenator implements Closeable {
+    public enum Format {
+        VCF,
+        BCF,
+        BLOCK_COMPRESSED_VCF
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // BCF files start with "BCF", the major and minor version, and the length of the header text
+    private static final int BCF_MAGIC_LENGTH = 5;
+    private static final int BCF_HEADER_PREFIX_LENGTH = BCF_MAGIC_LENGTH + 4;
+
+    private static final String SAMPLES_LINE_PREFIX = "#CHROM";
+    private static final String[] BCF_DICTIONARY_LINE_PREFIXES = { "##FILTER=", "##INFO=", "##FORMAT=", "##contig=" };
+
+    private final Format format;
+    private final OutputStream out;
+    private final BlockCompressedOutputStream blockCompressedOut;
+
+    // the first file, and the header lines all other files must match
+    private File firstFile = null;
+    private List<String> requiredHeaderLines = null;
+
+    // did the last text file copied end with a newline?
+    private boolean atLineStart = true;
+
+    /**
+     * @param outputFile the concatenated file
+     * @param format the format of all inputs and of the output
+     * @throws IOException if the output file can't be created
+     */
+    public VariantFileConcatenator(final File outputFile, final Format format) throws IOException {
+        if ( outputFile == null ) throw new IllegalArgumentException("outputFile cannot be null");
+        if ( format == null ) throw new IllegalArgumentException("format cannot be null");
+
+        this.format = format;
+        this.out = new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE);
+        this.blockCompressedOut = format == Format.BLOCK_COMPRESSED_VCF ? new BlockCompressedOutputStream(out, outputFile) : null;
+    }
+
+    /**
+     * Append the records of a file.  The first file added also provides the header.
+     * @param file a file of the format given at construction, whose records all follow those of the files added before
+     * @throws IOException if the file can't be read or the output written
+     */
+    public void add(final File file) throws IOException {
+        switch ( format ) {
+            case VCF: addVCF(file); break;
+            case BCF: addBCF(file); break;
+            case BLOCK_COMPRESSED_VCF: addBlockCompressedVCF(file); break;
+        }
+        if ( firstFile == null )
+            firstFile = file;
+    }
+
+    /**
+     * Finish the output, adding the end-of-file marker of block-compressed files.
+     * @throws IOException if the output can't be written
+     */
+    public void close() throws IOException {
+        if ( blockCompressedOut != null )
+            blockCompressedOut.close();
+        else
+            out.close();
+    }
+
+    private void addVCF(final File file) throws IOException {
+        final HeaderScanner scanner = new HeaderScanner();
+        long headerLength = 0;
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ( (n = in.read(buffer)) != -1 ) {
+                final int recordsStart = scanner.scan(buffer, 0, n);
+                if ( recordsStart != -1 ) {
+                    headerLength += recordsStart;
+                    break;
+                }
+                headerLength += n;
+            }
+        } finally {
+            in.close();
+        }
+        checkHeader(file, scanner.getLines(), false);
+
+        final long length = file.length();
+        final long start = firstFile == null ? 0 : headerLength;
+        if ( length > start ) {
+            // don't join the first record to the last line of the previous file
+            if ( ! atLineStart )
+                out.write('\n');
+            copyBytes(file, start, length);
+            atLineStart = lastByteIsNewline(file, length);
+        }
+    }
+
+    private void addBCF(final File file) throws IOException {
+        final byte[] prefix = new byte[BCF_HEADER_PREFIX_LENGTH];
+        final byte[] headerText;
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            if ( ! readFully(in, prefix, 0, prefix.length) || prefix[0] != 'B' || prefix[1] != 'C' || prefix[2] != 'F' )
+                throw new UserException.MalformedFile(file, "Not an uncompressed BCF2 file");
+            final int textLength = (prefix[5] & 0xFF) | (prefix[6] & 0xFF) << 8 | (prefix[7] & 0xFF) << 16 | (prefix[8] & 0xFF) << 24;
+            if ( textLength < 0 )
+                throw new UserException.MalformedFile(file, "Invalid BCF2 header length " + textLength);
+            headerText = new byte[textLength];
+            if ( ! readFully(in, headerText, 0, textLength) )
+                throw new UserException.MalformedFile(file, "BCF2 header is truncated");
+        } finally {
+            in.close();
+        }
+        checkHeader(file, splitLines(headerText, headerText.length), true);
+
+        copyBytes(file, firstFile == null ? 0 : BCF_HEADER_PREFIX_LENGTH + (long)headerText.length, file.length());
+    }
+
+    private void addBlockCompressedVCF(final File file) throws IOException {
+        final HeaderScanner scanner = new HeaderScanner();
+        final byte[] compressed = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+        final byte[] uncompressed = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+
+        // find the block holding the end of the header, and where the records start in it
+        long nextBlockAddress = 0;
+        int uncompressedSize = 0;
+        int recordsStart = -1;
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            while ( recordsStart == -1 ) {
+                final int blockSize = readBlock(file, in, compressed);
+                if ( blockSize == 0 )
+                    break;
+                nextBlockAddress += blockSize;
+                uncompressedSize = inflateBlock(file, compressed, blockSize, uncompressed);
+                recordsStart = scanner.scan(uncompressed, 0, uncompressedSize);
+            }
+        } finally {
+            in.close();
+        }
+        checkHeader(file, scanner.getLines(), false);
+
+        final long end = getEndOfBlocks(file);
+        if ( firstFile == null ) {
+            copyBytes(file, 0, end);
+        } else if ( recordsStart != -1 ) {
+            blockCompressedOut.write(uncompressed, recordsStart, uncompressedSize - recordsStart);
+            blockCompressedOut.flush();
+            copyBytes(file, nextBlockAddress, end);
+        }
+    }
+
+    /**
+     * Make sure that the records of file can follow those of the first file.
+     */
+    private void checkHeader(final File file, final List<String> headerLines, final boolean isBCF) {
+        final List<String> required = new ArrayList<String>();
+        for ( final String line : headerLines ) {
+            if ( line.startsWith(SAMPLES_LINE_PREFIX) ) {
+                required.add(line);
+            } else if ( isBCF ) {
+                for ( final String prefix : BCF_DICTIONARY_LINE_PREFIXES )
+                    if ( line.startsWith(prefix) )
+                        required.add(line);
+            }
+        }
+
+        if ( requiredHeaderLines == null )
+            requiredHeaderLines = required;
+        else if ( ! requiredHeaderLines.equals(required) )
+            throw new UserException.BadInput(String.format("The header of %s doesn't match the header of %s: %s",
+                    file, firstFile, isBCF ? "the samples, filters, annotations or contigs differ" : "the samples differ"));
+    }
+
+    private void copyBytes(final File file, final long start, final long end) throws IOException {
+        if ( start >= end )
+            return;
+
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(start);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = end - start;
+            while ( remaining > 0 ) {
+                final int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if ( n == -1 )
+                    throw new UserException.CouldNotReadInputFile(file, "file ended unexpectedly");
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean lastByteIsNewline(final File file, final long length) throws IOException {
+        if ( length == 0 )
+            return true;
+
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(length - 1);
+            return in.read() == '\n';
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the length of the file without its trailing end-of-file marker block, if it has one
+     */
+    private static long getEndOfBlocks(final File file) throws IOException {
+        final long length = file.length();
+        final byte[] eofBlock = BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK;
+        if ( length < eofBlock.length )
+            return length;
+
+        final byte[] tail = new byte[eofBlock.length];
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(length - tail.length);
+            in.readFully(tail);
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(tail, eofBlock) ? length - tail.length : length;
+    }
+
+    /**
+     * Read the next BGZF block into buffer.
+     * @return the size of the block, or 0 at the end of the file
+     */
+    private static int readBlock(final File file, final InputStream in, final byte[] buffer) throws IOException {
+        final int headerLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+        final int first = in.read();
+        if ( first == -1 )
+            return 0;
+        buffer[0] = (byte)first;
+        if ( ! readFully(in, buffer, 1, headerLength - 1) )
+            throw new UserException.MalformedFile(file, "BGZF block header is truncated");
+
+        // gzip magic, the FEXTRA flag, and the "BC" extra subfield that holds the block size
+        if ( (buffer[0] & 0xFF) != BlockCompressedStreamConstants.GZIP_ID1 || (buffer[1] & 0xFF) != BlockCompressedStreamConstants.GZIP_ID2 ||
+                (buffer[3] & BlockCompressedStreamConstants.GZIP_FLG) == 0 || buffer[12] != BlockCompressedStreamConstants.BGZF_ID1 ||
+                buffer[13] != BlockCompressedStreamConstants.BGZF_ID2 )
+            throw new UserException.MalformedFile(file, "Not a BGZF block-compressed file");
+
+        final int blockSize = unpackShort(buffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+        if ( blockSize < headerLength + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH || ! readFully(in, buffer, headerLength, blockSize - headerLength) )
+            throw new UserException.MalformedFile(file, "BGZF block is truncated");
+        return blockSize;
+    }
+
+    /**
+     * Decompress a BGZF block.
+     * @return the number of bytes in the decompressed block
+     */
+    private static int inflateBlock(final File file, final byte[] block, final int blockSize, final byte[] uncompressed) {
+        final int headerLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+        final int footerLength = BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+        final int uncompressedSize = unpackShort(block, blockSize - 4) | unpackShort(block, blockSize - 2) << 16;
+        if ( uncompressedSize > uncompressed.length )
+            throw new UserException.MalformedFile(file, "BGZF block is too large");
+
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, headerLength, blockSize - headerLength - footerLength);
+            int n = 0;
+            while ( n < uncompressedSize && ! inflater.finished() ) {
+                final int inflated = inflater.inflate(uncompressed, n, uncompressedSize - n);
+                if ( inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()) )
+                    break;
+                n += inflated;
+            }
+            if ( n != uncompressedSize )
+                throw new UserException.MalformedFile(file, "BGZF block is corrupt");
+            return n;
+        } catch ( DataFormatException e ) {
+            throw new UserException.MalformedFile(file, "BGZF block is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int unpackShort(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private static boolean readFully(final InputStream in, final byte[] buffer, final int offset, final int length) throws IOException {
+        int n = 0;
+        while ( n < length ) {
+            final int read = in.read(buffer, offset + n, length - n);
+            if ( read == -1 )
+                return false;
+            n += read;
+        }
+        return true;
+    }
+
+    private static List<String> splitLines(final byte[] text, final int length) {
+        final List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for ( int i = 0; i <= length; i++ ) {
+            if ( i == length || text[i] == '\n' || text[i] == 0 ) {
+                int end = i;
+                if ( end > start && text[end - 1] == '\r' )
+                    end--;
+                if ( end > start )
+                    lines.add(new String(text, start, end - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Finds where the header of a text VCF ends, keeping the header lines.
+     */
+    static class HeaderScanner {
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private boolean atLineStart = true;
+
+        /**
+         * Scan the next bytes of the file.
+         * @return the offset in buffer of the first byte of the first record, or -1 if no record starts in these bytes
+         */
+        int scan(final byte[] buffer, final int offset, final int length) {
+            for ( int i = offset; i < offset + length; i++ ) {
+                if ( atLineStart && buffer[i] != '#' ) {
+                    header.write(buffer, offset, i - offset);
+                    return i;
+                }
+                atLineStart = buffer[i] == '\n';
+            }
+            header.write(buffer, offset, length);
+            return -1;
+        }
+
+        List<String> getLines() {
+            return splitLines(header.toByteArray(), header.size());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
+import org.broadinstitute.gatk.utils.interval.IntervalUtils;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Compares GenomeLocIntervalIndex against the equivalent operations on GenomeLoc objects
+ */
+public class GenomeLocIntervalIndexUnitTest extends BaseTest {
+    private static final int NUMBER_OF_CHROMOSOMES = 3;
+    private static final int CHROMOSOME_SIZE = 1000;
+
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void setup() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(NUMBER_OF_CHROMOSOMES, 1, CHROMOSOME_SIZE);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    private List<GenomeLoc> randomLocs(final Random random, final int n) {
+        final List<GenomeLoc> locs = new ArrayList<>();
+        for ( int i = 0; i < n; i++ ) {
+            final String contig = genomeLocParser.getContigs().getSequence(random.nextInt(NUMBER_OF_CHROMOSOMES)).getSequenceName();
+            final int start = 1 + random.nextInt(300);
+            locs.add(genomeLocParser.createGenomeLoc(contig, start, start + random.nextInt(random.nextBoolean() ? 3 : 40)));
+        }
+        return locs;
+    }
+
+    /**
+     * The GenomeLocs of locs, sorted and merged without the index
+     */
+    private static List<GenomeLoc> sortAndMerge(final List<GenomeLoc> locs, final IntervalMergingRule rule) {
+        final List<GenomeLoc> sorted = new ArrayList<>(locs);
+        Collections.sort(sorted);
+
+        final List<GenomeLoc> merged = new ArrayList<>();
+        for ( final GenomeLoc loc : sorted ) {
+            final GenomeLoc prev = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if ( prev != null && (prev.overlapsP(loc) || (rule == IntervalMergingRule.ALL && prev.contiguousP(loc))) )
+                merged.set(merged.size() - 1, prev.merge(loc));
+            else
+                merged.add(loc);
+        }
+        return merged;
+    }
+
+    @DataProvider(name = "RandomLocs")
+    public Object[][] makeRandomLocs() {
+        final List<Object[]> tests = new ArrayList<>();
+        final Random random = new Random(42);
+        for ( int i = 0; i < 100; i++ )
+            tests.add(new Object[]{randomLocs(random, random.nextInt(30)), randomLocs(random, random.nextInt(30))});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomLocs")
+    public void testSortAndMerge(final List<GenomeLoc> locs, final List<GenomeLoc> unused) {
+        for ( final IntervalMergingRule rule : IntervalMergingRule.values() ) {
+            final GenomeLocIntervalIndex index = GenomeLocIntervalIndex.create(locs, rule);
+            final List<GenomeLoc> expected = sortAndMerge(locs, rule);
+            Assert.assertEquals(index.toList(), expected, "Bad merge with rule " + rule);
+            Assert.assertEquals(index.size(), expected.size());
+            Assert.assertEquals(index.coveredSize(), IntervalUtils.intervalSize(expected));
+        }
+    }
+
+    @Test(dataProvider = "RandomLocs")
+    public void testSetOperations(final List<GenomeLoc> one, final List<GenomeLoc> two) {
+        final GenomeLocSortedSet setOne = new GenomeLocSortedSet(genomeLocParser, one);
+        final GenomeLocSortedSet setTwo = new GenomeLocSortedSet(genomeLocParser, two);
+        final GenomeLocIntervalIndex indexOne = GenomeLocIntervalIndex.create(one, IntervalMergingRule.OVERLAPPING_ONLY);
+        final GenomeLocIntervalIndex indexTwo = GenomeLocIntervalIndex.create(two, IntervalMergingRule.OVERLAPPING_ONLY);
+
+        // compare base by base against the sets of GenomeLocs
+        for ( int contig = 0; contig < NUMBER_OF_CHROMOSOMES; contig++ ) {
+            final String contigName = genomeLocParser.getContigs().getSequence(contig).getSequenceName();
+            for ( int pos = 1; pos <= 400; pos++ ) {
+                final GenomeLoc site = genomeLocParser.createGenomeLoc(contigName, pos);
+                final boolean inOne = setOne.overlaps(site);
+                final boolean inTwo = setTwo.overlaps(site);
+
+                Assert.assertEquals(indexOne.overlaps(site), inOne, "overlaps " + site);
+                Assert.assertEquals(indexOne.intersect(indexTwo).overlaps(site), inOne && inTwo, "intersection at " + site);
+                Assert.assertEquals(indexOne.subtract(indexTwo).overlaps(site), inOne && ! inTwo, "subtraction at " + site);
+                Assert.assertEquals(indexOne.union(indexTwo, IntervalMergingRule.ALL).overlaps(site), inOne || inTwo, "union at " + site);
+            }
+        }
+
+        Assert.assertEquals(setOne.subtractRegions(setTwo).toList(), indexOne.subtract(indexTwo).toList());
+    }
+
+    @Test
+    public void testUnmapped() {
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc(genomeLocParser.getContigs().getSequence(0).getSequenceName(), 10, 20);
+        final GenomeLocIntervalIndex index = GenomeLocIntervalIndex.create(Arrays.asList(GenomeLoc.UNMAPPED, loc, GenomeLoc.UNMAPPED), IntervalMergingRule.ALL);
+
+        Assert.assertEquals(index.size(), 1);
+        Assert.assertTrue(index.includesUnmapped());
+        Assert.assertEquals(index.toList(), Arrays.asList(loc, GenomeLoc.UNMAPPED));
+        Assert.assertEquals(index.subtract(GenomeLocIntervalIndex.create(Collections.singletonList(GenomeLoc.UNMAPPED), null)).toList(), Collections.singletonList(loc));
+    }
+}
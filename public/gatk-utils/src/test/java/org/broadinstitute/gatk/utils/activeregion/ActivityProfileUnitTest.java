@@ -145,7 +145,7 @@ public class ActivityProfileUnitTest extends BaseTest {
         Assert.assertEquals(profile.regionStartLoc, genomeLocParser.createGenomeLoc(cfg.regionStart.getContig(), cfg.regionStart.getStart(), cfg.regionStart.getStart() ), "Start loc should be the start of the region");
 
         Assert.assertEquals(profile.size(), cfg.probs.size(), "Should have exactly the number of states we expected to add");
-        assertProbsAreEqual(profile.stateList, cfg.probs);
+        assertProbsAreEqual(profile.getStateList(), cfg.probs);
 
         // TODO -- reanble tests
         //assertRegionsAreEqual(profile.createActiveRegions(0, 100), cfg.expectedRegions);
@@ -488,4 +488,43 @@ public class ActivityProfileUnitTest extends BaseTest {
         Assert.assertEquals(region.getLocation().getStart(), 1, "Region should start at 1");
         Assert.assertEquals(region.getLocation().size(), expectedRegionSize, "Incorrect region size; cut must have been incorrect");
     }
-}
\ No newline at end of file
+
+    @DataProvider(name = "StateStorageTests")
+    public Object[][] makeStateStorageTests() {
+        final List<Object[]> tests = new LinkedList<Object[]>();
+        for ( final int nStates : Arrays.asList(1, 10, 255, 256, 257, 1000, 5000) )
+            for ( final int maxRegionSize : Arrays.asList(1, 10, 300) )
+                tests.add(new Object[]{nStates, maxRegionSize});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(enabled = ! DEBUG, dataProvider = "StateStorageTests")
+    public void testStateStorage(final int nStates, final int maxRegionSize) {
+        final ActivityProfile profile = new ActivityProfile(genomeLocParser, MAX_PROB_PROPAGATION_DISTANCE, ACTIVE_PROB_THRESHOLD);
+        final String contig = genomeLocParser.getContigs().getSequences().get(0).getSequenceName();
+
+        // popping regions as we go wraps states around the storage, while never popping grows it
+        final List<ActivityProfileState> poppedStates = new ArrayList<ActivityProfileState>();
+        for ( int i = 0; i < nStates; i++ ) {
+            final double prob = (i % 7) / 10.0;
+            profile.add(new ActivityProfileState(genomeLocParser.createGenomeLoc(contig, i + 1), prob));
+            for ( final ActiveRegion region : profile.popReadyActiveRegions(0, 1, maxRegionSize, false) )
+                poppedStates.addAll(region.getSupportingStates());
+        }
+
+        Assert.assertEquals(poppedStates.size() + profile.size(), nStates);
+        final double[] remainingProbs = profile.getProbabilitiesAsArray();
+        Assert.assertEquals(remainingProbs.length, profile.size());
+        for ( int i = 0; i < nStates; i++ ) {
+            final double expected = (i % 7) / 10.0;
+            if ( i < poppedStates.size() ) {
+                Assert.assertEquals(poppedStates.get(i).getLoc().getStart(), i + 1);
+                Assert.assertEquals(poppedStates.get(i).isActiveProb, expected);
+            } else {
+                Assert.assertEquals(remainingProbs[i - poppedStates.size()], expected);
+            }
+        }
+        if ( ! profile.isEmpty() )
+            Assert.assertEquals(profile.regionStartLoc.getStart(), poppedStates.size() + 1);
+    }
+}
@@ -191,6 +191,76 @@ public class BandPassActivityProfileUnitTest extends BaseTest {
         }
     }
 
+    /**
+     * Builds the band passed probabilities of states one at a time, spreading each state derived from a
+     * soft clip state around the state that was added, as the profile does
+     */
+    private void addToExpectedProbs(final List<Double> expectedProbs, final int profileStart, final BandPassActivityProfile profile,
+                                    final int start, final double prob, final int numHQClips) {
+        final double[] kernel = profile.getKernel();
+        for ( int derivedStart = start - numHQClips; derivedStart <= start + numHQClips; derivedStart++ ) {
+            if ( prob > 0.0 ) {
+                for ( int jjj = -profile.getFilteredSize(); jjj <= profile.getFilteredSize(); jjj++ )
+                    addToExpectedProb(expectedProbs, start + jjj - profileStart, prob * kernel[jjj + profile.getFilteredSize()]);
+            } else {
+                addToExpectedProb(expectedProbs, derivedStart - profileStart, prob);
+            }
+        }
+    }
+
+    private void addToExpectedProb(final List<Double> expectedProbs, final int offset, final double prob) {
+        if ( offset < 0 )
+            return;
+        if ( offset < expectedProbs.size() )
+            expectedProbs.set(offset, expectedProbs.get(offset) + prob);
+        else {
+            Assert.assertEquals(offset, expectedProbs.size(), "Expected states aren't contiguous");
+            expectedProbs.add(prob);
+        }
+    }
+
+    @DataProvider(name = "BandPassSoftClips")
+    public Object[][] makeBandPassSoftClips() {
+        final List<Object[]> tests = new LinkedList<Object[]>();
+
+        for ( int bandPassSize : Arrays.asList(0, 1, 3) ) {
+            for ( double softClipProb : Arrays.asList(0.0, 0.5, 1.0) ) {
+                for ( int numHQClips : Arrays.asList(1, 4) ) {
+                    tests.add(new Object[]{ bandPassSize, softClipProb, numHQClips });
+                }
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test( enabled = ! DEBUG, dataProvider = "BandPassSoftClips")
+    public void testBandPassSoftClips(final int bandPassSize, final double softClipProb, final int numHQClips) {
+        final int start = 1000;
+        final BandPassActivityProfile profile = new BandPassActivityProfile(genomeLocParser, null, MAX_PROB_PROPAGATION_DISTANCE,
+                ACTIVE_PROB_THRESHOLD, bandPassSize, BandPassActivityProfile.DEFAULT_SIGMA);
+        final String contig = genomeLocParser.getContigs().getSequences().get(0).getSequenceName();
+        final List<Double> expectedProbs = new ArrayList<Double>();
+
+        for ( int i = 0; i < 20; i++ ) {
+            final GenomeLoc loc = genomeLocParser.createGenomeLoc(contig, start + i);
+            if ( i == 5 || i == 12 ) {
+                profile.add(new ActivityProfileState(loc, softClipProb, ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS, numHQClips));
+                addToExpectedProbs(expectedProbs, start, profile, start + i, softClipProb, numHQClips);
+            } else {
+                final double prob = i % 3 == 0 ? 1.0 : 0.0;
+                profile.add(new ActivityProfileState(loc, prob));
+                addToExpectedProbs(expectedProbs, start, profile, start + i, prob, 0);
+            }
+            Assert.assertEquals(profile.size(), expectedProbs.size(), "Wrong number of states in the profile after adding state " + i);
+        }
+
+        final double[] probs = profile.getProbabilitiesAsArray();
+        Assert.assertEquals(probs.length, expectedProbs.size(), "Wrong number of states in the profile");
+        for ( int j = 0; j < probs.length; j++ )
+            Assert.assertEquals(probs[j], expectedProbs.get(j), 1e-10, "State probability not expected at " + j);
+    }
+
     // ------------------------------------------------------------------------------------
     //
     // Code to test the creation of the kernels
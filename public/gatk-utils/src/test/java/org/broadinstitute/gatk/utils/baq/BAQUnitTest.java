@@ -39,6 +39,8 @@ import org.broadinstitute.gatk.utils.Utils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -222,6 +224,43 @@ public class BAQUnitTest extends BaseTest {
         Assert.assertTrue(read.getAttribute("BQ") == null);
     }
 
+    @Test(enabled = true)
+    public void testBAQReusesMatricesAcrossReads() {
+        // a single BAQ reuses its HMM matrices, so interleave reads of different lengths in both orders
+        final BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+        final List<BAQTest> tests = new ArrayList<BAQTest>();
+        for ( final Object[] test : createData1() )
+            if ( ((BAQTest)test[0]).refBases != null )
+                tests.add((BAQTest)test[0]);
+
+        for ( int pass = 0; pass < 2; pass++ ) {
+            for ( final BAQTest test : tests ) {
+                final BAQ.BAQCalculationResult result = baqHMM.calcBAQFromHMM(test.createRead(), test.refBases.getBytes(), test.refOffset);
+                Assert.assertEquals(result.bq, test.expected, "BAQ differs when reusing the HMM matrices for " + test);
+            }
+            Collections.reverse(tests);
+        }
+    }
+
+    @Test(dataProvider = "data", enabled = true)
+    public void testBAQResultCache(BAQTest test) {
+        if ( test.cigar != null ) {
+            final BAQ uncached = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+            final BAQ cached = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+            cached.enableResultCache(10);
+
+            final SAMRecord read = test.createRead();
+            final byte[] expected = uncached.baqRead(read, fasta, BAQ.CalculationMode.RECALCULATE, BAQ.QualityMode.DONT_MODIFY);
+            final byte[] first = cached.baqRead(read, fasta, BAQ.CalculationMode.RECALCULATE, BAQ.QualityMode.DONT_MODIFY);
+            Assert.assertEquals(first, expected);
+
+            // scribbling over the returned qualities must not affect the cached result
+            Arrays.fill(first, (byte)0);
+            final byte[] second = cached.baqRead(read, fasta, BAQ.CalculationMode.RECALCULATE, BAQ.QualityMode.DONT_MODIFY);
+            Assert.assertEquals(second, expected);
+        }
+    }
+
     public void testBAQ(BAQTest test, boolean lookupWithFasta) {
         BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);         // matches current samtools parameters
 
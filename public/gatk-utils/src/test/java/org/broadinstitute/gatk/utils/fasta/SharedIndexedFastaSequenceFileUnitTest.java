@@ -0,0 +1,184 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Basic unit test for SharedIndexedFastaSequenceFile
+ */
+public class SharedIndexedFastaSequenceFileUnitTest extends BaseTest {
+    private File simpleFasta = new File(publicTestDir + "/exampleFASTA.fasta");
+
+    @DataProvider(name = "storeSizes")
+    public Object[][] makeStoreSizes() {
+        // the first holds exampleFASTA's 100 kb contig, the second is too small for it
+        return new Object[][]{ {1000000L}, {1000L} };
+    }
+
+    @Test(dataProvider = "storeSizes")
+    public void testSharedMatchesCaching(final long storeSize) throws FileNotFoundException {
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(simpleFasta);
+        final SharedIndexedFastaSequenceFile shared = new SharedIndexedFastaSequenceFile(simpleFasta, storeSize);
+        final SAMSequenceRecord contig = caching.getSequenceDictionary().getSequence(0);
+
+        final Random random = new Random(42);
+        for ( int i = 0; i < 1000; i++ ) {
+            final int start = 1 + random.nextInt(contig.getSequenceLength());
+            final int stop = Math.min(contig.getSequenceLength(), start + random.nextInt(500));
+            final ReferenceSequence expected = caching.getSubsequenceAt(contig.getSequenceName(), start, stop);
+            final ReferenceSequence actual = shared.getSubsequenceAt(contig.getSequenceName(), start, stop);
+
+            Assert.assertEquals(actual.getName(), expected.getName());
+            Assert.assertEquals(actual.getContigIndex(), expected.getContigIndex());
+            Assert.assertEquals(actual.getBases(), expected.getBases());
+
+            final ByteBuffer slice = shared.getSubsequenceSlice(contig.getSequenceName(), start, stop);
+            Assert.assertTrue(slice.isReadOnly());
+            final byte[] sliceBases = new byte[slice.remaining()];
+            slice.get(sliceBases);
+            Assert.assertEquals(sliceBases, expected.getBases());
+        }
+
+        if ( storeSize >= contig.getSequenceLength() ) {
+            Assert.assertEquals(shared.getResidentBases(), contig.getSequenceLength());
+            Assert.assertEquals(shared.getCacheMisses(), 1, "The contig should have been read from the FASTA only once");
+        } else {
+            Assert.assertEquals(shared.getResidentBases(), 0);
+        }
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(simpleFasta);
+        final SharedIndexedFastaSequenceFile shared = new SharedIndexedFastaSequenceFile(simpleFasta, 1000000L);
+        final SAMSequenceRecord contig = caching.getSequenceDictionary().getSequence(0);
+        final byte[] expected = caching.getSubsequenceAt(contig.getSequenceName(), 1, contig.getSequenceLength()).getBases();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for ( int t = 0; t < 4; t++ ) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        final Random random = new Random(seed);
+                        for ( int i = 0; i < 1000; i++ ) {
+                            final int start = 1 + random.nextInt(contig.getSequenceLength());
+                            final int stop = Math.min(contig.getSequenceLength(), start + random.nextInt(500));
+                            final byte[] bases = shared.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases();
+                            for ( int j = 0; j < bases.length; j++ )
+                                Assert.assertEquals(bases[j], expected[start - 1 + j]);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for ( final Future<Void> result : results )
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(shared.getCacheMisses(), 1, "The contig should have been read from the FASTA only once");
+    }
+
+    @Test
+    public void testContigsThatDontFitAreNotEvicted() throws Exception {
+        final int[] contigLengths = {100, 120, 90};
+        final File fasta = createTempFile("sharedStore", ".fasta");
+        final String[] contigBases = writeFasta(fasta, contigLengths);
+
+        // room for the first two contigs only
+        final SharedIndexedFastaSequenceFile shared = new SharedIndexedFastaSequenceFile(fasta, 250L);
+        for ( final int contig : new int[]{0, 1, 2, 0, 2} ) {
+            final byte[] bases = shared.getSubsequenceAt("c" + contig, 1, contigLengths[contig]).getBases();
+            Assert.assertEquals(new String(bases), contigBases[contig]);
+        }
+
+        Assert.assertEquals(shared.getResidentBases(), contigLengths[0] + contigLengths[1], "The third contig should not have displaced the others");
+    }
+
+    /**
+     * Write a FASTA with random contigs c0, c1, ... of the given lengths, along with its index and dictionary
+     *
+     * @return the bases of each contig
+     */
+    private static String[] writeFasta(final File fasta, final int[] contigLengths) throws FileNotFoundException {
+        final Random random = new Random(42);
+        final String[] contigBases = new String[contigLengths.length];
+        final PrintWriter fastaOut = new PrintWriter(fasta);
+        final File index = new File(fasta.getAbsolutePath() + ".fai");
+        index.deleteOnExit();
+        final PrintWriter indexOut = new PrintWriter(index);
+        final File dict = new File(fasta.getAbsolutePath().replaceAll("\\.fasta$", ".dict"));
+        dict.deleteOnExit();
+        final PrintWriter dictOut = new PrintWriter(dict);
+        dictOut.print("@HD\tVN:1.0\n");
+
+        long offset = 0;
+        for ( int contig = 0; contig < contigLengths.length; contig++ ) {
+            final StringBuilder bases = new StringBuilder();
+            for ( int i = 0; i < contigLengths[contig]; i++ )
+                bases.append("ACGT".charAt(random.nextInt(4)));
+            contigBases[contig] = bases.toString();
+
+            final String header = ">c" + contig + "\n";
+            fastaOut.print(header);
+            offset += header.length();
+            indexOut.print("c" + contig + "\t" + contigLengths[contig] + "\t" + offset + "\t60\t61\n");
+            dictOut.print("@SQ\tSN:c" + contig + "\tLN:" + contigLengths[contig] + "\n");
+            for ( int i = 0; i < contigLengths[contig]; i += 60 ) {
+                final String line = contigBases[contig].substring(i, Math.min(contigLengths[contig], i + 60)) + "\n";
+                fastaOut.print(line);
+                offset += line.length();
+            }
+        }
+
+        fastaOut.close();
+        indexOut.close();
+        dictOut.close();
+        return contigBases;
+    }
+}
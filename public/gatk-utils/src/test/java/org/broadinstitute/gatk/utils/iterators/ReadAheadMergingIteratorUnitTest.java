@@ -0,0 +1,109 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.iterators;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ReadAheadMergingIteratorUnitTest extends BaseTest {
+    // orders values by their first character only, so that equal elements of different inputs can be told apart
+    private static final Comparator<String> FIRST_CHARACTER = new Comparator<String>() {
+        @Override
+        public int compare(final String a, final String b) {
+            return Character.compare(a.charAt(0), b.charAt(0));
+        }
+    };
+
+    @DataProvider(name = "MergeTest")
+    public Object[][] makeMergeTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final int nThreads : Arrays.asList(0, 1, 3) ) {
+            for ( final int batchSize : Arrays.asList(1, 2, 100) ) {
+                tests.add(new Object[]{Collections.<List<String>>emptyList(), nThreads, batchSize, Collections.<String>emptyList()});
+                tests.add(new Object[]{Arrays.asList(Collections.<String>emptyList(), Collections.<String>emptyList()), nThreads, batchSize, Collections.<String>emptyList()});
+                tests.add(new Object[]{Arrays.asList(Arrays.asList("a1", "c1", "e1")), nThreads, batchSize, Arrays.asList("a1", "c1", "e1")});
+                tests.add(new Object[]{Arrays.asList(Arrays.asList("a1", "c1", "e1"), Collections.<String>emptyList(), Arrays.asList("b2", "d2")),
+                        nThreads, batchSize, Arrays.asList("a1", "b2", "c1", "d2", "e1")});
+                tests.add(new Object[]{Arrays.asList(Arrays.asList("d1", "e1"), Arrays.asList("a2", "b2", "c2")),
+                        nThreads, batchSize, Arrays.asList("a2", "b2", "c2", "d1", "e1")});
+                // equal elements come out in the order of their inputs
+                tests.add(new Object[]{Arrays.asList(Arrays.asList("a1", "b1", "b1'"), Arrays.asList("a2", "b2"), Arrays.asList("b3")),
+                        nThreads, batchSize, Arrays.asList("a1", "a2", "b1", "b1'", "b2", "b3")});
+            }
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "MergeTest")
+    public void testMerge(final List<List<String>> inputs, final int nThreads, final int batchSize, final List<String> expected) {
+        final ExecutorService service = nThreads == 0 ? null : Executors.newFixedThreadPool(nThreads);
+        try {
+            final List<Iterator<String>> iterators = new ArrayList<Iterator<String>>();
+            for ( final List<String> input : inputs )
+                iterators.add(input.iterator());
+
+            final List<String> merged = new ArrayList<String>();
+            for ( final String value : new ReadAheadMergingIterator<String>(iterators, FIRST_CHARACTER, service, batchSize) )
+                merged.add(value);
+            Assert.assertEquals(merged, expected);
+        } finally {
+            if ( service != null )
+                service.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testReadAheadFailure() {
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        try {
+            final Iterator<String> failing = new Iterator<String>() {
+                private int n = 0;
+                public boolean hasNext() { return true; }
+                public String next() {
+                    if ( n++ == 2 ) throw new IllegalStateException("read failed");
+                    return "a";
+                }
+                public void remove() { throw new UnsupportedOperationException(); }
+            };
+            final Iterator<String> merged = new ReadAheadMergingIterator<String>(Collections.singletonList(failing), FIRST_CHARACTER, service, 2);
+            while ( merged.hasNext() )
+                merged.next();
+        } finally {
+            service.shutdownNow();
+        }
+    }
+}
@@ -136,6 +136,16 @@ public class LocusIteratorBenchmark extends SimpleBenchmark {
         }
     }
 
+    public void timePerSampleReadStateManager(int rep) {
+        for ( int i = 0; i < rep; i++ ) {
+            final PerSampleReadStateManager manager = new PerSampleReadStateManager(LocusIteratorByState.NO_DOWNSAMPLING);
+            manager.addReadsAtNextAlignmentStart(reads);
+            while ( ! manager.isEmpty() ) {
+                manager.updateReadStates();
+            }
+        }
+    }
+
     public static void main(String[] args) {
         com.google.caliper.Runner.main(LocusIteratorBenchmark.class, args);
     }
@@ -27,6 +27,9 @@ package org.broadinstitute.gatk.utils.locusiterator;
 
 import htsjdk.samtools.SAMRecord;
 import org.broadinstitute.gatk.utils.MathUtils;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.downsampling.LevelingDownsampler;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.testng.Assert;
@@ -185,4 +188,92 @@ public class PerSampleReadStateManagerUnitTest extends LocusIteratorByStateBaseT
 
         test.run();
     }
+
+    @DataProvider(name = "PackedStatesTest")
+    public Object[][] makePackedStatesTest() {
+        return createLIBSTests(
+                Arrays.asList(1, 2),
+                Arrays.asList(1, 2, 3, 4));
+    }
+
+    @Test(dataProvider = "PackedStatesTest")
+    public void testPackedStatesMatchAlignmentStateMachines(LIBSTest params) {
+        final List<GATKSAMRecord> reads = Arrays.asList(params.makeRead(), params.makeRead(), params.makeRead());
+        final PerSampleReadStateManager manager = new PerSampleReadStateManager(LocusIteratorByState.NO_DOWNSAMPLING);
+
+        final List<AlignmentStateMachine> machines = new LinkedList<AlignmentStateMachine>();
+        for ( final GATKSAMRecord read : reads ) {
+            final AlignmentStateMachine machine = new AlignmentStateMachine(read);
+            if ( machine.stepForwardOnGenome() != null )
+                machines.add(machine);
+        }
+
+        Assert.assertEquals(manager.addReadsAtNextAlignmentStart(reads), machines.size());
+
+        while ( ! machines.isEmpty() ) {
+            Assert.assertEquals(manager.size(), machines.size());
+            for ( int i = 0; i < machines.size(); i++ ) {
+                final AlignmentStateMachine machine = machines.get(i);
+                Assert.assertSame(manager.getRead(i), machine.getRead());
+                Assert.assertEquals(manager.getCigarOperator(i), machine.getCigarOperator());
+                Assert.assertEquals(manager.getGenomePosition(i), machine.getGenomePosition());
+
+                final PileupElement expected = machine.makePileupElement();
+                final PileupElement actual = manager.makePileupElement(i);
+                Assert.assertEquals(actual.getOffset(), expected.getOffset());
+                Assert.assertEquals(actual.getCurrentCigarElement(), expected.getCurrentCigarElement());
+                Assert.assertEquals(actual.getCurrentCigarOffset(), expected.getCurrentCigarOffset());
+                Assert.assertEquals(actual.getOffsetInCurrentCigar(), expected.getOffsetInCurrentCigar());
+            }
+
+            final Iterator<AlignmentStateMachine> it = machines.iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().stepForwardOnGenome() == null )
+                    it.remove();
+            }
+            manager.updateReadStates();
+        }
+
+        Assert.assertTrue(manager.isEmpty());
+    }
+
+    @Test
+    public void testLevelingMatchesLevelingDownsampler() {
+        final int downsamplingTarget = 10;
+        final List<List<GATKSAMRecord>> stacks = new ArrayList<List<GATKSAMRecord>>();
+        int alignmentStart = 1;
+        for ( final int readsThisStack : Arrays.asList(5, 8, 1, 12, 3, 7, 20, 2) )
+            stacks.add(new ArrayList<GATKSAMRecord>(ArtificialSAMUtils.createStackOfIdenticalArtificialReads(readsThisStack, header, "foo", 0, alignmentStart++, 100)));
+
+        Utils.resetRandomGenerator();
+        final PerSampleReadStateManager manager = new PerSampleReadStateManager(new LIBSDownsamplingInfo(true, downsamplingTarget));
+        for ( final List<GATKSAMRecord> stack : stacks ) {
+            manager.updateReadStates();
+            manager.addReadsAtNextAlignmentStart(stack);
+        }
+
+        // every stack ends up at its own position on the genome, so the stacks are the groups that get leveled
+        Utils.resetRandomGenerator();
+        final LevelingDownsampler<LinkedList<GATKSAMRecord>, GATKSAMRecord> downsampler = new LevelingDownsampler<LinkedList<GATKSAMRecord>, GATKSAMRecord>(downsamplingTarget);
+        List<LinkedList<GATKSAMRecord>> expectedStacks = new ArrayList<LinkedList<GATKSAMRecord>>();
+        for ( final List<GATKSAMRecord> stack : stacks ) {
+            expectedStacks.add(new LinkedList<GATKSAMRecord>(stack));
+            int nReads = 0;
+            for ( final List<GATKSAMRecord> expectedStack : expectedStacks )
+                nReads += expectedStack.size();
+            if ( nReads > downsamplingTarget ) {
+                downsampler.submit(expectedStacks);
+                downsampler.signalEndOfInput();
+                expectedStacks = downsampler.consumeFinalizedItems();
+            }
+        }
+
+        final List<GATKSAMRecord> expectedReads = new ArrayList<GATKSAMRecord>();
+        for ( final List<GATKSAMRecord> expectedStack : expectedStacks )
+            expectedReads.addAll(expectedStack);
+
+        Assert.assertEquals(manager.size(), expectedReads.size());
+        for ( int i = 0; i < expectedReads.size(); i++ )
+            Assert.assertSame(manager.getRead(i), expectedReads.get(i), "Leveling kept a different read at " + i);
+    }
 }
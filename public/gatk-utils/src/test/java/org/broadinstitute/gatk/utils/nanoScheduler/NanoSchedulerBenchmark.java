@@ -0,0 +1,91 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caliper microbenchmark comparing the throughput of the NanoScheduler and WorkStealingNanoScheduler
+ */
+public class NanoSchedulerBenchmark extends SimpleBenchmark {
+
+    @Param({"Original", "WorkStealing"})
+    String version; // set automatically by framework
+
+    @Param({"1", "4", "16", "32"})
+    int nThreads; // set automatically by framework
+
+    @Param({"10", "1000"})
+    int mapCost; // set automatically by framework
+
+    @Param({"100000"})
+    int nElements; // set automatically by framework
+
+    List<Integer> inputs;
+
+    @Override protected void setUp() {
+        inputs = new ArrayList<Integer>(nElements);
+        for ( int i = 0; i < nElements; i++ )
+            inputs.add(i);
+    }
+
+    private class BusyMap implements NSMapFunction<Integer, Integer> {
+        @Override public Integer apply(Integer input) {
+            int x = input;
+            for ( int i = 0; i < mapCost; i++ )
+                x = x * 31 + i;
+            return x;
+        }
+    }
+
+    private static class ReduceSum implements NSReduceFunction<Integer, Long> {
+        @Override public Long apply(Integer one, Long sum) { return sum + one; }
+    }
+
+    private NanoScheduler<Integer, Integer, Long> makeScheduler() {
+        if ( version.equals("Original") )
+            return new NanoScheduler<Integer, Integer, Long>(nThreads);
+        else if ( version.equals("WorkStealing") )
+            return new WorkStealingNanoScheduler<Integer, Integer, Long>(nThreads);
+        else
+            throw new IllegalArgumentException("Unsupported implementation " + version);
+    }
+
+    public void timeNanoScheduler(int rep) {
+        final NanoScheduler<Integer, Integer, Long> nanoScheduler = makeScheduler();
+        for ( int i = 0; i < rep; i++ )
+            nanoScheduler.execute(inputs.iterator(), new BusyMap(), 0L, new ReduceSum());
+        nanoScheduler.shutdown();
+    }
+
+    public static void main(String[] args) {
+        com.google.caliper.Runner.main(NanoSchedulerBenchmark.class, args);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * UnitTests for the WorkStealingNanoScheduler
+ */
+public class WorkStealingNanoSchedulerUnitTest extends BaseTest {
+    public static final int NANO_SCHEDULE_MAX_RUNTIME = 30000;
+
+    private static class Map2x implements NSMapFunction<Integer, Integer> {
+        @Override public Integer apply(Integer input) {
+            if ( input % 7 == 0 ) {
+                try {
+                    Thread.sleep(input % 3);
+                } catch ( InterruptedException ex ) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return input * 2;
+        }
+    }
+
+    private static class ReduceSum implements NSReduceFunction<Integer, Integer> {
+        int prevOne = Integer.MIN_VALUE;
+
+        @Override public Integer apply(Integer one, Integer sum) {
+            Assert.assertTrue(prevOne < one, "Reduce came in out of order.  Prev " + prevOne + " cur " + one);
+            prevOne = one;
+            return one + sum;
+        }
+    }
+
+    private static Iterator<Integer> makeReader(final int n) {
+        final List<Integer> ints = new ArrayList<Integer>(n);
+        for ( int i = 0; i < n; i++ )
+            ints.add(i);
+        return ints.iterator();
+    }
+
+    @DataProvider(name = "WorkStealingTest")
+    public Object[][] createWorkStealingTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+
+        for ( final int bufferSize : Arrays.asList(1, 10, 100) )
+            for ( final int nThreads : Arrays.asList(1, 2, 4) )
+                for ( final int nElements : Arrays.asList(0, 1, 2, 11, 100, 10000) )
+                    tests.add(new Object[]{bufferSize, nThreads, nElements});
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "WorkStealingTest", timeOut = NANO_SCHEDULE_MAX_RUNTIME)
+    public void testWorkStealingNanoScheduler(final int bufferSize, final int nThreads, final int nElements) {
+        final WorkStealingNanoScheduler<Integer, Integer, Integer> nanoScheduler = new WorkStealingNanoScheduler<Integer, Integer, Integer>(bufferSize, nThreads);
+
+        Assert.assertEquals(nanoScheduler.getnThreads(), nThreads, "nThreads argument");
+        Assert.assertEquals(nanoScheduler.getBufferSize(), bufferSize, "bufferSize argument");
+        Assert.assertTrue(nanoScheduler.getChunkSize() >= 1, "chunk size must be positive");
+
+        int expected = 0;
+        for ( int i = 0; i < nElements; i++ )
+            expected += 2 * i;
+
+        // run several times to check that the scheduler can be reused
+        for ( int i = 0; i < 3; i++ ) {
+            final Integer sum = nanoScheduler.execute(makeReader(nElements), new Map2x(), 0, new ReduceSum());
+            Assert.assertEquals((int)sum, expected, "WorkStealingNanoScheduler sum not the same as calculated directly");
+        }
+
+        nanoScheduler.shutdown();
+        Assert.assertTrue(nanoScheduler.isShutdown(), "scheduler should be dead");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, timeOut = NANO_SCHEDULE_MAX_RUNTIME)
+    public void testShutdownExecuteFailure() {
+        final WorkStealingNanoScheduler<Integer, Integer, Integer> nanoScheduler = new WorkStealingNanoScheduler<Integer, Integer, Integer>(2);
+        nanoScheduler.shutdown();
+        nanoScheduler.execute(makeReader(10), new Map2x(), 0, new ReduceSum());
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class, timeOut = NANO_SCHEDULE_MAX_RUNTIME)
+    public void testMapErrorIsThrown() {
+        final WorkStealingNanoScheduler<Integer, Integer, Integer> nanoScheduler = new WorkStealingNanoScheduler<Integer, Integer, Integer>(10, 4);
+        try {
+            nanoScheduler.execute(makeReader(10000), new NSMapFunction<Integer, Integer>() {
+                @Override public Integer apply(Integer input) {
+                    if ( input == 5000 ) throw new ReviewedGATKException("test");
+                    return input;
+                }
+            }, 0, new ReduceSum());
+        } finally {
+            nanoScheduler.shutdown();
+        }
+    }
+}
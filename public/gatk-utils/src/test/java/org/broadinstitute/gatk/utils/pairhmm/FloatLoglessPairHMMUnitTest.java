@@ -0,0 +1,148 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the FloatLoglessPairHMM against the exact Log10PairHMM
+ */
+public class FloatLoglessPairHMMUnitTest extends BaseTest {
+    private static final byte[] BASES = "ACGT".getBytes();
+    private static final double TOLERANCE = 1e-4;
+
+    @DataProvider(name = "PairHMMTest")
+    public Object[][] makePairHMMTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        final Random random = new Random(42);
+
+        for ( final int readLength : Arrays.asList(1, 10, 76, 150, 250) ) {
+            for ( final int extraHaplotypeLength : Arrays.asList(0, 5, 100) ) {
+                for ( final int minQual : Arrays.asList(2, 20) ) {
+                    for ( final boolean mismatches : Arrays.asList(false, true) ) {
+                        final byte[] haplotype = randomBases(random, readLength + extraHaplotypeLength);
+                        final byte[] read = Arrays.copyOfRange(haplotype, extraHaplotypeLength / 2, extraHaplotypeLength / 2 + readLength);
+                        if ( mismatches ) {
+                            for ( int i = 0; i < readLength; i += 3 )
+                                read[i] = i % 2 == 0 ? (byte) 'N' : BASES[random.nextInt(BASES.length)];
+                        }
+                        tests.add(new Object[]{haplotype, read, randomQuals(random, readLength, minQual, 40)});
+                    }
+                }
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "PairHMMTest")
+    public void testAgainstExactLog10PairHMM(final byte[] haplotype, final byte[] read, final byte[] quals) {
+        final byte[] gop = new byte[read.length];
+        final byte[] gcp = new byte[read.length];
+        Arrays.fill(gop, (byte) 45);
+        Arrays.fill(gcp, (byte) 10);
+
+        final Log10PairHMM exactHMM = new Log10PairHMM(true);
+        final FloatLoglessPairHMM floatHMM = new FloatLoglessPairHMM();
+        exactHMM.initialize(read.length, haplotype.length);
+        floatHMM.initialize(read.length, haplotype.length);
+
+        final double expected = exactHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+        final double actual = floatHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+        Assert.assertEquals(actual, expected, TOLERANCE * Math.max(1.0, Math.abs(expected)));
+    }
+
+    @Test
+    public void testDoublePrecisionRecomputation() {
+        // a long read that matches nowhere underflows the scaled float computation
+        final Random random = new Random(7);
+        final byte[] haplotype = new byte[300];
+        Arrays.fill(haplotype, (byte) 'A');
+        final byte[] read = new byte[250];
+        Arrays.fill(read, (byte) 'C');
+        final byte[] quals = randomQuals(random, read.length, 30, 40);
+        final byte[] gop = new byte[read.length];
+        final byte[] gcp = new byte[read.length];
+        Arrays.fill(gop, (byte) 45);
+        Arrays.fill(gcp, (byte) 10);
+
+        final Log10PairHMM exactHMM = new Log10PairHMM(true);
+        final FloatLoglessPairHMM floatHMM = new FloatLoglessPairHMM();
+        exactHMM.initialize(read.length, haplotype.length);
+        floatHMM.initialize(read.length, haplotype.length);
+
+        final double expected = exactHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+        final double actual = floatHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+        Assert.assertEquals(floatHMM.getNumDoublePrecisionRecomputations(), 1);
+        Assert.assertEquals(actual, expected, TOLERANCE * Math.abs(expected));
+    }
+
+    @Test
+    public void testReusingReadValuesAcrossHaplotypes() {
+        final Random random = new Random(13);
+        final byte[] read = randomBases(random, 100);
+        final byte[] quals = randomQuals(random, read.length, 10, 40);
+        final byte[] gop = new byte[read.length];
+        final byte[] gcp = new byte[read.length];
+        Arrays.fill(gop, (byte) 45);
+        Arrays.fill(gcp, (byte) 10);
+
+        final FloatLoglessPairHMM cachingHMM = new FloatLoglessPairHMM();
+        cachingHMM.initialize(read.length, 200);
+        cachingHMM.computeReadLikelihoodGivenHaplotypeLog10(randomBases(random, 200), read, quals, gop, gop, gcp, true, null);
+
+        for ( int i = 0; i < 5; i++ ) {
+            final byte[] haplotype = randomBases(random, 100 + random.nextInt(100));
+            final FloatLoglessPairHMM freshHMM = new FloatLoglessPairHMM();
+            freshHMM.initialize(read.length, 200);
+            final double expected = freshHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+            final double actual = cachingHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, false, null);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    private static byte[] randomQuals(final Random random, final int length, final int minQual, final int maxQual) {
+        final byte[] quals = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            quals[i] = (byte) (minQual + random.nextInt(maxQual - minQual + 1));
+        return quals;
+    }
+}
@@ -306,6 +306,42 @@ public class ReadBackedPileupUnitTest {
         }
     }
 
+    @Test(dataProvider = "RBPCountingTest")
+    public void testFilteredPileupViews(RBPCountTest params) {
+        final ReadBackedPileupImpl linked = params.makePileup();
+        final List<PileupElement> elts = new ArrayList<PileupElement>();
+        for ( final PileupElement p : linked )
+            elts.add(p);
+        final ReadBackedPileup pileup = new ReadBackedPileupImpl(loc, elts);
+        final int nRegular = params.nReads - params.nMapq0 - params.nDeletions;
+
+        for ( final ReadBackedPileup source : Arrays.<ReadBackedPileup>asList(linked, pileup) ) {
+            final ReadBackedPileup noDeletions = source.getPileupWithoutDeletions();
+            Assert.assertEquals(noDeletions.getNumberOfElements(), params.nReads - params.nDeletions);
+            Assert.assertEquals(noDeletions.getNumberOfDeletions(), 0);
+
+            final ReadBackedPileup chained = noDeletions.getPileupWithoutMappingQualityZeroReads();
+            Assert.assertEquals(chained.getNumberOfElements(), nRegular);
+            Assert.assertEquals(chained.getNumberOfMappingQualityZeroReads(), 0);
+            Assert.assertEquals(source.getMappingFilteredPileup(1).getBaseFilteredPileup(20).getNumberOfElements(), params.nReads - params.nMapq0);
+
+            for ( final ReadBackedPileup view : Arrays.asList(source, noDeletions, chained) ) {
+                final byte[] bases = view.getBases();
+                final byte[] quals = view.getQuals();
+                final int[] mapQuals = view.getMappingQuals();
+                Assert.assertEquals(bases.length, view.getNumberOfElements());
+                int i = 0;
+                for ( final PileupElement p : view ) {
+                    Assert.assertSame(view.getElement(i), p);
+                    Assert.assertEquals(view.getBase(i), bases[i]);
+                    Assert.assertEquals(view.getQual(i), quals[i]);
+                    Assert.assertEquals(view.getMappingQual(i), mapQuals[i]);
+                    i++;
+                }
+            }
+        }
+    }
+
     @Test
     public void testRBPMappingQuals() {
 
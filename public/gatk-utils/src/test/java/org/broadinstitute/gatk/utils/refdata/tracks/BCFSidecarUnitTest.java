@@ -0,0 +1,94 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.tribble.Tribble;
+import htsjdk.variant.vcf.VCFCodec;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class BCFSidecarUnitTest extends BaseTest {
+    private ReferenceSequenceFile seq;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        seq = new CachingIndexedFastaSequenceFile(new File(b37KGReference));
+    }
+
+    private File createTempVCF() throws IOException {
+        final File tmpVCF = createTempFile("BCFSidecarUnitTest", ".vcf");
+        Files.copy(new File(privateTestDir + "vcf4.1.example.vcf").toPath(), tmpVCF.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        final File sidecarFile = BCFSidecar.sidecarFile(tmpVCF);
+        sidecarFile.deleteOnExit();
+        new File(sidecarFile.getAbsolutePath() + BCFSidecar.SOURCE_EXTENSION).deleteOnExit();
+        Tribble.indexFile(sidecarFile).deleteOnExit();
+        return tmpVCF;
+    }
+
+    @Test
+    public void testSidecarMatchesVCF() throws IOException {
+        final File tmpVCF = createTempVCF();
+        final File sidecarFile = BCFSidecar.sidecarFile(tmpVCF);
+
+        // build without locking, as lock acquisition can hang on some file systems
+        final BCFSidecar sidecars = new BCFSidecar(seq.getSequenceDictionary(), true);
+        Assert.assertNull(sidecars.getSidecar(tmpVCF, new VCFCodec()), "Sidecars shouldn't be created when auto-creation is disabled");
+        sidecars.buildSidecar(tmpVCF, new VCFCodec(), sidecarFile);
+
+        Assert.assertTrue(sidecars.isCurrent(tmpVCF, sidecarFile));
+        Assert.assertEquals(sidecars.getSidecar(tmpVCF, new VCFCodec()), sidecarFile);
+        assertVCFandBCFFilesAreTheSame(tmpVCF, sidecarFile);
+    }
+
+    @Test
+    public void testSidecarValidation() throws IOException {
+        final File tmpVCF = createTempVCF();
+        final File sidecarFile = BCFSidecar.sidecarFile(tmpVCF);
+        final BCFSidecar sidecars = new BCFSidecar(seq.getSequenceDictionary(), true);
+        sidecars.buildSidecar(tmpVCF, new VCFCodec(), sidecarFile);
+
+        // touching the VCF without changing it keeps the sidecar valid, thanks to the checksum
+        Assert.assertTrue(tmpVCF.setLastModified(tmpVCF.lastModified() + 10000));
+        Assert.assertTrue(sidecars.isCurrent(tmpVCF, sidecarFile), "Sidecar should still match an unchanged VCF");
+
+        // changing the VCF invalidates it
+        try ( final FileWriter writer = new FileWriter(tmpVCF, true) ) {
+            writer.write("\n");
+        }
+        Assert.assertFalse(sidecars.isCurrent(tmpVCF, sidecarFile), "Sidecar shouldn't match a modified VCF");
+        Assert.assertNull(sidecars.getSidecar(tmpVCF, new VCFCodec()));
+    }
+}
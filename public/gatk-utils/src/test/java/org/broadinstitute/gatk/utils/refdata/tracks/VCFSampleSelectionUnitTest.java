@@ -0,0 +1,142 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class VCFSampleSelectionUnitTest extends BaseTest {
+    private static final String SITE = "1\t100\trs1\tA\tG\t50\tPASS\tAC=2;AN=6";
+
+    @DataProvider(name = "SubsetLineTest")
+    public Object[][] makeSubsetLineTest() {
+        final String line = SITE + "\tGT:DP\t0/1:10\t1/1:20\t0/0:30";
+        List<Object[]> tests = new ArrayList<Object[]>();
+        tests.add(new Object[]{line, new int[]{}, SITE});
+        tests.add(new Object[]{line, new int[]{0}, SITE + "\tGT:DP\t0/1:10"});
+        tests.add(new Object[]{line, new int[]{1}, SITE + "\tGT:DP\t1/1:20"});
+        tests.add(new Object[]{line, new int[]{2}, SITE + "\tGT:DP\t0/0:30"});
+        tests.add(new Object[]{line, new int[]{0, 2}, SITE + "\tGT:DP\t0/1:10\t0/0:30"});
+        tests.add(new Object[]{line, new int[]{1, 2}, SITE + "\tGT:DP\t1/1:20\t0/0:30"});
+        tests.add(new Object[]{SITE, new int[]{}, SITE});
+        tests.add(new Object[]{SITE, new int[]{0}, SITE});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SubsetLineTest")
+    public void testSubsetLine(final String line, final int[] selectedColumns, final String expected) {
+        Assert.assertEquals(VCFSampleSelection.subsetLine(line, selectedColumns), expected);
+    }
+
+    @Test
+    public void testSelectedColumns() {
+        final List<String> samples = Arrays.asList("NA1", "NA2", "NA3");
+        Assert.assertNull(VCFSampleSelection.getSelectedColumns(samples, null));
+        Assert.assertNull(VCFSampleSelection.getSelectedColumns(samples, new HashSet<String>(samples)));
+        Assert.assertNull(VCFSampleSelection.getSelectedColumns(Collections.<String>emptyList(), new HashSet<String>(samples)));
+        Assert.assertEquals(VCFSampleSelection.getSelectedColumns(samples, Collections.<String>emptySet()), new int[]{});
+        Assert.assertEquals(VCFSampleSelection.getSelectedColumns(samples, new HashSet<String>(Arrays.asList("NA3", "NA1", "NA4"))), new int[]{0, 2});
+    }
+
+    private File createTempVCF() throws IOException {
+        final File vcf = createTempFile("VCFSampleSelectionUnitTest", ".vcf");
+        final FileWriter writer = new FileWriter(vcf);
+        writer.write("##fileformat=VCFv4.1\n");
+        writer.write("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n");
+        writer.write("##INFO=<ID=AN,Number=1,Type=Integer,Description=\"Allele number\">\n");
+        writer.write("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+        writer.write("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n");
+        writer.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tNA1\tNA2\tNA3\n");
+        writer.write(SITE + "\tGT:DP\t0/1:10\t1/1:20\t0/0:30\n");
+        writer.write("1\t200\t.\tC\tT,G\t60\tPASS\tAC=1,1;AN=6\tGT:DP\t0/0:11\t./.\t1/2:33\n");
+        writer.close();
+        return vcf;
+    }
+
+    private List<VariantContext> readVCF(final File vcf, final VCFCodec codec) throws IOException {
+        final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(vcf.getAbsolutePath(), codec, false);
+        Assert.assertEquals(((VCFHeader)reader.getHeader()).getGenotypeSamples(), Arrays.asList("NA1", "NA2", "NA3"),
+                "The header should list all samples whatever the selection");
+        final List<VariantContext> vcs = new ArrayList<VariantContext>();
+        for ( final VariantContext vc : reader.iterator() )
+            vcs.add(vc);
+        reader.close();
+        return vcs;
+    }
+
+    @Test
+    public void testDecodeSelectedSamples() throws IOException {
+        final File vcf = createTempVCF();
+        final List<VariantContext> expected = readVCF(vcf, new VCFCodec());
+
+        final VCFSampleSelection selection = new VCFSampleSelection();
+        final VCFCodec codec = selection.createCodec();
+        selection.selectSamples(Arrays.asList("NA3", "NA1"));
+        final List<VariantContext> actual = readVCF(vcf, codec);
+
+        Assert.assertEquals(actual.size(), expected.size());
+        for ( int i = 0; i < actual.size(); i++ ) {
+            Assert.assertEquals(actual.get(i).getAlleles(), expected.get(i).getAlleles());
+            Assert.assertEquals(actual.get(i).getAttributes(), expected.get(i).getAttributes());
+            Assert.assertEquals(actual.get(i).getSampleNamesOrderedByName(), Arrays.asList("NA1", "NA3"));
+            for ( final String sample : Arrays.asList("NA1", "NA3") ) {
+                final Genotype actualGenotype = actual.get(i).getGenotype(sample);
+                final Genotype expectedGenotype = expected.get(i).getGenotype(sample);
+                Assert.assertEquals(actualGenotype.getAlleles(), expectedGenotype.getAlleles());
+                Assert.assertEquals(actualGenotype.getDP(), expectedGenotype.getDP());
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeSitesOnly() throws IOException {
+        final File vcf = createTempVCF();
+        final VCFSampleSelection selection = new VCFSampleSelection();
+        final VCFCodec codec = selection.createCodec();
+        selection.selectSamples(Collections.<String>emptyList());
+
+        for ( final VariantContext vc : readVCF(vcf, codec) ) {
+            Assert.assertFalse(vc.hasGenotypes());
+            Assert.assertTrue(vc.hasAttribute("AN"));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.Utils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BandedSWPairwiseAlignmentUnitTest extends BaseTest {
+
+    private static final Parameters[] PARAMETERS = { SWParameterSet.ORIGINAL_DEFAULT.parameters, SWParameterSet.STANDARD_NGS.parameters, new Parameters(200, -150, -260, -11) };
+
+    private static String randomBases(final Random random, final String alphabet, final int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for ( int i = 0; i < length; i++ )
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    // a copy of the middle of the reference with a few SNPs and indels in it
+    private static String mutate(final Random random, final String ref) {
+        final int start = random.nextInt(ref.length());
+        final int stop = start + random.nextInt(ref.length() - start) + 1;
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = start; i < stop; i++ ) {
+            final int event = random.nextInt(20);
+            if ( event == 0 )
+                sb.append(randomBases(random, "ACGT", 1));
+            else if ( event == 1 )
+                sb.append(ref.charAt(i)).append(randomBases(random, "ACGT", random.nextInt(4) + 1));
+            else if ( event != 2 )
+                sb.append(ref.charAt(i));
+        }
+        return sb.length() == 0 ? ref.substring(start, stop) : sb.toString();
+    }
+
+    @DataProvider(name = "Alignments")
+    public Object[][] makeAlignments() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+
+        tests.add(new Object[]{"ACGTACGTAC", "ACGTACGTAC"});
+        tests.add(new Object[]{"ACGTACGTAC", "ACGTTCGTAC"});
+        tests.add(new Object[]{"AAAAACCCCCGGGGGTTTTT", "AAAAACCCCCTTTTT"});
+        tests.add(new Object[]{"AAAAACCCCCTTTTT", "AAAAACCCCCGGGGGTTTTT"});
+        tests.add(new Object[]{"AAAAACCCCCGGGGGTTTTT", "CCCGGGGG"});
+        tests.add(new Object[]{"AAAAACCCCCGGGGGTTTTT", "GGGTTTTTACGT"});
+        tests.add(new Object[]{"AAAAACCCCCGGGGGTTTTT", "ACGTAAAAACCC"});
+        tests.add(new Object[]{"A", "A"});
+        tests.add(new Object[]{"A", "C"});
+        tests.add(new Object[]{"ACGT", "T"});
+        tests.add(new Object[]{"T", "ACGT"});
+        tests.add(new Object[]{Utils.dupString('A', 50) + "X" + Utils.dupString('A', 10) + "X" + Utils.dupString('A', 50),
+                               Utils.dupString('A', 50) + "Y" + Utils.dupString('A', 10) + "Y" + Utils.dupString('A', 50)});
+
+        final Random random = new Random(42);
+        for ( int i = 0; i < 200; i++ ) {
+            final String ref = randomBases(random, i % 10 == 0 ? "ACGTN" : "ACGT", random.nextInt(80) + 1);
+            final String alt = i % 3 == 0 ? randomBases(random, "ACGT", random.nextInt(80) + 1) : mutate(random, ref);
+            tests.add(new Object[]{ref, alt});
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Alignments")
+    public void testSameAsSWPairwiseAlignment(final String ref, final String alt) {
+        for ( final Parameters parameters : PARAMETERS ) {
+            for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() ) {
+                final SWPairwiseAlignment expected = new SWPairwiseAlignment(parameters);
+                expected.overhang_strategy = strategy;
+                expected.align(ref.getBytes(), alt.getBytes());
+
+                final SmithWaterman actual = new BandedSWPairwiseAlignment(ref.getBytes(), alt.getBytes(), parameters, strategy, BandedSWPairwiseAlignment.NO_BAND);
+                Assert.assertEquals(actual.getCigar(), expected.getCigar(), "cigar for " + ref + " vs. " + alt + " with " + strategy);
+                Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), "offset for " + ref + " vs. " + alt + " with " + strategy);
+            }
+        }
+    }
+
+    @DataProvider(name = "BandedAlignments")
+    public Object[][] makeBandedAlignments() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+
+        final Random random = new Random(13);
+        for ( int i = 0; i < 50; i++ ) {
+            final String prefix = randomBases(random, "ACGT", 40);
+            final String suffix = randomBases(random, "ACGT", 40);
+            final String middle = randomBases(random, "ACGT", random.nextInt(4) + 1);
+
+            // haplotypes with a short insertion, deletion or SNP against their reference
+            tests.add(new Object[]{prefix + suffix, prefix + middle + suffix, 5});
+            tests.add(new Object[]{prefix + middle + suffix, prefix + suffix, 5});
+            tests.add(new Object[]{prefix + "A" + suffix, prefix + "C" + suffix, 0});
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "BandedAlignments")
+    public void testBandedSameAsSWPairwiseAlignment(final String ref, final String alt, final int bandWidth) {
+        for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() ) {
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(ref.getBytes(), alt.getBytes(), SWParameterSet.STANDARD_NGS, strategy);
+            final SmithWaterman actual = new BandedSWPairwiseAlignment(ref.getBytes(), alt.getBytes(), SWParameterSet.STANDARD_NGS.parameters, strategy, bandWidth);
+            Assert.assertEquals(actual.getCigar(), expected.getCigar(), "cigar for " + ref + " vs. " + alt + " with " + strategy);
+            Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), "offset for " + ref + " vs. " + alt + " with " + strategy);
+        }
+    }
+
+    @Test
+    public void testBandExcludesDistantAlignments() {
+        // the start of the alternate only matches the end of the reference, 30 diagonals away from a band of 2
+        final String ref = Utils.dupString('C', 30) + "ACGTTGCA";
+        final String alt = "ACGTTGCA" + Utils.dupString('G', 30);
+        final SmithWaterman full = new BandedSWPairwiseAlignment(ref.getBytes(), alt.getBytes(), SWParameterSet.ORIGINAL_DEFAULT.parameters, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, BandedSWPairwiseAlignment.NO_BAND);
+        Assert.assertEquals(full.getAlignmentStart2wrt1(), 30);
+        Assert.assertEquals(full.getCigar().toString(), "8M30S");
+
+        final SmithWaterman banded = new BandedSWPairwiseAlignment(ref.getBytes(), alt.getBytes(), SWParameterSet.ORIGINAL_DEFAULT.parameters, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, 2);
+        Assert.assertNotEquals(banded.getAlignmentStart2wrt1(), 30);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadBandWidth() {
+        new BandedSWPairwiseAlignment("ACGT".getBytes(), "ACGT".getBytes(), SWParameterSet.ORIGINAL_DEFAULT.parameters, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, -2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptySequence() {
+        new BandedSWPairwiseAlignment("ACGT".getBytes(), new byte[0]);
+    }
+}
@@ -30,11 +30,12 @@ import com.google.caliper.SimpleBenchmark;
 import org.broadinstitute.gatk.utils.Utils;
 
 /**
- * Caliper microbenchmark of parsing a VCF file
+ * Caliper microbenchmark of the Smith-Waterman implementations, aligning a haplotype to its reference and a read to
+ * the haplotype
  */
 public class SmithWatermanBenchmark extends SimpleBenchmark {
 
-    @Param({"Original"})
+    @Param({"Original", "Banded", "Banded10"})
     String version; // set automatically by framework
 
     @Param({"10", "50", "100", "500"})
@@ -43,8 +44,12 @@ public class SmithWatermanBenchmark extends SimpleBenchmark {
     @Param({"10", "50", "100", "500"})
     int sizeOfEndRegions; // set automatically by framework
 
+    @Param({"50", "100", "250"})
+    int readLength; // set automatically by framework
+
     String refString;
     String hapString;
+    String readString;
 
     @Override protected void setUp() {
         final StringBuilder ref = new StringBuilder();
@@ -69,14 +74,38 @@ public class SmithWatermanBenchmark extends SimpleBenchmark {
 
         refString = ref.toString();
         hapString = hap.toString();
+
+        // a read from the middle of the haplotype, with a SNP of its own
+        final int readStart = Math.max(0, (hapString.length() - readLength) / 2);
+        final StringBuilder read = new StringBuilder(hapString.substring(readStart, Math.min(hapString.length(), readStart + readLength)));
+        read.setCharAt(read.length() / 2, 'Z');
+        readString = read.toString();
+    }
+
+    private SmithWaterman align(final byte[] seq1, final byte[] seq2) {
+        if ( version.equals("Original") )
+            return new SWPairwiseAlignment(seq1, seq2);
+        if ( version.equals("Banded") )
+            return new BandedSWPairwiseAlignment(seq1, seq2);
+        if ( version.equals("Banded10") )
+            return new BandedSWPairwiseAlignment(seq1, seq2, SWParameterSet.ORIGINAL_DEFAULT.parameters, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP, 10);
+        throw new IllegalArgumentException("Unsupported implementation " + version);
     }
 
     public void timeSW(int rep) {
+        final byte[] ref = refString.getBytes();
+        final byte[] hap = hapString.getBytes();
+        for ( int i = 0; i < rep; i++ ) {
+            final SmithWaterman sw = align(ref, hap);
+            sw.getCigar();
+        }
+    }
+
+    public void timeReadToHaplotype(int rep) {
+        final byte[] hap = hapString.getBytes();
+        final byte[] read = readString.getBytes();
         for ( int i = 0; i < rep; i++ ) {
-            final SmithWaterman sw;
-            if ( version.equals("Greedy") )
-                throw new IllegalArgumentException("Unsupported implementation");
-            sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
+            final SmithWaterman sw = align(hap, read);
             sw.getCigar();
         }
     }
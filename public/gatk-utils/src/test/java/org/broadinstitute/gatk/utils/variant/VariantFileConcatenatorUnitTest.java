@@ -0,0 +1,132 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class VariantFileConcatenatorUnitTest extends BaseTest {
+    private static final String HEADER = "##fileformat=VCFv4.1\n" +
+            "##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tNA1\tNA2\n";
+
+    private static String record(final int position) {
+        return "1\t" + position + "\t.\tA\tG\t50\tPASS\tDP=" + position + "\tGT\t0/1\t1/1\n";
+    }
+
+    private static String records(final int first, final int last) {
+        final StringBuilder records = new StringBuilder();
+        for ( int position = first; position <= last; position++ )
+            records.append(record(position));
+        return records.toString();
+    }
+
+    @DataProvider(name = "ConcatenationTest")
+    public Object[][] makeConcatenationTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final boolean blockCompressed : Arrays.asList(false, true) ) {
+            tests.add(new Object[]{blockCompressed, Arrays.asList(HEADER + records(1, 3))});
+            tests.add(new Object[]{blockCompressed, Arrays.asList(HEADER + records(1, 3), HEADER + records(4, 4), HEADER + records(5, 9))});
+            // header-only shards contribute nothing
+            tests.add(new Object[]{blockCompressed, Arrays.asList(HEADER, HEADER + records(1, 2), HEADER, HEADER + records(3, 5))});
+            // large enough for the records to span many blocks
+            tests.add(new Object[]{blockCompressed, Arrays.asList(HEADER + records(1, 5000), HEADER + records(5001, 9000))});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "ConcatenationTest")
+    public void testConcatenation(final boolean blockCompressed, final List<String> shards) throws IOException {
+        final File output = concatenate(blockCompressed, shards);
+
+        final StringBuilder expected = new StringBuilder(HEADER);
+        for ( final String shard : shards )
+            expected.append(shard.substring(HEADER.length()));
+        Assert.assertEquals(read(output, blockCompressed), expected.toString());
+    }
+
+    @Test
+    public void testMissingFinalNewline() throws IOException {
+        final String first = HEADER + records(1, 2);
+        final File output = concatenate(false, Arrays.asList(first.substring(0, first.length() - 1), HEADER, HEADER + records(3, 3)));
+        Assert.assertEquals(read(output, false), HEADER + records(1, 3));
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testDifferentSamples() throws IOException {
+        concatenate(false, Arrays.asList(HEADER + records(1, 2), HEADER.replace("NA2", "NA3") + records(3, 4)));
+    }
+
+    private File concatenate(final boolean blockCompressed, final List<String> shards) throws IOException {
+        final String extension = blockCompressed ? ".vcf.gz" : ".vcf";
+        final File output = createTempFile("concatenated", extension);
+        final VariantFileConcatenator concatenator = new VariantFileConcatenator(output,
+                blockCompressed ? VariantFileConcatenator.Format.BLOCK_COMPRESSED_VCF : VariantFileConcatenator.Format.VCF);
+        try {
+            for ( final String shard : shards ) {
+                final File file = createTempFile("shard", extension);
+                final OutputStream out = blockCompressed ? new BlockCompressedOutputStream(file) : new FileOutputStream(file);
+                out.write(shard.getBytes(StandardCharsets.UTF_8));
+                out.close();
+                concatenator.add(file);
+            }
+        } finally {
+            concatenator.close();
+        }
+        return output;
+    }
+
+    private String read(final File file, final boolean blockCompressed) throws IOException {
+        final InputStream in = blockCompressed ? new BlockCompressedInputStream(file) : new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ( (n = in.read(buffer)) != -1 )
+                contents.write(buffer, 0, n);
+            return contents.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}